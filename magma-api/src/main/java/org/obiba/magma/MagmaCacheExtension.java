@@ -10,15 +10,18 @@
 
 package org.obiba.magma;
 
+import org.obiba.magma.support.MappedTableCache;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 
-public class MagmaCacheExtension implements MagmaEngineExtension {
+public class MagmaCacheExtension implements MagmaEngineExtension, Disposable {
 
   private static final long serialVersionUID = -6089615244332195129L;
 
   private transient CacheManager cacheManager;
 
+  private transient MappedTableCache tableCache;
+
   public MagmaCacheExtension() {
   }
 
@@ -26,6 +29,11 @@ public class MagmaCacheExtension implements MagmaEngineExtension {
     this.cacheManager = cacheManager;
   }
 
+  public MagmaCacheExtension(CacheManager cacheManager, MappedTableCache tableCache) {
+    this.cacheManager = cacheManager;
+    this.tableCache = tableCache;
+  }
+
   @Override
   public String getName() {
     return "magma-cache";
@@ -63,4 +71,27 @@ public class MagmaCacheExtension implements MagmaEngineExtension {
   public void setCacheManager(CacheManager cacheManager) {
     this.cacheManager = cacheManager;
   }
+
+  public boolean hasTableCache() {
+    return tableCache != null;
+  }
+
+  /**
+   * The off-heap snapshots of the tables, from which the cached tables read their values before falling back to the
+   * value caches.
+   *
+   * @return
+   */
+  public MappedTableCache getTableCache() {
+    return tableCache;
+  }
+
+  public void setTableCache(MappedTableCache tableCache) {
+    this.tableCache = tableCache;
+  }
+
+  @Override
+  public void dispose() {
+    if(tableCache != null) tableCache.dispose();
+  }
 }
@@ -11,9 +11,14 @@
 package org.obiba.magma;
 
 import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Year;
 import java.util.Calendar;
 import java.util.Date;
 
+import org.obiba.magma.type.DateTimeFormats;
+
 /**
  * An immutable date without any time. Java does not have such a type and there is no way to re-use java.util.Date since
  * it is already used for representing date and time values.
@@ -24,6 +29,11 @@ public class MagmaDate implements Serializable, Comparable<MagmaDate> {
 
   private static final long serialVersionUID = 1L;
 
+  /**
+   * Dates before are in the Julian calendar for {@link Calendar}, and are converted using it.
+   */
+  private static final int GREGORIAN_CUTOVER_YEAR = 1582;
+
   private final int year;
 
   private final int month;
@@ -42,11 +52,32 @@ public class MagmaDate implements Serializable, Comparable<MagmaDate> {
   }
 
   public MagmaDate(int year, int month, int dayOfMonth) {
-    this(asCalendar(year, month, dayOfMonth));
+    if(isGregorianDate(year, month, dayOfMonth)) {
+      this.year = year;
+      this.month = month;
+      this.dayOfMonth = dayOfMonth;
+    } else {
+      // let the calendar normalize the fields
+      Calendar calendar = asCalendar(year, month, dayOfMonth);
+      this.year = calendar.get(Calendar.YEAR);
+      this.month = calendar.get(Calendar.MONTH);
+      this.dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
+    }
   }
 
   public MagmaDate(Date date) {
-    this(asCalendar(date));
+    if(date == null) throw new IllegalArgumentException("date cannot be null");
+    LocalDateTime dateTime = DateTimeFormats.toLocalDateTime(date.getTime());
+    if(dateTime != null) {
+      year = dateTime.getYear();
+      month = dateTime.getMonthValue() - 1;
+      dayOfMonth = dateTime.getDayOfMonth();
+    } else {
+      Calendar calendar = asCalendar(date);
+      year = calendar.get(Calendar.YEAR);
+      month = calendar.get(Calendar.MONTH);
+      dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
+    }
   }
 
   public int getYear() {
@@ -71,6 +102,10 @@ public class MagmaDate implements Serializable, Comparable<MagmaDate> {
   }
 
   public Date asDate() {
+    if(isGregorianDate(year, month, dayOfMonth)) {
+      Long millis = DateTimeFormats.toEpochMillis(LocalDate.of(year, month + 1, dayOfMonth).atStartOfDay());
+      if(millis != null) return new Date(millis);
+    }
     return asCalendar().getTime();
   }
 
@@ -110,6 +145,11 @@ public class MagmaDate implements Serializable, Comparable<MagmaDate> {
     return toString != null ? toString : (toString = String.valueOf(year) + '-' + (month + 1) + '-' + dayOfMonth);
   }
 
+  private static boolean isGregorianDate(int year, int month, int dayOfMonth) {
+    return year > GREGORIAN_CUTOVER_YEAR && year <= Year.MAX_VALUE && month >= 0 && month < 12 && dayOfMonth >= 1 &&
+        dayOfMonth <= LocalDate.of(year, month + 1, 1).lengthOfMonth();
+  }
+
   private static Calendar asCalendar(Date date) {
     if(date == null) throw new IllegalArgumentException("date cannot be null");
     Calendar calendar = Calendar.getInstance();
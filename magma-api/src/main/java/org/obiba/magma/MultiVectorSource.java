@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma;
+
+import java.util.List;
+
+/**
+ * A source of iterable values from several variables of the same table: the values of all the variables are read
+ * together, one row of values per entity.
+ */
+public interface MultiVectorSource {
+
+  /**
+   * Variables of the values being accessed, in the order of the values in each row.
+   *
+   * @return
+   */
+  List<Variable> getVariables();
+
+  /**
+   * Iterable rows of values for the provided entities, in the order of the entities; each row has one value per
+   * variable. Implementation can extract the values of all the variables in a single request.
+   *
+   * @param entities
+   * @return
+   */
+  Iterable<Value[]> getValues(Iterable<VariableEntity> entities);
+
+}
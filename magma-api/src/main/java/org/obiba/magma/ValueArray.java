@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * Immutable list of the elements of a {@link ValueSequence}, backed by an array. Sub-lists and filtered lists are views
+ * of the same array: either a range of it, or the positions of the elements that were kept.
+ */
+final class ValueArray extends AbstractList<Value> implements RandomAccess, Serializable {
+
+  private static final long serialVersionUID = -3188364585532398129L;
+
+  private static final ValueArray EMPTY = new ValueArray(new Value[0], null, 0, 0);
+
+  private final Value[] values;
+
+  // positions of the elements in the values, null when the elements are a range of the values
+  private final int[] positions;
+
+  private final int offset;
+
+  private final int size;
+
+  private ValueArray(Value[] values, int[] positions, int offset, int size) {
+    this.values = values;
+    this.positions = positions;
+    this.offset = offset;
+    this.size = size;
+  }
+
+  /**
+   * Get the elements in an array list, without copying them if they already are.
+   *
+   * @param values
+   * @return
+   */
+  static ValueArray copyOf(Iterable<Value> values) {
+    if(values instanceof ValueArray) return (ValueArray) values;
+    Value[] array = values instanceof Collection
+        ? ((Collection<Value>) values).toArray(new Value[0])
+        : Iterables.toArray(values, Value.class);
+    return array.length == 0 ? EMPTY : new ValueArray(array, null, 0, array.length);
+  }
+
+  @Override
+  public Value get(int index) {
+    Objects.checkIndex(index, size);
+    return positions == null ? values[offset + index] : values[positions[offset + index]];
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public List<Value> subList(int fromIndex, int toIndex) {
+    Objects.checkFromToIndex(fromIndex, toIndex, size);
+    return new ValueArray(values, positions, offset + fromIndex, toIndex - fromIndex);
+  }
+
+  /**
+   * The elements that match the predicate, evaluated once for each element, in order.
+   *
+   * @param predicate
+   * @return
+   */
+  ValueArray filter(ValueSequence.ElementPredicate predicate) {
+    int[] kept = new int[size];
+    int count = 0;
+    for(int i = 0; i < size; i++) {
+      if(predicate.test(get(i), i)) kept[count++] = positions == null ? offset + i : positions[offset + i];
+    }
+    if(count == size) return this;
+    return count == 0 ? EMPTY : new ValueArray(values, kept, 0, count);
+  }
+
+  /**
+   * The elements of a view only.
+   *
+   * @return
+   */
+  private Object writeReplace() {
+    if(positions == null && offset == 0 && size == values.length) return this;
+    return new ValueArray(toArray(new Value[size]), null, 0, size);
+  }
+
+  @Override
+  public Object[] toArray() {
+    return toArray(new Value[size]);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T> T[] toArray(T[] array) {
+    T[] result = array.length >= size ? array : Arrays.copyOf(array, size);
+    if(positions == null) {
+      System.arraycopy(values, offset, result, 0, size);
+    } else {
+      for(int i = 0; i < size; i++) {
+        result[i] = (T) values[positions[offset + i]];
+      }
+    }
+    if(result.length > size) result[size] = null;
+    return result;
+  }
+
+}
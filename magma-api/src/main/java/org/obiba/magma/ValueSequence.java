@@ -10,7 +10,7 @@
 
 package org.obiba.magma;
 
-import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 
@@ -27,13 +27,16 @@ import com.google.common.collect.Ordering;
  * A {@code Value} instance that holds a sequence of other {@code Value} instances (its elements). The {@code ValueType}
  * of the sequence is the same as its elements. That is, if the elements have a value type {@code BooleanType}, then
  * this {@code ValueSequence} instance also has {@code BooleanType} as its value type.
+ * <p>
+ * The elements are copied once in an immutable array, so that they are accessed by index without any copy;
+ * sub-sequences and filtered sequences are views of the same array.
  */
 public class ValueSequence extends Value {
 
   private static final long serialVersionUID = -1965362009370797808L;
 
   ValueSequence(@NotNull ValueType valueType, @Nullable Iterable<Value> values) {
-    super(valueType, (Serializable) values);
+    super(valueType, values == null ? null : ValueArray.copyOf(values));
   }
 
   @Override
@@ -111,7 +114,10 @@ public class ValueSequence extends Value {
    */
   @NotNull
   public List<Value> getValues() {
-    return isNull() ? ImmutableList.<Value>of() : ImmutableList.copyOf(getValue());
+    if(isNull()) return ImmutableList.of();
+    Iterable<Value> values = getValue();
+    // sequences that were not made by the constructor, when unmarshalled for instance
+    return values instanceof ValueArray ? (ValueArray) values : ImmutableList.copyOf(values);
   }
 
   /**
@@ -154,4 +160,58 @@ public class ValueSequence extends Value {
   public int lastIndexOf(@NotNull Value value) {
     return getValues().lastIndexOf(value);
   }
+
+  /**
+   * Returns the elements from position {@code from}, inclusive, to position {@code to}, exclusive, without copying
+   * them.
+   *
+   * @param from
+   * @param to
+   * @return
+   * @throws IndexOutOfBoundsException when the positions are not within the sequence
+   */
+  public ValueSequence subset(int from, int to) {
+    return getValueType().sequenceOf(getValues().subList(from, to));
+  }
+
+  /**
+   * Returns the elements that match the predicate, without copying them. The predicate is evaluated once per element,
+   * in order.
+   *
+   * @param predicate
+   * @return
+   */
+  public ValueSequence filter(@NotNull ElementPredicate predicate) {
+    List<Value> values = getValues();
+    return getValueType().sequenceOf(values instanceof ValueArray
+        ? ((ValueArray) values).filter(predicate)
+        : ValueArray.copyOf(values).filter(predicate));
+  }
+
+  /**
+   * Returns the non-null elements of a numeric sequence as doubles, in order, without creating any value.
+   *
+   * @return
+   * @throws ClassCastException when the elements are not numbers
+   */
+  public double[] toDoubleArray() {
+    List<Value> values = getValues();
+    double[] doubles = new double[values.size()];
+    int count = 0;
+    for(int i = 0; i < doubles.length; i++) {
+      Value value = values.get(i);
+      if(!value.isNull()) doubles[count++] = ((Number) value.getValue()).doubleValue();
+    }
+    return count == doubles.length ? doubles : Arrays.copyOf(doubles, count);
+  }
+
+  /**
+   * Predicate on an element of a sequence and its position.
+   */
+  @FunctionalInterface
+  public interface ElementPredicate {
+
+    boolean test(Value value, int index);
+
+  }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import jakarta.annotation.Nullable;
+import jakarta.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A block of value sets to be written at once by a {@link ValueTableWriter}: the values of a list of entities for a
+ * list of variables, stored by variable (column). A cell without value (null) is not written, which is different from
+ * writing a null {@link Value}.
+ */
+public class ValueSetBlock {
+
+  @NotNull
+  private final List<Variable> variables;
+
+  private final List<VariableEntity> entities;
+
+  private final int capacity;
+
+  // values by variable, then by entity
+  private final Value[][] columns;
+
+  /**
+   * @param variables the variables of the block
+   * @param capacity the maximum number of entities in the block
+   */
+  public ValueSetBlock(@NotNull List<Variable> variables, int capacity) {
+    Preconditions.checkArgument(capacity > 0, "block capacity must be positive");
+    this.variables = ImmutableList.copyOf(variables);
+    this.capacity = capacity;
+    entities = new ArrayList<>(capacity);
+    columns = new Value[this.variables.size()][capacity];
+  }
+
+  /**
+   * Add an entity with its values, in the order of the variables of the block.
+   *
+   * @param entity
+   * @param values the values of the entity, null for the ones that are not to be written
+   * @return the row of the entity in the block
+   * @throws IllegalStateException if the block is full
+   */
+  public int add(@NotNull VariableEntity entity, Value... values) {
+    Preconditions.checkState(!isFull(), "block is full");
+    Preconditions.checkArgument(values.length <= variables.size(), "more values than variables");
+    int row = entities.size();
+    entities.add(entity);
+    for (int column = 0; column < values.length; column++) {
+      columns[column][row] = values[column];
+    }
+    return row;
+  }
+
+  public void setValue(int row, int column, @Nullable Value value) {
+    Preconditions.checkElementIndex(row, entities.size());
+    columns[column][row] = value;
+  }
+
+  @NotNull
+  public List<Variable> getVariables() {
+    return variables;
+  }
+
+  public Variable getVariable(int column) {
+    return variables.get(column);
+  }
+
+  @NotNull
+  public List<VariableEntity> getEntities() {
+    return Collections.unmodifiableList(entities);
+  }
+
+  public VariableEntity getEntity(int row) {
+    return entities.get(row);
+  }
+
+  /**
+   * @param row
+   * @param column
+   * @return null if there is no value to be written
+   */
+  @Nullable
+  public Value getValue(int row, int column) {
+    Preconditions.checkElementIndex(row, entities.size());
+    return columns[column][row];
+  }
+
+  /**
+   * @return the number of entities in the block
+   */
+  public int size() {
+    return entities.size();
+  }
+
+  public boolean isEmpty() {
+    return entities.isEmpty();
+  }
+
+  public boolean isFull() {
+    return entities.size() == capacity;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Remove all the entities, so that the block can be filled again.
+   */
+  public void clear() {
+    for (Value[] column : columns) {
+      Arrays.fill(column, 0, entities.size(), null);
+    }
+    entities.clear();
+  }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+/**
+ * Default {@link MultiVectorSource}: iterates over the value sets of the table (which are fetched by batches) and
+ * reads the value of each variable.
+ */
+public class ValueSetMultiVectorSource implements MultiVectorSource {
+
+  private final ValueTable table;
+
+  private final List<Variable> variables;
+
+  private final VariableValueSource[] sources;
+
+  public ValueSetMultiVectorSource(ValueTable table, List<Variable> variables) {
+    this.table = table;
+    this.variables = ImmutableList.copyOf(variables);
+    sources = new VariableValueSource[variables.size()];
+    for(int i = 0; i < sources.length; i++) {
+      sources[i] = table.getVariableValueSource(variables.get(i).getName());
+    }
+  }
+
+  @Override
+  public List<Variable> getVariables() {
+    return variables;
+  }
+
+  @Override
+  public Iterable<Value[]> getValues(Iterable<VariableEntity> entities) {
+    return Iterables.transform(table.getValueSets(entities), valueSet -> {
+      Value[] values = new Value[sources.length];
+      for(int i = 0; i < sources.length; i++) {
+        values[i] = sources[i].getValue(valueSet);
+      }
+      return values;
+    });
+  }
+}
@@ -106,6 +106,19 @@ public interface ValueTable extends Timestamped {
    */
   Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities);
 
+  /**
+   * Iterate over the values sets for a set of entities, when only the values of some of the variables are to be read.
+   * The values of the other variables can still be read, but may require additional queries. Default implementation
+   * ignores the variables.
+   *
+   * @param entities
+   * @param variables the variables of this table whose values are to be read
+   * @return
+   */
+  default Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities, Iterable<Variable> variables) {
+    return getValueSets(entities);
+  }
+
   /**
    * Summary of value sets.
    *
@@ -202,6 +215,18 @@ public interface ValueTable extends Timestamped {
    */
   VariableValueSource getVariableValueSource(String variableName) throws NoSuchVariableException;
 
+  /**
+   * Get the values of several variables at once, one row of values per entity. Default implementation reads the
+   * value sets, a specific implementation would extract all the variables' values in a single query.
+   *
+   * @param variables
+   * @return
+   * @throws NoSuchVariableException
+   */
+  default MultiVectorSource getMultiVectorSource(List<Variable> variables) throws NoSuchVariableException {
+    return new ValueSetMultiVectorSource(this, variables);
+  }
+
   /**
    * Check it is a logical table.
    *
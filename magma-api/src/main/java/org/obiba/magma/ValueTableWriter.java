@@ -19,6 +19,23 @@ public interface ValueTableWriter extends AutoCloseable {
   @NotNull
   ValueSetWriter writeValueSet(@NotNull VariableEntity entity);
 
+  /**
+   * Write the values of a block of entities. Writers that can write several value sets at once should override this
+   * method, the default being to write each value set of the block in turn.
+   *
+   * @param block
+   */
+  default void writeValueSets(@NotNull ValueSetBlock block) {
+    for (int row = 0; row < block.size(); row++) {
+      try (ValueSetWriter valueSetWriter = writeValueSet(block.getEntity(row))) {
+        for (int column = 0; column < block.getVariables().size(); column++) {
+          Value value = block.getValue(row, column);
+          if (value != null) valueSetWriter.writeValue(block.getVariable(column), value);
+        }
+      }
+    }
+  }
+
   @Override
   void close();
 
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs each submitted task on its own virtual thread, with a limit on the number of tasks running at the same time.
+ * Submitting blocks until a slot is available. Meant for I/O bound work such as reading batches of value sets from a
+ * remote database, where the number of in-flight queries matters more than the number of cores.
+ */
+public class BoundedVirtualThreadExecutor {
+
+  public static final int DEFAULT_MAX_CONCURRENCY = 64;
+
+  private final ExecutorService executor;
+
+  private final Semaphore permits;
+
+  // one party for the caller of awaitTasks, plus one for each task that is not completed
+  private final Phaser running = new Phaser(1);
+
+  private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+  public BoundedVirtualThreadExecutor(String name, int maxConcurrency) {
+    if(maxConcurrency < 1) throw new IllegalArgumentException("maxConcurrency must be at least 1");
+    executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    permits = new Semaphore(maxConcurrency);
+  }
+
+  /**
+   * Run a task that does not count in the concurrency limit, typically the one that submits the bounded tasks.
+   *
+   * @param task
+   * @return
+   */
+  public Future<?> dispatch(Runnable task) {
+    return executor.submit(task);
+  }
+
+  /**
+   * Run the task on a new virtual thread, waiting for a slot to be available first.
+   *
+   * @param task
+   * @throws InterruptedException
+   */
+  public void submit(Runnable task) throws InterruptedException {
+    permits.acquire();
+    running.register();
+    try {
+      executor.execute(() -> {
+        try {
+          task.run();
+        } catch(RuntimeException e) {
+          failure.compareAndSet(null, e);
+          throw e;
+        } catch(Error e) {
+          failure.compareAndSet(null, new RuntimeException(e));
+          throw e;
+        } finally {
+          permits.release();
+          running.arriveAndDeregister();
+        }
+      });
+    } catch(RejectedExecutionException e) {
+      permits.release();
+      running.arriveAndDeregister();
+      throw e;
+    }
+  }
+
+  /**
+   * Whether one of the submitted tasks has thrown an exception.
+   *
+   * @return
+   */
+  public boolean hasFailed() {
+    return failure.get() != null;
+  }
+
+  /**
+   * Wait for all the submitted tasks to complete and rethrow the first task failure, if any.
+   *
+   * @throws InterruptedException
+   */
+  public void awaitTasks() throws InterruptedException {
+    running.awaitAdvanceInterruptibly(running.arrive());
+    RuntimeException first = failure.get();
+    if(first != null) throw first;
+  }
+
+  public void shutdownNow() {
+    executor.shutdownNow();
+  }
+
+}
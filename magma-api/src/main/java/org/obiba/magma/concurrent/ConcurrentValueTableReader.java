@@ -11,13 +11,14 @@
 package org.obiba.magma.concurrent;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -28,7 +29,6 @@ import org.obiba.magma.ValueTable;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.VariableValueSource;
-import org.obiba.magma.support.AbstractValueTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,6 +43,11 @@ public class ConcurrentValueTableReader {
 
   private static final Logger log = LoggerFactory.getLogger(ConcurrentValueTableReader.class);
 
+  /**
+   * Marker put on the write queue by each reader when it is done (poison pill).
+   */
+  private static final VariableEntityValues END_OF_READ = new VariableEntityValues(null);
+
   private boolean ignoreReadErrors = false;
 
   private ThreadFactory threadFactory;
@@ -51,6 +56,12 @@ public class ConcurrentValueTableReader {
 
   private int nbConcurrentReaders = Runtime.getRuntime().availableProcessors() * 2;
 
+  /**
+   * When positive, each batch of entities is read on its own virtual thread, with at most this number of batches
+   * being read at the same time.
+   */
+  private int maxVirtualThreads = 0;
+
   private ValueTable valueTable;
 
   private Iterable<Variable> variablesFilter;
@@ -61,15 +72,29 @@ public class ConcurrentValueTableReader {
 
   private BlockingQueue<VariableEntityValues> writeQueue;
 
-  private int bufferSize = BUFFER_SIZE;
+  /**
+   * Capacity of the write queue: readers block when it is full (back-pressure). When not set, one batch of
+   * entities per reader can be pending.
+   */
+  private int bufferSize = 0;
+
+  /**
+   * Set when a reader fails, so that the other readers stop early.
+   */
+  private volatile boolean aborted = false;
 
   private ConcurrentValueTableReader() {
   }
 
   public void read() {
-    ExecutorService executorService = threadFactory == null
-        ? Executors.newFixedThreadPool(nbConcurrentReaders)
-        : Executors.newFixedThreadPool(nbConcurrentReaders, threadFactory);
+    BoundedVirtualThreadExecutor virtualThreadExecutor = maxVirtualThreads > 0
+        ? new BoundedVirtualThreadExecutor("magma-reader", maxVirtualThreads)
+        : null;
+    ExecutorService executorService = virtualThreadExecutor != null
+        ? null
+        : threadFactory == null
+            ? Executors.newFixedThreadPool(nbConcurrentReaders)
+            : Executors.newFixedThreadPool(nbConcurrentReaders, threadFactory);
 
     variables = Iterables
         .toArray(variablesFilter == null ? valueTable.getVariables() : variablesFilter, Variable.class);
@@ -78,35 +103,60 @@ public class ConcurrentValueTableReader {
     List<VariableEntity> entities = ImmutableList
         .copyOf(entitiesFilter == null ? valueTable.getVariableEntities() : entitiesFilter);
 
-    // A queue containing all entities to read the values for.
-    // Once this is empty, and all readers are done, then  reading is over.
-    BlockingQueue<VariableEntity> readQueue = new LinkedBlockingDeque<>(entities);
-    writeQueue = new LinkedBlockingDeque<>(bufferSize);
+    // A queue containing all the batches of entities to read the values for.
+    // Once this is empty, the readers put their end-of-read marker in the write queue.
+    BlockingQueue<List<VariableEntity>> readQueue = new LinkedBlockingQueue<>(
+        Lists.partition(entities, ValueTable.ENTITY_BATCH_SIZE));
+    writeQueue = new LinkedBlockingQueue<>(getBufferSize());
+    aborted = false;
 
     try {
       callback.onBegin(entities, variables);
       List<Future<?>> readers = entities.isEmpty()
           ? new ArrayList<Future<?>>()
-          : concurrentRead(executorService, variableValueSources, readQueue);
+          : virtualThreadExecutor == null
+              ? concurrentRead(executorService, variableValueSources, readQueue)
+              : virtualThreadsRead(virtualThreadExecutor, variableValueSources, readQueue);
       callback.onComplete();
       waitForReaders(readers);
     } finally {
-      executorService.shutdownNow();
+      if(virtualThreadExecutor == null) {
+        executorService.shutdownNow();
+      } else {
+        virtualThreadExecutor.shutdownNow();
+      }
     }
   }
 
+  private int getBufferSize() {
+    int nbReaders = maxVirtualThreads > 0 ? maxVirtualThreads : nbConcurrentReaders;
+    return bufferSize > 0 ? bufferSize : Math.max(BUFFER_SIZE, nbReaders * ValueTable.ENTITY_BATCH_SIZE);
+  }
+
   private List<Future<?>> concurrentRead(ExecutorService executorService, VariableValueSource[] variableValueSources,
-      BlockingQueue<VariableEntity> readQueue) {
+      BlockingQueue<List<VariableEntity>> readQueue) {
     List<Future<?>> readers = Lists.newArrayList();
     for(int i = 0; i < nbConcurrentReaders; i++) {
       readers.add(executorService.submit(new ConcurrentValueSetReader(variableValueSources, readQueue, writeQueue)));
     }
-    while(!isReadCompleted(readers)) {
-      flushQueue();
+    return flushQueue(readers);
+  }
+
+  private List<Future<?>> virtualThreadsRead(BoundedVirtualThreadExecutor executor,
+      VariableValueSource[] variableValueSources, BlockingQueue<List<VariableEntity>> readQueue) {
+    List<Future<?>> readers = Lists.newArrayList();
+    readers.add(executor.dispatch(new VirtualThreadsDispatcher(executor,
+        new ConcurrentValueSetReader(variableValueSources, readQueue, writeQueue))));
+    return flushQueue(readers);
+  }
+
+  private List<Future<?>> flushQueue(List<Future<?>> readers) {
+    try {
+      flushQueue(readers.size());
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
     }
-    // Flush remaining values if any
-    // This is necessary due to a race condition between isReadComplete() and readers appending to the write queue
-    flushQueue();
     return readers;
   }
 
@@ -118,27 +168,24 @@ public class ConcurrentValueTableReader {
     return variableValueSources;
   }
 
-  private void flushQueue() {
-    VariableEntityValues values;
-
-    while((values = writeQueue.poll()) != null) {
-      callback.onValues(values.getEntity(), variables, values.getValues());
-      log.trace("write onCallback for entity {}", values.getEntity().getIdentifier());
-    }
-  }
-
   /**
-   * Returns true when all readers have finished submitting to the writeQueue. false otherwise.
+   * Blocks on the write queue and passes the values to the callback until each reader has signaled the end of its
+   * read.
    *
-   * @return
+   * @param nbReaders
+   * @throws InterruptedException
    */
-  private boolean isReadCompleted(Iterable<Future<?>> readers) {
-    for(Future<?> reader : readers) {
-      if(!reader.isDone()) {
-        return false;
+  private void flushQueue(int nbReaders) throws InterruptedException {
+    int running = nbReaders;
+    while(running > 0) {
+      VariableEntityValues values = writeQueue.take();
+      if(values == END_OF_READ) {
+        running--;
+      } else {
+        callback.onValues(values.getEntity(), variables, values.getValues());
+        log.trace("write onCallback for entity {}", values.getEntity().getIdentifier());
       }
     }
-    return true;
   }
 
   private void waitForReaders(Iterable<Future<?>> readers) {
@@ -192,11 +239,11 @@ public class ConcurrentValueTableReader {
 
     private final VariableValueSource[] sources;
 
-    private final BlockingQueue<VariableEntity> readQueue;
+    private final BlockingQueue<List<VariableEntity>> readQueue;
 
     private final BlockingQueue<VariableEntityValues> writeQueue;
 
-    private ConcurrentValueSetReader(VariableValueSource[] sources, BlockingQueue<VariableEntity> readQueue,
+    private ConcurrentValueSetReader(VariableValueSource[] sources, BlockingQueue<List<VariableEntity>> readQueue,
         BlockingQueue<VariableEntityValues> writeQueue) {
       this.sources = sources;
       this.readQueue = readQueue;
@@ -206,21 +253,40 @@ public class ConcurrentValueTableReader {
     @Override
     public void run() {
       try {
-        VariableEntity entity = readQueue.poll();
-        List<VariableEntity> entitiesBatch = Lists.newArrayList();
-        while(entity != null && !callback.isCancelled()) {
-          entitiesBatch.add(entity);
-          if (entitiesBatch.size() == AbstractValueTable.ENTITY_BATCH_SIZE) {
-            writeValues(entitiesBatch);
-            entitiesBatch.clear();
-          }
-          entity = readQueue.poll();
-        }
-        if (!entitiesBatch.isEmpty()) {
+        List<VariableEntity> entitiesBatch = readQueue.poll();
+        while(entitiesBatch != null && !aborted && !callback.isCancelled()) {
           writeValues(entitiesBatch);
+          entitiesBatch = readQueue.poll();
         }
       } catch(InterruptedException e) {
-        // do nothing
+        Thread.currentThread().interrupt();
+      } catch(RuntimeException e) {
+        aborted = true;
+        throw e;
+      } finally {
+        signalEndOfRead();
+      }
+    }
+
+    /**
+     * Read a single batch of entities, to be called from a virtual thread.
+     *
+     * @param entities
+     */
+    private void readBatch(List<VariableEntity> entities) {
+      try {
+        writeValues(entities);
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void signalEndOfRead() {
+      try {
+        writeQueue.put(END_OF_READ);
+      } catch(InterruptedException e) {
+        // the consumer is gone
+        Thread.currentThread().interrupt();
       }
     }
 
@@ -233,7 +299,8 @@ public class ConcurrentValueTableReader {
     }
 
     private List<Value[]> readValues(List<VariableEntity> entities) {
-      Iterable<ValueSet> valueSets = valueTable.getValueSets(entities);
+      // only the values of the filtered variables are extracted
+      Iterable<ValueSet> valueSets = valueTable.getValueSets(entities, Arrays.asList(variables));
       return StreamSupport.stream(valueSets.spliterator(), false)
           .map(this::readValues)
           .collect(Collectors.toList());
@@ -261,6 +328,39 @@ public class ConcurrentValueTableReader {
     }
   }
 
+  /**
+   * Submits each batch of entities to the virtual thread executor, then waits for all of them to be read before
+   * signaling the end of the read.
+   */
+  private class VirtualThreadsDispatcher implements Runnable {
+
+    private final BoundedVirtualThreadExecutor executor;
+
+    private final ConcurrentValueSetReader reader;
+
+    private VirtualThreadsDispatcher(BoundedVirtualThreadExecutor executor, ConcurrentValueSetReader reader) {
+      this.executor = executor;
+      this.reader = reader;
+    }
+
+    @Override
+    public void run() {
+      try {
+        List<VariableEntity> entitiesBatch = reader.readQueue.poll();
+        while(entitiesBatch != null && !executor.hasFailed() && !callback.isCancelled()) {
+          List<VariableEntity> entities = entitiesBatch;
+          executor.submit(() -> reader.readBatch(entities));
+          entitiesBatch = reader.readQueue.poll();
+        }
+        executor.awaitTasks();
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        reader.signalEndOfRead();
+      }
+    }
+  }
+
   @SuppressWarnings("ParameterHidesMemberVariable")
   public interface ConcurrentReaderCallback {
 
@@ -319,6 +419,36 @@ public class ConcurrentValueTableReader {
       return this;
     }
 
+    /**
+     * Read each batch of entities on its own virtual thread instead of a fixed pool of readers, suitable for I/O bound
+     * sources. The number of batches read at the same time is limited to
+     * {@link BoundedVirtualThreadExecutor#DEFAULT_MAX_CONCURRENCY}.
+     *
+     * @return
+     */
+    public Builder withVirtualThreads() {
+      return withVirtualThreads(BoundedVirtualThreadExecutor.DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * Read each batch of entities on its own virtual thread, with at most the given number of batches being read at
+     * the same time.
+     *
+     * @param maxConcurrentBatches
+     * @return
+     */
+    public Builder withVirtualThreads(int maxConcurrentBatches) {
+      reader.maxVirtualThreads = maxConcurrentBatches;
+      return this;
+    }
+
+    /**
+     * Maximum number of read value sets waiting to be passed to the callback. Readers block when this limit is
+     * reached. Defaults to one batch of entities per reader.
+     *
+     * @param bufferSize
+     * @return
+     */
     public Builder withBufferSize(int bufferSize) {
       reader.bufferSize = bufferSize;
 
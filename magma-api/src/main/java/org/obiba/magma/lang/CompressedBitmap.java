@@ -0,0 +1,655 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.lang;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of non-negative integers, compressed the Roaring way: the integers are grouped by their 16 high bits, and each
+ * group stores its 16 low bits either in a sorted array (sparse group) or in a bitmap of 2^16 bits (dense group). A dense
+ * range of integers costs about one bit each, a sparse one two bytes each.
+ * <p>
+ * Not thread safe.
+ */
+public final class CompressedBitmap {
+
+  // above this cardinality, a bitmap container is smaller than an array container
+  private static final int ARRAY_MAX_SIZE = 4096;
+
+  private static final int BITMAP_WORDS = 1 << 10;
+
+  private char[] keys;
+
+  private Container[] containers;
+
+  private int size;
+
+  public CompressedBitmap() {
+    keys = new char[4];
+    containers = new Container[4];
+  }
+
+  private CompressedBitmap(int capacity) {
+    keys = new char[Math.max(capacity, 4)];
+    containers = new Container[Math.max(capacity, 4)];
+  }
+
+  /**
+   * @param value
+   * @return true if the value was not already in the set
+   */
+  public boolean add(int value) {
+    Preconditions.checkArgument(value >= 0, "value must be non-negative");
+    char high = highBits(value);
+    int i = indexOf(high);
+    if (i < 0) {
+      i = -i - 1;
+      insertContainer(i, high, new ArrayContainer());
+    }
+    Container container = containers[i];
+    int cardinality = container.cardinality();
+    containers[i] = container.add(lowBits(value));
+    return containers[i].cardinality() > cardinality;
+  }
+
+  public boolean contains(int value) {
+    if (value < 0) return false;
+    int i = indexOf(highBits(value));
+    return i >= 0 && containers[i].contains(lowBits(value));
+  }
+
+  /**
+   * @param value
+   * @return true if the value was in the set
+   */
+  public boolean remove(int value) {
+    if (value < 0) return false;
+    int i = indexOf(highBits(value));
+    if (i < 0) return false;
+    Container container = containers[i];
+    int cardinality = container.cardinality();
+    container = container.remove(lowBits(value));
+    if (container.cardinality() == 0) {
+      removeContainer(i);
+    } else {
+      containers[i] = container;
+    }
+    return container.cardinality() < cardinality;
+  }
+
+  public int getCardinality() {
+    int cardinality = 0;
+    for (int i = 0; i < size; i++) {
+      cardinality += containers[i].cardinality();
+    }
+    return cardinality;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Get the value at the given rank, in ascending order.
+   *
+   * @param rank
+   * @return
+   */
+  public int select(int rank) {
+    Preconditions.checkArgument(rank >= 0, "rank must be non-negative");
+    int remaining = rank;
+    for (int i = 0; i < size; i++) {
+      int cardinality = containers[i].cardinality();
+      if (remaining < cardinality) return keys[i] << 16 | containers[i].select(remaining);
+      remaining -= cardinality;
+    }
+    throw new IndexOutOfBoundsException("rank " + rank + " is not lower than the cardinality " + getCardinality());
+  }
+
+  /**
+   * Visit the values in ascending order.
+   *
+   * @param consumer
+   */
+  public void forEach(IntConsumer consumer) {
+    for (int i = 0; i < size; i++) {
+      containers[i].forEach(keys[i] << 16, consumer);
+    }
+  }
+
+  /**
+   * Iterate over the values in ascending order.
+   *
+   * @return
+   */
+  public PrimitiveIterator.OfInt iterator() {
+    return new PrimitiveIterator.OfInt() {
+
+      private int i = 0;
+
+      private PrimitiveIterator.OfInt current = size == 0 ? null : containers[0].iterator(keys[0] << 16);
+
+      @Override
+      public boolean hasNext() {
+        while (current != null && !current.hasNext()) {
+          i++;
+          current = i < size ? containers[i].iterator(keys[i] << 16) : null;
+        }
+        return current != null;
+      }
+
+      @Override
+      public int nextInt() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return current.nextInt();
+      }
+    };
+  }
+
+  /**
+   * Estimate of the memory used by the set.
+   *
+   * @return
+   */
+  public long getSizeInBytes() {
+    long bytes = 16 + keys.length * 2L + containers.length * 8L;
+    for (int i = 0; i < size; i++) {
+      bytes += containers[i].sizeInBytes();
+    }
+    return bytes;
+  }
+
+  public CompressedBitmap copy() {
+    CompressedBitmap copy = new CompressedBitmap(size);
+    for (int i = 0; i < size; i++) {
+      copy.keys[i] = keys[i];
+      copy.containers[i] = containers[i].copy();
+    }
+    copy.size = size;
+    return copy;
+  }
+
+  /**
+   * @param left
+   * @param right
+   * @return the values that are in any of the sets
+   */
+  public static CompressedBitmap or(CompressedBitmap left, CompressedBitmap right) {
+    CompressedBitmap result = new CompressedBitmap(left.size + right.size);
+    int i = 0, j = 0;
+    while (i < left.size && j < right.size) {
+      if (left.keys[i] == right.keys[j]) {
+        result.append(left.keys[i], left.containers[i++].or(right.containers[j++]));
+      } else if (left.keys[i] < right.keys[j]) {
+        result.append(left.keys[i], left.containers[i++].copy());
+      } else {
+        result.append(right.keys[j], right.containers[j++].copy());
+      }
+    }
+    for (; i < left.size; i++) result.append(left.keys[i], left.containers[i].copy());
+    for (; j < right.size; j++) result.append(right.keys[j], right.containers[j].copy());
+    return result;
+  }
+
+  /**
+   * @param left
+   * @param right
+   * @return the values that are in both sets
+   */
+  public static CompressedBitmap and(CompressedBitmap left, CompressedBitmap right) {
+    CompressedBitmap result = new CompressedBitmap(Math.min(left.size, right.size));
+    int i = 0, j = 0;
+    while (i < left.size && j < right.size) {
+      if (left.keys[i] == right.keys[j]) {
+        Container container = left.containers[i++].and(right.containers[j++]);
+        if (container.cardinality() > 0) result.append(left.keys[i - 1], container);
+      } else if (left.keys[i] < right.keys[j]) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param left
+   * @param right
+   * @return the values of the left set that are not in the right set
+   */
+  public static CompressedBitmap andNot(CompressedBitmap left, CompressedBitmap right) {
+    CompressedBitmap result = new CompressedBitmap(left.size);
+    int j = 0;
+    for (int i = 0; i < left.size; i++) {
+      while (j < right.size && right.keys[j] < left.keys[i]) j++;
+      Container container = j < right.size && right.keys[j] == left.keys[i]
+          ? left.containers[i].andNot(right.containers[j])
+          : left.containers[i].copy();
+      if (container.cardinality() > 0) result.append(left.keys[i], container);
+    }
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof CompressedBitmap)) return false;
+    CompressedBitmap that = (CompressedBitmap) o;
+    if (size != that.size) return false;
+    for (int i = 0; i < size; i++) {
+      if (keys[i] != that.keys[i] || !containers[i].sameValues(that.containers[i])) return false;
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int[] hash = { 1 };
+    forEach(value -> hash[0] = 31 * hash[0] + value);
+    return hash[0];
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("{");
+    forEach(value -> builder.append(builder.length() > 1 ? "," : "").append(value));
+    return builder.append("}").toString();
+  }
+
+  //
+  // Private methods
+  //
+
+  private static char highBits(int value) {
+    return (char) (value >>> 16);
+  }
+
+  private static char lowBits(int value) {
+    return (char) value;
+  }
+
+  private int indexOf(char key) {
+    // fast path for values added in ascending order
+    if (size > 0 && keys[size - 1] == key) return size - 1;
+    return Arrays.binarySearch(keys, 0, size, key);
+  }
+
+  private void insertContainer(int i, char key, Container container) {
+    ensureCapacity(size + 1);
+    System.arraycopy(keys, i, keys, i + 1, size - i);
+    System.arraycopy(containers, i, containers, i + 1, size - i);
+    keys[i] = key;
+    containers[i] = container;
+    size++;
+  }
+
+  private void removeContainer(int i) {
+    System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+    System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+    containers[--size] = null;
+  }
+
+  private void append(char key, Container container) {
+    ensureCapacity(size + 1);
+    keys[size] = key;
+    containers[size++] = container;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > keys.length) {
+      int newCapacity = Math.max(capacity, keys.length * 2);
+      keys = Arrays.copyOf(keys, newCapacity);
+      containers = Arrays.copyOf(containers, newCapacity);
+    }
+  }
+
+  /**
+   * The low bits of the values that share the same high bits. Mutations may return another kind of container.
+   */
+  private abstract static class Container {
+
+    abstract Container add(char low);
+
+    abstract boolean contains(char low);
+
+    abstract Container remove(char low);
+
+    abstract int cardinality();
+
+    abstract int select(int rank);
+
+    abstract void forEach(int high, IntConsumer consumer);
+
+    abstract PrimitiveIterator.OfInt iterator(int high);
+
+    abstract long sizeInBytes();
+
+    abstract Container copy();
+
+    abstract BitmapContainer toBitmap();
+
+    Container or(Container other) {
+      if (this instanceof ArrayContainer && other instanceof ArrayContainer &&
+          cardinality() + other.cardinality() <= ARRAY_MAX_SIZE) {
+        return ((ArrayContainer) this).merge((ArrayContainer) other);
+      }
+      BitmapContainer result = toBitmap();
+      long[] words = other.toBitmap().words;
+      for (int k = 0; k < BITMAP_WORDS; k++) {
+        result.words[k] |= words[k];
+      }
+      return result.normalize();
+    }
+
+    Container and(Container other) {
+      if (this instanceof ArrayContainer) return ((ArrayContainer) this).filter(other, true);
+      if (other instanceof ArrayContainer) return ((ArrayContainer) other).filter(this, true);
+      BitmapContainer result = toBitmap();
+      long[] words = ((BitmapContainer) other).words;
+      for (int k = 0; k < BITMAP_WORDS; k++) {
+        result.words[k] &= words[k];
+      }
+      return result.normalize();
+    }
+
+    Container andNot(Container other) {
+      if (this instanceof ArrayContainer) return ((ArrayContainer) this).filter(other, false);
+      BitmapContainer result = toBitmap();
+      long[] words = other.toBitmap().words;
+      for (int k = 0; k < BITMAP_WORDS; k++) {
+        result.words[k] &= ~words[k];
+      }
+      return result.normalize();
+    }
+
+    boolean sameValues(Container other) {
+      if (cardinality() != other.cardinality()) return false;
+      return Arrays.equals(toBitmap().words, other.toBitmap().words);
+    }
+  }
+
+  private static final class ArrayContainer extends Container {
+
+    private char[] values;
+
+    private int cardinality;
+
+    private ArrayContainer() {
+      this(new char[4], 0);
+    }
+
+    private ArrayContainer(char[] values, int cardinality) {
+      this.values = values;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    Container add(char low) {
+      // fast path for values added in ascending order
+      int i = cardinality > 0 && values[cardinality - 1] < low ? -cardinality - 1 : Arrays.binarySearch(values, 0, cardinality, low);
+      if (i >= 0) return this;
+      if (cardinality == ARRAY_MAX_SIZE) return toBitmap().add(low);
+      i = -i - 1;
+      if (cardinality == values.length) {
+        values = Arrays.copyOf(values, Math.min(values.length * 2, ARRAY_MAX_SIZE));
+      }
+      System.arraycopy(values, i, values, i + 1, cardinality - i);
+      values[i] = low;
+      cardinality++;
+      return this;
+    }
+
+    @Override
+    boolean contains(char low) {
+      return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+    }
+
+    @Override
+    Container remove(char low) {
+      int i = Arrays.binarySearch(values, 0, cardinality, low);
+      if (i >= 0) {
+        System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+        cardinality--;
+      }
+      return this;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    int select(int rank) {
+      return values[rank];
+    }
+
+    @Override
+    void forEach(int high, IntConsumer consumer) {
+      for (int i = 0; i < cardinality; i++) {
+        consumer.accept(high | values[i]);
+      }
+    }
+
+    @Override
+    PrimitiveIterator.OfInt iterator(int high) {
+      return new PrimitiveIterator.OfInt() {
+
+        private int i = 0;
+
+        @Override
+        public boolean hasNext() {
+          return i < cardinality;
+        }
+
+        @Override
+        public int nextInt() {
+          if (!hasNext()) throw new NoSuchElementException();
+          return high | values[i++];
+        }
+      };
+    }
+
+    @Override
+    long sizeInBytes() {
+      return 32 + values.length * 2L;
+    }
+
+    @Override
+    Container copy() {
+      return new ArrayContainer(Arrays.copyOf(values, Math.max(cardinality, 4)), cardinality);
+    }
+
+    @Override
+    BitmapContainer toBitmap() {
+      BitmapContainer bitmap = new BitmapContainer();
+      for (int i = 0; i < cardinality; i++) {
+        bitmap.words[values[i] >>> 6] |= 1L << values[i];
+      }
+      bitmap.cardinality = cardinality;
+      return bitmap;
+    }
+
+    private ArrayContainer merge(ArrayContainer other) {
+      char[] merged = new char[Math.max(cardinality + other.cardinality, 4)];
+      int i = 0, j = 0, k = 0;
+      while (i < cardinality && j < other.cardinality) {
+        char a = values[i], b = other.values[j];
+        if (a == b) {
+          merged[k++] = a;
+          i++;
+          j++;
+        } else if (a < b) {
+          merged[k++] = a;
+          i++;
+        } else {
+          merged[k++] = b;
+          j++;
+        }
+      }
+      while (i < cardinality) merged[k++] = values[i++];
+      while (j < other.cardinality) merged[k++] = other.values[j++];
+      return new ArrayContainer(merged, k);
+    }
+
+    /**
+     * @param other
+     * @param keep whether the values that are in the other container are kept or dropped
+     * @return
+     */
+    private ArrayContainer filter(Container other, boolean keep) {
+      char[] filtered = new char[Math.max(cardinality, 4)];
+      int k = 0;
+      for (int i = 0; i < cardinality; i++) {
+        if (other.contains(values[i]) == keep) filtered[k++] = values[i];
+      }
+      return new ArrayContainer(filtered, k);
+    }
+  }
+
+  private static final class BitmapContainer extends Container {
+
+    private final long[] words;
+
+    private int cardinality;
+
+    private BitmapContainer() {
+      this(new long[BITMAP_WORDS], 0);
+    }
+
+    private BitmapContainer(long[] words, int cardinality) {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    Container add(char low) {
+      long word = words[low >>> 6];
+      long updated = word | 1L << low;
+      if (updated != word) {
+        words[low >>> 6] = updated;
+        cardinality++;
+      }
+      return this;
+    }
+
+    @Override
+    boolean contains(char low) {
+      return (words[low >>> 6] & 1L << low) != 0;
+    }
+
+    @Override
+    Container remove(char low) {
+      long word = words[low >>> 6];
+      long updated = word & ~(1L << low);
+      if (updated != word) {
+        words[low >>> 6] = updated;
+        cardinality--;
+      }
+      return cardinality > ARRAY_MAX_SIZE ? this : normalize();
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    int select(int rank) {
+      int remaining = rank;
+      for (int k = 0; k < BITMAP_WORDS; k++) {
+        int count = Long.bitCount(words[k]);
+        if (remaining < count) {
+          long word = words[k];
+          for (int r = 0; r < remaining; r++) {
+            word &= word - 1;
+          }
+          return k << 6 | Long.numberOfTrailingZeros(word);
+        }
+        remaining -= count;
+      }
+      throw new IndexOutOfBoundsException("rank " + rank);
+    }
+
+    @Override
+    void forEach(int high, IntConsumer consumer) {
+      for (int k = 0; k < BITMAP_WORDS; k++) {
+        long word = words[k];
+        while (word != 0) {
+          consumer.accept(high | k << 6 | Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+    }
+
+    @Override
+    PrimitiveIterator.OfInt iterator(int high) {
+      return new PrimitiveIterator.OfInt() {
+
+        private int k = 0;
+
+        private long word = words[0];
+
+        @Override
+        public boolean hasNext() {
+          while (word == 0 && k < BITMAP_WORDS - 1) {
+            word = words[++k];
+          }
+          return word != 0;
+        }
+
+        @Override
+        public int nextInt() {
+          if (!hasNext()) throw new NoSuchElementException();
+          int value = high | k << 6 | Long.numberOfTrailingZeros(word);
+          word &= word - 1;
+          return value;
+        }
+      };
+    }
+
+    @Override
+    long sizeInBytes() {
+      return 32 + BITMAP_WORDS * 8L;
+    }
+
+    @Override
+    Container copy() {
+      return new BitmapContainer(words.clone(), cardinality);
+    }
+
+    @Override
+    BitmapContainer toBitmap() {
+      return (BitmapContainer) copy();
+    }
+
+    /**
+     * @return an array container if sparse enough
+     */
+    private Container normalize() {
+      cardinality = 0;
+      for (long word : words) {
+        cardinality += Long.bitCount(word);
+      }
+      if (cardinality > ARRAY_MAX_SIZE) return this;
+      char[] values = new char[Math.max(cardinality, 4)];
+      int[] k = { 0 };
+      forEach(0, value -> values[k[0]++] = (char) value);
+      return new ArrayContainer(values, cardinality);
+    }
+  }
+
+}
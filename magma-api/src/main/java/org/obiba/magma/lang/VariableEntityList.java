@@ -1,65 +1,181 @@
 package org.obiba.magma.lang;
 
-import com.google.common.collect.Sets;
 import org.obiba.magma.VariableEntity;
+import org.obiba.magma.support.VariableEntityDictionary;
 
+import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
 
 /**
- * A list of unique values, just like a set but with list interface.
+ * A list of unique values, just like a set but with list interface. The entities are stored in their own
+ * {@link VariableEntityDictionary}, the position of an entity being its code: lookups do not need a hash set of
+ * identifiers, and {@link VariableEntitySet}s of these entities can be made with {@link #newSet()}.
+ * <p>
+ * Appending ({@link #add(VariableEntity)}, {@link #addAll(Collection)}), {@link #get(int)}, {@link #contains(Object)}
+ * and {@link #indexOf(Object)} take constant time per entity. Removing, inserting or moving an entity
+ * ({@link #add(int, VariableEntity)}, {@link #set(int, VariableEntity)}, {@link #remove(int)},
+ * {@link #remove(Object)}, {@link #removeIf(Predicate)}, {@link #removeRange(int, int)}, {@link #sort(Comparator)})
+ * shifts the codes: it copies the list and re-encodes all of it in a new dictionary, in linear time, the sets already
+ * made keep the previous one. A list that is to be edited this way should be copied to an {@link ArrayList} first.
+ * <p>
+ * The serial form is not compatible with the one of the lists that extended {@link ArrayList}. Not thread safe.
  */
-public class VariableEntityList extends ArrayList<VariableEntity> {
+public class VariableEntityList extends AbstractList<VariableEntity> implements RandomAccess, Serializable {
 
-  private static final long serialVersionUID = -4415279469444174L;
+  private static final long serialVersionUID = 2968713207154651432L;
 
-  private Set<String> ids = Sets.newHashSet();
+  private VariableEntityDictionary dictionary;
 
   public VariableEntityList() {
+    dictionary = new VariableEntityDictionary();
   }
 
   public VariableEntityList(Collection<? extends VariableEntity> collection) {
-    super();
-    addAll(collection);
+    if (collection instanceof VariableEntityList) {
+      // same entities in the same order, same codes
+      dictionary = ((VariableEntityList) collection).dictionary.copy();
+    } else {
+      dictionary = new VariableEntityDictionary(collection.size());
+      addAll(collection);
+    }
+  }
+
+  /**
+   * A new empty set of the entities of this list.
+   *
+   * @return
+   */
+  public VariableEntitySet newSet() {
+    return new VariableEntitySet(dictionary);
+  }
+
+  /**
+   * A new set of all the entities of this list.
+   *
+   * @return
+   */
+  public VariableEntitySet toSet() {
+    return VariableEntitySet.range(dictionary, size());
+  }
+
+  @Override
+  public VariableEntity get(int index) {
+    return dictionary.decode(index);
+  }
+
+  @Override
+  public int size() {
+    return dictionary.size();
   }
 
   @Override
   public boolean add(VariableEntity entity) {
-    if (contains(entity))
-      return false;
-    boolean added = super.add(entity);
-    if (added) ids.add(entity.getIdentifier());
-    return added;
+    int size = dictionary.size();
+    if (dictionary.encode(entity) != size) return false;
+    modCount++;
+    return true;
   }
 
   @Override
   public boolean addAll(Collection<? extends VariableEntity> collection) {
-    List<VariableEntity> entities = collection.stream().distinct().filter(ve -> !contains(ve)).collect(Collectors.toList());
-    ids.addAll(entities.stream().map(VariableEntity::getIdentifier).collect(Collectors.toList()));
-    return super.addAll(entities);
+    int size = dictionary.size();
+    for (VariableEntity entity : collection) {
+      dictionary.encode(entity);
+    }
+    if (dictionary.size() == size) return false;
+    modCount++;
+    return true;
   }
 
   @Override
   public boolean contains(Object o) {
-    if (!(o instanceof VariableEntity)) return false;
-    if (ids.isEmpty()) return false;
-    return ids.contains(((VariableEntity)o).getIdentifier());
+    return indexOf(o) >= 0;
   }
 
   @Override
-  public boolean remove(Object o) {
-    if (!(o instanceof VariableEntity)) return false;
-    boolean removed = super.remove(o);
-    if (removed) ids.remove(((VariableEntity)o).getIdentifier());
+  public int indexOf(Object o) {
+    if (!(o instanceof VariableEntity)) return -1;
+    return dictionary.indexOf((VariableEntity) o);
+  }
+
+  @Override
+  public int lastIndexOf(Object o) {
+    return indexOf(o);
+  }
+
+  @Override
+  public void add(int index, VariableEntity entity) {
+    if (index == size()) {
+      add(entity);
+      return;
+    }
+    if (contains(entity)) return;
+    List<VariableEntity> entities = new ArrayList<>(this);
+    entities.add(index, entity);
+    reset(entities);
+  }
+
+  @Override
+  public VariableEntity set(int index, VariableEntity entity) {
+    List<VariableEntity> entities = new ArrayList<>(this);
+    VariableEntity previous = entities.set(index, entity);
+    reset(entities);
+    return previous;
+  }
+
+  @Override
+  public VariableEntity remove(int index) {
+    List<VariableEntity> entities = new ArrayList<>(this);
+    VariableEntity removed = entities.remove(index);
+    reset(entities);
     return removed;
   }
 
+  @Override
+  public boolean remove(Object o) {
+    int index = indexOf(o);
+    if (index < 0) return false;
+    remove(index);
+    return true;
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super VariableEntity> filter) {
+    List<VariableEntity> entities = new ArrayList<>(this);
+    if (!entities.removeIf(filter)) return false;
+    reset(entities);
+    return true;
+  }
+
+  @Override
+  protected void removeRange(int fromIndex, int toIndex) {
+    List<VariableEntity> entities = new ArrayList<>(this);
+    entities.subList(fromIndex, toIndex).clear();
+    reset(entities);
+  }
+
+  @Override
+  public void sort(Comparator<? super VariableEntity> c) {
+    List<VariableEntity> entities = new ArrayList<>(this);
+    entities.sort(c);
+    reset(entities);
+  }
+
   @Override
   public void clear() {
-    ids.clear();
-    super.clear();
+    dictionary = new VariableEntityDictionary();
+    modCount++;
+  }
+
+  private void reset(List<VariableEntity> entities) {
+    dictionary = new VariableEntityDictionary(entities.size());
+    modCount++;
+    addAll(entities);
   }
-}
\ No newline at end of file
+}
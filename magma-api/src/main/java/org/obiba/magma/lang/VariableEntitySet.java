@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.lang;
+
+import com.google.common.base.Preconditions;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.support.VariableEntityDictionary;
+
+import jakarta.validation.constraints.NotNull;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+
+/**
+ * A set of some of the entities of a {@link VariableEntityList}, stored as a {@link CompressedBitmap} of their codes in
+ * the list's {@link VariableEntityDictionary}: a few bits per entity instead of an object, and set operations that work
+ * on whole words of bits. The iteration order is the order of the entities in the list, not the order in which they
+ * were added to this set.
+ * <p>
+ * Set operations are only possible between sets of the same dictionary, see {@link VariableEntityList#newSet()}.
+ * Not thread safe.
+ */
+public class VariableEntitySet implements Iterable<VariableEntity> {
+
+  @NotNull
+  private final VariableEntityDictionary dictionary;
+
+  @NotNull
+  private final CompressedBitmap codes;
+
+  VariableEntitySet(@NotNull VariableEntityDictionary dictionary) {
+    this(dictionary, new CompressedBitmap());
+  }
+
+  private VariableEntitySet(@NotNull VariableEntityDictionary dictionary, @NotNull CompressedBitmap codes) {
+    this.dictionary = dictionary;
+    this.codes = codes;
+  }
+
+  /**
+   * The set of the first entities of the dictionary.
+   */
+  static VariableEntitySet range(@NotNull VariableEntityDictionary dictionary, int size) {
+    CompressedBitmap codes = new CompressedBitmap();
+    for (int code = 0; code < size; code++) {
+      codes.add(code);
+    }
+    return new VariableEntitySet(dictionary, codes);
+  }
+
+  /**
+   * @param entity
+   * @return true if the entity was not already in the set
+   * @throws IllegalArgumentException if the entity is not in the list of this set
+   */
+  public boolean add(@NotNull VariableEntity entity) {
+    int code = dictionary.indexOf(entity);
+    Preconditions.checkArgument(code >= 0, "entity " + entity + " is not in the list of this set");
+    return codes.add(code);
+  }
+
+  public boolean contains(@NotNull VariableEntity entity) {
+    int code = dictionary.indexOf(entity);
+    return code >= 0 && codes.contains(code);
+  }
+
+  /**
+   * @param entity
+   * @return true if the entity was in the set
+   */
+  public boolean remove(@NotNull VariableEntity entity) {
+    int code = dictionary.indexOf(entity);
+    return code >= 0 && codes.remove(code);
+  }
+
+  public int size() {
+    return codes.getCardinality();
+  }
+
+  public boolean isEmpty() {
+    return codes.isEmpty();
+  }
+
+  /**
+   * @param other
+   * @return a new set of the entities that are in any of the sets
+   */
+  public VariableEntitySet union(@NotNull VariableEntitySet other) {
+    checkCompatible(other);
+    return new VariableEntitySet(dictionary, CompressedBitmap.or(codes, other.codes));
+  }
+
+  /**
+   * @param other
+   * @return a new set of the entities that are in both sets
+   */
+  public VariableEntitySet intersection(@NotNull VariableEntitySet other) {
+    checkCompatible(other);
+    return new VariableEntitySet(dictionary, CompressedBitmap.and(codes, other.codes));
+  }
+
+  /**
+   * @param other
+   * @return a new set of the entities of this set that are not in the other one
+   */
+  public VariableEntitySet difference(@NotNull VariableEntitySet other) {
+    checkCompatible(other);
+    return new VariableEntitySet(dictionary, CompressedBitmap.andNot(codes, other.codes));
+  }
+
+  /**
+   * Estimate of the memory used by the set, the dictionary excluded.
+   *
+   * @return
+   */
+  public long getSizeInBytes() {
+    return codes.getSizeInBytes();
+  }
+
+  @Override
+  public Iterator<VariableEntity> iterator() {
+    PrimitiveIterator.OfInt iterator = codes.iterator();
+    return new Iterator<VariableEntity>() {
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public VariableEntity next() {
+        return dictionary.decode(iterator.nextInt());
+      }
+    };
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof VariableEntitySet)) return false;
+    VariableEntitySet that = (VariableEntitySet) o;
+    return dictionary == that.dictionary && codes.equals(that.codes);
+  }
+
+  @Override
+  public int hashCode() {
+    return codes.hashCode();
+  }
+
+  private void checkCompatible(VariableEntitySet other) {
+    Preconditions.checkArgument(dictionary == other.dictionary, "entity sets of different lists");
+  }
+
+}
@@ -12,7 +12,6 @@ package org.obiba.magma.support;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import org.obiba.magma.*;
 import org.slf4j.Logger;
@@ -96,7 +95,29 @@ public abstract class AbstractValueTable implements ValueTable, Initialisable {
 
   @Override
   public Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities) {
-    return () -> new ValueSetIterator(entities);
+    return () -> newValueSetIterator(entities, null);
+  }
+
+  @Override
+  public Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities, Iterable<Variable> variables) {
+    List<Variable> projection = ImmutableList.copyOf(variables);
+    return () -> newValueSetIterator(entities, projection);
+  }
+
+  /**
+   * Lazy iterator of value sets: will make batch queries for extracting value sets, reading ahead the next batches if
+   * enabled (see {@link ReadAheadValueSetIterator}).
+   *
+   * @param entities
+   * @param variables the variables whose values are to be read, null for all of them
+   * @return
+   */
+  private Iterator<ValueSet> newValueSetIterator(Iterable<VariableEntity> entities, @Nullable List<Variable> variables) {
+    int batchSize = getVariableEntityBatchSize();
+    int depth = ReadAheadValueSetIterator
+        .getReadAheadDepth(batchSize, variables == null ? getVariableCount() : variables.size());
+    return new ReadAheadValueSetIterator(entities, batchSize, depth,
+        batch -> variables == null ? getValueSetsBatch(batch) : getValueSetsBatch(batch, variables));
   }
 
   @Override
@@ -126,6 +147,18 @@ public abstract class AbstractValueTable implements ValueTable, Initialisable {
     };
   }
 
+  /**
+   * Value set fetcher that only needs to extract the values of some variables; a more specific one would restrict its
+   * bulk query to these variables. Default implementation ignores the variables.
+   *
+   * @param entities
+   * @param variables
+   * @return
+   */
+  protected ValueSetBatch getValueSetsBatch(List<VariableEntity> entities, List<Variable> variables) {
+    return getValueSetsBatch(entities);
+  }
+
   @Override
   public boolean hasVariable(String variableName) {
     return sources.containsKey(variableName);
@@ -313,35 +346,4 @@ public abstract class AbstractValueTable implements ValueTable, Initialisable {
     }
     return maxDataPoints;
   }
-
-  /**
-   * Lazy iterator of value sets: will make batch queries for extracting value sets.
-   */
-  private class ValueSetIterator implements Iterator<ValueSet> {
-
-    private final Iterator<List<VariableEntity>> partitions;
-
-    private Iterator<ValueSet> currentBatch;
-
-    public ValueSetIterator(Iterable<VariableEntity> entities) {
-      this.partitions = Iterables.partition(entities, getVariableEntityBatchSize()).iterator();
-    }
-
-    @Override
-    public boolean hasNext() {
-      synchronized (partitions) {
-        return partitions.hasNext() || (currentBatch != null && currentBatch.hasNext());
-      }
-    }
-
-    @Override
-    public ValueSet next() {
-      synchronized (partitions) {
-        if (currentBatch == null || !currentBatch.hasNext()) {
-          currentBatch = getValueSetsBatch(partitions.next()).getValueSets().iterator();
-        }
-        return currentBatch.next();
-      }
-    }
-  }
 }
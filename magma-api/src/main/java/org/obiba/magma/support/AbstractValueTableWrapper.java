@@ -87,6 +87,11 @@ public abstract class AbstractValueTableWrapper implements ValueTableWrapper {
     return getWrappedValueTable().getValueSets(entities);
   }
 
+  @Override
+  public Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities, Iterable<Variable> variables) {
+    return getWrappedValueTable().getValueSets(entities, variables);
+  }
+
   @Override
   public boolean hasVariable(String name) {
     return getWrappedValueTable().hasVariable(name);
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import com.google.common.base.Throwables;
+import org.obiba.magma.MagmaRuntimeException;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Saves the batches of a writer, either synchronously or in the background so that the next batch can be filled while
+ * the previous ones are being saved.
+ * <p>
+ * In the background mode, the batches are saved one after the other, in the order they were flushed, and at most
+ * <code>depth</code> of them are pending: flushing one more waits for the oldest one to be saved. When saving a batch
+ * fails, the following ones are not saved and the failure is thrown by the next call to {@link #flush(List)},
+ * {@link #await()} or {@link #close()}; the calls after it throw a {@link MagmaRuntimeException} caused by this failure.
+ * The batches are not saved in the transaction of the caller, if any.
+ *
+ * @param <T> the type of the batch items
+ */
+public class AsyncBatchFlusher<T> implements AutoCloseable {
+
+  private final Consumer<List<T>> save;
+
+  private final int depth;
+
+  private final ExecutorService executor;
+
+  private final Semaphore pending;
+
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  private final AtomicBoolean failureThrown = new AtomicBoolean();
+
+  /**
+   * @param depth the number of batches that can be pending, the batches are saved synchronously if not positive
+   * @param save the saving of a batch
+   */
+  public AsyncBatchFlusher(int depth, Consumer<List<T>> save) {
+    this.save = save;
+    this.depth = Math.max(0, depth);
+    executor = this.depth == 0
+        ? null
+        : Executors.newSingleThreadExecutor(Thread.ofVirtual().name("magma-flush-", 0).factory());
+    pending = new Semaphore(this.depth);
+  }
+
+  public boolean isAsync() {
+    return executor != null;
+  }
+
+  /**
+   * Save the batch, or schedule its saving after the ones previously flushed.
+   *
+   * @param batch
+   * @throws MagmaRuntimeException if the saving of a previous batch failed
+   */
+  public void flush(List<T> batch) {
+    if (executor == null) {
+      save.accept(batch);
+      return;
+    }
+    checkFailure();
+    acquire(1);
+    try {
+      executor.execute(() -> {
+        try {
+          // batches are saved in order: none after a failed one
+          if (failure.get() == null) save.accept(batch);
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        } finally {
+          pending.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      pending.release();
+      throw new MagmaRuntimeException("Batch flushed after the writer was closed", e);
+    }
+  }
+
+  /**
+   * Wait for the flushed batches to be saved.
+   *
+   * @throws MagmaRuntimeException if the saving of a batch failed
+   */
+  public void await() {
+    if (executor == null) return;
+    acquire(depth);
+    pending.release(depth);
+    checkFailure();
+  }
+
+  /**
+   * Wait for the flushed batches to be saved and stop the background saving.
+   */
+  @Override
+  public void close() {
+    if (executor == null) return;
+    try {
+      await();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private void acquire(int permits) {
+    try {
+      pending.acquire(permits);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MagmaRuntimeException("Interrupted while waiting for batches to be saved");
+    }
+  }
+
+  private void checkFailure() {
+    Throwable e = failure.get();
+    if (e == null) return;
+    // not the same exception twice, a writer closed after a failed write would have it suppress itself
+    if (!failureThrown.compareAndSet(false, true)) throw new MagmaRuntimeException("A batch could not be saved", e);
+    Throwables.throwIfUnchecked(e);
+    throw new MagmaRuntimeException(e);
+  }
+
+}
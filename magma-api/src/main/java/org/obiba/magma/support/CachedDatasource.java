@@ -103,12 +103,40 @@ public class CachedDatasource extends AbstractDatasourceWrapper {
     return ImmutableSet.<ValueTable>builder().addAll(cachedValueTablesMap.values()).build();
   }
 
+  /**
+   * The snapshot files of the table are deleted along with it.
+   *
+   * @param tableName
+   */
+  @Override
+  public void dropTable(String tableName) {
+    super.dropTable(tableName);
+    dropSnapshot(tableName);
+  }
+
+  /**
+   * The snapshot files of the table are deleted, the renamed table gets its own snapshot when read.
+   *
+   * @param tableName
+   * @param newName
+   */
+  @Override
+  public void renameTable(String tableName, String newName) {
+    super.renameTable(tableName, newName);
+    dropSnapshot(tableName);
+  }
+
   public void evictValues(VariableEntity variableEntity) {
     for (ValueTable valueTable: getValueTables()) {
       ((CachedValueTable)valueTable).evictValues(variableEntity);
     }
   }
 
+  private void dropSnapshot(String tableName) {
+    MappedTableCache tableCache = CachedValueTable.getTableCache();
+    if (tableCache != null) tableCache.drop(CachedValueTable.getSnapshotKey(getName(), tableName));
+  }
+
   private <T> T getCached(Object key, Supplier<T> supplier) {
     return CacheUtils.getCached(cache, key, supplier);
   }
@@ -10,10 +10,12 @@
 
 package org.obiba.magma.support;
 
+import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.NotNull;
 
 import org.obiba.magma.MagmaRuntimeException;
 import org.obiba.magma.Timestamps;
+import org.obiba.magma.Value;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueSetWrapper;
 import org.obiba.magma.ValueTable;
@@ -29,6 +31,10 @@ public class CachedValueSet implements ValueSet, ValueSetWrapper {
 
   private VariableEntity variableEntity;
 
+  private CachedValueSetValues values;
+
+  private CachedValueTable.ValuesBatch batch;
+
   public CachedValueSet(@NotNull CachedValueTable table, @NotNull VariableEntity variableEntity, @NotNull Cache cache) {
     this.table = table;
     this.variableEntity = variableEntity;
@@ -41,6 +47,26 @@ public class CachedValueSet implements ValueSet, ValueSetWrapper {
     }
   }
 
+  /**
+   * Value set that was read along with the other value sets of a batch, its values are cached as they are read.
+   *
+   * @param table
+   * @param variableEntity
+   * @param cache
+   * @param wrapped the value set of the wrapped table, null to get it when needed
+   * @param values
+   * @param batch the batch that puts the values back in the cache
+   */
+  CachedValueSet(@NotNull CachedValueTable table, @NotNull VariableEntity variableEntity, @NotNull Cache cache,
+      @Nullable ValueSet wrapped, @NotNull CachedValueSetValues values, @NotNull CachedValueTable.ValuesBatch batch) {
+    this.table = table;
+    this.variableEntity = variableEntity;
+    this.cache = cache;
+    this.wrapped = wrapped;
+    this.values = values;
+    this.batch = batch;
+  }
+
   @Override
   public ValueTable getValueTable() {
     return table;
@@ -58,7 +84,28 @@ public class CachedValueSet implements ValueSet, ValueSetWrapper {
 
   @Override
   public ValueSet getWrapped() {
+    if(wrapped == null && values != null) wrapped = table.getWrappedValueTable().getValueSet(variableEntity);
     if(wrapped == null) throw new MagmaRuntimeException("wrapped value not initialized.");
     return wrapped;
   }
+
+  /**
+   * The values of the value set, if it was read along with the other value sets of a batch.
+   *
+   * @return null if the value set was not read in a batch
+   */
+  @Nullable
+  CachedValueSetValues getCachedValues() {
+    return values;
+  }
+
+  /**
+   * The batch the value set was read in.
+   *
+   * @return null if the value set was not read in a batch
+   */
+  @Nullable
+  CachedValueTable.ValuesBatch getBatch() {
+    return batch;
+  }
 }
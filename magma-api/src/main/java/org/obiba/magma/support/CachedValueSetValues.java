@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import jakarta.annotation.Nullable;
+
+import org.obiba.magma.Value;
+
+import com.google.common.collect.Maps;
+
+/**
+ * The values of a value set, cached as a single entry. The entry is filled as the variables are read: only the
+ * requested variables are read from the wrapped table, each of them once.
+ */
+final class CachedValueSetValues implements Serializable {
+
+  private static final long serialVersionUID = -3326430618416358620L;
+
+  private final Map<String, Value> values = Maps.newConcurrentMap();
+
+  /**
+   * Get the value of a variable.
+   *
+   * @param variableName
+   * @return null if the value was not read yet
+   */
+  @Nullable
+  Value get(String variableName) {
+    return values.get(variableName);
+  }
+
+  void put(String variableName, Value value) {
+    values.put(variableName, value);
+  }
+
+}
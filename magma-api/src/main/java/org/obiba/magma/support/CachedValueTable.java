@@ -14,15 +14,21 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Supplier;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.obiba.magma.*;
 import org.springframework.cache.Cache;
 
+import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.NotNull;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 
 public class CachedValueTable implements ValueTable {
@@ -74,6 +80,10 @@ public class CachedValueTable implements ValueTable {
 
   @Override
   public Value getValue(final Variable variable, final ValueSet valueSet) {
+    Value snapshotValue = getSnapshotValue(variable, valueSet.getVariableEntity());
+    if (snapshotValue != null) return snapshotValue;
+    Value batchValue = getBatchValue(variable, valueSet);
+    if (batchValue != null) return batchValue;
     return getCached(getCacheKey("getValue", variable.getName(), valueSet.getValueTable().getName(), valueSet.getVariableEntity().getIdentifier()), new Supplier<Value>() {
       @Override
       public Value get() {
@@ -128,11 +138,23 @@ public class CachedValueTable implements ValueTable {
     return getValueSets(getVariableEntities());
   }
 
+  /**
+   * Value sets are read by batches of entities: the value sets that are not cached are read from the wrapped table in
+   * one batch, and the values of a value set are cached as a single entry, filled with the variables as they are read.
+   * The entries of a batch are put in the cache when the iteration moves to the next batch or ends.
+   *
+   * @param entities
+   * @return
+   */
   @Override
   public Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities) {
-    return StreamSupport.stream(entities.spliterator(), false) //
-        .map(entity -> new CachedValueSet(CachedValueTable.this, entity, cache)) //
-        .collect(Collectors.toList());
+    return () -> new BatchValueSetIterator(Iterators.partition(entities.iterator(), getVariableEntityBatchSize()));
+  }
+
+  @Override
+  public int getVariableEntityBatchSize() {
+    if (wrapped == null) return ENTITY_BATCH_SIZE;
+    return getCached(getCacheKey("getVariableEntityBatchSize"), () -> wrapped.getVariableEntityBatchSize());
   }
 
   @Override
@@ -259,7 +281,10 @@ public class CachedValueTable implements ValueTable {
   }
 
   public void evictValues(VariableEntity variableEntity) {
+    MappedTableCache tableCache = getTableCache();
+    if (tableCache != null && wrapped != null) tableCache.evictIfUpdated(getSnapshotKey(), wrapped);
     try {
+      cache.evict(getCacheKey("getValueSetValues", variableEntity.getIdentifier()));
       for (Variable va : getVariables()) {
         cache.evict(getCacheKey("getValue", va.getName(), name, variableEntity.getIdentifier()));
         cache.evict(getCacheKey("hasValueSet", variableEntity.getIdentifier()));
@@ -272,6 +297,172 @@ public class CachedValueTable implements ValueTable {
     }
   }
 
+  /**
+   * Get the value from the cached values of a value set that was read in a batch. A value that is not cached yet is
+   * read from the value set of the wrapped table, and added to the cached values.
+   *
+   * @param variable
+   * @param valueSet
+   * @return null if the value set was not read in a batch
+   */
+  @Nullable
+  Value getBatchValue(Variable variable, ValueSet valueSet) {
+    if (!(valueSet instanceof CachedValueSet) || valueSet.getValueTable() != this) return null;
+    CachedValueSet cachedValueSet = (CachedValueSet) valueSet;
+    CachedValueSetValues values = cachedValueSet.getCachedValues();
+    if (values == null) return null;
+    Value value = values.get(variable.getName());
+    if (value != null) return value;
+    // no wrapped table to read from, the value may be cached on its own
+    if (wrapped == null) return null;
+    value = wrapped.getValue(variable, cachedValueSet.getWrapped());
+    values.put(variable.getName(), value);
+    cachedValueSet.getBatch().modified(valueSet.getVariableEntity(), values);
+    return value;
+  }
+
+  private List<ValueSet> getValueSetsBatch(List<VariableEntity> entities, ValuesBatch batch) {
+    List<ValueSet> valueSets = new ArrayList<>(entities.size());
+    List<VariableEntity> missing = Lists.newArrayList();
+    for (VariableEntity entity : entities) {
+      Cache.ValueWrapper values = cache.get(getCacheKey("getValueSetValues", entity.getIdentifier()));
+      if (values == null) {
+        missing.add(entity);
+        valueSets.add(null);
+      } else {
+        valueSets.add(new CachedValueSet(this, entity, cache, null, (CachedValueSetValues) values.get(), batch));
+      }
+    }
+    if (missing.isEmpty()) return valueSets;
+    if (wrapped == null) {
+      for (int i = 0; i < valueSets.size(); i++) {
+        if (valueSets.get(i) == null) valueSets.set(i, new CachedValueSet(this, entities.get(i), cache));
+      }
+      return valueSets;
+    }
+
+    Iterator<ValueSet> wrappedValueSets = wrapped.getValueSets(missing).iterator();
+    for (int i = 0; i < valueSets.size(); i++) {
+      if (valueSets.get(i) != null) continue;
+      ValueSet wrappedValueSet = wrappedValueSets.next();
+      // the entry is cached once filled
+      valueSets.set(i,
+          new CachedValueSet(this, entities.get(i), cache, wrappedValueSet, new CachedValueSetValues(), batch));
+    }
+    return valueSets;
+  }
+
+  /**
+   * Iterates over the value sets of the batches, putting the entries of a batch in the cache when moving to the next
+   * batch.
+   */
+  private class BatchValueSetIterator implements Iterator<ValueSet> {
+
+    private final Iterator<List<VariableEntity>> partitions;
+
+    private ValuesBatch batch;
+
+    private Iterator<ValueSet> valueSets = Collections.emptyIterator();
+
+    private BatchValueSetIterator(Iterator<List<VariableEntity>> partitions) {
+      this.partitions = partitions;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!valueSets.hasNext()) {
+        if (batch != null) batch.flush();
+        if (!partitions.hasNext()) return false;
+        batch = new ValuesBatch();
+        valueSets = getValueSetsBatch(partitions.next(), batch).iterator();
+      }
+      return true;
+    }
+
+    @Override
+    public ValueSet next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      return valueSets.next();
+    }
+  }
+
+  /**
+   * The cache entries of the value sets of a batch that got new values. An entry is put in the cache once per batch
+   * instead of after each value, for the caches that store a copy of it. The values read after the batch was flushed
+   * are put right away.
+   */
+  class ValuesBatch {
+
+    private final Map<String, CachedValueSetValues> modified = Maps.newLinkedHashMap();
+
+    private boolean flushed = false;
+
+    synchronized void modified(VariableEntity entity, CachedValueSetValues values) {
+      if (flushed) {
+        cache.put(getCacheKey("getValueSetValues", entity.getIdentifier()), values);
+      } else {
+        modified.put(entity.getIdentifier(), values);
+      }
+    }
+
+    synchronized void flush() {
+      flushed = true;
+      modified.forEach((identifier, values) -> cache.put(getCacheKey("getValueSetValues", identifier), values));
+      modified.clear();
+    }
+  }
+
+  boolean hasTableCache() {
+    return getTableCache() != null;
+  }
+
+  /**
+   * Get the value from the snapshot of the table, if the table cache is enabled.
+   *
+   * @param variable
+   * @param entity
+   * @return null if there is no snapshot of the table or if the entity is not in it
+   */
+  @Nullable
+  Value getSnapshotValue(Variable variable, VariableEntity entity) {
+    MappedTableSnapshot snapshot = getSnapshot();
+    return snapshot == null ? null : snapshot.getValue(variable, entity, wrapped);
+  }
+
+  /**
+   * Get the values from the snapshot of the table, if the table cache is enabled.
+   *
+   * @param variable
+   * @param entities
+   * @return null if there is no snapshot of the table
+   */
+  @Nullable
+  Iterable<Value> getSnapshotValues(Variable variable, Iterable<VariableEntity> entities) {
+    MappedTableSnapshot snapshot = getSnapshot();
+    return snapshot == null ? null : snapshot.getValues(variable, entities, wrapped);
+  }
+
+  @Nullable
+  private MappedTableSnapshot getSnapshot() {
+    MappedTableCache tableCache = getTableCache();
+    return tableCache == null ? null : tableCache.getSnapshot(getSnapshotKey(), wrapped);
+  }
+
+  @Nullable
+  static MappedTableCache getTableCache() {
+    if (!MagmaEngine.get().hasExtension(MagmaCacheExtension.class)) return null;
+    MagmaCacheExtension cacheExtension = MagmaEngine.get().getExtension(MagmaCacheExtension.class);
+    return cacheExtension.hasTableCache() ? cacheExtension.getTableCache() : null;
+  }
+
+  static String getSnapshotKey(String datasourceName, String tableName) {
+    return datasourceName + "." + tableName;
+  }
+
+  private String getSnapshotKey() {
+    return getSnapshotKey(datasource.getName(), name);
+  }
+
   private <T> T getCached(Object key, Supplier<T> supplier) {
     return CacheUtils.getCached(cache, key, supplier);
   }
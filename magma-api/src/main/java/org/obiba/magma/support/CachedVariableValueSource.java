@@ -72,6 +72,12 @@ public class CachedVariableValueSource implements VariableValueSource {
   @Override
   @NotNull
   public Value getValue(final ValueSet valueSet) {
+    if (table.hasTableCache()) {
+      Value snapshotValue = table.getSnapshotValue(getVariable(), valueSet.getVariableEntity());
+      if (snapshotValue != null) return snapshotValue;
+    }
+    Value batchValue = table.getBatchValue(getVariable(), valueSet);
+    if (batchValue != null) return batchValue;
     return getCached(getCacheKey("getValue", valueSet.getValueTable().getName(), valueSet.getVariableEntity().getIdentifier()), new Supplier<Value>() {
       @Override
       public Value get() {
@@ -108,6 +114,10 @@ public class CachedVariableValueSource implements VariableValueSource {
     ((CachedVectorSource)asVectorSource()).evictValues(variableEntity);
   }
 
+  CachedValueTable getTable() {
+    return table;
+  }
+
   private <T> T getCached(Object key, Supplier<T> supplier) {
     return CacheUtils.getCached(cache, key, supplier);
   }
@@ -51,6 +51,12 @@ public class CachedVectorSource implements VectorSource {
 
   @Override
   public Iterable<Value> getValues(final Iterable<VariableEntity> entities) {
+    if (variableValueSource.getTable().hasTableCache()) {
+      Iterable<Value> snapshotValues = variableValueSource.getTable()
+          .getSnapshotValues(variableValueSource.getVariable(), entities);
+      if (snapshotValues != null) return snapshotValues;
+    }
+
     boolean missing = true;
     List<Value> res = new ArrayList<>();
 
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import java.util.Set;
+
+import jakarta.validation.constraints.NotNull;
+
+import org.obiba.magma.NoSuchValueTableException;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueSetBlock;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.ValueTableWriter;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * In-memory datasource of {@link ColumnarValueTable}s, in which tables are loaded by copying them, for instance:
+ * <pre>
+ * ColumnarDatasource datasource = new ColumnarDatasource("reference");
+ * DatasourceCopier.Builder.newCopier().build().copy(table, datasource);
+ * </pre>
+ */
+public class ColumnarDatasource extends AbstractDatasource {
+
+  public static final String TYPE = "columnar";
+
+  public ColumnarDatasource(String name) {
+    super(name, TYPE);
+  }
+
+  @NotNull
+  @Override
+  public ValueTableWriter createWriter(@NotNull String tableName, @NotNull String entityType) {
+    //noinspection ConstantConditions
+    if(tableName == null) throw new IllegalArgumentException("tableName cannot be null");
+    //noinspection ConstantConditions
+    if(entityType == null) throw new IllegalArgumentException("entityType cannot be null");
+
+    ColumnarValueTable table;
+    if(hasValueTable(tableName)) {
+      table = (ColumnarValueTable) getValueTable(tableName);
+    } else {
+      table = new ColumnarValueTable(this, tableName, entityType);
+      addValueTable(table);
+    }
+    return new ColumnarValueTableWriter(table);
+  }
+
+  @Override
+  public boolean canDropTable(String tableName) {
+    return hasValueTable(tableName);
+  }
+
+  @Override
+  public void dropTable(@NotNull String tableName) {
+    if(!hasValueTable(tableName)) throw new NoSuchValueTableException(getName(), tableName);
+    removeValueTable(tableName);
+  }
+
+  @Override
+  public boolean canDrop() {
+    return true;
+  }
+
+  @Override
+  public void drop() {
+    for(ValueTable table : getValueTables()) {
+      removeValueTable(table);
+    }
+  }
+
+  @Override
+  protected Set<String> getValueTableNames() {
+    return ImmutableSet.of();
+  }
+
+  @Override
+  protected ValueTable initialiseValueTable(String tableName) {
+    throw new NoSuchValueTableException(getName(), tableName);
+  }
+
+  private static final class ColumnarValueTableWriter implements ValueTableWriter {
+
+    private final ColumnarValueTable table;
+
+    private ColumnarValueTableWriter(ColumnarValueTable table) {
+      this.table = table;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public VariableWriter writeVariables() {
+      return new VariableWriter() {
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void writeVariable(@NotNull Variable variable) {
+          table.addVariable(Variable.Builder.sameAs(variable).build());
+        }
+
+        @Override
+        public void removeVariable(@NotNull Variable variable) {
+          table.removeVariable(variable.getName());
+        }
+      };
+    }
+
+    @NotNull
+    @Override
+    public ValueSetWriter writeValueSet(@NotNull VariableEntity entity) {
+      table.addVariableEntity(entity);
+      return new ValueSetWriter() {
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void writeValue(@NotNull Variable variable, Value value) {
+          table.setValue(entity, variable, value);
+        }
+
+        @Override
+        public void remove() {
+          table.removeValueSet(entity);
+        }
+      };
+    }
+
+    @Override
+    public void writeValueSets(@NotNull ValueSetBlock block) {
+      table.setValues(block);
+    }
+  }
+
+}
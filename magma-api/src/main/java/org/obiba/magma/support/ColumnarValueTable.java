@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.annotation.Nullable;
+import jakarta.validation.constraints.NotNull;
+
+import org.obiba.magma.AbstractVariableValueSource;
+import org.obiba.magma.Datasource;
+import org.obiba.magma.MultiVectorSource;
+import org.obiba.magma.NoSuchValueSetException;
+import org.obiba.magma.NoSuchVariableException;
+import org.obiba.magma.Timestamps;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.ValueSetBlock;
+import org.obiba.magma.ValueType;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.VariableValueSource;
+import org.obiba.magma.VectorSource;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * In-memory table that stores the values of each variable in a {@link ValueColumn}: integers, decimals, booleans and
+ * dates in primitive arrays, texts and the other value types as codes of a dictionary of their distinct values. This
+ * takes a few bytes per value, where a {@link StaticValueTable} holds a map entry and a boxed {@link Value} for each
+ * of them. {@link Value}s are only created when read, including by the vector sources of the variables.
+ * <p>
+ * The table is meant to be loaded once (see {@link ColumnarDatasource}) and then read: writes are serialized, reads
+ * are not synchronized with them.
+ */
+public class ColumnarValueTable extends AbstractValueTable {
+
+  private final String entityType;
+
+  private final List<VariableEntity> entities = Lists.newArrayList();
+
+  // row of each entity, by identifier
+  private final Map<String, Integer> rows = Maps.newHashMap();
+
+  private final Map<String, ValueColumn> columns = Maps.newHashMap();
+
+  public ColumnarValueTable(Datasource datasource, String name, String entityType) {
+    super(datasource, name);
+    this.entityType = entityType == null ? "" : entityType;
+    setVariableEntityProvider(new VariableEntityProvider() {
+
+      @Override
+      public boolean isForEntityType(String type) {
+        return getEntityType().equals(type);
+      }
+
+      @NotNull
+      @Override
+      public List<VariableEntity> getVariableEntities() {
+        return Collections.unmodifiableList(entities);
+      }
+
+      @NotNull
+      @Override
+      public String getEntityType() {
+        return ColumnarValueTable.this.entityType;
+      }
+    });
+  }
+
+  /**
+   * Add the variable, or replace it. Its values are kept, unless its value type or its repeatability changes.
+   *
+   * @param variable
+   */
+  public synchronized void addVariable(@NotNull Variable variable) {
+    ValueColumn column = columns.get(variable.getName());
+    if(column == null || column.getValueType() != variable.getValueType() ||
+        column.isSequence() != variable.isRepeatable()) {
+      column = ValueColumn.forVariable(variable);
+      columns.put(variable.getName(), column);
+    }
+    addVariableValueSource(new ColumnVariableValueSource(variable, column));
+  }
+
+  public synchronized void removeVariable(String variableName) {
+    removeVariableValueSource(variableName);
+    columns.remove(variableName);
+  }
+
+  /**
+   * Add the entity, if not already in the table.
+   *
+   * @param entity
+   * @return the row of the entity
+   */
+  public synchronized int addVariableEntity(@NotNull VariableEntity entity) {
+    Integer row = rows.get(entity.getIdentifier());
+    if(row == null) {
+      row = entities.size();
+      entities.add(new VariableEntityBean(entityType, entity.getIdentifier()));
+      rows.put(entity.getIdentifier(), row);
+    }
+    return row;
+  }
+
+  /**
+   * Set the value of the variable for the entity, adding the entity or the variable if not already in the table.
+   *
+   * @param entity
+   * @param variable
+   * @param value null to clear the value
+   */
+  public synchronized void setValue(@NotNull VariableEntity entity, @NotNull Variable variable,
+      @Nullable Value value) {
+    getColumn(variable).set(addVariableEntity(entity), value);
+  }
+
+  /**
+   * Set the values of a block of value sets, variable by variable.
+   *
+   * @param block
+   */
+  public synchronized void setValues(@NotNull ValueSetBlock block) {
+    int[] blockRows = new int[block.size()];
+    for(int row = 0; row < blockRows.length; row++) {
+      blockRows[row] = addVariableEntity(block.getEntity(row));
+    }
+    for(int index = 0; index < block.getVariables().size(); index++) {
+      ValueColumn column = getColumn(block.getVariable(index));
+      for(int row = 0; row < blockRows.length; row++) {
+        Value value = block.getValue(row, index);
+        if(value != null) column.set(blockRows[row], value);
+      }
+    }
+  }
+
+  /**
+   * Remove the entity and its values. The last row of the table takes its place.
+   *
+   * @param entity
+   */
+  public synchronized void removeValueSet(@NotNull VariableEntity entity) {
+    Integer row = rows.remove(entity.getIdentifier());
+    if(row == null) return;
+    int last = entities.size() - 1;
+    if(row != last) {
+      VariableEntity moved = entities.get(last);
+      entities.set(row, moved);
+      rows.put(moved.getIdentifier(), row);
+      for(ValueColumn column : columns.values()) {
+        column.move(last, row);
+      }
+    } else {
+      for(ValueColumn column : columns.values()) {
+        column.clear(row);
+      }
+    }
+    entities.remove(last);
+  }
+
+  public synchronized void removeAllValueSets() {
+    entities.clear();
+    rows.clear();
+    for(VariableValueSource source : getSources()) {
+      columns.put(source.getName(), ValueColumn.forVariable(source.getVariable()));
+      addVariableValueSource(new ColumnVariableValueSource(source.getVariable(), columns.get(source.getName())));
+    }
+  }
+
+  @Override
+  public boolean hasValueSet(VariableEntity entity) {
+    return getRow(entity) >= 0;
+  }
+
+  @Override
+  public int getVariableEntityCount() {
+    return entities.size();
+  }
+
+  @Override
+  public ValueSet getValueSet(VariableEntity entity) throws NoSuchValueSetException {
+    if(!hasValueSet(entity)) throw new NoSuchValueSetException(this, entity);
+    return new ValueSetBean(this, entity);
+  }
+
+  @NotNull
+  @Override
+  public Timestamps getTimestamps() {
+    return NullTimestamps.get();
+  }
+
+  @Override
+  public Timestamps getValueSetTimestamps(VariableEntity entity) throws NoSuchValueSetException {
+    return NullTimestamps.get();
+  }
+
+  /**
+   * Read the values of the variables directly from their columns, entity by entity.
+   *
+   * @param variables
+   * @return
+   * @throws NoSuchVariableException
+   */
+  @Override
+  public MultiVectorSource getMultiVectorSource(List<Variable> variables) throws NoSuchVariableException {
+    List<Variable> sourceVariables = ImmutableList.copyOf(variables);
+    ValueColumn[] sourceColumns = new ValueColumn[sourceVariables.size()];
+    for(int i = 0; i < sourceColumns.length; i++) {
+      sourceColumns[i] = ((ColumnVariableValueSource) getVariableValueSource(sourceVariables.get(i).getName())).column;
+    }
+    return new MultiVectorSource() {
+      @Override
+      public List<Variable> getVariables() {
+        return sourceVariables;
+      }
+
+      @Override
+      public Iterable<Value[]> getValues(Iterable<VariableEntity> vectorEntities) {
+        return Iterables.transform(vectorEntities, entity -> {
+          int row = getRow(entity);
+          Value[] values = new Value[sourceColumns.length];
+          for(int i = 0; i < sourceColumns.length; i++) {
+            values[i] = row < 0 ? sourceColumns[i].nullValue() : sourceColumns[i].get(row);
+          }
+          return values;
+        });
+      }
+    };
+  }
+
+  private int getRow(VariableEntity entity) {
+    if(!entityType.equals(entity.getType())) return -1;
+    Integer row = rows.get(entity.getIdentifier());
+    return row == null ? -1 : row;
+  }
+
+  private ValueColumn getColumn(Variable variable) {
+    ValueColumn column = columns.get(variable.getName());
+    if(column == null) {
+      addVariable(variable);
+      column = columns.get(variable.getName());
+    }
+    return column;
+  }
+
+  private final class ColumnVariableValueSource extends AbstractVariableValueSource implements VectorSource {
+
+    private final Variable variable;
+
+    private final ValueColumn column;
+
+    private ColumnVariableValueSource(Variable variable, ValueColumn column) {
+      this.variable = variable;
+      this.column = column;
+    }
+
+    @NotNull
+    @Override
+    public Variable getVariable() {
+      return variable;
+    }
+
+    @NotNull
+    @Override
+    public ValueType getValueType() {
+      return variable.getValueType();
+    }
+
+    @NotNull
+    @Override
+    public Value getValue(ValueSet valueSet) {
+      return getValue(valueSet.getVariableEntity());
+    }
+
+    @Override
+    public boolean supportVectorSource() {
+      return true;
+    }
+
+    @NotNull
+    @Override
+    public VectorSource asVectorSource() {
+      return this;
+    }
+
+    @Override
+    public Iterable<Value> getValues(Iterable<VariableEntity> vectorEntities) {
+      return Iterables.transform(vectorEntities, this::getValue);
+    }
+
+    private Value getValue(VariableEntity entity) {
+      int row = getRow(entity);
+      return row < 0 ? column.nullValue() : column.get(row);
+    }
+  }
+
+}
@@ -14,6 +14,9 @@ import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import jakarta.annotation.Nullable;
 
@@ -23,6 +26,7 @@ import org.obiba.magma.DatasourceCopierProgressListener;
 import org.obiba.magma.MagmaEngine;
 import org.obiba.magma.Value;
 import org.obiba.magma.ValueSet;
+import org.obiba.magma.ValueSetBlock;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.ValueTableWriter;
 import org.obiba.magma.ValueTableWriter.ValueSetWriter;
@@ -110,6 +114,18 @@ public class DatasourceCopier {
       return this;
     }
 
+    /**
+     * Copy only the variables (and their values) that match the filter.
+     *
+     * @param filter
+     * @return
+     */
+    public Builder withVariableFilter(Predicate<Variable> filter) {
+      if(filter == null) throw new IllegalArgumentException("filter cannot be null");
+      copier.variableFilter = filter;
+      return this;
+    }
+
     public DatasourceCopier build() {
       return new DatasourceCopier(copier);
     }
@@ -170,6 +186,8 @@ public class DatasourceCopier {
 
   private MultiplexingStrategy multiplexer = null;
 
+  private Predicate<Variable> variableFilter = variable -> true;
+
   private DatasourceCopier() {
   }
 
@@ -180,6 +198,7 @@ public class DatasourceCopier {
     listeners = ImmutableList.copyOf(other.listeners);
     variableTransformer = other.variableTransformer;
     multiplexer = other.multiplexer;
+    variableFilter = other.variableFilter;
   }
 
   public void copy(String sourceDatasource, String destinationDatasource) throws IOException {
@@ -243,13 +262,21 @@ public class DatasourceCopier {
     int total = sourceTable.getValueSetCount();
     int pageSize = 1000;
     int from = 0;
+    List<Variable> variableList = getVariables(sourceTable);
+    Variable[] variables = variableList.toArray(new Variable[0]);
     while(from < total) {
-      Iterable<ValueSet> valueSets = sourceTable.getValueSets(sourceTable.getVariableEntities(from, pageSize));
+      Iterable<ValueSet> valueSets = sourceTable.getValueSets(sourceTable.getVariableEntities(from, pageSize), variableList);
+      List<ValueSet> blockValueSets = Lists.newArrayListWithCapacity(pageSize);
+      List<Value[]> blockValues = Lists.newArrayListWithCapacity(pageSize);
       for (ValueSet valueSet : valueSets) {
-        try (ValueSetWriter valueSetWriter = tableWriter.writeValueSet(valueSet.getVariableEntity())) {
-          copyValues(sourceTable, valueSet, destinationTableName, valueSetWriter);
+        Value[] values = new Value[variables.length];
+        for(int i = 0; i < variables.length; i++) {
+          values[i] = sourceTable.getValue(variables[i], valueSet);
         }
+        blockValueSets.add(valueSet);
+        blockValues.add(values);
       }
+      copyValues(sourceTable, destinationTableName, blockValueSets, variables, blockValues, tableWriter);
       from = from + pageSize;
     }
   }
@@ -258,9 +285,7 @@ public class DatasourceCopier {
       ValueSetWriter valueSetWriter) {
     if(!copyValues) return;
     notifyListeners(sourceTable, valueSet, false);
-    List<Variable> variables = Lists.newArrayList(sourceTable.getVariables());
-    variables.sort(Comparator.comparingInt(Variable::getIndex));
-    for(Variable variable : variables) {
+    for(Variable variable : getVariables(sourceTable)) {
       Value value = sourceTable.getValue(variable, valueSet);
       if(!value.isNull() || copyNullValues) {
         valueSetWriter.writeValue(variableTransformer.transform(variable), value);
@@ -284,9 +309,7 @@ public class DatasourceCopier {
 
   public void copyMetadata(ValueTable sourceTable, VariableWriter variableWriter) {
     if(!copyMetadata) return;
-    List<Variable> variables = Lists.newArrayList(sourceTable.getVariables());
-    variables.sort(Comparator.comparingInt(Variable::getIndex));
-    for(Variable variable : variables) {
+    for(Variable variable : getVariables(sourceTable)) {
       notifyListeners(variable, false);
       variableWriter.writeVariable(variableTransformer.transform(variable));
       notifyListeners(variable, true);
@@ -312,6 +335,61 @@ public class DatasourceCopier {
     }
   }
 
+  /**
+   * Copy the values of several value sets as one block, so that the writer can write them at once.
+   *
+   * @param source
+   * @param tableName
+   * @param valueSets
+   * @param variables
+   * @param values the values of each value set, in the order of the variables
+   * @param tableWriter
+   */
+  void copyValues(ValueTable source, String tableName, List<ValueSet> valueSets, Variable[] variables,
+      List<Value[]> values, ValueTableWriter tableWriter) {
+    if(!copyValues || valueSets.isEmpty()) return;
+    if(tableWriter instanceof MultiplexingValueTableWriter) {
+      // each value set may go to other tables
+      for(int row = 0; row < valueSets.size(); row++) {
+        ValueSet valueSet = valueSets.get(row);
+        try(ValueSetWriter vsw = tableWriter.writeValueSet(valueSet.getVariableEntity())) {
+          copyValues(source, tableName, valueSet, variables, values.get(row), vsw);
+        }
+      }
+      return;
+    }
+    List<Variable> destinationVariables = Lists.newArrayListWithCapacity(variables.length);
+    for(Variable variable : variables) {
+      destinationVariables.add(variableTransformer.transform(variable));
+    }
+    ValueSetBlock block = new ValueSetBlock(destinationVariables, valueSets.size());
+    for(int row = 0; row < valueSets.size(); row++) {
+      notifyListeners(source, valueSets.get(row), false);
+      Value[] rowValues = values.get(row);
+      int added = block.add(valueSets.get(row).getVariableEntity());
+      for(int i = 0; i < variables.length; i++) {
+        if(!rowValues[i].isNull() || copyNullValues) block.setValue(added, i, rowValues[i]);
+      }
+    }
+    tableWriter.writeValueSets(block);
+    for(ValueSet valueSet : valueSets) {
+      notifyListeners(source, valueSet, true, tableName);
+    }
+  }
+
+  /**
+   * The variables of the table that are copied, in the order of their index.
+   *
+   * @param sourceTable
+   * @return
+   */
+  List<Variable> getVariables(ValueTable sourceTable) {
+    return StreamSupport.stream(sourceTable.getVariables().spliterator(), false) //
+        .filter(variableFilter) //
+        .sorted(Comparator.comparingInt(Variable::getIndex)) //
+        .collect(Collectors.toList());
+  }
+
   public ValueTableWriter createValueTableWriter(ValueTable source, String destinationTableName,
       Datasource destination) {
     return destination.createWriter(destinationTableName, source.getEntityType());
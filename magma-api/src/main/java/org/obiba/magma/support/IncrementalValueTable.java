@@ -9,8 +9,6 @@
  */
 package org.obiba.magma.support;
 
-import java.util.Map;
-
 import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.NotNull;
 
@@ -21,12 +19,12 @@ import org.obiba.magma.Timestamps;
 import org.obiba.magma.Value;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.VariableEntity;
+import org.obiba.magma.lang.VariableEntityList;
+import org.obiba.magma.lang.VariableEntitySet;
 import org.obiba.magma.transform.BijectiveFunction;
 import org.obiba.magma.type.DateTimeType;
 import org.obiba.magma.views.AbstractTransformingValueTableWrapper;
 
-import com.google.common.collect.Maps;
-
 /**
  *
  */
@@ -87,18 +85,21 @@ public class IncrementalValueTable extends AbstractTransformingValueTableWrapper
    */
   private class IncrementalFunction implements BijectiveFunction<VariableEntity, VariableEntity> {
 
-    private final Map<VariableEntity, VariableEntity> applyCache = Maps.newHashMap();
+    // entities already compared, and the ones that are newer in the source
+    private final VariableEntityList checked = new VariableEntityList();
+
+    private final VariableEntitySet newerEntities = checked.newSet();
 
     @Override
     public VariableEntity apply(VariableEntity from) {
-      if(applyCache.containsKey(from)) {
+      if(!checked.add(from)) {
         //log.info("apply has cached: {}", from.getIdentifier());
-        return applyCache.get(from);
+        return newerEntities.contains(from) ? from : null;
       }
       boolean newer = isSourceNewerThanDestination(from);
       VariableEntity entity = newer ? from : null;
       //log.info("View: {}, entity: {}, sourceIsNewer: {}, return {}", getName(), from, newer, entity);
-      applyCache.put(from, entity);
+      if(newer) newerEntities.add(from);
       return entity;
     }
 
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
+
+import jakarta.annotation.Nullable;
+
+import org.obiba.magma.MagmaDate;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueType;
+import org.obiba.magma.Variable;
+import org.obiba.magma.type.BooleanType;
+import org.obiba.magma.type.DateTimeType;
+import org.obiba.magma.type.DateType;
+import org.obiba.magma.type.DecimalType;
+import org.obiba.magma.type.IntegerType;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The values of a variable for the rows of a {@link MappedTableSnapshot}, in a memory-mapped file:
+ * <ul>
+ * <li>integers, decimals, date times, dates and booleans are fixed-width, along with a bitmap of the non-null rows, and
+ * are read without any decoding;</li>
+ * <li>the other value types and the value sequences are encoded as strings, at the offsets of their rows.</li>
+ * </ul>
+ * The file starts with the last update of the table it was made from, so that it can be found stale.
+ */
+final class MappedColumn {
+
+  private static final int MAGIC = 0x4D47434C;
+
+  private static final int VERSION = 1;
+
+  // offsets of the bitmap, of the string offsets and of the data, after the magic, version, last update and kind
+  private static final int SECTIONS_POSITION = 17;
+
+  private static final int HEADER_SIZE = SECTIONS_POSITION + 12;
+
+  private enum Kind {
+    INTEGER, DECIMAL, DATETIME, DATE, BOOLEAN, STRING;
+
+    private static Kind forValueType(ValueType valueType, boolean repeatable) {
+      if(repeatable) return STRING;
+      if(valueType == IntegerType.get()) return INTEGER;
+      if(valueType == DecimalType.get()) return DECIMAL;
+      if(valueType == DateTimeType.get()) return DATETIME;
+      if(valueType == DateType.get()) return DATE;
+      if(valueType == BooleanType.get()) return BOOLEAN;
+      return STRING;
+    }
+  }
+
+  private final ValueType valueType;
+
+  private final boolean repeatable;
+
+  private final Kind kind;
+
+  private final MappedByteBuffer buffer;
+
+  private final int bitmapOffset;
+
+  private final int offsetsOffset;
+
+  private final int dataOffset;
+
+  private MappedColumn(ValueType valueType, boolean repeatable, MappedByteBuffer buffer) {
+    this.valueType = valueType;
+    this.repeatable = repeatable;
+    kind = Kind.forValueType(valueType, repeatable);
+    this.buffer = buffer;
+    bitmapOffset = buffer.getInt(SECTIONS_POSITION);
+    offsetsOffset = buffer.getInt(SECTIONS_POSITION + 4);
+    dataOffset = buffer.getInt(SECTIONS_POSITION + 8);
+  }
+
+  /**
+   * Map the column file, if it was made for this variable from the table at its last update.
+   *
+   * @param file
+   * @param variable
+   * @param lastUpdate
+   * @return null if the file does not exist or is stale
+   * @throws IOException
+   */
+  @Nullable
+  static MappedColumn open(File file, Variable variable, long lastUpdate) throws IOException {
+    if(!file.isFile()) return null;
+    try(DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      if(in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != lastUpdate) return null;
+      in.skipBytes(HEADER_SIZE - 16);
+      if(!variable.getName().equals(in.readUTF()) || !variable.getValueType().getName().equals(in.readUTF()) ||
+          variable.isRepeatable() != in.readBoolean()) return null;
+    }
+    try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      return new MappedColumn(variable.getValueType(), variable.isRepeatable(),
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Write the values of the variable in a column file, replacing the previous one, and map it.
+   *
+   * @param file
+   * @param variable
+   * @param lastUpdate
+   * @param values the values of the rows, in order
+   * @return
+   * @throws IOException if writing fails or if the column does not fit in a mapped file
+   */
+  static MappedColumn write(File file, Variable variable, long lastUpdate, Iterable<Value> values) throws IOException {
+    Kind kind = Kind.forValueType(variable.getValueType(), variable.isRepeatable());
+    File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+    BitSet present = new BitSet();
+    int[] offsets = new int[16];
+    int bitmapOffset;
+    int offsetsOffset = 0;
+    int dataOffset;
+    try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(lastUpdate);
+      out.writeByte(kind.ordinal());
+      out.write(new byte[12]); // sections, written once known
+      out.writeUTF(variable.getName());
+      out.writeUTF(variable.getValueType().getName());
+      out.writeBoolean(variable.isRepeatable());
+      dataOffset = out.size();
+      int row = 0;
+      for(Value value : values) {
+        boolean isNull = value == null || value.isNull();
+        if(!isNull) present.set(row);
+        if(kind == Kind.STRING) {
+          if(row + 1 >= offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+          offsets[row] = out.size() - dataOffset;
+          if(!isNull) writeString(out, value);
+        } else {
+          writeFixed(out, kind, isNull ? null : value);
+        }
+        row++;
+        checkSize(out);
+      }
+      bitmapOffset = out.size();
+      out.write(toBytes(present, row));
+      if(kind == Kind.STRING) {
+        offsets[row] = bitmapOffset - dataOffset;
+        offsetsOffset = out.size();
+        for(int i = 0; i <= row; i++) {
+          out.writeInt(offsets[i]);
+        }
+      }
+      checkSize(out);
+    }
+    try(RandomAccessFile header = new RandomAccessFile(tmp, "rw")) {
+      header.seek(SECTIONS_POSITION);
+      header.writeInt(bitmapOffset);
+      header.writeInt(offsetsOffset);
+      header.writeInt(dataOffset);
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    MappedColumn column = open(file, variable, lastUpdate);
+    if(column == null) throw new IOException("Cannot read the column file " + file);
+    return column;
+  }
+
+  Value get(int row) {
+    if((buffer.get(bitmapOffset + (row >> 3)) & 1 << (row & 7)) == 0) {
+      return repeatable ? valueType.nullSequence() : valueType.nullValue();
+    }
+    switch(kind) {
+      case INTEGER:
+        return valueType.valueOf(buffer.getLong(dataOffset + row * 8));
+      case DECIMAL:
+        return valueType.valueOf(buffer.getDouble(dataOffset + row * 8));
+      case DATETIME:
+        return valueType.valueOf(new Date(buffer.getLong(dataOffset + row * 8)));
+      case DATE:
+        int date = buffer.getInt(dataOffset + row * 4);
+        return valueType.valueOf(new MagmaDate(date >> 9, (date >> 5) & 0xF, date & 0x1F));
+      case BOOLEAN:
+        return BooleanType.get().valueOf(buffer.get(dataOffset + row) != 0);
+      default:
+        return readString(dataOffset + buffer.getInt(offsetsOffset + row * 4));
+    }
+  }
+
+  private Value readString(int position) {
+    if(!repeatable) return valueType.valueOf(readUtf8(position));
+    int size = buffer.getInt(position);
+    List<Value> values = Lists.newArrayListWithCapacity(size);
+    position += 4;
+    for(int i = 0; i < size; i++) {
+      int length = buffer.getInt(position);
+      if(length < 0) {
+        values.add(valueType.nullValue());
+        position += 4;
+      } else {
+        values.add(valueType.valueOf(readUtf8(position)));
+        position += 4 + length;
+      }
+    }
+    return valueType.sequenceOf(values);
+  }
+
+  private String readUtf8(int position) {
+    byte[] bytes = new byte[buffer.getInt(position)];
+    buffer.get(position + 4, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeFixed(DataOutputStream out, Kind kind, @Nullable Value value) throws IOException {
+    switch(kind) {
+      case INTEGER:
+        out.writeLong(value == null ? 0 : ((Number) value.getValue()).longValue());
+        break;
+      case DECIMAL:
+        out.writeDouble(value == null ? 0 : ((Number) value.getValue()).doubleValue());
+        break;
+      case DATETIME:
+        out.writeLong(value == null ? 0 : ((Date) value.getValue()).getTime());
+        break;
+      case DATE:
+        MagmaDate date = value == null ? null : (MagmaDate) value.getValue();
+        out.writeInt(date == null ? 0 : date.getYear() << 9 | date.getMonth() << 5 | date.getDayOfMonth());
+        break;
+      default:
+        out.writeByte(value != null && (Boolean) value.getValue() ? 1 : 0);
+        break;
+    }
+  }
+
+  private static void writeString(DataOutputStream out, Value value) throws IOException {
+    if(!value.isSequence()) {
+      writeUtf8(out, value.toString());
+      return;
+    }
+    List<Value> values = value.asSequence().getValues();
+    out.writeInt(values.size());
+    for(Value element : values) {
+      if(element == null || element.isNull()) {
+        out.writeInt(-1);
+      } else {
+        writeUtf8(out, element.toString());
+      }
+    }
+  }
+
+  private static void writeUtf8(DataOutputStream out, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] toBytes(BitSet bits, int size) {
+    byte[] bytes = new byte[(size + 7) / 8];
+    byte[] set = bits.toByteArray();
+    System.arraycopy(set, 0, bytes, 0, set.length);
+    return bytes;
+  }
+
+  private static void checkSize(DataOutputStream out) throws IOException {
+    // the counter of written bytes saturates: the column would not fit in a mapped buffer
+    if(out.size() == Integer.MAX_VALUE) throw new IOException("Column is too large to be mapped");
+  }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import jakarta.annotation.Nullable;
+import jakarta.validation.constraints.NotNull;
+
+import org.obiba.magma.Disposable;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+
+/**
+ * Cache of {@link MappedTableSnapshot}s in a local directory, one sub-directory per table. A snapshot is made from a
+ * table at its last update and replaced once the table's last update changes, which is checked at most once per
+ * validation interval. Tables without a last update are not cached.
+ * <p>
+ * The snapshot files are kept when the cache is disposed: they are found again after a restart, and are still served
+ * when the table cannot be read.
+ */
+public class MappedTableCache implements Disposable {
+
+  private static final Logger log = LoggerFactory.getLogger(MappedTableCache.class);
+
+  public static final long DEFAULT_VALIDATION_INTERVAL = 60 * 1000;
+
+  private final File directory;
+
+  private final long validationInterval;
+
+  private final Map<String, MappedTableSnapshot> snapshots = Maps.newConcurrentMap();
+
+  // one lock per table, so that writing the snapshot of a table does not block the other tables
+  private final Map<String, Object> keyLocks = Maps.newConcurrentMap();
+
+  public MappedTableCache(@NotNull File directory) {
+    this(directory, DEFAULT_VALIDATION_INTERVAL);
+  }
+
+  /**
+   * @param directory the directory of the snapshot files
+   * @param validationInterval the milliseconds during which a snapshot is served without checking the table's last
+   * update
+   */
+  public MappedTableCache(@NotNull File directory, long validationInterval) {
+    //noinspection ConstantConditions
+    if(directory == null) throw new IllegalArgumentException("directory cannot be null");
+    this.directory = directory;
+    this.validationInterval = validationInterval;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Get the snapshot of a table, made when first requested or when the table's last update has changed.
+   *
+   * @param key the unique name of the table, usually its reference
+   * @param table the table, null if it is not available: its latest snapshot is then served, if any
+   * @return null if the table has no last update or if its snapshot cannot be made
+   */
+  @Nullable
+  public MappedTableSnapshot getSnapshot(@NotNull String key, @Nullable ValueTable table) {
+    MappedTableSnapshot snapshot = snapshots.get(key);
+    if(snapshot != null && snapshot.isValidatedSince(System.currentTimeMillis() - validationInterval)) return snapshot;
+    synchronized(getKeyLock(key)) {
+      snapshot = snapshots.get(key);
+      if(snapshot != null && snapshot.isValidatedSince(System.currentTimeMillis() - validationInterval)) {
+        return snapshot;
+      }
+      Long lastUpdate;
+      try {
+        lastUpdate = table == null ? null : getLastUpdate(table);
+      } catch(RuntimeException e) {
+        log.warn("Cannot read the last update of table {}, serving its latest snapshot", key, e);
+        return snapshot == null ? openLatest(key) : snapshot;
+      }
+      if(table == null) return snapshot == null ? openLatest(key) : snapshot;
+      if(lastUpdate == null) {
+        snapshots.remove(key);
+        return null;
+      }
+      if(snapshot != null && snapshot.getLastUpdate() == lastUpdate) {
+        snapshot.setValidated();
+        return snapshot;
+      }
+      try {
+        File tableDirectory = getTableDirectory(key);
+        snapshot = MappedTableSnapshot.open(tableDirectory, lastUpdate);
+        if(snapshot == null) snapshot = MappedTableSnapshot.write(tableDirectory, table, lastUpdate);
+      } catch(IOException e) {
+        log.warn("Cannot snapshot table {} in {}", key, directory, e);
+        snapshots.remove(key);
+        return null;
+      }
+      snapshots.put(key, snapshot);
+      return snapshot;
+    }
+  }
+
+  /**
+   * Forget the snapshot of a table, its files are checked against the table's last update when next requested.
+   *
+   * @param key
+   */
+  public void evict(@NotNull String key) {
+    snapshots.remove(key);
+  }
+
+  /**
+   * Forget the snapshot of a table if the table's last update is not the one of the snapshot anymore, without waiting
+   * for the end of the validation interval. The snapshot is kept when the table is not updated or cannot be read.
+   *
+   * @param key
+   * @param table
+   */
+  public void evictIfUpdated(@NotNull String key, @NotNull ValueTable table) {
+    MappedTableSnapshot snapshot = snapshots.get(key);
+    if(snapshot == null) return;
+    Long lastUpdate;
+    try {
+      lastUpdate = getLastUpdate(table);
+    } catch(RuntimeException e) {
+      log.warn("Cannot read the last update of table {}, keeping its snapshot", key, e);
+      return;
+    }
+    if(lastUpdate == null || lastUpdate != snapshot.getLastUpdate()) snapshots.remove(key, snapshot);
+  }
+
+  /**
+   * Forget the snapshot of a table that was dropped or renamed, and delete its files.
+   *
+   * @param key
+   */
+  public void drop(@NotNull String key) {
+    synchronized(getKeyLock(key)) {
+      snapshots.remove(key);
+      File tableDirectory = getTableDirectory(key);
+      if(!tableDirectory.exists()) return;
+      try(Stream<Path> paths = Files.walk(tableDirectory.toPath())) {
+        // children first
+        for(Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+          Files.deleteIfExists(path);
+        }
+      } catch(IOException e) {
+        log.warn("Cannot delete the snapshot of table {} in {}", key, directory, e);
+      }
+    }
+  }
+
+  @Override
+  public void dispose() {
+    snapshots.clear();
+  }
+
+  @Nullable
+  private MappedTableSnapshot openLatest(String key) {
+    try {
+      MappedTableSnapshot snapshot = MappedTableSnapshot.open(getTableDirectory(key), null);
+      if(snapshot != null) snapshots.put(key, snapshot);
+      return snapshot;
+    } catch(IOException e) {
+      log.warn("Cannot read the snapshot of table {} in {}", key, directory, e);
+      return null;
+    }
+  }
+
+  private Object getKeyLock(String key) {
+    return keyLocks.computeIfAbsent(key, k -> new Object());
+  }
+
+  private File getTableDirectory(String key) {
+    return new File(directory, Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString());
+  }
+
+  @Nullable
+  private static Long getLastUpdate(ValueTable table) {
+    Value lastUpdate = table.getTimestamps().getLastUpdate();
+    if(lastUpdate == null || lastUpdate.isNull()) return null;
+    return ((Date) lastUpdate.getValue()).getTime();
+  }
+
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.annotation.Nullable;
+
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.VariableValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+
+/**
+ * Snapshot of the values of a table at its last update, in memory-mapped files of a directory: the entities file lists
+ * the identifiers of the entities along with a hash index of them, and each variable has a {@link MappedColumn} file,
+ * written the first time the variable is read. The files are outside of the heap and are kept across restarts, until
+ * the table is updated.
+ */
+public class MappedTableSnapshot {
+
+  private static final Logger log = LoggerFactory.getLogger(MappedTableSnapshot.class);
+
+  private static final String ENTITIES_FILE = "entities.bin";
+
+  private static final String COLUMN_EXTENSION = ".col";
+
+  private static final int MAGIC = 0x4D474554;
+
+  private static final int VERSION = 1;
+
+  // header: magic, version, last update, entity count, index length, offsets offset, index offset, data offset,
+  // followed by the entity type
+  private static final int HEADER_SIZE = 36;
+
+  private final File directory;
+
+  private final String entityType;
+
+  private final long lastUpdate;
+
+  private final MappedByteBuffer entities;
+
+  private final int entityCount;
+
+  private final int indexLength;
+
+  private final int offsetsOffset;
+
+  private final int indexOffset;
+
+  private final int dataOffset;
+
+  private final Map<String, MappedColumn> columns = Maps.newConcurrentMap();
+
+  // one lock per variable, so that a column being written does not block the reads of the other columns
+  private final Map<String, Object> columnLocks = Maps.newConcurrentMap();
+
+  private volatile long validated = System.currentTimeMillis();
+
+  private MappedTableSnapshot(File directory, MappedByteBuffer entities) {
+    this.directory = directory;
+    this.entities = entities;
+    byte[] type = new byte[entities.getInt(HEADER_SIZE)];
+    entities.get(HEADER_SIZE + 4, type);
+    entityType = new String(type, StandardCharsets.UTF_8);
+    lastUpdate = entities.getLong(8);
+    entityCount = entities.getInt(16);
+    indexLength = entities.getInt(20);
+    offsetsOffset = entities.getInt(24);
+    indexOffset = entities.getInt(28);
+    dataOffset = entities.getInt(32);
+  }
+
+  /**
+   * Map the snapshot of a directory.
+   *
+   * @param directory
+   * @param lastUpdate the last update of the table, or null to accept any snapshot
+   * @return null if there is no snapshot or if it is stale
+   * @throws IOException
+   */
+  @Nullable
+  static MappedTableSnapshot open(File directory, @Nullable Long lastUpdate) throws IOException {
+    File file = new File(directory, ENTITIES_FILE);
+    if(!file.isFile()) return null;
+    try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return null;
+      if(lastUpdate != null && buffer.getLong(8) != lastUpdate) return null;
+      return new MappedTableSnapshot(directory, buffer);
+    }
+  }
+
+  /**
+   * Write the entities of the table in the directory, replacing the previous snapshot and its columns, and map them.
+   *
+   * @param directory
+   * @param table
+   * @param lastUpdate
+   * @return
+   * @throws IOException
+   */
+  static MappedTableSnapshot write(File directory, ValueTable table, long lastUpdate) throws IOException {
+    if(!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Cannot create directory " + directory);
+    List<VariableEntity> tableEntities = table.getVariableEntities();
+    int count = tableEntities.size();
+    // power of two capacity, at most half full
+    int[] index = new int[Integer.highestOneBit(Math.max(1, count) * 2 - 1) << 1];
+    int[] offsets = new int[count + 1];
+    File tmp = new File(directory, ENTITIES_FILE + ".tmp");
+    try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+      int mask = index.length - 1;
+      for(int row = 0; row < count; row++) {
+        String identifier = tableEntities.get(row).getIdentifier();
+        int slot = spread(identifier.hashCode()) & mask;
+        while(index[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        index[slot] = row + 1;
+        offsets[row + 1] = offsets[row] + identifier.getBytes(StandardCharsets.UTF_8).length;
+      }
+      byte[] type = table.getEntityType().getBytes(StandardCharsets.UTF_8);
+      int offsetsPosition = HEADER_SIZE + 4 + type.length;
+      int indexPosition = offsetsPosition + offsets.length * 4;
+      int dataPosition = indexPosition + index.length * 4;
+      if((long) dataPosition + offsets[count] > Integer.MAX_VALUE) throw new IOException("Too many entities to map");
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(lastUpdate);
+      out.writeInt(count);
+      out.writeInt(index.length);
+      out.writeInt(offsetsPosition);
+      out.writeInt(indexPosition);
+      out.writeInt(dataPosition);
+      out.writeInt(type.length);
+      out.write(type);
+      for(int offset : offsets) {
+        out.writeInt(offset);
+      }
+      for(int slot : index) {
+        out.writeInt(slot);
+      }
+      for(VariableEntity entity : tableEntities) {
+        out.write(entity.getIdentifier().getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    File[] stale = directory.listFiles((dir, name) -> name.endsWith(COLUMN_EXTENSION));
+    if(stale != null) {
+      for(File column : stale) {
+        Files.deleteIfExists(column.toPath());
+      }
+    }
+    File file = new File(directory, ENTITIES_FILE);
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    MappedTableSnapshot snapshot = open(directory, lastUpdate);
+    if(snapshot == null) throw new IOException("Cannot read the entities file " + file);
+    return snapshot;
+  }
+
+  public long getLastUpdate() {
+    return lastUpdate;
+  }
+
+  public String getEntityType() {
+    return entityType;
+  }
+
+  public int getVariableEntityCount() {
+    return entityCount;
+  }
+
+  /**
+   * The entities of the snapshot, read from the entities file when accessed.
+   *
+   * @return
+   */
+  public List<VariableEntity> getVariableEntities() {
+    return new AbstractList<VariableEntity>() {
+      @Override
+      public VariableEntity get(int row) {
+        return new VariableEntityBean(entityType, getIdentifier(row));
+      }
+
+      @Override
+      public int size() {
+        return entityCount;
+      }
+    };
+  }
+
+  public boolean hasVariableEntity(VariableEntity entity) {
+    return getRow(entity) >= 0;
+  }
+
+  /**
+   * Get the value of the variable for the entity, from the column of the variable. The column is written from the
+   * table if not done yet.
+   *
+   * @param variable
+   * @param entity
+   * @param table the table the snapshot was made from, null if it is not available
+   * @return null if the entity is not in the snapshot or if the column is not available
+   */
+  @Nullable
+  public Value getValue(Variable variable, VariableEntity entity, @Nullable ValueTable table) {
+    int row = getRow(entity);
+    if(row < 0) return null;
+    MappedColumn column = getColumn(variable, table);
+    return column == null ? null : column.get(row);
+  }
+
+  /**
+   * Get the values of the variable for the entities, from the column of the variable. The column is written from the
+   * table if not done yet. The values are read when iterated, entities that are not in the snapshot have null values.
+   *
+   * @param variable
+   * @param vectorEntities
+   * @param table the table the snapshot was made from, null if it is not available
+   * @return null if the column is not available
+   */
+  @Nullable
+  public Iterable<Value> getValues(Variable variable, Iterable<VariableEntity> vectorEntities,
+      @Nullable ValueTable table) {
+    MappedColumn column = getColumn(variable, table);
+    if(column == null) return null;
+    return Iterables.transform(vectorEntities, entity -> {
+      int row = getRow(entity);
+      if(row >= 0) return column.get(row);
+      return variable.isRepeatable() ? variable.getValueType().nullSequence() : variable.getValueType().nullValue();
+    });
+  }
+
+  boolean isValidatedSince(long time) {
+    return validated > time;
+  }
+
+  void setValidated() {
+    validated = System.currentTimeMillis();
+  }
+
+  @Nullable
+  private MappedColumn getColumn(Variable variable, @Nullable ValueTable table) {
+    MappedColumn column = columns.get(variable.getName());
+    if(column != null) return column;
+    synchronized(columnLocks.computeIfAbsent(variable.getName(), name -> new Object())) {
+      column = columns.get(variable.getName());
+      if(column != null) return column;
+      File file = new File(directory,
+          Hashing.sha256().hashString(variable.getName(), StandardCharsets.UTF_8).toString() + COLUMN_EXTENSION);
+      try {
+        column = MappedColumn.open(file, variable, lastUpdate);
+        if(column == null && table != null) column = MappedColumn.write(file, variable, lastUpdate, readValues(variable, table));
+      } catch(IOException e) {
+        log.warn("Cannot snapshot the values of variable {} in {}", variable.getName(), directory, e);
+        return null;
+      }
+      if(column != null) columns.put(variable.getName(), column);
+      return column;
+    }
+  }
+
+  private Iterable<Value> readValues(Variable variable, ValueTable table) {
+    VariableValueSource source = table.getVariableValueSource(variable.getName());
+    List<VariableEntity> snapshotEntities = getVariableEntities();
+    if(source.supportVectorSource()) return source.asVectorSource().getValues(snapshotEntities);
+    return Iterables.transform(table.getValueSets(snapshotEntities), source::getValue);
+  }
+
+  private int getRow(VariableEntity entity) {
+    if(!entityType.equals(entity.getType())) return -1;
+    byte[] identifier = entity.getIdentifier().getBytes(StandardCharsets.UTF_8);
+    int mask = indexLength - 1;
+    int slot = spread(entity.getIdentifier().hashCode()) & mask;
+    int position;
+    while((position = entities.getInt(indexOffset + slot * 4)) != 0) {
+      if(identifierEquals(position - 1, identifier)) return position - 1;
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private boolean identifierEquals(int row, byte[] identifier) {
+    int start = entities.getInt(offsetsOffset + row * 4);
+    int end = entities.getInt(offsetsOffset + row * 4 + 4);
+    if(end - start != identifier.length) return false;
+    for(int i = 0; i < identifier.length; i++) {
+      if(entities.get(dataOffset + start + i) != identifier[i]) return false;
+    }
+    return true;
+  }
+
+  private String getIdentifier(int row) {
+    int start = entities.getInt(offsetsOffset + row * 4);
+    byte[] bytes = new byte[entities.getInt(offsetsOffset + row * 4 + 4) - start];
+    entities.get(dataOffset + start, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+}
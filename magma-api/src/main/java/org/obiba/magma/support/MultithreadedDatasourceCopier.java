@@ -11,7 +11,7 @@
 package org.obiba.magma.support;
 
 import java.io.IOException;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
@@ -21,7 +21,6 @@ import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.StreamSupport;
 
 import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.NotNull;
@@ -32,10 +31,10 @@ import org.obiba.magma.Value;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.ValueTableWriter;
-import org.obiba.magma.ValueTableWriter.ValueSetWriter;
 import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.VariableValueSource;
+import org.obiba.magma.concurrent.BoundedVirtualThreadExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -74,6 +73,29 @@ public class MultithreadedDatasourceCopier {
       return this;
     }
 
+    /**
+     * Read each batch of entities on its own virtual thread instead of a fixed pool of readers, suitable for I/O bound
+     * sources. The number of batches read at the same time is limited to
+     * {@link BoundedVirtualThreadExecutor#DEFAULT_MAX_CONCURRENCY}.
+     *
+     * @return
+     */
+    public Builder withVirtualThreads() {
+      return withVirtualThreads(BoundedVirtualThreadExecutor.DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * Read each batch of entities on its own virtual thread, with at most the given number of batches being read at
+     * the same time.
+     *
+     * @param maxConcurrentBatches
+     * @return
+     */
+    public Builder withVirtualThreads(int maxConcurrentBatches) {
+      copier.maxVirtualThreads = maxConcurrentBatches;
+      return this;
+    }
+
     public Builder withReaderListener(ReaderListener readerListener) {
       copier.readerListener = readerListener;
       return this;
@@ -125,6 +147,8 @@ public class MultithreadedDatasourceCopier {
 
   private int concurrentReaders = 3;
 
+  private int maxVirtualThreads = 0;
+
   @NotNull
   private DatasourceCopier.Builder copier = DatasourceCopier.Builder.newCopier();
 
@@ -157,6 +181,10 @@ public class MultithreadedDatasourceCopier {
   }
 
   public void copy() throws IOException {
+    if(maxVirtualThreads > 0) {
+      copyWithVirtualThreads();
+      return;
+    }
     ThreadPoolExecutor executor = (ThreadPoolExecutor) (threadFactory == null //
         ? Executors.newFixedThreadPool(concurrentReaders) //
         : Executors.newFixedThreadPool(concurrentReaders, threadFactory));
@@ -188,6 +216,29 @@ public class MultithreadedDatasourceCopier {
     }
   }
 
+  private void copyWithVirtualThreads() throws IOException {
+    BoundedVirtualThreadExecutor executor = new BoundedVirtualThreadExecutor("magma-copier", maxVirtualThreads);
+
+    prepareVariables();
+
+    BlockingQueue<VariableEntityValues> writeQueue = new LinkedBlockingDeque<>(bufferSize);
+
+    DatasourceCopier datasourceCopier = copier.build();
+    if(datasourceCopier.isCopyValues()) {
+      BlockingQueue<VariableEntity> readQueue = new VariableEntityBlockingQueue(sourceTable);
+      entitiesToCopy = readQueue.size();
+      readers.add(executor.dispatch(new VirtualThreadsDispatcher(executor,
+          new ConcurrentValueSetReader(readQueue, writeQueue, datasourceCopier.isCopyNullValues()))));
+    }
+    try {
+      write(writeQueue);
+      checkReadersForException();
+    } finally {
+      log.debug("Finished multi-threaded copy on virtual threads");
+      executor.shutdownNow();
+    }
+  }
+
   private void write(BlockingQueue<VariableEntityValues> writeQueue) throws IOException {
     copyVariables();
     // The writers could also be concurrent, but dues to transaction isolation issues, it is currently ran
@@ -217,8 +268,7 @@ public class MultithreadedDatasourceCopier {
   private void prepareVariables() {
     List<VariableValueSource> list = Lists.newArrayList();
     List<Variable> vars = Lists.newArrayList();
-    StreamSupport.stream(sourceTable.getVariables().spliterator(), false)
-      .sorted(Comparator.comparingInt(Variable::getIndex))
+    copier.build().getVariables(sourceTable)
       .forEach(variable -> {
         list.add(sourceTable.getVariableValueSource(variable.getName()));
         vars.add(variable);
@@ -270,14 +320,14 @@ public class MultithreadedDatasourceCopier {
         while(entities.size() < sourceTable.getVariableEntityBatchSize() && (entity = readQueue.poll()) != null) {
           entities.add(entity);
           if (entities.size() == sourceTable.getVariableEntityBatchSize()) {
-            for (ValueSet valueSet : sourceTable.getValueSets(entities)) {
+            for (ValueSet valueSet : sourceTable.getValueSets(entities, Arrays.asList(variables))) {
               copyValueSet(valueSet);
             }
             entities.clear();
           }
         }
         if (entities.size() > 0) {
-          for (ValueSet valueSet : sourceTable.getValueSets(entities)) {
+          for (ValueSet valueSet : sourceTable.getValueSets(entities, Arrays.asList(variables))) {
             copyValueSet(valueSet);
           }
         }
@@ -285,6 +335,21 @@ public class MultithreadedDatasourceCopier {
       }
     }
 
+    /**
+     * Read and enqueue a single batch of entities, to be called from a virtual thread.
+     *
+     * @param entities
+     */
+    private void copyValueSets(List<VariableEntity> entities) {
+      try {
+        for (ValueSet valueSet : sourceTable.getValueSets(entities, Arrays.asList(variables))) {
+          copyValueSet(valueSet);
+        }
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
     private void copyValueSet(ValueSet valueSet) throws InterruptedException {
       boolean hasOnlyNullValues = true;
       Value[] values = new Value[sources.length];
@@ -308,6 +373,47 @@ public class MultithreadedDatasourceCopier {
     }
   }
 
+  /**
+   * Drains the read queue in batches of entities, each batch being submitted to the virtual thread executor, then
+   * waits for all of them to be read.
+   */
+  private class VirtualThreadsDispatcher implements Runnable {
+
+    private final BoundedVirtualThreadExecutor executor;
+
+    private final ConcurrentValueSetReader reader;
+
+    private VirtualThreadsDispatcher(BoundedVirtualThreadExecutor executor, ConcurrentValueSetReader reader) {
+      this.executor = executor;
+      this.reader = reader;
+    }
+
+    @Override
+    public void run() {
+      try {
+        int batchSize = sourceTable.getVariableEntityBatchSize();
+        List<VariableEntity> entities = Lists.newArrayList();
+        VariableEntity entity;
+        while(!executor.hasFailed() && (entity = reader.readQueue.poll()) != null) {
+          entities.add(entity);
+          if(entities.size() == batchSize) {
+            submit(entities);
+            entities = Lists.newArrayList();
+          }
+        }
+        if(!entities.isEmpty() && !executor.hasFailed()) {
+          submit(entities);
+        }
+        executor.awaitTasks();
+      } catch(InterruptedException ignored) {
+      }
+    }
+
+    private void submit(List<VariableEntity> entities) throws InterruptedException {
+      executor.submit(() -> reader.copyValueSets(entities));
+    }
+  }
+
   private class ConcurrentValueSetWriter implements Runnable {
 
     private final BlockingQueue<VariableEntityValues> writeQueue;
@@ -357,20 +463,26 @@ public class MultithreadedDatasourceCopier {
           .innerValueTableWriter(sourceTable, destinationName, destinationDatasource)) {
         VariableEntityValues values = null;
         while((values = next()) != null) {
-          copyValue(datasourceCopier, tableWriter, values);
+          // write whatever the readers have enqueued meanwhile along with it
+          List<VariableEntityValues> block = Lists.newArrayList(values);
+          writeQueue.drainTo(block, bufferSize - 1);
+          copyValues(datasourceCopier, tableWriter, block);
         }
       }
     }
 
-    @SuppressWarnings("ThrowFromFinallyBlock")
-    private void copyValue(DatasourceCopier datasourceCopier, ValueTableWriter tableWriter,
-        VariableEntityValues values) {
-      try(ValueSetWriter writer = tableWriter.writeValueSet(values.valueSet.getVariableEntity())) {
-        // Copy the ValueSet to the destinationDatasource
-        log.trace("Dequeued entity {}", values.valueSet.getVariableEntity().getIdentifier());
-        datasourceCopier.copyValues(sourceTable, destinationName, values.valueSet, variables, values.values, writer);
+    private void copyValues(DatasourceCopier datasourceCopier, ValueTableWriter tableWriter,
+        List<VariableEntityValues> block) {
+      List<ValueSet> valueSets = Lists.newArrayListWithCapacity(block.size());
+      List<Value[]> values = Lists.newArrayListWithCapacity(block.size());
+      for(VariableEntityValues entityValues : block) {
+        log.trace("Dequeued entity {}", entityValues.valueSet.getVariableEntity().getIdentifier());
+        valueSets.add(entityValues.valueSet);
+        values.add(entityValues.values);
       }
-      entitiesCopied++;
+      // Copy the ValueSets to the destinationDatasource
+      datasourceCopier.copyValues(sourceTable, destinationName, valueSets, variables, values, tableWriter);
+      entitiesCopied += block.size();
       printProgress();
     }
 
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.MagmaParametersExtension;
+import org.obiba.magma.MagmaRuntimeException;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.ValueSetBatch;
+import org.obiba.magma.VariableEntity;
+
+import jakarta.annotation.Nullable;
+import java.lang.ref.Cleaner;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Iterates over the value sets of batches of entities, fetching the next batches in the background while the value
+ * sets of the current one are being consumed, so that the reading of a table overlaps with the processing of its
+ * values (copy, export...).
+ * <p>
+ * Read-ahead is opt-in: the number of batches fetched in advance is the {@link #READ_AHEAD_BATCH_COUNT_KEY} engine
+ * parameter (none by default), bounded by the {@link #READ_AHEAD_DATA_POINTS_COUNT_KEY} memory budget. The pending
+ * fetches are cancelled when the iterator is closed, when a fetch fails, or when an iterator that was left before its
+ * end is garbage collected.
+ * <p>
+ * The batch queries are made by the calling thread, but the value sets of the batches read ahead are materialized by
+ * {@link ValueSetBatch#getValueSets()} on a background thread: the context bound to the calling thread (security
+ * subject, transaction-bound connection...) is not available to it. Enable read-ahead only for tables whose value sets
+ * do not depend on such context.
+ */
+public class ReadAheadValueSetIterator implements Iterator<ValueSet>, AutoCloseable {
+
+  public static final String READ_AHEAD_BATCH_COUNT_KEY = "readAheadBatchCount";
+
+  public static final String READ_AHEAD_DATA_POINTS_COUNT_KEY = "readAheadDataPointsCount";
+
+  private static final int DEFAULT_READ_AHEAD_DATA_POINTS = 500000;
+
+  // fetching batches is mostly waiting for I/O
+  private static final ExecutorService READ_AHEAD_EXECUTOR = Executors
+      .newThreadPerTaskExecutor(Thread.ofVirtual().name("magma-read-ahead-", 0).factory());
+
+  private static final Cleaner CLEANER = Cleaner.create();
+
+  private final Iterator<List<VariableEntity>> partitions;
+
+  private final Function<List<VariableEntity>, ValueSetBatch> batches;
+
+  private final int depth;
+
+  private final PendingBatches pending = new PendingBatches();
+
+  // null when not reading ahead
+  @Nullable
+  private final Cleaner.Cleanable cleanable;
+
+  private Iterator<ValueSet> currentBatch;
+
+  /**
+   * @param entities
+   * @param batchSize the number of entities per batch
+   * @param depth the number of batches to be fetched in advance, none if not positive
+   * @param batches the batch query of a partition of the entities
+   */
+  public ReadAheadValueSetIterator(Iterable<VariableEntity> entities, int batchSize, int depth,
+      Function<List<VariableEntity>, ValueSetBatch> batches) {
+    partitions = Iterables.partition(entities, batchSize).iterator();
+    this.batches = batches;
+    this.depth = Math.max(0, depth);
+    cleanable = this.depth == 0 ? null : CLEANER.register(this, pending);
+  }
+
+  /**
+   * Get the number of batches to be fetched in advance from the engine parameters.
+   *
+   * @param batchSize the number of entities per batch
+   * @param variableCount the number of variables whose values are read
+   * @return 0 when read-ahead is not enabled, at least 1 otherwise
+   */
+  public static int getReadAheadDepth(int batchSize, int variableCount) {
+    int batchCount = getParameter(READ_AHEAD_BATCH_COUNT_KEY, 0);
+    if (batchCount <= 0) return 0;
+    int dataPoints = getParameter(READ_AHEAD_DATA_POINTS_COUNT_KEY, DEFAULT_READ_AHEAD_DATA_POINTS);
+    long batchDataPoints = (long) Math.max(1, batchSize) * Math.max(1, variableCount);
+    // the budget is not a reason for not reading ahead at all
+    return (int) Math.max(1, Math.min(batchCount, dataPoints / batchDataPoints));
+  }
+
+  private static int getParameter(String name, int defaultValue) {
+    if (!MagmaEngine.isInstantiated() || !MagmaEngine.get().hasExtension(MagmaParametersExtension.class)) {
+      return defaultValue;
+    }
+    MagmaParametersExtension paramsExt = MagmaEngine.get().getExtension(MagmaParametersExtension.class);
+    try {
+      Integer value = paramsExt.getParameterInteger(name);
+      return value == null || value <= 0 ? defaultValue : value;
+    } catch (Exception e) {
+      return defaultValue;
+    }
+  }
+
+  @Override
+  public synchronized boolean hasNext() {
+    return (currentBatch != null && currentBatch.hasNext()) || !pending.isEmpty() || partitions.hasNext();
+  }
+
+  @Override
+  public synchronized ValueSet next() {
+    if (currentBatch == null || !currentBatch.hasNext()) {
+      currentBatch = nextBatch().iterator();
+    }
+    return currentBatch.next();
+  }
+
+  /**
+   * Cancel the fetches of the batches that were read ahead.
+   */
+  @Override
+  public void close() {
+    if (cleanable != null) cleanable.clean();
+  }
+
+  private List<ValueSet> nextBatch() {
+    if (depth == 0) {
+      if (!partitions.hasNext()) throw new NoSuchElementException();
+      return batches.apply(partitions.next()).getValueSets();
+    }
+    if (pending.isEmpty()) readAhead();
+    Future<List<ValueSet>> next = pending.poll();
+    if (next == null) throw new NoSuchElementException();
+    // keep the next batches coming while this one is being consumed
+    readAhead();
+    try {
+      return next.get();
+    } catch (InterruptedException e) {
+      close();
+      Thread.currentThread().interrupt();
+      throw new MagmaRuntimeException("Interrupted while reading ahead value sets");
+    } catch (ExecutionException e) {
+      close();
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new MagmaRuntimeException(e.getCause());
+    }
+  }
+
+  private void readAhead() {
+    while (pending.size() < depth && partitions.hasNext()) {
+      ValueSetBatch batch = batches.apply(partitions.next());
+      // value sets are materialized by the background thread
+      pending.add(READ_AHEAD_EXECUTOR.submit(() -> ImmutableList.copyOf(batch.getValueSets())));
+    }
+  }
+
+  /**
+   * The fetches in progress. Does not refer to the iterator, so that it can be cleaned once the iterator is gone.
+   */
+  private static class PendingBatches implements Runnable {
+
+    private final Deque<Future<List<ValueSet>>> futures = new ArrayDeque<>();
+
+    private synchronized boolean isEmpty() {
+      return futures.isEmpty();
+    }
+
+    private synchronized int size() {
+      return futures.size();
+    }
+
+    private synchronized void add(Future<List<ValueSet>> future) {
+      futures.add(future);
+    }
+
+    private synchronized Future<List<ValueSet>> poll() {
+      return futures.poll();
+    }
+
+    @Override
+    public synchronized void run() {
+      futures.forEach(future -> future.cancel(true));
+      futures.clear();
+    }
+  }
+
+}
@@ -1,10 +1,10 @@
 package org.obiba.magma.support;
 
 import com.google.common.base.Strings;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.obiba.magma.ValueTable;
 import org.obiba.magma.VariableEntity;
+import org.obiba.magma.lang.VariableEntityList;
 
 import jakarta.validation.constraints.NotNull;
 import java.util.List;
@@ -19,7 +19,7 @@ public class SplitValueTable extends AbstractValueTableWrapper {
 
   private final ValueTable wrapped;
 
-  private final List<VariableEntity> entities;
+  private final VariableEntityList entities;
 
   /**
    * Constructor of a value table with a subset of entities. Make sure this subset applies to the
@@ -43,7 +43,8 @@ public class SplitValueTable extends AbstractValueTableWrapper {
   public SplitValueTable(String name, ValueTable wrapped, Iterable<VariableEntity> entities) {
     this.name = name;
     this.wrapped = wrapped;
-    this.entities = Lists.newArrayList(entities);
+    this.entities = new VariableEntityList();
+    entities.forEach(this.entities::add);
   }
 
   @NotNull
@@ -61,4 +62,21 @@ public class SplitValueTable extends AbstractValueTableWrapper {
   public List<VariableEntity> getVariableEntities() {
     return entities;
   }
+
+  @Override
+  public List<VariableEntity> getVariableEntities(int offset, int limit) {
+    int from = Math.min(Math.max(offset, 0), entities.size());
+    int to = limit < 0 ? entities.size() : Math.min(from + limit, entities.size());
+    return entities.subList(from, to);
+  }
+
+  @Override
+  public boolean hasValueSet(VariableEntity entity) {
+    return entities.contains(entity);
+  }
+
+  @Override
+  public int getVariableEntityCount() {
+    return entities.size();
+  }
 }
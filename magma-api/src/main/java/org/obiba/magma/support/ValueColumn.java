@@ -0,0 +1,445 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.annotation.Nullable;
+
+import org.obiba.magma.IncompatibleRepeatabilityException;
+import org.obiba.magma.MagmaDate;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueType;
+import org.obiba.magma.Variable;
+import org.obiba.magma.type.BooleanType;
+import org.obiba.magma.type.DateTimeType;
+import org.obiba.magma.type.DateType;
+import org.obiba.magma.type.DecimalType;
+import org.obiba.magma.type.IntegerType;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * The values of a variable for the rows of a {@link ColumnarValueTable}, stored without boxing them in {@link Value}s:
+ * integers, decimals, booleans, dates and date times in primitive arrays along with a bitmap of the non-null rows, the
+ * other value types as codes in a dictionary of their distinct values, and value sequences as the offsets of their
+ * elements in a column of these elements. Values are only created when they are read.
+ * <p>
+ * Columns grow with the rows that are set; rows that were never set are null.
+ */
+abstract class ValueColumn {
+
+  private final String name;
+
+  private final ValueType valueType;
+
+  private ValueColumn(String name, ValueType valueType) {
+    this.name = name;
+    this.valueType = valueType;
+  }
+
+  static ValueColumn forVariable(Variable variable) {
+    ValueColumn column = forValueType(variable.getName(), variable.getValueType());
+    return variable.isRepeatable() ? new SequenceColumn(column) : column;
+  }
+
+  private static ValueColumn forValueType(String name, ValueType valueType) {
+    if(valueType == IntegerType.get()) return new IntegerColumn(name);
+    if(valueType == DecimalType.get()) return new DecimalColumn(name);
+    if(valueType == BooleanType.get()) return new BooleanColumn(name);
+    if(valueType == DateType.get()) return new DateColumn(name);
+    if(valueType == DateTimeType.get()) return new DateTimeColumn(name);
+    return new DictionaryColumn(name, valueType);
+  }
+
+  String getName() {
+    return name;
+  }
+
+  ValueType getValueType() {
+    return valueType;
+  }
+
+  boolean isSequence() {
+    return false;
+  }
+
+  /**
+   * Value of a row that was not set.
+   *
+   * @return
+   */
+  Value nullValue() {
+    return valueType.nullValue();
+  }
+
+  /**
+   * Get the value of the row, a new {@link Value} for all types but the ones of the dictionary columns.
+   *
+   * @param row
+   * @return
+   */
+  abstract Value get(int row);
+
+  /**
+   * Set the value of the row, converting it to the type of the column if needed.
+   *
+   * @param row
+   * @param value null or a null value to clear the row
+   */
+  void set(int row, @Nullable Value value) {
+    if(value == null || value.isNull()) {
+      clear(row);
+    } else {
+      setValue(row, value.getValueType() == valueType ? value : valueType.convert(value));
+    }
+  }
+
+  /**
+   * Move the value of a row to another one, the former being cleared.
+   *
+   * @param from
+   * @param to
+   */
+  void move(int from, int to) {
+    set(to, get(from));
+    clear(from);
+  }
+
+  abstract void clear(int row);
+
+  /**
+   * @param row
+   * @param value a non-null value of the type of the column
+   */
+  protected abstract void setValue(int row, Value value);
+
+  protected void checkNotSequence(Value value) {
+    if(value.isSequence()) throw new IncompatibleRepeatabilityException(name, false, true);
+  }
+
+  /**
+   * Capacity of an array that holds the row, when it has to grow.
+   *
+   * @param length
+   * @param row
+   * @return
+   */
+  private static int grow(int length, int row) {
+    return Math.max(row + 1, length + (length >> 1) + 16);
+  }
+
+  private static final class IntegerColumn extends ValueColumn {
+
+    private final BitSet present = new BitSet();
+
+    private int[] ints = new int[0];
+
+    // replaces the ints once a value does not fit in an int
+    @Nullable
+    private long[] longs;
+
+    private IntegerColumn(String name) {
+      super(name, IntegerType.get());
+    }
+
+    @Override
+    Value get(int row) {
+      if(!present.get(row)) return nullValue();
+      return getValueType().valueOf(longs == null ? ints[row] : longs[row]);
+    }
+
+    @Override
+    void clear(int row) {
+      present.clear(row);
+    }
+
+    @Override
+    protected void setValue(int row, Value value) {
+      checkNotSequence(value);
+      long longValue = ((Number) value.getValue()).longValue();
+      if(longs == null && (int) longValue != longValue) {
+        longs = new long[ints.length];
+        for(int i = 0; i < ints.length; i++) {
+          longs[i] = ints[i];
+        }
+        ints = null;
+      }
+      if(longs == null) {
+        if(row >= ints.length) ints = Arrays.copyOf(ints, grow(ints.length, row));
+        ints[row] = (int) longValue;
+      } else {
+        if(row >= longs.length) longs = Arrays.copyOf(longs, grow(longs.length, row));
+        longs[row] = longValue;
+      }
+      present.set(row);
+    }
+  }
+
+  private static final class DecimalColumn extends ValueColumn {
+
+    private final BitSet present = new BitSet();
+
+    private double[] doubles = new double[0];
+
+    private DecimalColumn(String name) {
+      super(name, DecimalType.get());
+    }
+
+    @Override
+    Value get(int row) {
+      return present.get(row) ? getValueType().valueOf(doubles[row]) : nullValue();
+    }
+
+    @Override
+    void clear(int row) {
+      present.clear(row);
+    }
+
+    @Override
+    protected void setValue(int row, Value value) {
+      checkNotSequence(value);
+      if(row >= doubles.length) doubles = Arrays.copyOf(doubles, grow(doubles.length, row));
+      doubles[row] = ((Number) value.getValue()).doubleValue();
+      present.set(row);
+    }
+  }
+
+  private static final class BooleanColumn extends ValueColumn {
+
+    private final BitSet present = new BitSet();
+
+    private final BitSet values = new BitSet();
+
+    private BooleanColumn(String name) {
+      super(name, BooleanType.get());
+    }
+
+    @Override
+    Value get(int row) {
+      return present.get(row) ? BooleanType.get().valueOf(values.get(row)) : nullValue();
+    }
+
+    @Override
+    void clear(int row) {
+      present.clear(row);
+      values.clear(row);
+    }
+
+    @Override
+    protected void setValue(int row, Value value) {
+      checkNotSequence(value);
+      values.set(row, (Boolean) value.getValue());
+      present.set(row);
+    }
+  }
+
+  /**
+   * Dates are packed in an int, with 9 bits for the month and the day of month.
+   */
+  private static final class DateColumn extends ValueColumn {
+
+    private final BitSet present = new BitSet();
+
+    private int[] dates = new int[0];
+
+    private DateColumn(String name) {
+      super(name, DateType.get());
+    }
+
+    @Override
+    Value get(int row) {
+      if(!present.get(row)) return nullValue();
+      int date = dates[row];
+      return getValueType().valueOf(new MagmaDate(date >> 9, (date >> 5) & 0xF, date & 0x1F));
+    }
+
+    @Override
+    void clear(int row) {
+      present.clear(row);
+    }
+
+    @Override
+    protected void setValue(int row, Value value) {
+      checkNotSequence(value);
+      MagmaDate date = (MagmaDate) value.getValue();
+      if(row >= dates.length) dates = Arrays.copyOf(dates, grow(dates.length, row));
+      dates[row] = date.getYear() << 9 | date.getMonth() << 5 | date.getDayOfMonth();
+      present.set(row);
+    }
+  }
+
+  private static final class DateTimeColumn extends ValueColumn {
+
+    private final BitSet present = new BitSet();
+
+    private long[] times = new long[0];
+
+    private DateTimeColumn(String name) {
+      super(name, DateTimeType.get());
+    }
+
+    @Override
+    Value get(int row) {
+      return present.get(row) ? getValueType().valueOf(new Date(times[row])) : nullValue();
+    }
+
+    @Override
+    void clear(int row) {
+      present.clear(row);
+    }
+
+    @Override
+    protected void setValue(int row, Value value) {
+      checkNotSequence(value);
+      if(row >= times.length) times = Arrays.copyOf(times, grow(times.length, row));
+      times[row] = ((Date) value.getValue()).getTime();
+      present.set(row);
+    }
+  }
+
+  /**
+   * Each distinct value is stored once, rows refer to it by its code. The dictionary only grows: values that are no
+   * longer referred to by any row are kept.
+   */
+  private static final class DictionaryColumn extends ValueColumn {
+
+    private final List<Value> dictionary = Lists.newArrayList();
+
+    private final Map<Value, Integer> codes = Maps.newHashMap();
+
+    // code of the value in the dictionary plus one, zero for null
+    private int[] rows = new int[0];
+
+    private DictionaryColumn(String name, ValueType valueType) {
+      super(name, valueType);
+    }
+
+    @Override
+    Value get(int row) {
+      int code = row < rows.length ? rows[row] : 0;
+      return code == 0 ? nullValue() : dictionary.get(code - 1);
+    }
+
+    @Override
+    void clear(int row) {
+      if(row < rows.length) rows[row] = 0;
+    }
+
+    @Override
+    void move(int from, int to) {
+      if(from >= rows.length) {
+        clear(to);
+        return;
+      }
+      if(to >= rows.length) rows = Arrays.copyOf(rows, grow(rows.length, to));
+      rows[to] = rows[from];
+      rows[from] = 0;
+    }
+
+    @Override
+    protected void setValue(int row, Value value) {
+      checkNotSequence(value);
+      Integer code = codes.get(value);
+      if(code == null) {
+        dictionary.add(value);
+        code = dictionary.size();
+        codes.put(value, code);
+      }
+      if(row >= rows.length) rows = Arrays.copyOf(rows, grow(rows.length, row));
+      rows[row] = code;
+    }
+  }
+
+  /**
+   * The elements of the sequences are appended to a column of the element type, each row referring to the offset of
+   * its first element and to the number of elements. The elements of a sequence that is replaced are not reclaimed.
+   */
+  private static final class SequenceColumn extends ValueColumn {
+
+    private final ValueColumn elements;
+
+    private int elementCount;
+
+    private int[] offsets = new int[0];
+
+    // size of the sequence plus one, zero for a null sequence
+    private int[] sizes = new int[0];
+
+    private SequenceColumn(ValueColumn elements) {
+      super(elements.getName(), elements.getValueType());
+      this.elements = elements;
+    }
+
+    @Override
+    boolean isSequence() {
+      return true;
+    }
+
+    @Override
+    Value nullValue() {
+      return getValueType().nullSequence();
+    }
+
+    @Override
+    Value get(int row) {
+      int size = row < sizes.length ? sizes[row] - 1 : -1;
+      if(size < 0) return nullValue();
+      List<Value> values = Lists.newArrayListWithCapacity(size);
+      int offset = offsets[row];
+      for(int i = 0; i < size; i++) {
+        values.add(elements.get(offset + i));
+      }
+      return getValueType().sequenceOf(values);
+    }
+
+    @Override
+    void clear(int row) {
+      if(row < sizes.length) sizes[row] = 0;
+    }
+
+    @Override
+    void move(int from, int to) {
+      if(from >= sizes.length) {
+        clear(to);
+        return;
+      }
+      ensureCapacity(to);
+      offsets[to] = offsets[from];
+      sizes[to] = sizes[from];
+      sizes[from] = 0;
+    }
+
+    @Override
+    protected void setValue(int row, Value value) {
+      int offset = elementCount;
+      for(Value element : value.asSequence().getValue()) {
+        elements.set(elementCount++, element);
+      }
+      ensureCapacity(row);
+      offsets[row] = offset;
+      sizes[row] = elementCount - offset + 1;
+    }
+
+    private void ensureCapacity(int row) {
+      if(row < sizes.length) return;
+      int length = grow(sizes.length, row);
+      offsets = Arrays.copyOf(offsets, length);
+      sizes = Arrays.copyOf(sizes, length);
+    }
+  }
+
+}
@@ -13,15 +13,22 @@ package org.obiba.magma.support;
 import java.io.Serializable;
 import java.util.Date;
 import java.util.List;
-import java.util.Set;
 
 import org.obiba.magma.Value;
 import org.obiba.magma.VariableEntity;
+import org.obiba.magma.lang.VariableEntityList;
 
 public class VariableEntitiesCache implements Serializable {
 
   private static final long serialVersionUID = 69918333951801112L;
 
+  /**
+   * Version of the serial form, to be part of the cache keys: version 2 holds a {@link VariableEntityList} encoded in
+   * a dictionary, that cannot be read from the entries of version 1 (a list backed by an array list).
+   */
+  public static final int SERIAL_FORM_VERSION = 2;
+
+  // a VariableEntityList, its dictionary being the index of the entities
   private List<VariableEntity> entities;
 
   private long lastUpdate;
@@ -31,7 +38,7 @@ public class VariableEntitiesCache implements Serializable {
   }
 
   public VariableEntitiesCache(List<VariableEntity> entities, long lastUpdate) {
-    this.entities = entities;
+    this.entities = entities instanceof VariableEntityList ? entities : new VariableEntityList(entities);
     this.lastUpdate = lastUpdate;
   }
 
@@ -42,4 +49,20 @@ public class VariableEntitiesCache implements Serializable {
   public List<VariableEntity> getEntities() {
     return entities;
   }
+
+  /**
+   * Check whether the entity is in the cached list, in constant time.
+   *
+   * @param entity
+   * @return
+   */
+  public boolean hasEntity(VariableEntity entity) {
+    return entities.contains(entity);
+  }
+
+  private Object readResolve() {
+    // older cache content
+    if(!(entities instanceof VariableEntityList)) entities = new VariableEntityList(entities);
+    return this;
+  }
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import org.obiba.magma.VariableEntity;
+
+import jakarta.annotation.Nullable;
+import jakarta.validation.constraints.NotNull;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Dictionary of a list of entities: each entity is given a dense integer code, its position in the order the entities
+ * were first encoded, so that sets of these entities can be stored as {@link org.obiba.magma.lang.CompressedBitmap} of
+ * codes. The identifiers are shared, not copied, and the entity type is stored once when all the entities have the
+ * same.
+ * <p>
+ * A dictionary is owned by the list of entities that encodes them, typically the entities of one table, and the codes
+ * are released with it: they are only meaningful for the sets made from this dictionary.
+ * <p>
+ * Not thread safe: entities are encoded by one thread, the dictionary can then be read concurrently.
+ */
+public class VariableEntityDictionary implements Serializable {
+
+  private static final long serialVersionUID = 4466436410476233311L;
+
+  private static final String[] NO_IDENTIFIERS = new String[0];
+
+  // type of the entities, unless types is not null
+  @Nullable
+  private String entityType;
+
+  // type of each entity, only when they are not all of the same type
+  @Nullable
+  private String[] types;
+
+  private String[] identifiers;
+
+  private int size;
+
+  // open addressing hash table: each slot holds the code of an entity plus one, zero being an empty slot
+  private transient int[] index;
+
+  public VariableEntityDictionary() {
+    this(0);
+  }
+
+  public VariableEntityDictionary(int expectedSize) {
+    identifiers = expectedSize == 0 ? NO_IDENTIFIERS : new String[expectedSize];
+    index = new int[capacity(expectedSize)];
+  }
+
+  private VariableEntityDictionary(VariableEntityDictionary other) {
+    entityType = other.entityType;
+    types = other.types == null ? null : Arrays.copyOf(other.types, other.identifiers.length);
+    identifiers = other.identifiers.clone();
+    size = other.size;
+    index = other.index.clone();
+  }
+
+  /**
+   * A copy of the dictionary, the entities having the same codes.
+   *
+   * @return
+   */
+  public VariableEntityDictionary copy() {
+    return new VariableEntityDictionary(this);
+  }
+
+  /**
+   * Get the code of the entity, a new one if the entity was not encoded yet.
+   *
+   * @param entity
+   * @return
+   */
+  public int encode(@NotNull VariableEntity entity) {
+    int code = indexOf(entity);
+    if(code >= 0) return code;
+    code = size;
+    if(size == identifiers.length) {
+      identifiers = Arrays.copyOf(identifiers, Math.max(16, size * 2));
+      if(types != null) types = Arrays.copyOf(types, identifiers.length);
+    }
+    if(size == 0) {
+      entityType = entity.getType();
+    } else if(types == null && !entity.getType().equals(entityType)) {
+      types = new String[identifiers.length];
+      Arrays.fill(types, 0, size, entityType);
+    }
+    if(types != null) types[code] = entity.getType();
+    identifiers[size++] = entity.getIdentifier();
+    if(size * 2 > index.length) {
+      rebuildIndex(index.length * 2);
+    } else {
+      insert(index, code);
+    }
+    return code;
+  }
+
+  /**
+   * Get the code of the entity, without encoding it.
+   *
+   * @param entity
+   * @return -1 if the entity is not encoded
+   */
+  public int indexOf(@NotNull VariableEntity entity) {
+    int mask = index.length - 1;
+    int slot = spread(entity.getIdentifier().hashCode()) & mask;
+    int code;
+    while((code = index[slot]) != 0) {
+      if(identifiers[code - 1].equals(entity.getIdentifier()) && getType(code - 1).equals(entity.getType())) {
+        return code - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Get the entity of the code.
+   *
+   * @param code
+   * @return
+   * @throws IndexOutOfBoundsException if no entity has this code
+   */
+  public VariableEntity decode(int code) {
+    Objects.checkIndex(code, size);
+    return new VariableEntityBean(getType(code), identifiers[code]);
+  }
+
+  /**
+   * Number of entities that were encoded.
+   *
+   * @return
+   */
+  public int size() {
+    return size;
+  }
+
+  private String getType(int code) {
+    return types == null ? entityType : types[code];
+  }
+
+  private void rebuildIndex(int capacity) {
+    int[] rebuilt = new int[capacity];
+    for(int code = 0; code < size; code++) {
+      insert(rebuilt, code);
+    }
+    index = rebuilt;
+  }
+
+  private void insert(int[] idx, int code) {
+    int mask = idx.length - 1;
+    int slot = spread(identifiers[code].hashCode()) & mask;
+    while(idx[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    idx[slot] = code + 1;
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    index = new int[capacity(size)];
+    rebuildIndex(index.length);
+  }
+
+  /**
+   * Power of two capacity, at most half full.
+   */
+  private static int capacity(int size) {
+    return Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+}
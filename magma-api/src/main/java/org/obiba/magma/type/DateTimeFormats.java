@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.type;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.chrono.IsoChronology;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.ResolverStyle;
+import java.time.format.SignStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.stream.Collectors;
+
+import jakarta.annotation.Nullable;
+
+import org.obiba.magma.MagmaDate;
+
+/**
+ * Thread-safe parsing and formatting of the date and date time values, based on immutable {@link DateTimeFormatter}s.
+ * <p>
+ * The formatter is picked from the shape of the string (position of the year and separator characters), instead of
+ * trying each supported format until one succeeds. Only the shapes that are fully parsed by the supported formats are
+ * recognized: a null result means that the string has to be parsed by the legacy formats, which also handle the dates
+ * before the Gregorian calendar cutover.
+ * <p>
+ * Conversions in the default time zone use the offsets of {@link TimeZone}, that differ from the java.time rules for
+ * some zones and periods, so that the results are the same as the ones of {@link java.util.Calendar}.
+ */
+public final class DateTimeFormats {
+
+  private static final String DATE_SEPARATORS = "-/. ";
+
+  /**
+   * Dates before are in the Julian calendar for {@link java.util.Calendar}.
+   */
+  private static final int GREGORIAN_CUTOVER_YEAR = 1582;
+
+  private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+  private static final DateTimeFormatter[] YEAR_FIRST_DATE = new DateTimeFormatter[DATE_SEPARATORS.length()];
+
+  private static final DateTimeFormatter[] DAY_FIRST_DATE = new DateTimeFormatter[DATE_SEPARATORS.length()];
+
+  private static final DateTimeFormatter[] LOCAL_DATE_TIME = new DateTimeFormatter[DATE_SEPARATORS.length()];
+
+  /**
+   * yyyy-MM-dd'T'HH:mm[:ss[.SSS]] followed by a Z, +hh, +hhmm or +hh:mm offset.
+   */
+  private static final DateTimeFormatter ISO_DATE_TIME = strict(yearFirstDate(new DateTimeFormatterBuilder(), '-') //
+      .appendLiteral('T') //
+      .append(time(true)) //
+      .optionalStart().appendOffset("+HH:MM", "Z").optionalEnd() //
+      .optionalStart().appendOffset("+HHMM", "Z").optionalEnd() //
+      .optionalStart().appendOffset("+HH", "Z").optionalEnd());
+
+  private static final DateTimeFormatter ISO_DATE_FORMAT = new DateTimeFormatterBuilder() //
+      .appendValue(ChronoField.YEAR_OF_ERA, 4, 10, SignStyle.NOT_NEGATIVE) //
+      .appendLiteral('-').appendValue(ChronoField.MONTH_OF_YEAR, 2) //
+      .appendLiteral('-').appendValue(ChronoField.DAY_OF_MONTH, 2) //
+      .toFormatter();
+
+  private static final DateTimeFormatter ISO_DATE_TIME_FORMAT = new DateTimeFormatterBuilder() //
+      .append(ISO_DATE_FORMAT) //
+      .appendLiteral('T').append(time(false)) //
+      .appendOffset("+HHmm", "Z") //
+      .toFormatter();
+
+  static {
+    for(int i = 0; i < DATE_SEPARATORS.length(); i++) {
+      char separator = DATE_SEPARATORS.charAt(i);
+      YEAR_FIRST_DATE[i] = strict(yearFirstDate(new DateTimeFormatterBuilder(), separator));
+      DAY_FIRST_DATE[i] = strict(new DateTimeFormatterBuilder() //
+          .appendValue(ChronoField.DAY_OF_MONTH, 1, 2, SignStyle.NOT_NEGATIVE) //
+          .appendLiteral(separator).appendValue(ChronoField.MONTH_OF_YEAR, 1, 2, SignStyle.NOT_NEGATIVE) //
+          .appendLiteral(separator).appendValue(ChronoField.YEAR, 4));
+      // yyyy-MM-dd HH:mm[:ss]
+      LOCAL_DATE_TIME[i] = strict(yearFirstDate(new DateTimeFormatterBuilder(), separator) //
+          .appendLiteral(' ') //
+          .appendValue(ChronoField.HOUR_OF_DAY, 2).appendLiteral(':').appendValue(ChronoField.MINUTE_OF_HOUR, 2) //
+          .optionalStart().appendLiteral(':').appendValue(ChronoField.SECOND_OF_MINUTE, 2).optionalEnd());
+    }
+  }
+
+  private DateTimeFormats() {}
+
+  /**
+   * Parse a date time string of one of the usual shapes.
+   *
+   * @param string
+   * @return null if the string shape is not recognized or if it does not represent a valid date time
+   */
+  @Nullable
+  static Date parseDateTime(String string) {
+    int separator = yearFirstSeparator(string);
+    if(separator < 0) return null;
+    if(string.indexOf('T') > 0) {
+      if(separator != 0) return null;
+      TemporalAccessor parsed = parse(ISO_DATE_TIME, string);
+      // the supported formats with a 'T' all have a time zone
+      return parsed == null || parsed.query(TemporalQueries.offset()) == null ? null : toDate(parsed);
+    }
+    return toDate(parse(string.indexOf(':') > 0 ? LOCAL_DATE_TIME[separator] : YEAR_FIRST_DATE[separator], string));
+  }
+
+  /**
+   * Parse a date string of one of the usual shapes, year first or day first.
+   *
+   * @param string
+   * @return null if the string shape is not recognized or if it does not represent a valid date
+   */
+  @Nullable
+  static MagmaDate parseDate(String string) {
+    TemporalAccessor parsed = null;
+    int separator = yearFirstSeparator(string);
+    if(separator >= 0) {
+      parsed = parse(YEAR_FIRST_DATE[separator], string);
+    } else {
+      separator = dayFirstSeparator(string);
+      if(separator >= 0) parsed = parse(DAY_FIRST_DATE[separator], string);
+    }
+    if(parsed == null) return null;
+    LocalDate date = parsed.query(TemporalQueries.localDate());
+    return date == null || date.getYear() <= GREGORIAN_CUTOVER_YEAR
+        ? null
+        : new MagmaDate(date.getYear(), date.getMonthValue() - 1, date.getDayOfMonth());
+  }
+
+  /**
+   * Get the date and time in the default time zone.
+   *
+   * @param millis
+   * @return null if the date is before the Gregorian cutover
+   */
+  @Nullable
+  public static LocalDateTime toLocalDateTime(long millis) {
+    return toLocalDateTime(millis, TimeZone.getDefault().getOffset(millis));
+  }
+
+  /**
+   * Get the instant of a date and time in the default time zone.
+   *
+   * @param dateTime
+   * @return null if the date is before the Gregorian cutover or if a time zone transition (where the date and time may
+   * not exist or be ambiguous) is close
+   */
+  @Nullable
+  public static Long toEpochMillis(LocalDateTime dateTime) {
+    if(dateTime.getYear() <= GREGORIAN_CUTOVER_YEAR) return null;
+    TimeZone zone = TimeZone.getDefault();
+    long local = dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    int offset = zone.getOffset(local - DAY_MILLIS);
+    if(offset != zone.getOffset(local + DAY_MILLIS) || offset != zone.getOffset(local - offset)) return null;
+    return local - offset;
+  }
+
+  /**
+   * Format as yyyy-MM-dd'T'HH:mm:ss.SSSX in the default time zone.
+   *
+   * @param date
+   * @return null if the date is before the Gregorian cutover
+   */
+  @Nullable
+  static String formatDateTime(Date date) {
+    int offset = TimeZone.getDefault().getOffset(date.getTime());
+    LocalDateTime dateTime = toLocalDateTime(date.getTime(), offset);
+    if(dateTime == null) return null;
+    return ISO_DATE_TIME_FORMAT.format(dateTime.atOffset(ZoneOffset.ofTotalSeconds(offset / 1000)));
+  }
+
+  /**
+   * Format as yyyy-MM-dd.
+   *
+   * @param date
+   * @return null if the date is before the Gregorian cutover
+   */
+  @Nullable
+  static String formatDate(MagmaDate date) {
+    if(date.getYear() <= GREGORIAN_CUTOVER_YEAR) return null;
+    return ISO_DATE_FORMAT.format(LocalDate.of(date.getYear(), date.getMonth() + 1, date.getDayOfMonth()));
+  }
+
+  /**
+   * List the patterns for an error message.
+   *
+   * @param patterns
+   * @return
+   */
+  static String toString(String... patterns) {
+    return Arrays.stream(patterns).map(pattern -> "'" + pattern + "'").collect(Collectors.joining(", "));
+  }
+
+  /**
+   * Index of the separator in {@link #DATE_SEPARATORS} when the string starts with a 4 digits year followed by a
+   * separator.
+   *
+   * @param string
+   * @return -1 if the string does not start with a year
+   */
+  private static int yearFirstSeparator(String string) {
+    if(string.length() < 8) return -1;
+    for(int i = 0; i < 4; i++) {
+      if(!isDigit(string.charAt(i))) return -1;
+    }
+    return DATE_SEPARATORS.indexOf(string.charAt(4));
+  }
+
+  /**
+   * Index of the separator in {@link #DATE_SEPARATORS} when the string ends with a separator followed by a 4 digits
+   * year.
+   *
+   * @param string
+   * @return -1 if the string does not end with a year
+   */
+  private static int dayFirstSeparator(String string) {
+    int length = string.length();
+    if(length < 8) return -1;
+    for(int i = length - 4; i < length; i++) {
+      if(!isDigit(string.charAt(i))) return -1;
+    }
+    return DATE_SEPARATORS.indexOf(string.charAt(length - 5));
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  @Nullable
+  private static TemporalAccessor parse(DateTimeFormatter formatter, String string) {
+    try {
+      return formatter.parse(string);
+    } catch(RuntimeException e) {
+      // not a valid date or not of the expected shape
+      return null;
+    }
+  }
+
+  @Nullable
+  private static Date toDate(@Nullable TemporalAccessor parsed) {
+    if(parsed == null) return null;
+    LocalDate date = parsed.query(TemporalQueries.localDate());
+    if(date == null || date.getYear() <= GREGORIAN_CUTOVER_YEAR) return null;
+    LocalTime time = parsed.query(TemporalQueries.localTime());
+    LocalDateTime dateTime = date.atTime(time == null ? LocalTime.MIDNIGHT : time);
+    ZoneOffset offset = parsed.query(TemporalQueries.offset());
+    if(offset != null) {
+      return new Date(dateTime.toInstant(offset).toEpochMilli());
+    }
+    Long millis = toEpochMillis(dateTime);
+    return millis == null ? null : new Date(millis);
+  }
+
+  @Nullable
+  private static LocalDateTime toLocalDateTime(long millis, int offset) {
+    long local = millis + offset;
+    LocalDateTime dateTime = LocalDateTime
+        .ofEpochSecond(Math.floorDiv(local, 1000), (int) Math.floorMod(local, 1000) * 1000000, ZoneOffset.UTC);
+    return dateTime.getYear() <= GREGORIAN_CUTOVER_YEAR ? null : dateTime;
+  }
+
+  private static DateTimeFormatterBuilder yearFirstDate(DateTimeFormatterBuilder builder, char separator) {
+    return builder.appendValue(ChronoField.YEAR, 4) //
+        .appendLiteral(separator).appendValue(ChronoField.MONTH_OF_YEAR, 1, 2, SignStyle.NOT_NEGATIVE) //
+        .appendLiteral(separator).appendValue(ChronoField.DAY_OF_MONTH, 1, 2, SignStyle.NOT_NEGATIVE);
+  }
+
+  /**
+   * HH:mm[:ss[.SSS]] when parsing, HH:mm:ss.SSS when formatting.
+   *
+   * @param optionalSeconds
+   * @return
+   */
+  private static DateTimeFormatter time(boolean optionalSeconds) {
+    DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder() //
+        .appendValue(ChronoField.HOUR_OF_DAY, 2).appendLiteral(':').appendValue(ChronoField.MINUTE_OF_HOUR, 2);
+    if(optionalSeconds) builder.optionalStart();
+    builder.appendLiteral(':').appendValue(ChronoField.SECOND_OF_MINUTE, 2);
+    if(optionalSeconds) builder.optionalStart();
+    builder.appendLiteral('.').appendValue(ChronoField.MILLI_OF_SECOND, 3);
+    if(optionalSeconds) builder.optionalEnd().optionalEnd();
+    return builder.toFormatter();
+  }
+
+  private static DateTimeFormatter strict(DateTimeFormatterBuilder builder) {
+    return builder.toFormatter().withResolverStyle(ResolverStyle.STRICT).withChronology(IsoChronology.INSTANCE);
+  }
+
+}
@@ -36,46 +36,35 @@ public class DateTimeType extends AbstractValueType {
   private static WeakReference<DateTimeType> instance;
 
   /**
-   * Preferred date time format.
+   * Supported date time formats, the first one being the preferred one. The usual shapes are parsed by
+   * {@link DateTimeFormats}, these formats are tried one after the other for the other strings.
    */
-  private static final SimpleDateFormat ISO_8601 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX");
-
-  /**
-   * These are used to support other common date time formats.
-   */
-  private final SimpleDateFormat[] dateFormats = new SimpleDateFormat[] { //
-      ISO_8601, //
-      new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssX"), //
-      new SimpleDateFormat("yyyy-MM-dd'T'HH:mmX"), //
-      new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ"), //
-      new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ"), //
-      new SimpleDateFormat("yyyy-MM-dd'T'HH:mmZ"), //
-      new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSzzz"), //
-      new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"), //
-      new SimpleDateFormat("yyyy-MM-dd HH:mm"), //
-      new SimpleDateFormat("yyyy-MM-dd"), //
-      new SimpleDateFormat("yyyy/MM/dd HH:mm:ss"), //
-      new SimpleDateFormat("yyyy/MM/dd HH:mm"), //
-      new SimpleDateFormat("yyyy/MM/dd"), //
-      new SimpleDateFormat("yyyy.MM.dd HH:mm:ss"), //
-      new SimpleDateFormat("yyyy.MM.dd HH:mm"), //
-      new SimpleDateFormat("yyyy.MM.dd"), //
-      new SimpleDateFormat("yyyy MM dd HH:mm:ss"), //
-      new SimpleDateFormat("yyyy MM dd HH:mm"), //
-      new SimpleDateFormat("yyyy MM dd") };
-
-  private String dateFormatPatterns = "";
+  private static final String[] DATE_FORMAT_PATTERNS = { //
+      "yyyy-MM-dd'T'HH:mm:ss.SSSX", //
+      "yyyy-MM-dd'T'HH:mm:ssX", //
+      "yyyy-MM-dd'T'HH:mmX", //
+      "yyyy-MM-dd'T'HH:mm:ss.SSSZ", //
+      "yyyy-MM-dd'T'HH:mm:ssZ", //
+      "yyyy-MM-dd'T'HH:mmZ", //
+      "yyyy-MM-dd'T'HH:mm:ss.SSSzzz", //
+      "yyyy-MM-dd HH:mm:ss", //
+      "yyyy-MM-dd HH:mm", //
+      "yyyy-MM-dd", //
+      "yyyy/MM/dd HH:mm:ss", //
+      "yyyy/MM/dd HH:mm", //
+      "yyyy/MM/dd", //
+      "yyyy.MM.dd HH:mm:ss", //
+      "yyyy.MM.dd HH:mm", //
+      "yyyy.MM.dd", //
+      "yyyy MM dd HH:mm:ss", //
+      "yyyy MM dd HH:mm", //
+      "yyyy MM dd" };
+
+  private static final LegacyDateFormats DATE_FORMATS = new LegacyDateFormats(DATE_FORMAT_PATTERNS);
+
+  private final String dateFormatPatterns = DateTimeFormats.toString(DATE_FORMAT_PATTERNS);
 
   private DateTimeType() {
-    // Force strict year parsing, otherwise 2 digits can be interpreted as a 4 digits year...
-    for(SimpleDateFormat format : dateFormats) {
-      format.setLenient(false);
-      if(dateFormatPatterns.isEmpty()) {
-        dateFormatPatterns = "'" + format.toPattern() + "'";
-      } else {
-        dateFormatPatterns += ", '" + format.toPattern() + "'";
-      }
-    }
   }
 
   @SuppressWarnings("ConstantConditions")
@@ -116,10 +105,8 @@ public class DateTimeType extends AbstractValueType {
 
   @Override
   public String toString(Object object) {
-    // DateFormat is not thread safe
-    synchronized(ISO_8601) {
-      return ISO_8601.format((Date) object);
-    }
+    String formatted = DateTimeFormats.formatDateTime((Date) object);
+    return formatted == null ? DATE_FORMATS.get(0).format((Date) object) : formatted;
   }
 
   @NotNull
@@ -128,15 +115,20 @@ public class DateTimeType extends AbstractValueType {
     if(string == null) {
       return nullValue();
     }
+    Date date = DateTimeFormats.parseDateTime(string);
+    if(date != null) {
+      return Factory.newValue(this, date);
+    }
+
     String dateToParse = string;
     if(string.endsWith("Z")) {
       // Java before 7 does not support the 'Zulu' timezone (Z). Replace it with a SimpleDateFormat-friendly timezone
       dateToParse = string.replaceFirst("Z$", "UTC");
     }
 
-    for(SimpleDateFormat format : dateFormats) {
+    for(int i = 0; i < DATE_FORMATS.size(); i++) {
       try {
-        return parseDate(format, dateToParse);
+        return parseDate(DATE_FORMATS.get(i), dateToParse);
       } catch(ParseException e) {
         // ignored
       }
@@ -146,10 +138,7 @@ public class DateTimeType extends AbstractValueType {
   }
 
   private Value parseDate(SimpleDateFormat format, String string) throws ParseException {
-    // DateFormat is not thread safe
-    synchronized(format) {
-      return Factory.newValue(this, format.parse(string));
-    }
+    return Factory.newValue(this, format.parse(string));
   }
 
   @NotNull
@@ -35,35 +35,24 @@ public class DateType extends AbstractValueType {
   private static WeakReference<DateType> instance;
 
   /**
-   * Preferred format.
+   * Supported date formats, the first one being the preferred one. The usual shapes are parsed by
+   * {@link DateTimeFormats}, these formats are tried one after the other for the other strings.
    */
-  private static final SimpleDateFormat ISO_8601 = new SimpleDateFormat("yyyy-MM-dd");
+  private static final String[] DATE_FORMAT_PATTERNS = { //
+      "yyyy-MM-dd", //
+      "yyyy/MM/dd", //
+      "yyyy.MM.dd", //
+      "yyyy MM dd", //
+      "dd-MM-yyyy", //
+      "dd/MM/yyyy", //
+      "dd.MM.yyyy", //
+      "dd MM yyyy" };
 
-  /**
-   * These are used to support common date formats.
-   */
-  private final SimpleDateFormat[] dateFormats = new SimpleDateFormat[] { //
-      ISO_8601, //
-      new SimpleDateFormat("yyyy/MM/dd"), //
-      new SimpleDateFormat("yyyy.MM.dd"), //
-      new SimpleDateFormat("yyyy MM dd"), //
-      new SimpleDateFormat("dd-MM-yyyy"), //
-      new SimpleDateFormat("dd/MM/yyyy"), //
-      new SimpleDateFormat("dd.MM.yyyy"), //
-      new SimpleDateFormat("dd MM yyyy") };
-
-  private String dateFormatPatterns = "";
+  private static final LegacyDateFormats DATE_FORMATS = new LegacyDateFormats(DATE_FORMAT_PATTERNS);
+
+  private final String dateFormatPatterns = DateTimeFormats.toString(DATE_FORMAT_PATTERNS);
 
   private DateType() {
-    // Force strict year parsing, otherwise 2 digits can be interpreted as a 4 digits year...
-    for(SimpleDateFormat format : dateFormats) {
-      format.setLenient(false);
-      if(dateFormatPatterns.isEmpty()) {
-        dateFormatPatterns = "'" + format.toPattern() + "'";
-      } else {
-        dateFormatPatterns += ", '" + format.toPattern() + "'";
-      }
-    }
   }
 
   @NotNull
@@ -113,10 +102,14 @@ public class DateType extends AbstractValueType {
     if(string == null) {
       return nullValue();
     }
+    MagmaDate date = DateTimeFormats.parseDate(string);
+    if(date != null) {
+      return Factory.newValue(this, date);
+    }
 
-    for(SimpleDateFormat format : dateFormats) {
+    for(int i = 0; i < DATE_FORMATS.size(); i++) {
       try {
-        return parseDate(format, string);
+        return parseDate(DATE_FORMATS.get(i), string);
       } catch(ParseException e) {
         // ignored
       }
@@ -126,10 +119,7 @@ public class DateType extends AbstractValueType {
   }
 
   private Value parseDate(SimpleDateFormat format, String string) throws ParseException {
-    // DateFormat is not thread safe
-    synchronized(format) {
-      return Factory.newValue(this, new MagmaDate(format.parse(string)));
-    }
+    return Factory.newValue(this, new MagmaDate(format.parse(string)));
   }
 
   @NotNull
@@ -179,9 +169,9 @@ public class DateType extends AbstractValueType {
   @Override
   protected String toString(Object object) {
     if(object != null) {
-      synchronized(ISO_8601) {
-        return ISO_8601.format(((MagmaDate) object).asDate());
-      }
+      MagmaDate date = (MagmaDate) object;
+      String formatted = DateTimeFormats.formatDate(date);
+      return formatted == null ? DATE_FORMATS.get(0).format(date.asDate()) : formatted;
     }
     return null;
   }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.type;
+
+import java.text.SimpleDateFormat;
+
+/**
+ * The non-lenient legacy formats of some patterns, that are not thread-safe: each thread has its own formats, created
+ * the first time they are used. Most strings are parsed by {@link DateTimeFormats} and never reach these formats, so a
+ * thread (a virtual thread in particular) does not create formats that it does not use.
+ */
+final class LegacyDateFormats {
+
+  private final String[] patterns;
+
+  private final ThreadLocal<SimpleDateFormat[]> formats;
+
+  LegacyDateFormats(String... patterns) {
+    this.patterns = patterns;
+    formats = ThreadLocal.withInitial(() -> new SimpleDateFormat[patterns.length]);
+  }
+
+  int size() {
+    return patterns.length;
+  }
+
+  /**
+   * Get the format of the pattern at the given index, for the current thread.
+   *
+   * @param index
+   * @return
+   */
+  SimpleDateFormat get(int index) {
+    SimpleDateFormat[] threadFormats = formats.get();
+    if(threadFormats[index] == null) {
+      threadFormats[index] = new SimpleDateFormat(patterns[index]);
+      // Force strict year parsing, otherwise 2 digits can be interpreted as a 4 digits year...
+      threadFormats[index].setLenient(false);
+    }
+    return threadFormats[index];
+  }
+
+}
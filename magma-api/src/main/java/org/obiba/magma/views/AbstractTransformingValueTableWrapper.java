@@ -91,14 +91,32 @@ public abstract class AbstractTransformingValueTableWrapper extends AbstractValu
 
   @Override
   public Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities) {
+    return mapValueSets(super.getValueSets(unmapEntities(entities)));
+  }
+
+  @Override
+  public Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities, Iterable<Variable> variables) {
+    List<Variable> wrappedVariables = Lists.newArrayList();
+    for (Variable variable : variables) {
+      wrappedVariables.add(getWrappedValueTable()
+          .getVariable(getVariableNameMappingFunction().unapply(variable.getName())));
+    }
+    return mapValueSets(super.getValueSets(unmapEntities(entities), wrappedVariables));
+  }
+
+  private List<VariableEntity> unmapEntities(Iterable<VariableEntity> entities) {
     List<VariableEntity> unmappedEntities = Lists.newArrayList();
     for (VariableEntity entity : entities) {
       VariableEntity unmapped = getVariableEntityMappingFunction().unapply(entity);
       if(unmapped == null) throw new NoSuchValueSetException(this, entity);
       unmappedEntities.add(unmapped);
     }
+    return unmappedEntities;
+  }
+
+  private List<ValueSet> mapValueSets(Iterable<ValueSet> wrappedValueSets) {
     List<ValueSet> valueSets = Lists.newArrayList();
-    for (ValueSet valueSet : super.getValueSets(unmappedEntities)) {
+    for (ValueSet valueSet : wrappedValueSets) {
       valueSets.add(getValueSetMappingFunction().apply(valueSet));
     }
     return valueSets;
@@ -13,6 +13,7 @@ package org.obiba.magma.views;
 import java.util.concurrent.ConcurrentMap;
 
 import org.obiba.magma.ValueSet;
+import org.obiba.magma.views.support.VariableCriterion;
 
 import com.google.common.collect.MapMaker;
 
@@ -46,4 +47,9 @@ class CachingWhereClause implements WhereClause {
     cache.put(valueSet, where);
     return where;
   }
+
+  @Override
+  public VariableCriterion getCriterion() {
+    return expensiveClause.getCriterion();
+  }
 }
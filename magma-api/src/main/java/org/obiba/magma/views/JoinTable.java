@@ -16,6 +16,8 @@ package org.obiba.magma.views;
 import com.google.common.collect.*;
 import org.obiba.magma.*;
 import org.obiba.magma.lang.VariableEntityList;
+import org.obiba.magma.lang.VariableEntitySet;
+import org.obiba.magma.support.ReadAheadValueSetIterator;
 import org.obiba.magma.support.UnionTimestamps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,6 +62,12 @@ public class JoinTable implements ValueTable, Initialisable {
 
   private transient int lastEntityCount = -1;
 
+  /**
+   * Entities of each outer table as of the last union of their entities, by table.
+   */
+  @Nullable
+  private transient volatile Map<ValueTable, OuterTableEntities> outerTableEntities;
+
   private transient boolean variableAnalysed = false;
 
   private transient int entityBatchSize = 0;
@@ -196,13 +204,42 @@ public class JoinTable implements ValueTable, Initialisable {
     if (getOuterTables().size() == 1)
       entities = getOuterTables().get(0).getVariableEntities();
     else {
-      entities = new VariableEntityList();
-      getOuterTables().forEach(table -> entities.addAll(table.getVariableEntities()));
+      // the entities of each table are kept as a set of the union, to be looked up when reading value sets
+      VariableEntityList union = new VariableEntityList();
+      Map<ValueTable, OuterTableEntities> tableEntities = new IdentityHashMap<>();
+      for (ValueTable table : getOuterTables()) {
+        Value lastUpdate = table.getTimestamps().getLastUpdate();
+        List<VariableEntity> outerEntities = table.getVariableEntities();
+        union.addAll(outerEntities);
+        // without last update, a table could change unnoticed
+        if (lastUpdate.isNull()) continue;
+        VariableEntitySet set = union.newSet();
+        outerEntities.forEach(set::add);
+        tableEntities.put(table, new OuterTableEntities(lastUpdate, set));
+      }
+      outerTableEntities = tableEntities;
+      // the union is not to be modified by the caller
+      entities = new VariableEntityList(union);
     }
     lastEntityCount = entities.size();
     return entities;
   }
 
+  /**
+   * Get the entities of an outer table, as of the last union of the entities of the outer tables, if the table has a
+   * last update that did not change since.
+   *
+   * @param table
+   * @return null if the entities of the table are not known
+   */
+  @Nullable
+  VariableEntitySet getOuterTableEntities(ValueTable table) {
+    Map<ValueTable, OuterTableEntities> entitiesByTable = outerTableEntities;
+    OuterTableEntities tableEntities = entitiesByTable == null ? null : entitiesByTable.get(table);
+    if (tableEntities == null || !tableEntities.lastUpdate.equals(table.getTimestamps().getLastUpdate())) return null;
+    return tableEntities.entities;
+  }
+
   @Override
   public Iterable<ValueSet> getValueSets() {
     return getValueSets(getVariableEntities());
@@ -210,7 +247,30 @@ public class JoinTable implements ValueTable, Initialisable {
 
   @Override
   public Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities) {
-    return () -> new ValueSetIterator(entities);
+    return () -> newValueSetIterator(entities, null);
+  }
+
+  @Override
+  public Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities, Iterable<Variable> variables) {
+    List<Variable> projection = ImmutableList.copyOf(variables);
+    return () -> newValueSetIterator(entities, projection);
+  }
+
+  /**
+   * Reads the value sets by batches, each batch querying the inner tables concurrently if enabled (see
+   * {@link JoinValueSetFetcher}), and the next batches being read ahead if enabled (see
+   * {@link ReadAheadValueSetIterator}).
+   *
+   * @param entities
+   * @param variables the variables whose values are to be read, null for all of them
+   * @return
+   */
+  private Iterator<ValueSet> newValueSetIterator(Iterable<VariableEntity> entities, @Nullable List<Variable> variables) {
+    int batchSize = getVariableEntityBatchSize();
+    int depth = ReadAheadValueSetIterator
+        .getReadAheadDepth(batchSize, variables == null ? getVariableCount() : variables.size());
+    return new ReadAheadValueSetIterator(entities, batchSize, depth,
+        batch -> new JoinValueSetBatch(this, batch, variables));
   }
 
   @Override
@@ -402,39 +462,15 @@ public class JoinTable implements ValueTable, Initialisable {
     return tables.stream().filter(table -> !innerTableReferences.contains(table.getTableReference())).collect(Collectors.toList());
   }
 
-  //
-  // Private classes
-  //
-
-  private class ValueSetIterator implements Iterator<ValueSet> {
+  private static class OuterTableEntities {
 
-    private final Iterator<List<VariableEntity>> partitions;
+    private final Value lastUpdate;
 
-    private Iterator<ValueSet> currentBatch;
-
-    public ValueSetIterator(Iterable<VariableEntity> entities) {
-      this.partitions = Iterables.partition(entities, getVariableEntityBatchSize()).iterator();
-    }
-
-    @Override
-    public boolean hasNext() {
-      synchronized (partitions) {
-        return partitions.hasNext() || (currentBatch != null && currentBatch.hasNext());
-      }
-    }
-
-    @Override
-    public ValueSet next() {
-      synchronized (partitions) {
-        if (currentBatch == null || !currentBatch.hasNext()) {
-          currentBatch = getValueSetsBatch(partitions.next()).getValueSets().iterator();
-        }
-        return currentBatch.next();
-      }
-    }
+    private final VariableEntitySet entities;
 
-    private ValueSetBatch getValueSetsBatch(final List<VariableEntity> entities) {
-      return new JoinValueSetBatch(JoinTable.this, entities);
+    private OuterTableEntities(Value lastUpdate, VariableEntitySet entities) {
+      this.lastUpdate = lastUpdate;
+      this.entities = entities;
     }
   }
 }
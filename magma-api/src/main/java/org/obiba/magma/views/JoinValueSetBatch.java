@@ -12,8 +12,10 @@ package org.obiba.magma.views;
 
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueSetBatch;
+import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 
+import jakarta.annotation.Nullable;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -24,17 +26,30 @@ public class JoinValueSetBatch implements ValueSetBatch {
 
   private final List<VariableEntity> entities;
 
+  @Nullable
+  private final List<Variable> variables;
+
   private final JoinValueSetFetcher fetcher;
 
   public JoinValueSetBatch(JoinTable joinTable, List<VariableEntity> entities) {
+    this(joinTable, entities, null);
+  }
+
+  /**
+   * @param joinTable
+   * @param entities
+   * @param variables the variables whose values are to be read, null for all of them
+   */
+  public JoinValueSetBatch(JoinTable joinTable, List<VariableEntity> entities, @Nullable List<Variable> variables) {
     this.joinTable = joinTable;
     this.entities = entities;
+    this.variables = variables;
     this.fetcher = new JoinValueSetFetcher(joinTable);
   }
 
   @Override
   public List<ValueSet> getValueSets() {
-    Map<String, List<ValueSet>> vsMap = fetcher.getInnerTableValueSets(entities);
+    Map<String, List<ValueSet>> vsMap = fetcher.getInnerTableValueSets(entities, variables);
     return entities.stream().map(e -> {
       JoinValueSet vs = new JoinValueSet(joinTable, e);
       vs.setInnerValueSets(vsMap.get(e.getIdentifier()));
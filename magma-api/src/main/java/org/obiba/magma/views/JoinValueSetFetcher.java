@@ -10,50 +10,189 @@
 
 package org.obiba.magma.views;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.MagmaParametersExtension;
+import org.obiba.magma.MagmaRuntimeException;
 import org.obiba.magma.ValueSet;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
+import org.obiba.magma.lang.VariableEntitySet;
 
+import jakarta.annotation.Nullable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
+/**
+ * Fetches the value sets of the inner tables of a {@link JoinTable}. The entities and the variables to be read from
+ * each inner table are resolved by the calling thread, then the batch queries of the inner tables are issued.
+ * <p>
+ * The queries can be issued concurrently, so that reading a batch takes as long as the slowest inner table instead of
+ * the sum of all of them. This is opt-in: the number of inner tables queried in the background is the
+ * {@link #JOIN_FETCH_CONCURRENCY_KEY} engine parameter (none by default). The background queries do not have the
+ * context bound to the calling thread (security subject, transaction-bound connection...), enable them only when the
+ * inner tables do not depend on it.
+ */
 public class JoinValueSetFetcher {
 
+  public static final String JOIN_FETCH_CONCURRENCY_KEY = "joinFetchConcurrency";
+
+  // platform threads, as a virtual thread is pinned to its carrier in the synchronized code of JDBC drivers; when they
+  // are all busy, the query is run by the calling thread so that nested join tables never wait for a thread
+  private static final ThreadPoolExecutor INNER_TABLES_EXECUTOR = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS,
+      new SynchronousQueue<>(), new ThreadFactoryBuilder().setNameFormat("magma-join-%d").setDaemon(true).build());
+
   private final JoinTable joinTable;
 
   public JoinValueSetFetcher(JoinTable joinTable) {
     this.joinTable = joinTable;
   }
 
-  synchronized List<ValueSet> getInnerTableValueSets(VariableEntity entity) {
+  List<ValueSet> getInnerTableValueSets(VariableEntity entity) {
     return joinTable.getTables().stream() //
         .map(valueTable -> valueTable.hasValueSet(entity) ? valueTable.getValueSet(entity) : new EmptyValueSet(valueTable, entity)) //
         .collect(Collectors.toList());
   }
 
-  synchronized Map<String, List<ValueSet>> getInnerTableValueSets(List<VariableEntity> entities) {
-    Map<String, List<ValueSet>> vsMap = Maps.newHashMap();
-    joinTable.getTables().forEach(valueTable -> {
-      // take advantage of batch query of each table
-      Map<String, ValueSet> tvs = StreamSupport.stream(valueTable.getValueSets(entities.stream() //
-          .filter(e -> valueTable.hasValueSet(e)) //
-          .collect(Collectors.toList())).spliterator(), false)
-          .collect(Collectors.toMap(valueSet -> valueSet.getVariableEntity().getIdentifier(), Function.identity()));
+  /**
+   * Get the value sets of each inner table, in the order of the tables.
+   *
+   * @param entities
+   * @param variables the variables whose values are to be read, null for all of them
+   * @return the inner value sets by entity identifier
+   */
+  Map<String, List<ValueSet>> getInnerTableValueSets(List<VariableEntity> entities, @Nullable List<Variable> variables) {
+    List<ValueTable> tables = joinTable.getTables();
+    // take advantage of batch query of each table
+    List<Supplier<Map<String, ValueSet>>> queries = tables.stream() //
+        .map(valueTable -> newValueSetsQuery(valueTable, entities, variables)) //
+        .collect(Collectors.toList());
+    List<Map<String, ValueSet>> tablesValueSets = fetchAll(queries);
 
-      // fill the holes with null value sets
-      entities.forEach(e -> {
-        ValueSet vs = tvs.containsKey(e.getIdentifier()) ? tvs.get(e.getIdentifier()) : new EmptyValueSet(valueTable, e);
-        if (!vsMap.containsKey(e.getIdentifier())) {
-          vsMap.put(e.getIdentifier(), Lists.newArrayList());
-        }
-        vsMap.get(e.getIdentifier()).add(vs);
-      });
+    // fill the holes with null value sets, in the order of the tables
+    Map<String, List<ValueSet>> vsMap = Maps.newHashMap();
+    entities.forEach(e -> {
+      List<ValueSet> valueSets = vsMap.computeIfAbsent(e.getIdentifier(), id -> Lists.newArrayListWithCapacity(tables.size()));
+      for (int i = 0; i < tables.size(); i++) {
+        ValueSet vs = tablesValueSets.get(i).get(e.getIdentifier());
+        valueSets.add(vs == null ? new EmptyValueSet(tables.get(i), e) : vs);
+      }
     });
     return vsMap;
   }
 
+  /**
+   * Resolve the entities and the variables of the inner table, the returned query only reads its value sets.
+   *
+   * @param valueTable
+   * @param entities
+   * @param variables
+   * @return
+   */
+  private Supplier<Map<String, ValueSet>> newValueSetsQuery(ValueTable valueTable, List<VariableEntity> entities,
+      @Nullable List<Variable> variables) {
+    VariableEntitySet outerTableEntities = joinTable.getOuterTableEntities(valueTable);
+    List<VariableEntity> tableEntities = entities.stream() //
+        .filter(outerTableEntities == null ? valueTable::hasValueSet : outerTableEntities::contains) //
+        .collect(Collectors.toList());
+    List<Variable> tableVariables = variables == null ? null : variables.stream() //
+        .filter(variable -> valueTable.hasVariable(variable.getName())) //
+        .collect(Collectors.toList());
+    return () -> {
+      Iterable<ValueSet> valueSets = tableVariables == null
+          ? valueTable.getValueSets(tableEntities)
+          : valueTable.getValueSets(tableEntities, tableVariables);
+      return StreamSupport.stream(valueSets.spliterator(), false)
+          .collect(Collectors.toMap(valueSet -> valueSet.getVariableEntity().getIdentifier(), Function.identity()));
+    };
+  }
+
+  /**
+   * Run the queries, the first one by the calling thread and the other ones in the background when enabled.
+   *
+   * @param queries
+   * @return the query results, in the order of the queries
+   */
+  private <T> List<T> fetchAll(List<Supplier<T>> queries) {
+    ThreadPoolExecutor executor = getExecutor();
+    if (executor == null || queries.size() == 1) {
+      return queries.stream().map(Supplier::get).collect(Collectors.toList());
+    }
+    // a null future means that the query is run by the calling thread
+    List<Future<T>> futures = Lists.newArrayListWithCapacity(queries.size());
+    try {
+      futures.add(null);
+      for (Supplier<T> query : queries.subList(1, queries.size())) {
+        futures.add(submit(executor, query));
+      }
+      List<T> results = Lists.newArrayListWithCapacity(queries.size());
+      for (int i = 0; i < queries.size(); i++) {
+        results.add(futures.get(i) == null ? queries.get(i).get() : futures.get(i).get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MagmaRuntimeException("Interrupted while fetching the value sets of " + joinTable.getName());
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new MagmaRuntimeException(e.getCause());
+    } finally {
+      // no-op when all are done, otherwise stop the pending fetches of a failed batch
+      futures.stream().filter(future -> future != null).forEach(future -> future.cancel(true));
+    }
+  }
+
+  @Nullable
+  private static <T> Future<T> submit(ThreadPoolExecutor executor, Supplier<T> query) {
+    try {
+      return executor.submit(query::get);
+    } catch (RejectedExecutionException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Get the executor of the background queries, sized from the engine parameters.
+   *
+   * @return null when the inner tables are to be queried by the calling thread only
+   */
+  @Nullable
+  private static ThreadPoolExecutor getExecutor() {
+    int concurrency = getConcurrency();
+    if (concurrency <= 0) return null;
+    synchronized (INNER_TABLES_EXECUTOR) {
+      if (INNER_TABLES_EXECUTOR.getMaximumPoolSize() != concurrency) {
+        INNER_TABLES_EXECUTOR.setMaximumPoolSize(concurrency);
+      }
+    }
+    return INNER_TABLES_EXECUTOR;
+  }
+
+  private static int getConcurrency() {
+    if (!MagmaEngine.isInstantiated() || !MagmaEngine.get().hasExtension(MagmaParametersExtension.class)) {
+      return 0;
+    }
+    MagmaParametersExtension paramsExt = MagmaEngine.get().getExtension(MagmaParametersExtension.class);
+    try {
+      Integer value = paramsExt.getParameterInteger(JOIN_FETCH_CONCURRENCY_KEY);
+      return value == null ? 0 : value;
+    } catch (Exception e) {
+      return 0;
+    }
+  }
+
 }
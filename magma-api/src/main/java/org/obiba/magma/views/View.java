@@ -255,12 +255,27 @@ public class View extends AbstractValueTableWrapper implements Initialisable, Di
 
   @Override
   public Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities) {
+    return mapValueSets(super.getValueSets(unmapEntities(entities)));
+  }
+
+  @Override
+  public Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities, Iterable<Variable> variables) {
+    // derived variables can read any of the variables of the wrapped table
+    if (isViewOfDerivedVariables()) return getValueSets(entities);
+    return mapValueSets(super.getValueSets(unmapEntities(entities), variables));
+  }
+
+  private List<VariableEntity> unmapEntities(Iterable<VariableEntity> entities) {
     List<VariableEntity> unmappedEntities = Collections.synchronizedList(Lists.newArrayList());
     StreamSupport.stream(entities.spliterator(), false) //
         .forEach(entity -> unmappedEntities.add(getVariableEntityMappingFunction().unapply(entity)));
+    return unmappedEntities;
+  }
+
+  private Iterable<ValueSet> mapValueSets(Iterable<ValueSet> wrappedValueSets) {
     // do not use Guava functional stuff to avoid multiple iterations over valueSets
     List<ValueSet> valueSets = Collections.synchronizedList(Lists.newArrayList());
-    StreamSupport.stream(super.getValueSets(unmappedEntities).spliterator(), false) //
+    StreamSupport.stream(wrappedValueSets.spliterator(), false) //
         .forEach(valueSet -> {
           // replacing each ValueSet with one that points at the current View
           valueSet = getValueSetMappingFunction().apply(valueSet);
@@ -7,8 +7,13 @@ import org.obiba.magma.support.VariableEntitiesCache;
 import org.obiba.magma.transform.BijectiveFunctions;
 import org.obiba.magma.views.support.AllClause;
 import org.obiba.magma.views.support.NoneClause;
+import org.obiba.magma.views.support.VariableCriterion;
+import org.obiba.magma.views.support.VariableCriterionSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.cache.Cache;
 
+import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.NotNull;
 import java.util.Date;
 import java.util.List;
@@ -17,6 +22,8 @@ import java.util.stream.Collectors;
 
 class ViewVariableEntityProvider implements PagingVariableEntityProvider {
 
+  private static final Logger log = LoggerFactory.getLogger(ViewVariableEntityProvider.class);
+
   private final View view;
 
   private VariableEntityList defaultEntities;
@@ -65,7 +72,7 @@ class ViewVariableEntityProvider implements PagingVariableEntityProvider {
     MagmaStoreExtension.VariableEntityStore store = getVariableEntityStore();
     if (store != null) return store.hasVariableEntity(view, entity);
     VariableEntitiesCache cache = getVariableEntitiesCache();
-    if (cache != null) return cache.getEntities().contains(entity);
+    if (cache != null) return cache.hasEntity(entity);
     return getDefaultVariableEntities().contains(entity);
   }
 
@@ -106,34 +113,39 @@ class ViewVariableEntityProvider implements PagingVariableEntityProvider {
     if (MagmaEngine.get().hasExtension(MagmaCacheExtension.class)) {
       MagmaCacheExtension cacheExtension = MagmaEngine.get().getExtension(MagmaCacheExtension.class);
       if (cacheExtension.hasVariableEntitiesCache()) {
-        Cache.ValueWrapper wrapper = null;
+        VariableEntitiesCache eCache = null;
         try {
-          wrapper = cacheExtension.getVariableEntitiesCache().get(getTableCacheKey());
+          Cache.ValueWrapper wrapper = cacheExtension.getVariableEntitiesCache().get(getTableCacheKey(view));
+          if (wrapper != null) eCache = (VariableEntitiesCache) wrapper.get();
         } catch (Exception e) {
           // ignore, cache content is wrong
         }
         Value viewLastUpdate = view.getTimestamps().getLastUpdate();
-        VariableEntitiesCache eCache;
-        if (wrapper != null) {
-          eCache = (VariableEntitiesCache) wrapper.get();
-          if (eCache.isUpToDate(viewLastUpdate)) return eCache;
-        }
+        if (eCache != null && eCache.isUpToDate(viewLastUpdate)) return eCache;
         eCache = new VariableEntitiesCache(loadVariableEntities(), viewLastUpdate);
-        cacheExtension.getVariableEntitiesCache().put(getTableCacheKey(), eCache);
+        cacheExtension.getVariableEntitiesCache().put(getTableCacheKey(view), eCache);
         return eCache;
       }
     }
     return null;
   }
 
-  private String getTableCacheKey() {
-    return view.getTableReference() + ";class=" + view.getClass().getName();
+  /**
+   * Key of the cached entities of a view. It includes the version of the serial form of {@link VariableEntitiesCache},
+   * so that the entries written by a previous version are not read.
+   *
+   * @param view
+   * @return
+   */
+  static String getTableCacheKey(ValueTable view) {
+    return view.getTableReference() + ";class=" + view.getClass().getName() + ";version="
+        + VariableEntitiesCache.SERIAL_FORM_VERSION;
   }
 
   private List<VariableEntity> getDefaultVariableEntities() {
     synchronized (this) {
       if (defaultEntities == null || !isCacheUpToDate()) {
-        defaultEntities = new VariableEntityList(loadVariableEntities());
+        defaultEntities = loadVariableEntities();
         timestamp = new Date().getTime();
       }
     }
@@ -157,21 +169,37 @@ class ViewVariableEntityProvider implements PagingVariableEntityProvider {
     return true;
   }
 
-  List<VariableEntity> loadVariableEntities() {
-    List<VariableEntity> entities = new VariableEntityList();
+  VariableEntityList loadVariableEntities() {
+    VariableEntityList entities = new VariableEntityList();
     if (view.hasVariables() && !(view.getWhereClause() instanceof NoneClause)) {
-      entities = view.getWrappedValueTable().getVariableEntities().stream()
+      List<VariableEntity> selected = loadSelectedVariableEntities();
+      entities = (selected == null ? view.getWrappedValueTable().getVariableEntities() : selected).stream()
           .filter(entity -> {
-            if (view.getWhereClause() instanceof AllClause)
+            if (selected != null || view.getWhereClause() instanceof AllClause)
               return true;
             ValueSet valueSet = view.getWrappedValueTable().getValueSet(entity);
             return view.getWhereClause().where(valueSet, view);
           })
           .map(e -> view.getVariableEntityMappingFunction().apply(e))
           .filter(Objects::nonNull) // can happen depending of mapping strategy
-          .collect(Collectors.toList());
+          .collect(Collectors.toCollection(VariableEntityList::new));
     }
     return entities;
   }
 
+  /**
+   * Let the wrapped table select the entities when the where clause can be expressed as a criterion that it supports.
+   *
+   * @return null if the where clause has to be evaluated on each value set
+   */
+  @Nullable
+  private List<VariableEntity> loadSelectedVariableEntities() {
+    if (!(view.getWrappedValueTable() instanceof VariableCriterionSupport)) return null;
+    VariableCriterion criterion = view.getWhereClause().getCriterion();
+    if (criterion == null) return null;
+    List<VariableEntity> selected = ((VariableCriterionSupport) view.getWrappedValueTable()).getVariableEntities(criterion);
+    if (selected != null) log.debug("Entities of view {} selected by {}", view.getName(), criterion);
+    return selected;
+  }
+
 }
@@ -11,6 +11,9 @@
 package org.obiba.magma.views;
 
 import org.obiba.magma.ValueSet;
+import org.obiba.magma.views.support.VariableCriterion;
+
+import jakarta.annotation.Nullable;
 
 /**
  * Interface for abstracting how {@link ValueSet} instances are selected.
@@ -32,4 +35,15 @@ public interface WhereClause {
    * @return
    */
   boolean where(ValueSet valueSet, View view);
+
+  /**
+   * The equivalent criterion on the variables of the table the value sets are from, when there is one, so that the
+   * selected entities can be queried natively, see {@link org.obiba.magma.views.support.VariableCriterionSupport}.
+   *
+   * @return null when this clause cannot be expressed as a criterion
+   */
+  @Nullable
+  default VariableCriterion getCriterion() {
+    return null;
+  }
 }
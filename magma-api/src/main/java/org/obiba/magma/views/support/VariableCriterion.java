@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.views.support;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueType;
+import org.obiba.magma.Variable;
+import org.obiba.magma.type.BooleanType;
+import org.obiba.magma.type.TextType;
+
+import jakarta.annotation.Nullable;
+import jakarta.validation.constraints.NotNull;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A boolean combination of tests on the values of the variables of a value set, that a table can evaluate natively
+ * (typically with a database query) instead of evaluating a {@link org.obiba.magma.views.WhereClause} on each value set.
+ * <p>
+ * The tests follow the semantic of the javascript methods they are translated from: a comparison with a null value is
+ * null, whereas a null value is not in any list of values. The combinations are ternary.
+ */
+public final class VariableCriterion {
+
+  public enum Operator {
+    AND, OR, NOT,
+    // the value is null
+    IS_NULL,
+    // the value is equal to one of the literals
+    IN,
+    // the value compared to the literal, numeric values only
+    LT, LE, GT, GE
+  }
+
+  @NotNull
+  private final Operator operator;
+
+  @NotNull
+  private final List<VariableCriterion> operands;
+
+  @Nullable
+  private final String variableName;
+
+  @NotNull
+  private final List<Object> literals;
+
+  private VariableCriterion(@NotNull Operator operator, @NotNull List<VariableCriterion> operands,
+      @Nullable String variableName, @NotNull List<Object> literals) {
+    this.operator = operator;
+    this.operands = operands;
+    this.variableName = variableName;
+    this.literals = literals;
+  }
+
+  public static VariableCriterion and(List<VariableCriterion> operands) {
+    Preconditions.checkArgument(!operands.isEmpty(), "operands cannot be empty");
+    return operands.size() == 1 ? operands.get(0) : new VariableCriterion(Operator.AND, ImmutableList.copyOf(operands), null, ImmutableList.of());
+  }
+
+  public static VariableCriterion or(List<VariableCriterion> operands) {
+    Preconditions.checkArgument(!operands.isEmpty(), "operands cannot be empty");
+    return operands.size() == 1 ? operands.get(0) : new VariableCriterion(Operator.OR, ImmutableList.copyOf(operands), null, ImmutableList.of());
+  }
+
+  public static VariableCriterion not(VariableCriterion operand) {
+    return new VariableCriterion(Operator.NOT, ImmutableList.of(operand), null, ImmutableList.of());
+  }
+
+  public static VariableCriterion isNull(String variableName) {
+    return new VariableCriterion(Operator.IS_NULL, ImmutableList.of(), variableName, ImmutableList.of());
+  }
+
+  /**
+   * @param variableName
+   * @param literals strings, numbers or booleans
+   * @return
+   */
+  public static VariableCriterion in(String variableName, List<?> literals) {
+    Preconditions.checkArgument(!literals.isEmpty(), "literals cannot be empty");
+    return new VariableCriterion(Operator.IN, ImmutableList.of(), variableName, ImmutableList.copyOf(literals));
+  }
+
+  /**
+   * @param operator one of the comparison operators
+   * @param variableName
+   * @param literal
+   * @return
+   */
+  public static VariableCriterion compare(Operator operator, String variableName, Number literal) {
+    Preconditions.checkArgument(isComparison(operator), "not a comparison operator: " + operator);
+    return new VariableCriterion(operator, ImmutableList.of(), variableName, ImmutableList.of(literal));
+  }
+
+  public static boolean isComparison(Operator operator) {
+    return operator == Operator.LT || operator == Operator.LE || operator == Operator.GT || operator == Operator.GE;
+  }
+
+  /**
+   * Whether the values of the variable can be tested natively: single values of a numeric, text or boolean type.
+   *
+   * @param variable
+   * @return
+   */
+  public static boolean isSupported(Variable variable) {
+    ValueType type = variable.getValueType();
+    return !variable.isRepeatable() &&
+        (type.isNumeric() || TextType.get().equals(type) || BooleanType.get().equals(type));
+  }
+
+  /**
+   * Convert a literal into a value of the variable's type, the same way the javascript methods do.
+   *
+   * @param variable
+   * @param literal
+   * @return null if the literal does not apply to the variable's type
+   */
+  @Nullable
+  public static Value valueOf(Variable variable, Object literal) {
+    ValueType type = variable.getValueType();
+    // text values are not compared with numbers, as numbers are not formatted the same way in javascript
+    if (TextType.get().equals(type) && !(literal instanceof String)) return null;
+    try {
+      Value value = type.valueOf(literal);
+      return value.isNull() ? null : value;
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  @NotNull
+  public Operator getOperator() {
+    return operator;
+  }
+
+  /**
+   * The operands of {@link Operator#AND}, {@link Operator#OR} and {@link Operator#NOT}.
+   *
+   * @return
+   */
+  @NotNull
+  public List<VariableCriterion> getOperands() {
+    return operands;
+  }
+
+  /**
+   * The name of the tested variable, null for the combinations.
+   *
+   * @return
+   */
+  @Nullable
+  public String getVariableName() {
+    return variableName;
+  }
+
+  @NotNull
+  public List<Object> getLiterals() {
+    return literals;
+  }
+
+  public Object getLiteral() {
+    return literals.get(0);
+  }
+
+  /**
+   * Get the names of all the tested variables.
+   *
+   * @return
+   */
+  public Set<String> getVariableNames() {
+    ImmutableSet.Builder<String> names = ImmutableSet.builder();
+    collectVariableNames(names);
+    return names.build();
+  }
+
+  private void collectVariableNames(ImmutableSet.Builder<String> names) {
+    if (variableName != null) names.add(variableName);
+    operands.forEach(operand -> operand.collectVariableNames(names));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    VariableCriterion that = (VariableCriterion) o;
+    return operator == that.operator && operands.equals(that.operands) &&
+        Objects.equals(variableName, that.variableName) && literals.equals(that.literals);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(operator, operands, variableName, literals);
+  }
+
+  @Override
+  public String toString() {
+    switch (operator) {
+      case AND:
+      case OR:
+        return "(" + Joiner.on(" " + operator + " ").join(operands) + ")";
+      case NOT:
+        return "NOT " + operands.get(0);
+      case IS_NULL:
+        return variableName + " IS NULL";
+      case IN:
+        return variableName + " IN (" + Joiner.on(", ").join(literals) + ")";
+      default:
+        return variableName + " " + operator + " " + getLiteral();
+    }
+  }
+}
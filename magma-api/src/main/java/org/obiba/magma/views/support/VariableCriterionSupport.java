@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.views.support;
+
+import org.obiba.magma.VariableEntity;
+
+import jakarta.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Implemented by the tables that can select the entities matching a {@link VariableCriterion} natively, typically with
+ * a single database query.
+ */
+public interface VariableCriterionSupport {
+
+  /**
+   * Get the entities which value set matches the criterion, in the same order as the table's entities.
+   *
+   * @param criterion
+   * @return the matching entities, or null when the criterion cannot be evaluated natively (unknown variable,
+   * unsupported value type...)
+   */
+  @Nullable
+  List<VariableEntity> getVariableEntities(VariableCriterion criterion);
+
+}
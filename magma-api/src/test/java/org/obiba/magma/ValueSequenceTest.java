@@ -9,13 +9,21 @@
  */
 package org.obiba.magma;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Comparator;
+import java.util.List;
 
 import org.junit.Test;
 import org.obiba.magma.support.Values;
+import org.obiba.magma.type.DecimalType;
+import org.obiba.magma.type.IntegerType;
 import org.obiba.magma.type.TextType;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -87,6 +95,54 @@ public class ValueSequenceTest extends AbstractValueTest {
     assertThat(value.contains(TextType.get().valueOf("CBa"))).isFalse();
   }
 
+  @Test
+  public void test_sequenceOf_copiesElements() {
+    List<Value> values = Lists.newArrayList(Values.asValues(TextType.get(), "C", "B"));
+    ValueSequence value = TextType.get().sequenceOf(values);
+    values.add(TextType.get().valueOf("a"));
+
+    assertThat(value.getSize()).isEqualTo(2);
+    assertThat(value.getValues() == value.getValues()).isTrue();
+  }
+
+  @Test
+  public void test_subset() {
+    ValueSequence subset = testValue().subset(1, 3);
+    assertThat(subset.getValues()).containsExactly(TextType.get().valueOf("B"), TextType.get().valueOf("a"));
+    assertThat(subset.subset(1, 2).get(0)).isEqualTo(TextType.get().valueOf("a"));
+    assertThat(subset.indexOf(TextType.get().valueOf("a"))).isEqualTo(1);
+  }
+
+  @Test
+  public void test_filter() {
+    ValueSequence filtered = testValue().filter((value, index) -> index != 1);
+    assertThat(filtered.getValues()).containsExactly(TextType.get().valueOf("C"), TextType.get().valueOf("a"));
+    assertThat(filtered.subset(1, 2).get(0)).isEqualTo(TextType.get().valueOf("a"));
+    assertThat(filtered.filter((value, index) -> index == 0).getValues())
+        .containsExactly(TextType.get().valueOf("C"));
+  }
+
+  @Test
+  public void test_toDoubleArray_skipsNullElements() {
+    ValueSequence value = IntegerType.get()
+        .sequenceOf(ImmutableList.of(IntegerType.get().valueOf(2), IntegerType.get().nullValue(),
+            IntegerType.get().valueOf(-1)));
+    assertThat(value.toDoubleArray()).isEqualTo(new double[] { 2, -1 });
+    assertThat(DecimalType.get().nullSequence().toDoubleArray()).isEmpty();
+  }
+
+  @Test
+  public void test_serialization_ofSubset() throws Exception {
+    ValueSequence subset = testValue().subset(1, 3);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(subset);
+    }
+    try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      assertThat(in.readObject()).isEqualTo(subset);
+    }
+  }
+
   @Override
   protected ValueSequence testValue() {
     return TextType.get().sequenceOf(testObject());
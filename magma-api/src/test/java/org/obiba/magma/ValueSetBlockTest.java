@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.obiba.magma.ValueTableWriter.ValueSetWriter;
+import org.obiba.magma.support.VariableEntityBean;
+import org.obiba.magma.type.IntegerType;
+import org.obiba.magma.type.TextType;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ValueSetBlockTest extends MagmaTest {
+
+  private final Variable name = Variable.Builder.newVariable("NAME", TextType.get(), "Participant").build();
+
+  private final Variable age = Variable.Builder.newVariable("AGE", IntegerType.get(), "Participant").build();
+
+  @Test
+  public void test_add() {
+    ValueSetBlock block = new ValueSetBlock(ImmutableList.of(name, age), 2);
+    VariableEntity first = new VariableEntityBean("Participant", "1");
+    block.add(first, TextType.get().valueOf("Jane"), IntegerType.get().valueOf(32));
+    int row = block.add(new VariableEntityBean("Participant", "2"));
+    block.setValue(row, 1, IntegerType.get().nullValue());
+
+    assertThat(block.size()).isEqualTo(2);
+    assertThat(block.isFull()).isTrue();
+    assertThat(block.getEntity(0)).isEqualTo(first);
+    assertThat(block.getValue(0, 1)).isEqualTo(IntegerType.get().valueOf(32));
+    assertThat(block.getValue(1, 0)).isNull();
+    assertThat(block.getValue(1, 1).isNull()).isTrue();
+
+    block.clear();
+    assertThat(block.isEmpty()).isTrue();
+    block.add(first);
+    assertThat(block.getValue(0, 0)).isNull();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void test_add_beyondCapacity() {
+    ValueSetBlock block = new ValueSetBlock(ImmutableList.of(name), 1);
+    block.add(new VariableEntityBean("Participant", "1"));
+    block.add(new VariableEntityBean("Participant", "2"));
+  }
+
+  @Test
+  public void test_writeValueSets_defaultsToValueSetWriters() {
+    ValueTableWriter tableWriter = mock(ValueTableWriter.class, CALLS_REAL_METHODS);
+    ValueSetWriter first = mock(ValueSetWriter.class);
+    ValueSetWriter second = mock(ValueSetWriter.class);
+    VariableEntity firstEntity = new VariableEntityBean("Participant", "1");
+    VariableEntity secondEntity = new VariableEntityBean("Participant", "2");
+    when(tableWriter.writeValueSet(firstEntity)).thenReturn(first);
+    when(tableWriter.writeValueSet(secondEntity)).thenReturn(second);
+
+    ValueSetBlock block = new ValueSetBlock(ImmutableList.of(name, age), 10);
+    block.add(firstEntity, TextType.get().valueOf("Jane"), IntegerType.get().valueOf(32));
+    block.add(secondEntity, null, IntegerType.get().valueOf(45));
+    tableWriter.writeValueSets(block);
+
+    verify(first).writeValue(name, TextType.get().valueOf("Jane"));
+    verify(first).writeValue(age, IntegerType.get().valueOf(32));
+    verify(second, never()).writeValue(eq(name), any());
+    verify(second).writeValue(age, IntegerType.get().valueOf(45));
+    InOrder order = inOrder(first, second);
+    order.verify(first).close();
+    order.verify(second).close();
+  }
+}
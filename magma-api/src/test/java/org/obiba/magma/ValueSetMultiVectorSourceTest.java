@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
+import org.obiba.magma.type.IntegerType;
+import org.obiba.magma.type.TextType;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ValueSetMultiVectorSourceTest extends MagmaTest {
+
+  @Test
+  public void test_getValues_oneRowPerEntityInVariablesOrder() {
+    StaticDatasource datasource = new StaticDatasource("ds");
+    StaticValueTable table = new StaticValueTable(datasource, "table", ImmutableList.of("1", "2", "3"));
+    table.addVariables(IntegerType.get(), "INT");
+    table.addVariables(TextType.get(), "TXT");
+    table.addValues("1", "INT", 1, "TXT", "one");
+    table.addValues("2", "INT", 2, "TXT", "two");
+    table.addValues("3", "INT", 3, "TXT", null);
+    datasource.addValueTable(table);
+
+    MultiVectorSource source = table
+        .getMultiVectorSource(ImmutableList.of(table.getVariable("TXT"), table.getVariable("INT")));
+    List<VariableEntity> entities = Lists.reverse(table.getVariableEntities());
+    List<Value[]> rows = Lists.newArrayList(source.getValues(entities));
+
+    assertThat(source.getVariables()).containsExactly(table.getVariable("TXT"), table.getVariable("INT"));
+    assertThat(rows).hasSize(3);
+    assertThat(rows.get(0)[0]).isEqualTo(TextType.get().nullValue());
+    assertThat(rows.get(0)[1]).isEqualTo(IntegerType.get().valueOf(3));
+    assertThat(rows.get(2)[0]).isEqualTo(TextType.get().valueOf("one"));
+    assertThat(rows.get(2)[1]).isEqualTo(IntegerType.get().valueOf(1));
+  }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.concurrent;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.obiba.magma.MagmaRuntimeException;
+import org.obiba.magma.MagmaTest;
+import org.obiba.magma.Value;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
+import org.obiba.magma.type.IntegerType;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+
+public class ConcurrentValueTableReaderTest extends MagmaTest {
+
+  @Test
+  public void test_read_allEntitiesAreReadOnce() {
+    StaticValueTable table = createTable(1234);
+    RecordingCallback callback = new RecordingCallback();
+
+    ConcurrentValueTableReader.Builder.newReader().withReaders(4).withBufferSize(10).from(table).to(callback).build()
+        .read();
+
+    assertThat(callback.completed).isTrue();
+    assertThat(callback.values).hasSize(1234);
+    for(Map.Entry<String, Value> entry : callback.values.entrySet()) {
+      assertThat(entry.getValue()).isEqualTo(IntegerType.get().valueOf(Integer.parseInt(entry.getKey())));
+    }
+  }
+
+  @Test
+  public void test_read_withVirtualThreads() {
+    StaticValueTable table = createTable(1234);
+    RecordingCallback callback = new RecordingCallback();
+
+    ConcurrentValueTableReader.Builder.newReader().withVirtualThreads(5).from(table).to(callback).build().read();
+
+    assertThat(callback.completed).isTrue();
+    assertThat(callback.values).hasSize(1234);
+  }
+
+  @Test
+  public void test_read_withVirtualThreads_readerErrorIsPropagated() {
+    StaticValueTable table = createTable(500);
+    table.addValues("250", "VAR", "not an integer");
+
+    try {
+      ConcurrentValueTableReader.Builder.newReader().withVirtualThreads().from(table).to(new RecordingCallback())
+          .build().read();
+      fail("Read error expected");
+    } catch(MagmaRuntimeException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void test_read_emptyTable() {
+    StaticValueTable table = createTable(0);
+    RecordingCallback callback = new RecordingCallback();
+
+    ConcurrentValueTableReader.Builder.newReader().from(table).to(callback).build().read();
+
+    assertThat(callback.completed).isTrue();
+    assertThat(callback.values).isEmpty();
+  }
+
+  @Test
+  public void test_read_readerErrorIsPropagated() {
+    StaticValueTable table = createTable(500);
+    table.addValues("250", "VAR", "not an integer");
+
+    try {
+      ConcurrentValueTableReader.Builder.newReader().withReaders(3).from(table).to(new RecordingCallback()).build()
+          .read();
+      fail("Read error expected");
+    } catch(MagmaRuntimeException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void test_read_ignoreReadErrors() {
+    StaticValueTable table = createTable(500);
+    table.addValues("250", "VAR", "not an integer");
+    RecordingCallback callback = new RecordingCallback();
+
+    ConcurrentValueTableReader.Builder.newReader().withReaders(3).ignoreReadErrors().from(table).to(callback).build()
+        .read();
+
+    assertThat(callback.values).hasSize(500);
+    assertThat(callback.values.get("250").isNull()).isTrue();
+  }
+
+  private StaticValueTable createTable(int entityCount) {
+    List<String> identifiers = Lists.newArrayList();
+    for(int i = 0; i < entityCount; i++) {
+      identifiers.add(String.valueOf(i));
+    }
+    StaticDatasource datasource = new StaticDatasource("ds");
+    StaticValueTable table = new StaticValueTable(datasource, "table", identifiers);
+    table.addVariables(IntegerType.get(), "VAR");
+    for(String identifier : identifiers) {
+      table.addValues(identifier, "VAR", Integer.parseInt(identifier));
+    }
+    datasource.addValueTable(table);
+    return table;
+  }
+
+  private static class RecordingCallback implements ConcurrentValueTableReader.ConcurrentReaderCallback {
+
+    private final Map<String, Value> values = Maps.newHashMap();
+
+    private boolean completed = false;
+
+    @Override
+    public void onBegin(List<VariableEntity> entities, Variable... variables) {
+    }
+
+    @Override
+    public void onValues(VariableEntity entity, Variable[] variables, Value... values) {
+      assertThat(this.values.put(entity.getIdentifier(), values[0])).isNull();
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.lang;
+
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class CompressedBitmapTest {
+
+  @Test
+  public void test_add_contains_remove() {
+    CompressedBitmap bitmap = new CompressedBitmap();
+    assertThat(bitmap.isEmpty()).isTrue();
+    assertThat(bitmap.add(3)).isTrue();
+    assertThat(bitmap.add(3)).isFalse();
+    assertThat(bitmap.add(70000)).isTrue();
+    assertThat(bitmap.contains(3)).isTrue();
+    assertThat(bitmap.contains(4)).isFalse();
+    assertThat(bitmap.contains(-1)).isFalse();
+    assertThat(bitmap.getCardinality()).isEqualTo(2);
+    assertThat(bitmap.remove(3)).isTrue();
+    assertThat(bitmap.remove(3)).isFalse();
+    assertThat(bitmap.toString()).isEqualTo("{70000}");
+  }
+
+  @Test
+  public void test_denseAndSparse_sameAsTreeSet() {
+    Random random = new Random(1);
+    CompressedBitmap bitmap = new CompressedBitmap();
+    TreeSet<Integer> expected = new TreeSet<>();
+    // a dense range (bitmap containers) and sparse values (array containers)
+    for (int i = 0; i < 100000; i++) {
+      int value = i % 2 == 0 ? random.nextInt(150000) : random.nextInt(Integer.MAX_VALUE);
+      assertThat(bitmap.add(value)).isEqualTo(expected.add(value));
+    }
+    for (int i = 0; i < 20000; i++) {
+      int value = random.nextInt(150000);
+      assertThat(bitmap.remove(value)).isEqualTo(expected.remove(value));
+    }
+    assertBitmap(bitmap, expected);
+    assertThat(bitmap.select(expected.size() - 1)).isEqualTo(expected.last());
+  }
+
+  @Test
+  public void test_denseValues_aboutOneBitEach() {
+    CompressedBitmap bitmap = new CompressedBitmap();
+    for (int i = 0; i < 1000000; i++) {
+      bitmap.add(i);
+    }
+    assertThat(bitmap.getCardinality()).isEqualTo(1000000);
+    // 16 bitmaps of 8kB, instead of 4MB for an array of ints
+    assertThat(bitmap.getSizeInBytes()).isLessThan(16 * 8192 + 1000);
+    assertThat(bitmap.select(765432)).isEqualTo(765432);
+  }
+
+  @Test
+  public void test_setOperations_sameAsSets() {
+    Random random = new Random(2);
+    CompressedBitmap left = new CompressedBitmap();
+    CompressedBitmap right = new CompressedBitmap();
+    TreeSet<Integer> leftSet = new TreeSet<>();
+    TreeSet<Integer> rightSet = new TreeSet<>();
+    for (int i = 0; i < 50000; i++) {
+      int value = random.nextInt(200000);
+      left.add(value);
+      leftSet.add(value);
+      // right is dense in the first containers, sparse in the others
+      value = i < 40000 ? random.nextInt(65536) : random.nextInt(1000000);
+      right.add(value);
+      rightSet.add(value);
+    }
+
+    assertBitmap(CompressedBitmap.or(left, right), new TreeSet<>(Sets.union(leftSet, rightSet)));
+    assertBitmap(CompressedBitmap.and(left, right), new TreeSet<>(Sets.intersection(leftSet, rightSet)));
+    assertBitmap(CompressedBitmap.andNot(left, right), new TreeSet<>(Sets.difference(leftSet, rightSet)));
+    assertBitmap(CompressedBitmap.andNot(right, left), new TreeSet<>(Sets.difference(rightSet, leftSet)));
+    // operands are unchanged
+    assertBitmap(left, leftSet);
+    assertThat(CompressedBitmap.or(left, right)).isEqualTo(CompressedBitmap.or(right, left));
+  }
+
+  private void assertBitmap(CompressedBitmap bitmap, TreeSet<Integer> expected) {
+    assertThat(bitmap.getCardinality()).isEqualTo(expected.size());
+    List<Integer> values = Lists.newArrayList();
+    bitmap.iterator().forEachRemaining((int value) -> values.add(value));
+    assertThat(values).isEqualTo(Lists.newArrayList(expected));
+    List<Integer> visited = Lists.newArrayList();
+    bitmap.forEach(visited::add);
+    assertThat(visited).isEqualTo(values);
+    for (int value : expected) {
+      assertThat(bitmap.contains(value)).isTrue();
+    }
+  }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.lang;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+import org.obiba.magma.MagmaTest;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.support.VariableEntityBean;
+
+import com.google.common.collect.Lists;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class VariableEntitySetTest extends MagmaTest {
+
+  @Test
+  public void test_setOperations() {
+    VariableEntityList list = new VariableEntityList(entities("1", "2", "3", "4"));
+    VariableEntitySet left = set(list, "1", "2", "3");
+    VariableEntitySet right = set(list, "3", "4");
+
+    assertThat(identifiers(left.union(right))).containsExactly("1", "2", "3", "4");
+    assertThat(identifiers(left.intersection(right))).containsExactly("3");
+    assertThat(identifiers(left.difference(right))).containsExactly("1", "2");
+    assertThat(left.contains(new VariableEntityBean("Participant", "2"))).isTrue();
+    assertThat(left.contains(new VariableEntityBean("Participant", "4"))).isFalse();
+    assertThat(left.contains(new VariableEntityBean("Instrument", "2"))).isFalse();
+    assertThat(identifiers(list.toSet())).containsExactly("1", "2", "3", "4");
+  }
+
+  @Test
+  public void test_set_entitiesAddedToList() {
+    VariableEntityList list = new VariableEntityList(entities("1", "2"));
+    VariableEntitySet set = set(list, "2");
+    list.add(new VariableEntityBean("Participant", "3"));
+    set.add(new VariableEntityBean("Participant", "3"));
+
+    assertThat(identifiers(set)).containsExactly("2", "3");
+  }
+
+  @Test
+  public void test_set_entitiesRemovedFromList() {
+    VariableEntityList list = new VariableEntityList(entities("1", "2", "3"));
+    VariableEntitySet set = set(list, "1", "3");
+    list.remove(new VariableEntityBean("Participant", "1"));
+
+    // the list is re-encoded, the set keeps the previous codes
+    assertThat(identifiers(set)).containsExactly("1", "3");
+    assertThat(identifiers(list)).containsExactly("2", "3");
+    assertThat(list.indexOf(new VariableEntityBean("Participant", "3"))).isEqualTo(1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_add_notInList() {
+    new VariableEntityList(entities("1")).newSet().add(new VariableEntityBean("Participant", "2"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_union_otherList() {
+    set(new VariableEntityList(entities("1")), "1").union(set(new VariableEntityList(entities("1")), "1"));
+  }
+
+  @Test
+  public void test_variableEntityList_entityTypes() {
+    VariableEntityList list = new VariableEntityList(entities("1", "2"));
+    list.add(new VariableEntityBean("Instrument", "1"));
+
+    assertThat(list).hasSize(3);
+    assertThat(list.get(2)).isEqualTo(new VariableEntityBean("Instrument", "1"));
+    assertThat(list.get(0)).isEqualTo(new VariableEntityBean("Participant", "1"));
+    assertThat(list.contains(new VariableEntityBean("Instrument", "2"))).isFalse();
+  }
+
+  @Test
+  public void test_variableEntityList_sort() {
+    VariableEntityList list = new VariableEntityList(entities("3", "1", "2"));
+    list.sort(Comparator.comparing(VariableEntity::getIdentifier));
+
+    assertThat(identifiers(list)).containsExactly("1", "2", "3");
+    assertThat(list.indexOf(new VariableEntityBean("Participant", "3"))).isEqualTo(2);
+  }
+
+  @Test
+  public void test_variableEntityList_uniqueInOrder() {
+    VariableEntityList list = new VariableEntityList(entities("3", "1", "3"));
+    list.addAll(entities("2", "1"));
+    assertThat(list.add(new VariableEntityBean("Participant", "2"))).isFalse();
+
+    assertThat(identifiers(list)).containsExactly("3", "1", "2");
+    assertThat(list.contains(new VariableEntityBean("Participant", "2"))).isTrue();
+    assertThat(list.remove(new VariableEntityBean("Participant", "2"))).isTrue();
+    assertThat(list.contains(new VariableEntityBean("Participant", "2"))).isFalse();
+  }
+
+  @Test
+  public void test_variableEntityList_serialization() throws IOException, ClassNotFoundException {
+    VariableEntityList list = new VariableEntityList(entities("1", "2"));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(list);
+    }
+    VariableEntityList read;
+    try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      read = (VariableEntityList) in.readObject();
+    }
+
+    assertThat(read.contains(new VariableEntityBean("Participant", "2"))).isTrue();
+    assertThat(read.add(new VariableEntityBean("Participant", "1"))).isFalse();
+    assertThat(identifiers(read)).containsExactly("1", "2");
+  }
+
+  private List<VariableEntity> entities(String... identifiers) {
+    List<VariableEntity> entities = Lists.newArrayList();
+    for(String identifier : identifiers) {
+      entities.add(new VariableEntityBean("Participant", identifier));
+    }
+    return entities;
+  }
+
+  private VariableEntitySet set(VariableEntityList list, String... identifiers) {
+    VariableEntitySet set = list.newSet();
+    entities(identifiers).forEach(set::add);
+    return set;
+  }
+
+  private List<String> identifiers(Iterable<VariableEntity> entities) {
+    List<String> identifiers = Lists.newArrayList();
+    entities.forEach(entity -> identifiers.add(entity.getIdentifier()));
+    return identifiers;
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.obiba.magma.MagmaRuntimeException;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+
+public class AsyncBatchFlusherTest {
+
+  @Test
+  public void test_flush_synchronous() {
+    List<Integer> saved = Lists.newArrayList();
+    AsyncBatchFlusher<Integer> flusher = new AsyncBatchFlusher<>(0, saved::addAll);
+    flusher.flush(ImmutableList.of(1, 2));
+    assertThat(flusher.isAsync()).isFalse();
+    assertThat(saved).containsExactly(1, 2);
+  }
+
+  @Test
+  public void test_flush_savedInOrder() {
+    List<Integer> saved = Collections.synchronizedList(Lists.newArrayList());
+    try (AsyncBatchFlusher<Integer> flusher = new AsyncBatchFlusher<>(2, saved::addAll)) {
+      for (int i = 0; i < 100; i += 2) {
+        flusher.flush(ImmutableList.of(i, i + 1));
+      }
+    }
+    assertThat(saved).hasSize(100);
+    for (int i = 0; i < 100; i++) {
+      assertThat(saved.get(i)).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void test_flush_boundedByDepth() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger flushed = new AtomicInteger();
+    AsyncBatchFlusher<Integer> flusher = new AsyncBatchFlusher<>(1, batch -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    Thread writer = Thread.ofVirtual().start(() -> {
+      for (int i = 0; i < 3; i++) {
+        flusher.flush(ImmutableList.of(i));
+        flushed.incrementAndGet();
+      }
+    });
+    writer.join(200);
+    // the first batch is being saved, the second one waits for it
+    assertThat(flushed.get()).isEqualTo(1);
+    release.countDown();
+    assertThat(writer.join(Duration.ofSeconds(10))).isTrue();
+    flusher.close();
+    assertThat(flushed.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void test_failure_surfacedAndNextBatchesSkipped() throws InterruptedException {
+    List<Integer> saved = Collections.synchronizedList(Lists.newArrayList());
+    CountDownLatch failed = new CountDownLatch(1);
+    AsyncBatchFlusher<Integer> flusher = new AsyncBatchFlusher<>(2, batch -> {
+      if (batch.contains(1)) {
+        failed.countDown();
+        throw new MagmaRuntimeException("save failed");
+      }
+      saved.addAll(batch);
+    });
+    flusher.flush(ImmutableList.of(0));
+    flusher.flush(ImmutableList.of(1));
+    assertThat(failed.await(10, TimeUnit.SECONDS)).isTrue();
+    try {
+      flusher.await();
+      flusher.flush(ImmutableList.of(2));
+      fail("Save failure expected");
+    } catch (MagmaRuntimeException e) {
+      assertThat(e.getMessage()).isEqualTo("save failed");
+    }
+    try {
+      flusher.close();
+      fail("Save failure expected");
+    } catch (MagmaRuntimeException e) {
+      assertThat(e.getCause().getMessage()).isEqualTo("save failed");
+    }
+    assertThat(saved).containsExactly(0);
+  }
+}
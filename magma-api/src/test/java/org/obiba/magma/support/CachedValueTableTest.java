@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.obiba.magma.MagmaTest;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.type.IntegerType;
+import org.obiba.magma.type.TextType;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class CachedValueTableTest extends MagmaTest {
+
+  private Variable text;
+
+  private Variable integer;
+
+  private CountingValueTable table;
+
+  private CountingCache cache;
+
+  private CachedValueTable cachedTable;
+
+  @Before
+  public void setUp() {
+    // value types are only available once the engine is started
+    text = Variable.Builder.newVariable("TXT", TextType.get(), "Participant").build();
+    integer = Variable.Builder.newVariable("INT", IntegerType.get(), "Participant").build();
+    StaticDatasource datasource = new StaticDatasource("static");
+    table = new CountingValueTable(datasource, ImmutableList.of("1", "2", "3"));
+    for(int i = 1; i <= 3; i++) {
+      table.addValues(String.valueOf(i), text, TextType.get().valueOf("text" + i), integer,
+          IntegerType.get().valueOf(i));
+    }
+    datasource.addValueTable(table);
+    cache = new CountingCache();
+    cachedTable = new CachedValueTable(new CachedDatasource(datasource, cache), "Table", cache);
+  }
+
+  @Test
+  public void test_getValueSets_readInBatch() {
+    readAll();
+
+    assertThat(table.batches).hasSize(1);
+    assertThat(table.batches.get(0)).containsExactly(entity(1), entity(2), entity(3));
+    for(Object key : cache.getNativeCache().keySet()) {
+      assertThat(key.toString()).doesNotContain(".getValue.");
+    }
+  }
+
+  @Test
+  public void test_getValueSets_servedFromCache() {
+    readAll();
+    List<String> values = readAll();
+
+    assertThat(table.batches).hasSize(1);
+    assertThat(values).containsExactly("text1", "1", "text2", "2", "text3", "3");
+  }
+
+  @Test
+  public void test_getValueSets_onlyMissingEntitiesRead() {
+    readAll();
+    cachedTable.evictValues(entity(2));
+    readAll();
+
+    assertThat(table.batches).hasSize(2);
+    assertThat(table.batches.get(1)).containsExactly(entity(2));
+  }
+
+  @Test
+  public void test_getValueSets_byBatchSize() {
+    table.setVariableEntityBatchSize(2);
+    readAll();
+
+    assertThat(table.batches).hasSize(2);
+    assertThat(table.batches.get(1)).containsExactly(entity(3));
+  }
+
+  @Test
+  public void test_getValue_ofSingleValueSet() {
+    assertThat(cachedTable.getValue(text, cachedTable.getValueSet(entity(2))))
+        .isEqualTo(TextType.get().valueOf("text2"));
+    assertThat(table.batches).isEmpty();
+  }
+
+  @Test
+  public void test_getValueSets_onlyRequestedVariablesRead() {
+    for(ValueSet valueSet : cachedTable.getValueSets(ImmutableList.of(entity(1), entity(2), entity(3)))) {
+      cachedTable.getValue(text, valueSet);
+      cachedTable.getValue(text, valueSet);
+    }
+    assertThat(table.values).containsExactly("TXT", "TXT", "TXT");
+
+    List<String> values = readAll();
+    assertThat(values).containsExactly("text1", "1", "text2", "2", "text3", "3");
+    assertThat(table.values).containsExactly("TXT", "TXT", "TXT", "INT", "INT", "INT");
+    assertThat(table.batches).hasSize(1);
+  }
+
+  @Test
+  public void test_getValueSets_entryPutOncePerBatch() {
+    table.setVariableEntityBatchSize(2);
+    readAll();
+
+    // both variables read, one put per value set
+    assertThat(cache.valueSetPuts).containsExactly("1", "2", "3");
+
+    // a value read after the iteration is put right away
+    List<ValueSet> valueSets = Lists.newArrayList(cachedTable.getValueSets(ImmutableList.of(entity(1))));
+    cachedTable.evictValues(entity(2));
+    valueSets.addAll(Lists.newArrayList(cachedTable.getValueSets(ImmutableList.of(entity(2)))));
+    assertThat(cachedTable.getValue(text, valueSets.get(1))).isEqualTo(TextType.get().valueOf("text2"));
+    assertThat(cache.valueSetPuts).containsExactly("1", "2", "3", "2");
+  }
+
+  @Test
+  public void test_getValueSets_withoutWrappedTable() {
+    // INT of entity 1 cached on its own, the value sets cached with TXT only
+    cachedTable.getValue(integer, cachedTable.getValueSet(entity(1)));
+    for(ValueSet valueSet : cachedTable.getValueSets(ImmutableList.of(entity(1), entity(2)))) {
+      cachedTable.getValue(text, valueSet);
+    }
+    StaticDatasource empty = new StaticDatasource("static");
+    CachedValueTable cacheOnly = new CachedValueTable(new CachedDatasource(empty, cache), "Table", cache);
+
+    ValueSet valueSet = cacheOnly.getValueSets(ImmutableList.of(entity(1))).iterator().next();
+    assertThat(cacheOnly.getValue(text, valueSet)).isEqualTo(TextType.get().valueOf("text1"));
+    assertThat(cacheOnly.getValue(integer, valueSet)).isEqualTo(IntegerType.get().valueOf(1));
+  }
+
+  private List<String> readAll() {
+    List<String> values = Lists.newArrayList();
+    for(ValueSet valueSet : cachedTable.getValueSets(ImmutableList.of(entity(1), entity(2), entity(3)))) {
+      values.add(cachedTable.getValue(text, valueSet).toString());
+      values.add(cachedTable.getVariableValueSource("INT").getValue(valueSet).toString());
+    }
+    return values;
+  }
+
+  private VariableEntity entity(int identifier) {
+    return new VariableEntityBean("Participant", String.valueOf(identifier));
+  }
+
+  private static class CountingCache extends ConcurrentMapCache {
+
+    // identifiers of the value set entries that were put
+    private final List<String> valueSetPuts = Lists.newArrayList();
+
+    private CountingCache() {
+      super("test");
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+      String prefix = "static.Table.getValueSetValues.";
+      if(key.toString().startsWith(prefix)) valueSetPuts.add(key.toString().substring(prefix.length()));
+      super.put(key, value);
+    }
+  }
+
+  private static class CountingValueTable extends StaticValueTable {
+
+    private final List<List<VariableEntity>> batches = Lists.newArrayList();
+
+    private final List<String> values = Lists.newArrayList();
+
+    private CountingValueTable(StaticDatasource datasource, Iterable<String> entities) {
+      super(datasource, "Table", entities);
+    }
+
+    @Override
+    public Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities) {
+      batches.add(ImmutableList.copyOf(entities));
+      return super.getValueSets(entities);
+    }
+
+    @Override
+    public Value getValue(Variable variable, ValueSet valueSet) {
+      values.add(variable.getName());
+      return super.getValue(variable, valueSet);
+    }
+  }
+}
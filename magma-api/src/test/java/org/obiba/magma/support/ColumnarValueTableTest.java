@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.obiba.magma.MagmaDate;
+import org.obiba.magma.MagmaTest;
+import org.obiba.magma.MultiVectorSource;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueSetBlock;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.ValueTableWriter;
+import org.obiba.magma.ValueType;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.VectorSource;
+import org.obiba.magma.type.BooleanType;
+import org.obiba.magma.type.DateTimeType;
+import org.obiba.magma.type.DateType;
+import org.obiba.magma.type.DecimalType;
+import org.obiba.magma.type.IntegerType;
+import org.obiba.magma.type.LocaleType;
+import org.obiba.magma.type.TextType;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ColumnarValueTableTest extends MagmaTest {
+
+  private ColumnarDatasource datasource;
+
+  private ColumnarValueTable table;
+
+  @Before
+  public void setUp() {
+    datasource = new ColumnarDatasource("columnar");
+    datasource.createWriter("Table", "Participant").close();
+    table = (ColumnarValueTable) datasource.getValueTable("Table");
+  }
+
+  @Test
+  public void test_values_ofEachType() {
+    Object[][] typesAndValues = { //
+        { IntegerType.get(), 42L }, //
+        { DecimalType.get(), 3.14 }, //
+        { BooleanType.get(), true }, //
+        { DateType.get(), new MagmaDate(1975, 10, 31) }, //
+        { DateTimeType.get(), new Date(1234567890123L) }, //
+        { TextType.get(), "Jane" }, //
+        { LocaleType.get(), Locale.CANADA_FRENCH } };
+    VariableEntity entity = new VariableEntityBean("Participant", "1");
+    VariableEntity other = new VariableEntityBean("Participant", "2");
+    for(Object[] typeAndValue : typesAndValues) {
+      ValueType type = (ValueType) typeAndValue[0];
+      Variable variable = newVariable(type.getName(), type);
+      Value value = type.valueOf(typeAndValue[1]);
+      table.setValue(entity, variable, value);
+      table.setValue(other, variable, type.nullValue());
+
+      assertThat(table.getValue(variable, table.getValueSet(entity))).isEqualTo(value);
+      assertThat(table.getValue(variable, table.getValueSet(other)).isNull()).isTrue();
+    }
+    assertThat(table.getVariableEntities()).containsExactly(entity, other);
+  }
+
+  @Test
+  public void test_integers_widenedToLongs() {
+    Variable variable = newVariable("INT", IntegerType.get());
+    for(int i = 0; i < 10; i++) {
+      table.setValue(entity(i), variable, IntegerType.get().valueOf(i));
+    }
+    table.setValue(entity(10), variable, IntegerType.get().valueOf(Long.MAX_VALUE));
+
+    assertThat(table.getValue(variable, table.getValueSet(entity(3)))).isEqualTo(IntegerType.get().valueOf(3));
+    assertThat(table.getValue(variable, table.getValueSet(entity(10))))
+        .isEqualTo(IntegerType.get().valueOf(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void test_values_convertedToColumnType() {
+    Variable variable = newVariable("DEC", DecimalType.get());
+    table.setValue(entity(1), variable, TextType.get().valueOf("1.5"));
+    assertThat(table.getValue(variable, table.getValueSet(entity(1)))).isEqualTo(DecimalType.get().valueOf(1.5));
+  }
+
+  @Test
+  public void test_sequences() {
+    Variable variable = Variable.Builder.newVariable("SEQ", TextType.get(), "Participant").repeatable().build();
+    Value sequence = TextType.get().sequenceOf(ImmutableList.of(TextType.get().valueOf("a"), TextType.get().nullValue(),
+        TextType.get().valueOf("b")));
+    table.setValue(entity(1), variable, sequence);
+    table.setValue(entity(2), variable, TextType.get().sequenceOf(ImmutableList.<Value>of()));
+    table.setValue(entity(3), variable, TextType.get().valueOf("c"));
+    table.addVariableEntity(entity(4));
+
+    assertThat(table.getValue(variable, table.getValueSet(entity(1)))).isEqualTo(sequence);
+    assertThat(table.getValue(variable, table.getValueSet(entity(2))).asSequence().getSize()).isEqualTo(0);
+    assertThat(table.getValue(variable, table.getValueSet(entity(3))))
+        .isEqualTo(TextType.get().sequenceOf(ImmutableList.of(TextType.get().valueOf("c"))));
+    Value nullSequence = table.getValue(variable, table.getValueSet(entity(4)));
+    assertThat(nullSequence.isSequence()).isTrue();
+    assertThat(nullSequence.isNull()).isTrue();
+  }
+
+  @Test
+  public void test_removeValueSet_lastRowMoved() {
+    Variable text = newVariable("TXT", TextType.get());
+    Variable integer = newVariable("INT", IntegerType.get());
+    for(int i = 0; i < 3; i++) {
+      table.setValue(entity(i), text, TextType.get().valueOf("text" + i));
+      table.setValue(entity(i), integer, IntegerType.get().valueOf(i));
+    }
+    table.removeValueSet(entity(0));
+
+    assertThat(table.hasValueSet(entity(0))).isFalse();
+    assertThat(table.getVariableEntities()).containsExactly(entity(2), entity(1));
+    assertThat(table.getValue(text, table.getValueSet(entity(2)))).isEqualTo(TextType.get().valueOf("text2"));
+    assertThat(table.getValue(integer, table.getValueSet(entity(2)))).isEqualTo(IntegerType.get().valueOf(2));
+
+    table.removeValueSet(entity(1));
+    table.setValue(entity(3), text, TextType.get().valueOf("text3"));
+    assertThat(table.getVariableEntities()).containsExactly(entity(2), entity(3));
+    assertThat(table.getValue(integer, table.getValueSet(entity(3))).isNull()).isTrue();
+  }
+
+  @Test
+  public void test_vectorSource() {
+    Variable variable = newVariable("INT", IntegerType.get());
+    table.setValue(entity(1), variable, IntegerType.get().valueOf(1));
+    table.setValue(entity(2), variable, IntegerType.get().valueOf(2));
+    VectorSource vector = table.getVariableValueSource("INT").asVectorSource();
+
+    List<Value> values = Lists.newArrayList(vector.getValues(ImmutableList.of(entity(2), entity(3), entity(1))));
+    assertThat(values).containsExactly(IntegerType.get().valueOf(2), IntegerType.get().nullValue(),
+        IntegerType.get().valueOf(1));
+  }
+
+  @Test
+  public void test_multiVectorSource() {
+    Variable text = newVariable("TXT", TextType.get());
+    Variable integer = newVariable("INT", IntegerType.get());
+    table.setValue(entity(1), text, TextType.get().valueOf("one"));
+    table.setValue(entity(1), integer, IntegerType.get().valueOf(1));
+    MultiVectorSource vectors = table.getMultiVectorSource(ImmutableList.of(integer, text));
+
+    List<Value[]> values = Lists.newArrayList(vectors.getValues(ImmutableList.of(entity(1))));
+    assertThat(values).hasSize(1);
+    assertThat(values.get(0)).containsOnly(IntegerType.get().valueOf(1), TextType.get().valueOf("one"));
+  }
+
+  @Test
+  public void test_writeValueSets() {
+    Variable text = newVariable("TXT", TextType.get());
+    Variable integer = newVariable("INT", IntegerType.get());
+    ValueSetBlock block = new ValueSetBlock(ImmutableList.of(text, integer), 10);
+    block.add(entity(1), TextType.get().valueOf("one"), IntegerType.get().valueOf(1));
+    block.add(entity(2), null, IntegerType.get().valueOf(2));
+    try(ValueTableWriter writer = datasource.createWriter("Table", "Participant")) {
+      writer.writeValueSets(block);
+    }
+
+    assertThat(table.getVariableEntityCount()).isEqualTo(2);
+    assertThat(table.getValue(text, table.getValueSet(entity(1)))).isEqualTo(TextType.get().valueOf("one"));
+    assertThat(table.getValue(text, table.getValueSet(entity(2))).isNull()).isTrue();
+    assertThat(table.getValue(integer, table.getValueSet(entity(2)))).isEqualTo(IntegerType.get().valueOf(2));
+  }
+
+  @Test
+  public void test_copy() throws Exception {
+    StaticDatasource source = new StaticDatasource("static");
+    StaticValueTable staticTable = new StaticValueTable(source, "Static", ImmutableList.of("1", "2"));
+    Variable text = newVariable("TXT", TextType.get());
+    staticTable.addValues("1", text, TextType.get().valueOf("one"));
+    staticTable.addValues("2", text, TextType.get().valueOf("two"));
+    source.addValueTable(staticTable);
+
+    DatasourceCopier.Builder.newCopier().build().copy(staticTable, datasource);
+
+    ValueTable copy = datasource.getValueTable("Static");
+    assertThat(copy).isInstanceOf(ColumnarValueTable.class);
+    assertThat(copy.getVariableEntityCount()).isEqualTo(2);
+    assertThat(copy.getValue(text, copy.getValueSet(entity(2)))).isEqualTo(TextType.get().valueOf("two"));
+  }
+
+  private VariableEntity entity(int identifier) {
+    return new VariableEntityBean("Participant", String.valueOf(identifier));
+  }
+
+  private Variable newVariable(String name, ValueType type) {
+    Variable variable = Variable.Builder.newVariable(name, type, "Participant").build();
+    table.addVariable(variable);
+    return variable;
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import org.junit.Test;
+import org.obiba.magma.MagmaTest;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.Variable;
+import org.obiba.magma.type.IntegerType;
+import org.obiba.magma.type.TextType;
+
+import com.google.common.collect.ImmutableList;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class DatasourceCopierTest extends MagmaTest {
+
+  @Test
+  public void test_copy_variableFilter() throws Exception {
+    StaticDatasource source = new StaticDatasource("static");
+    StaticValueTable staticTable = new StaticValueTable(source, "Static", ImmutableList.of("1", "2"));
+    Variable text = Variable.Builder.newVariable("TXT", TextType.get(), "Participant").build();
+    Variable integer = Variable.Builder.newVariable("INT", IntegerType.get(), "Participant").build();
+    staticTable.addValues("1", text, TextType.get().valueOf("one"));
+    staticTable.addValues("1", integer, IntegerType.get().valueOf(1));
+    staticTable.addValues("2", text, TextType.get().valueOf("two"));
+    source.addValueTable(staticTable);
+    StaticDatasource destination = new StaticDatasource("destination");
+
+    DatasourceCopier.Builder.newCopier().withVariableFilter(variable -> "TXT".equals(variable.getName())).build()
+        .copy(staticTable, destination);
+
+    ValueTable copy = destination.getValueTable("Static");
+    assertThat(copy.hasVariable("TXT")).isTrue();
+    assertThat(copy.hasVariable("INT")).isFalse();
+    assertThat(copy.getVariableEntityCount()).isEqualTo(2);
+    VariableEntityBean entity = new VariableEntityBean("Participant", "1");
+    assertThat(copy.getValue(copy.getVariable("TXT"), copy.getValueSet(entity)))
+        .isEqualTo(TextType.get().valueOf("one"));
+  }
+
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+import jakarta.validation.constraints.NotNull;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.obiba.magma.MagmaCacheExtension;
+import org.obiba.magma.MagmaDate;
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.MagmaTest;
+import org.obiba.magma.Timestamps;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.ValueType;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.type.BooleanType;
+import org.obiba.magma.type.DateTimeType;
+import org.obiba.magma.type.DateType;
+import org.obiba.magma.type.DecimalType;
+import org.obiba.magma.type.IntegerType;
+import org.obiba.magma.type.LocaleType;
+import org.obiba.magma.type.TextType;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class MappedTableCacheTest extends MagmaTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File directory;
+
+  private UpdatedValueTable table;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = folder.newFolder("cache");
+    StaticDatasource datasource = new StaticDatasource("static");
+    table = new UpdatedValueTable(datasource, ImmutableList.of("1", "2", "3"));
+    datasource.addValueTable(table);
+    // static tables only have values for the entities that were given some
+    for(String identifier : ImmutableList.of("1", "2", "3")) {
+      table.addValues(identifier, "none", null);
+    }
+  }
+
+  @Test
+  public void test_values_ofEachType() {
+    Object[][] typesAndValues = { //
+        { IntegerType.get(), 42L }, //
+        { DecimalType.get(), 3.14 }, //
+        { BooleanType.get(), true }, //
+        { DateType.get(), new MagmaDate(1975, 10, 31) }, //
+        { DateTimeType.get(), new Date(1234567890123L) }, //
+        { TextType.get(), "Jane" }, //
+        { LocaleType.get(), Locale.CANADA_FRENCH } };
+    for(Object[] typeAndValue : typesAndValues) {
+      ValueType type = (ValueType) typeAndValue[0];
+      table.addValues("1", newVariable(type.getName(), type), type.valueOf(typeAndValue[1]));
+    }
+    MappedTableSnapshot snapshot = new MappedTableCache(directory).getSnapshot("static.Table", table);
+
+    assertThat(snapshot).isNotNull();
+    assertThat(snapshot.getVariableEntities()).containsExactly(entity(1), entity(2), entity(3));
+    for(Object[] typeAndValue : typesAndValues) {
+      ValueType type = (ValueType) typeAndValue[0];
+      Variable variable = table.getVariable(type.getName());
+      assertThat(snapshot.getValue(variable, entity(1), table)).isEqualTo(type.valueOf(typeAndValue[1]));
+      assertThat(snapshot.getValue(variable, entity(2), table).isNull()).isTrue();
+    }
+    assertThat(snapshot.getValue(table.getVariable("integer"), entity(4), table)).isNull();
+  }
+
+  @Test
+  public void test_sequences() {
+    Variable variable = Variable.Builder.newVariable("SEQ", TextType.get(), "Participant").repeatable().build();
+    Value sequence = TextType.get().sequenceOf(ImmutableList.of(TextType.get().valueOf("a"), TextType.get().nullValue(),
+        TextType.get().valueOf("b")));
+    table.addValues("1", variable, sequence);
+    table.addValues("2", variable, TextType.get().sequenceOf(ImmutableList.<Value>of()));
+    MappedTableSnapshot snapshot = new MappedTableCache(directory).getSnapshot("static.Table", table);
+
+    List<Value> values = Lists
+        .newArrayList(snapshot.getValues(variable, ImmutableList.of(entity(1), entity(2), entity(3)), table));
+    assertThat(values.get(0)).isEqualTo(sequence);
+    assertThat(values.get(1).asSequence().getSize()).isEqualTo(0);
+    assertThat(values.get(2).isSequence()).isTrue();
+    assertThat(values.get(2).isNull()).isTrue();
+  }
+
+  @Test
+  public void test_snapshot_readAfterRestart() {
+    Variable variable = newVariable("TXT", TextType.get());
+    table.addValues("2", variable, TextType.get().valueOf("two"));
+    new MappedTableCache(directory).getSnapshot("static.Table", table).getValue(variable, entity(2), table);
+    table.addValues("2", variable, TextType.get().valueOf("changed without update"));
+
+    MappedTableCache cache = new MappedTableCache(directory);
+    assertThat(cache.getSnapshot("static.Table", table).getValue(variable, entity(2), table))
+        .isEqualTo(TextType.get().valueOf("two"));
+    assertThat(new MappedTableCache(directory).getSnapshot("static.Table", null).getValue(variable, entity(2), null))
+        .isEqualTo(TextType.get().valueOf("two"));
+  }
+
+  @Test
+  public void test_snapshot_invalidatedByLastUpdate() {
+    Variable variable = newVariable("INT", IntegerType.get());
+    table.addValues("3", variable, IntegerType.get().valueOf(3));
+    MappedTableCache cache = new MappedTableCache(directory, 0);
+    assertThat(cache.getSnapshot("static.Table", table).getValue(variable, entity(3), table))
+        .isEqualTo(IntegerType.get().valueOf(3));
+
+    table.addValues("3", variable, IntegerType.get().valueOf(33));
+    table.lastUpdate++;
+    MappedTableSnapshot snapshot = cache.getSnapshot("static.Table", table);
+    assertThat(snapshot.getLastUpdate()).isEqualTo(table.lastUpdate);
+    assertThat(snapshot.getValue(variable, entity(3), table)).isEqualTo(IntegerType.get().valueOf(33));
+  }
+
+  @Test
+  public void test_snapshot_notMadeWithoutLastUpdate() {
+    newVariable("INT", IntegerType.get());
+    table.lastUpdate = null;
+    assertThat(new MappedTableCache(directory).getSnapshot("static.Table", table)).isNull();
+  }
+
+  @Test
+  public void test_cachedValueTable_readsSnapshot() {
+    Variable variable = newVariable("DEC", DecimalType.get());
+    table.addValues("1", variable, DecimalType.get().valueOf(1.5));
+    MagmaEngine.get().extend(new MagmaCacheExtension(null, new MappedTableCache(directory)));
+    CachedDatasource cachedDatasource = new CachedDatasource(table.getDatasource(), new ConcurrentMapCache("test"));
+    ValueTable cachedTable = cachedDatasource.getValueTable("Table");
+
+    assertThat(cachedTable.getValue(variable, cachedTable.getValueSet(entity(1))))
+        .isEqualTo(DecimalType.get().valueOf(1.5));
+    assertThat(cachedTable.getVariableValueSource("DEC").asVectorSource()
+        .getValues(ImmutableList.of(entity(2), entity(1)))).containsExactly(DecimalType.get().nullValue(), DecimalType.get().valueOf(1.5));
+    assertThat(directory.list()).hasSize(1);
+  }
+
+  @Test
+  public void test_cachedValueTable_evictValuesKeepsSnapshotUntilUpdated() {
+    Variable variable = newVariable("INT", IntegerType.get());
+    table.addValues("1", variable, IntegerType.get().valueOf(1));
+    MappedTableCache tableCache = new MappedTableCache(directory);
+    MagmaEngine.get().extend(new MagmaCacheExtension(null, tableCache));
+    CachedDatasource cachedDatasource = new CachedDatasource(table.getDatasource(), new ConcurrentMapCache("test"));
+    CachedValueTable cachedTable = (CachedValueTable) cachedDatasource.getValueTable("Table");
+    MappedTableSnapshot snapshot = tableCache.getSnapshot("static.Table", table);
+
+    cachedTable.evictValues(entity(1));
+    cachedTable.evictValues(entity(2));
+    assertThat(tableCache.getSnapshot("static.Table", table)).isSameAs(snapshot);
+
+    table.addValues("1", variable, IntegerType.get().valueOf(11));
+    table.lastUpdate++;
+    cachedTable.evictValues(entity(1));
+    MappedTableSnapshot updated = tableCache.getSnapshot("static.Table", table);
+    assertThat(updated).isNotSameAs(snapshot);
+    assertThat(cachedTable.getValue(variable, cachedTable.getValueSet(entity(1)))).isEqualTo(IntegerType.get().valueOf(11));
+  }
+
+  @Test
+  public void test_snapshot_columnsWrittenConcurrently() throws Exception {
+    List<Variable> variables = Lists.newArrayList();
+    for(int i = 0; i < 8; i++) {
+      Variable variable = newVariable("VAR" + i, IntegerType.get());
+      table.addValues("2", variable, IntegerType.get().valueOf(i));
+      variables.add(variable);
+    }
+    MappedTableSnapshot snapshot = new MappedTableCache(directory).getSnapshot("static.Table", table);
+
+    List<Thread> threads = Lists.newArrayList();
+    List<Value> values = Collections.synchronizedList(Lists.<Value>newArrayList());
+    for(Variable variable : Iterables.concat(variables, variables)) {
+      Thread thread = new Thread(() -> values.add(snapshot.getValue(variable, entity(2), table)));
+      threads.add(thread);
+      thread.start();
+    }
+    for(Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(values).hasSize(16).doesNotContainNull();
+    for(Variable variable : variables) {
+      assertThat(snapshot.getValue(variable, entity(2), table))
+          .isEqualTo(IntegerType.get().valueOf(variables.indexOf(variable)));
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void test_snapshot_otherTablesNotBlockedByWrite() throws Exception {
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    StaticDatasource datasource = (StaticDatasource) table.getDatasource();
+    UpdatedValueTable slow = new UpdatedValueTable(datasource, "Slow", ImmutableList.of("1")) {
+      @Override
+      public List<VariableEntity> getVariableEntities() {
+        writing.countDown();
+        try {
+          release.await();
+        } catch(InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return super.getVariableEntities();
+      }
+    };
+    datasource.addValueTable(slow);
+    MappedTableCache tableCache = new MappedTableCache(directory);
+
+    Thread thread = new Thread(() -> tableCache.getSnapshot("static.Slow", slow));
+    thread.start();
+    writing.await();
+    // the snapshot of another table is made while the slow one is being written
+    assertThat(tableCache.getSnapshot("static.Table", table)).isNotNull();
+    release.countDown();
+    thread.join();
+    assertThat(tableCache.getSnapshot("static.Slow", slow)).isNotNull();
+  }
+
+  @Test
+  public void test_dropTable_deletesSnapshot() {
+    Variable variable = newVariable("TXT", TextType.get());
+    table.addValues("1", variable, TextType.get().valueOf("one"));
+    MappedTableCache tableCache = new MappedTableCache(directory);
+    MagmaEngine.get().extend(new MagmaCacheExtension(null, tableCache));
+    StaticDatasource datasource = (StaticDatasource) table.getDatasource();
+    UpdatedValueTable other = new UpdatedValueTable(datasource, "Other", ImmutableList.of("1"));
+    datasource.addValueTable(other);
+    tableCache.getSnapshot("static.Table", table).getValue(variable, entity(1), table);
+    tableCache.getSnapshot("static.Other", other);
+    assertThat(directory.list()).hasSize(2);
+
+    new CachedDatasource(datasource, new ConcurrentMapCache("test")).dropTable("Table");
+    assertThat(directory.list()).hasSize(1);
+    assertThat(tableCache.getSnapshot("static.Table", null)).isNull();
+    assertThat(tableCache.getSnapshot("static.Other", other)).isNotNull();
+  }
+
+  private VariableEntity entity(int identifier) {
+    return new VariableEntityBean("Participant", String.valueOf(identifier));
+  }
+
+  private Variable newVariable(String name, ValueType type) {
+    Variable variable = Variable.Builder.newVariable(name, type, "Participant").build();
+    table.addVariable(variable);
+    return variable;
+  }
+
+  private static class UpdatedValueTable extends StaticValueTable {
+
+    private Long lastUpdate = 1000L;
+
+    private UpdatedValueTable(StaticDatasource datasource, Iterable<String> entities) {
+      this(datasource, "Table", entities);
+    }
+
+    private UpdatedValueTable(StaticDatasource datasource, String name, Iterable<String> entities) {
+      super(datasource, name, entities);
+    }
+
+    @NotNull
+    @Override
+    public Timestamps getTimestamps() {
+      return new Timestamps() {
+        @NotNull
+        @Override
+        public Value getLastUpdate() {
+          return lastUpdate == null ? DateTimeType.get().nullValue() : DateTimeType.get().valueOf(new Date(lastUpdate));
+        }
+
+        @NotNull
+        @Override
+        public Value getCreated() {
+          return DateTimeType.get().valueOf(new Date(0));
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.obiba.magma.MagmaRuntimeException;
+import org.obiba.magma.MagmaTest;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.Variable;
+import org.obiba.magma.type.IntegerType;
+
+import com.google.common.collect.Lists;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+
+public class MultithreadedDatasourceCopierTest extends MagmaTest {
+
+  @Test(timeout = 60000)
+  public void test_copy_withVirtualThreads() throws Exception {
+    StaticValueTable table = createTable(1234);
+    StaticDatasource destination = new StaticDatasource("destination");
+
+    MultithreadedDatasourceCopier.Builder.newCopier().withVirtualThreads(5).withQueueSize(10).from(table)
+        .to(destination).build().copy();
+
+    ValueTable copy = destination.getValueTable("table");
+    Variable variable = copy.getVariable("VAR");
+    assertThat(copy.getVariableEntityCount()).isEqualTo(1234);
+    for(int i = 0; i < 1234; i++) {
+      VariableEntityBean entity = new VariableEntityBean("Participant", String.valueOf(i));
+      assertThat(copy.getValue(variable, copy.getValueSet(entity))).isEqualTo(IntegerType.get().valueOf(i));
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void test_copy_withVirtualThreads_readerErrorIsPropagated() throws Exception {
+    StaticValueTable table = createTable(500);
+    table.addValues("250", "VAR", "not an integer");
+
+    try {
+      MultithreadedDatasourceCopier.Builder.newCopier().withVirtualThreads().from(table)
+          .to(new StaticDatasource("destination")).build().copy();
+      fail("Read error expected");
+    } catch(MagmaRuntimeException e) {
+      // expected
+    }
+  }
+
+  private StaticValueTable createTable(int entityCount) {
+    List<String> identifiers = Lists.newArrayList();
+    for(int i = 0; i < entityCount; i++) {
+      identifiers.add(String.valueOf(i));
+    }
+    StaticDatasource datasource = new StaticDatasource("ds");
+    StaticValueTable table = new StaticValueTable(datasource, "table", identifiers);
+    table.addVariables(IntegerType.get(), "VAR");
+    for(String identifier : identifiers) {
+      table.addValues(identifier, "VAR", Integer.parseInt(identifier));
+    }
+    datasource.addValueTable(table);
+    return table;
+  }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.MagmaParametersExtension;
+import org.obiba.magma.MagmaRuntimeException;
+import org.obiba.magma.MagmaTest;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.ValueSetBatch;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.VariableEntity;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+
+public class ReadAheadValueSetIteratorTest extends MagmaTest {
+
+  private final ValueTable table = mock(ValueTable.class);
+
+  @Test
+  public void test_iterate_withoutReadAhead() {
+    List<VariableEntity> entities = createEntities(10);
+    AtomicInteger fetches = new AtomicInteger();
+
+    ReadAheadValueSetIterator iterator = new ReadAheadValueSetIterator(entities, 3, 0, countingBatches(fetches));
+    List<VariableEntity> read = readAll(iterator);
+    // nothing to cancel
+    iterator.close();
+
+    assertThat(read).isEqualTo(entities);
+    assertThat(fetches.get()).isEqualTo(4);
+  }
+
+  @Test
+  public void test_iterate_withReadAhead() {
+    List<VariableEntity> entities = createEntities(10);
+    AtomicInteger fetches = new AtomicInteger();
+
+    List<VariableEntity> read = readAll(new ReadAheadValueSetIterator(entities, 3, 2, countingBatches(fetches)));
+
+    assertThat(read).isEqualTo(entities);
+    assertThat(fetches.get()).isEqualTo(4);
+  }
+
+  @Test
+  public void test_readAhead_boundedByDepth() throws InterruptedException {
+    List<VariableEntity> entities = createEntities(100);
+    AtomicInteger fetches = new AtomicInteger();
+    CountDownLatch fetched = new CountDownLatch(3);
+
+    ReadAheadValueSetIterator iterator = new ReadAheadValueSetIterator(entities, 10, 2, batch -> () -> {
+      fetches.incrementAndGet();
+      fetched.countDown();
+      return toValueSets(batch);
+    });
+    iterator.next();
+    fetched.await();
+    // the current batch plus two batches ahead
+    assertThat(fetches.get()).isEqualTo(3);
+    iterator.close();
+  }
+
+  @Test
+  public void test_close_cancelsReadAhead() throws InterruptedException {
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+
+    ReadAheadValueSetIterator iterator = new ReadAheadValueSetIterator(createEntities(3), 1, 1, batch -> () -> {
+      if ("1".equals(batch.get(0).getIdentifier())) {
+        blocked.countDown();
+        try {
+          Thread.sleep(60000);
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+        }
+      }
+      return toValueSets(batch);
+    });
+    iterator.next();
+    blocked.await();
+    iterator.close();
+    interrupted.await();
+  }
+
+  @Test
+  public void test_failedFetch_isRethrown() {
+    ReadAheadValueSetIterator iterator = new ReadAheadValueSetIterator(createEntities(4), 2, 1, batch -> () -> {
+      throw new MagmaRuntimeException("fetch failed");
+    });
+    try {
+      iterator.next();
+      fail("Fetch failure expected");
+    } catch (MagmaRuntimeException e) {
+      assertThat(e.getMessage()).isEqualTo("fetch failed");
+    }
+  }
+
+  @Test
+  public void test_getReadAheadDepth() {
+    assertThat(ReadAheadValueSetIterator.getReadAheadDepth(100, 10)).isEqualTo(0);
+
+    MagmaEngine.get().extend(new MagmaParametersExtension(
+        ImmutableMap.of(ReadAheadValueSetIterator.READ_AHEAD_BATCH_COUNT_KEY, 4,
+            ReadAheadValueSetIterator.READ_AHEAD_DATA_POINTS_COUNT_KEY, 3000)));
+    // budget of 3 batches of 1000 data points
+    assertThat(ReadAheadValueSetIterator.getReadAheadDepth(100, 10)).isEqualTo(3);
+    assertThat(ReadAheadValueSetIterator.getReadAheadDepth(10, 10)).isEqualTo(4);
+    // at least one batch ahead when a single batch exceeds the budget
+    assertThat(ReadAheadValueSetIterator.getReadAheadDepth(1000, 10)).isEqualTo(1);
+  }
+
+  private Function<List<VariableEntity>, ValueSetBatch> countingBatches(AtomicInteger fetches) {
+    return batch -> () -> {
+      fetches.incrementAndGet();
+      return toValueSets(batch);
+    };
+  }
+
+  private List<ValueSet> toValueSets(List<VariableEntity> batch) {
+    return batch.stream().map(entity -> new ValueSetBean(table, entity)).collect(Collectors.toList());
+  }
+
+  private static List<VariableEntity> readAll(ReadAheadValueSetIterator iterator) {
+    List<VariableEntity> read = Lists.newArrayList();
+    while (iterator.hasNext()) {
+      read.add(iterator.next().getVariableEntity());
+    }
+    return read;
+  }
+
+  private static List<VariableEntity> createEntities(int count) {
+    List<VariableEntity> entities = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      entities.add(new VariableEntityBean("Participant", String.valueOf(i)));
+    }
+    return entities;
+  }
+}
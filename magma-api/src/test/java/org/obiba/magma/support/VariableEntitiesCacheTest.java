@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+import org.obiba.magma.VariableEntity;
+
+import com.google.common.collect.Lists;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class VariableEntitiesCacheTest {
+
+  @Test
+  public void test_hasEntity() {
+    VariableEntitiesCache cache = new VariableEntitiesCache(createEntities(1000), 0);
+
+    assertThat(cache.hasEntity(new VariableEntityBean("Participant", "0"))).isTrue();
+    assertThat(cache.hasEntity(new VariableEntityBean("Participant", "999"))).isTrue();
+    assertThat(cache.hasEntity(new VariableEntityBean("Participant", "1000"))).isFalse();
+    assertThat(cache.hasEntity(new VariableEntityBean("Instrument", "0"))).isFalse();
+  }
+
+  @Test
+  public void test_hasEntity_emptyCache() {
+    VariableEntitiesCache cache = new VariableEntitiesCache(Lists.<VariableEntity>newArrayList(), 0);
+
+    assertThat(cache.hasEntity(new VariableEntityBean("Participant", "0"))).isFalse();
+  }
+
+  @Test
+  public void test_hasEntity_notRandomAccessList() {
+    VariableEntitiesCache cache = new VariableEntitiesCache(new LinkedList<>(createEntities(10)), 0);
+
+    assertThat(cache.hasEntity(new VariableEntityBean("Participant", "5"))).isTrue();
+    assertThat(cache.getEntities()).hasSize(10);
+  }
+
+  @Test
+  public void test_hasEntity_afterSerialization() throws IOException, ClassNotFoundException {
+    VariableEntitiesCache cache = new VariableEntitiesCache(createEntities(100), 0);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(cache);
+    }
+    VariableEntitiesCache read;
+    try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      read = (VariableEntitiesCache) in.readObject();
+    }
+
+    assertThat(read.hasEntity(new VariableEntityBean("Participant", "50"))).isTrue();
+    assertThat(read.hasEntity(new VariableEntityBean("Participant", "100"))).isFalse();
+  }
+
+  private List<VariableEntity> createEntities(int count) {
+    List<VariableEntity> entities = Lists.newArrayList();
+    for(int i = 0; i < count; i++) {
+      entities.add(new VariableEntityBean("Participant", String.valueOf(i)));
+    }
+    return entities;
+  }
+}
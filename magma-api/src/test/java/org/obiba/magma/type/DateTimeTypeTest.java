@@ -15,13 +15,18 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 import org.obiba.magma.Value;
 import org.obiba.magma.ValueType;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -169,6 +174,38 @@ public class DateTimeTypeTest extends BaseValueTypeTest {
     assertThat(new Date(expected.getTimeInMillis())).isEqualTo((Date) value.getValue());
   }
 
+  @Test
+  public void test_iso8601HalfHourTimeZone() {
+    Calendar expected = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    expected.clear();
+    expected.set(2011, Calendar.JANUARY, 25, 9, 0, 47);
+    Value value = DateTimeType.get().valueOf("2011-01-25T14:30:47+05:30");
+    assertThat(new Date(expected.getTimeInMillis())).isEqualTo((Date) value.getValue());
+  }
+
+  @Test
+  public void test_valueOf_concurrently() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> results = Lists.newArrayList();
+      for(int i = 0; i < 4; i++) {
+        results.add(executor.submit(() -> {
+          for(int j = 0; j < 1000; j++) {
+            Date date = new Date(1300000000000L + j * 3600000L);
+            Value value = DateTimeType.get().valueOf(date);
+            if(!date.equals(DateTimeType.get().valueOf(value.toString()).getValue())) return false;
+          }
+          return true;
+        }));
+      }
+      for(Future<Boolean> result : results) {
+        assertThat(result.get()).isTrue();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   private void assertValueOfUsingDateFormat(String dateFormat) {
     assertValueOfUsingDateFormat(dateFormat, 0);
   }
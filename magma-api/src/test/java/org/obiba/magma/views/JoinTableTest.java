@@ -11,18 +11,31 @@
 package org.obiba.magma.views;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import org.fest.util.Strings;
 import org.junit.Test;
 import org.obiba.magma.*;
+import org.obiba.magma.support.NullTimestamps;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
 import org.obiba.magma.support.VariableEntityBean;
+import org.obiba.magma.type.DateTimeType;
 import org.obiba.magma.type.TextType;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.easymock.EasyMock.*;
 import static org.fest.assertions.api.Assertions.assertThat;
@@ -262,6 +275,234 @@ public class JoinTableTest extends MagmaTest {
 //    assertThat("1-1", value.toString());
 //  }
 
+  @Test
+  public void test_getValueSets_innerTablesFetchedConcurrently() {
+    setJoinFetchConcurrency(2);
+    // each table waits for the other ones to be queried: a sequential fetch would time out
+    CyclicBarrier barrier = new CyclicBarrier(3);
+    StaticDatasource datasource = new StaticDatasource("ds");
+    JoinTable joinTable = new JoinTable(ImmutableList.<ValueTable>of(newBarrierTable(datasource, "T1", barrier, 0, 10),
+        newBarrierTable(datasource, "T2", barrier, 5, 15), newBarrierTable(datasource, "T3", barrier, 0, 15)));
+
+    List<ValueSet> valueSets = Lists.newArrayList(joinTable.getValueSets());
+    assertThat(valueSets).hasSize(15);
+    for (ValueSet valueSet : valueSets) {
+      int id = Integer.parseInt(valueSet.getVariableEntity().getIdentifier());
+      assertThat(valueOf(joinTable, "T1", valueSet)).isEqualTo(id < 10 ? "T1-" + id : null);
+      assertThat(valueOf(joinTable, "T2", valueSet)).isEqualTo(id >= 5 ? "T2-" + id : null);
+      assertThat(valueOf(joinTable, "T3", valueSet)).isEqualTo("T3-" + id);
+    }
+  }
+
+  @Test
+  public void test_getValueSets_innerTablesFetchedByCallingThreadWhenBusy() {
+    setJoinFetchConcurrency(1);
+    // T2 is queried in the background, T3 by the calling thread after T1
+    CyclicBarrier barrier = new CyclicBarrier(2);
+    StaticDatasource datasource = new StaticDatasource("ds");
+    JoinTable joinTable = new JoinTable(ImmutableList.<ValueTable>of(newBarrierTable(datasource, "T1", barrier, 0, 10),
+        newBarrierTable(datasource, "T2", barrier, 5, 15), newStaticTable(datasource, "T3", 0, 15)));
+
+    List<ValueSet> valueSets = Lists.newArrayList(joinTable.getValueSets());
+    assertThat(valueSets).hasSize(15);
+    for (ValueSet valueSet : valueSets) {
+      int id = Integer.parseInt(valueSet.getVariableEntity().getIdentifier());
+      assertThat(valueOf(joinTable, "T2", valueSet)).isEqualTo(id >= 5 ? "T2-" + id : null);
+      assertThat(valueOf(joinTable, "T3", valueSet)).isEqualTo("T3-" + id);
+    }
+  }
+
+  @Test
+  public void test_getValueSets_innerTablesFetchedByCallingThread() {
+    Thread caller = Thread.currentThread();
+    List<Thread> queryThreads = Lists.newArrayList();
+    StaticDatasource datasource = new StaticDatasource("ds");
+    JoinTable joinTable = new JoinTable(ImmutableList.<ValueTable>of(newStaticTable(datasource, "T1", 0, 10),
+        initStaticTable(new StaticValueTable(datasource, "T2", identifiers(5, 15)) {
+          @Override
+          public Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities, Iterable<Variable> variables) {
+            queryThreads.add(Thread.currentThread());
+            return super.getValueSets(entities, variables);
+          }
+        }, "T2", 5, 15)));
+
+    List<ValueSet> valueSets = Lists.newArrayList(joinTable.getValueSets(joinTable.getVariableEntities(),
+        ImmutableList.of(joinTable.getVariable("T2"))));
+    assertThat(valueSets).hasSize(15);
+    assertThat(queryThreads).containsOnly(caller);
+  }
+
+  @Test
+  public void test_getValueSets_variablesResolvedByCallingThread() {
+    setJoinFetchConcurrency(2);
+    Thread caller = Thread.currentThread();
+    List<Variable> queriedVariables = Lists.newArrayList();
+    StaticDatasource datasource = new StaticDatasource("ds");
+    // T2 variables are only visible from the calling thread, as if they were secured
+    JoinTable joinTable = new JoinTable(ImmutableList.<ValueTable>of(newStaticTable(datasource, "T1", 0, 10),
+        initStaticTable(new StaticValueTable(datasource, "T2", identifiers(5, 15)) {
+          @Override
+          public boolean hasVariable(String name) {
+            return Thread.currentThread() == caller && super.hasVariable(name);
+          }
+
+          @Override
+          public Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities, Iterable<Variable> variables) {
+            Iterables.addAll(queriedVariables, variables);
+            return super.getValueSets(entities, variables);
+          }
+        }, "T2", 5, 15)));
+    Variable variable = joinTable.getVariable("T2");
+
+    List<ValueSet> valueSets = Lists.newArrayList(joinTable.getValueSets(joinTable.getVariableEntities(),
+        ImmutableList.of(variable)));
+    assertThat(valueSets).hasSize(15);
+    assertThat(queriedVariables).containsOnly(variable);
+    for (ValueSet valueSet : valueSets) {
+      int id = Integer.parseInt(valueSet.getVariableEntity().getIdentifier());
+      assertThat(valueOf(joinTable, "T2", valueSet)).isEqualTo(id >= 5 ? "T2-" + id : null);
+    }
+  }
+
+  @Test
+  public void test_getValueSets_concurrentConsumers() throws Exception {
+    StaticDatasource datasource = new StaticDatasource("ds");
+    JoinTable joinTable = new JoinTable(ImmutableList.<ValueTable>of(newStaticTable(datasource, "T1", 0, 500),
+        newStaticTable(datasource, "T2", 250, 1000)));
+    List<VariableEntity> entities = joinTable.getVariableEntities();
+    assertThat(entities).hasSize(1000);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Integer>> futures = Lists.newArrayList();
+      for (List<VariableEntity> partition : Lists.partition(entities, 250)) {
+        futures.add(executor.submit(() -> {
+          int count = 0;
+          for (ValueSet valueSet : joinTable.getValueSets(partition)) {
+            String id = valueSet.getVariableEntity().getIdentifier();
+            assertThat(valueOf(joinTable, "T2", valueSet)).isEqualTo(Integer.parseInt(id) >= 250 ? "T2-" + id : null);
+            count++;
+          }
+          return count;
+        }));
+      }
+      int count = 0;
+      for (Future<Integer> future : futures) {
+        count += future.get();
+      }
+      assertThat(count).isEqualTo(1000);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void test_getValueSets_outerTableEntities() {
+    StaticDatasource datasource = new StaticDatasource("ds");
+    AtomicInteger hasValueSetCount = new AtomicInteger();
+    AtomicReference<Value> lastUpdate = new AtomicReference<>(DateTimeType.get().valueOf(new Date(1000)));
+    JoinTable joinTable = new JoinTable(
+        ImmutableList.<ValueTable>of(newTimestampedTable(datasource, "T1", lastUpdate, hasValueSetCount, 0, 10),
+            newTimestampedTable(datasource, "T2", lastUpdate, hasValueSetCount, 5, 15)));
+    List<VariableEntity> entities = joinTable.getVariableEntities();
+    assertThat(entities).hasSize(15);
+
+    // entities of the outer tables are looked up in the sets of the union
+    List<ValueSet> valueSets = Lists.newArrayList(joinTable.getValueSets(entities));
+    assertThat(valueSets).hasSize(15);
+    for (ValueSet valueSet : valueSets) {
+      int id = Integer.parseInt(valueSet.getVariableEntity().getIdentifier());
+      assertThat(valueOf(joinTable, "T1", valueSet)).isEqualTo(id < 10 ? "T1-" + id : null);
+      assertThat(valueOf(joinTable, "T2", valueSet)).isEqualTo(id >= 5 ? "T2-" + id : null);
+    }
+    assertThat(hasValueSetCount.get()).isEqualTo(0);
+    // the caller cannot modify the union
+    entities.add(newEntity("20"));
+    assertThat(joinTable.getOuterTableEntities(joinTable.getTables().get(0)).contains(newEntity("20"))).isFalse();
+  }
+
+  @Test
+  public void test_getValueSets_outerTableEntities_updatedTable() {
+    StaticDatasource datasource = new StaticDatasource("ds");
+    AtomicInteger hasValueSetCount = new AtomicInteger();
+    AtomicReference<Value> lastUpdate = new AtomicReference<>(DateTimeType.get().valueOf(new Date(1000)));
+    AtomicReference<Value> updatedLastUpdate = new AtomicReference<>(lastUpdate.get());
+    StaticValueTable updated = newTimestampedTable(datasource, "T2", updatedLastUpdate, hasValueSetCount, 5, 15);
+    JoinTable joinTable = new JoinTable(ImmutableList.<ValueTable>of(
+        newTimestampedTable(datasource, "T1", lastUpdate, hasValueSetCount, 0, 10), updated));
+    joinTable.getVariableEntities();
+    updated.removeValues("10");
+    updatedLastUpdate.set(DateTimeType.get().valueOf(new Date(2000)));
+
+    // T2 was updated since the union: its value sets are checked
+    List<ValueSet> valueSets = Lists.newArrayList(joinTable.getValueSets(ImmutableList.of(newEntity("1"), newEntity("10"))));
+    assertThat(valueOf(joinTable, "T1", valueSets.get(0))).isEqualTo("T1-1");
+    assertThat(valueOf(joinTable, "T2", valueSets.get(1))).isNull();
+    assertThat(hasValueSetCount.get()).isEqualTo(2);
+    assertThat(joinTable.getOuterTableEntities(updated)).isNull();
+  }
+
+  private static void setJoinFetchConcurrency(int concurrency) {
+    MagmaEngine.get().extend(new MagmaParametersExtension(
+        ImmutableMap.<String, Object>of(JoinValueSetFetcher.JOIN_FETCH_CONCURRENCY_KEY, concurrency)));
+  }
+
+  private static StaticValueTable newTimestampedTable(Datasource datasource, String name,
+      AtomicReference<Value> lastUpdate, AtomicInteger hasValueSetCount, int from, int to) {
+    return initStaticTable(new StaticValueTable(datasource, name, identifiers(from, to)) {
+      @Override
+      public Timestamps getTimestamps() {
+        return new TimestampsBean(lastUpdate.get(), lastUpdate.get());
+      }
+
+      @Override
+      public boolean hasValueSet(VariableEntity entity) {
+        hasValueSetCount.incrementAndGet();
+        return super.hasValueSet(entity);
+      }
+    }, name, from, to);
+  }
+
+  private static Object valueOf(ValueTable table, String variableName, ValueSet valueSet) {
+    Value value = table.getVariableValueSource(variableName).getValue(valueSet);
+    return value.isNull() ? null : value.getValue();
+  }
+
+  private static StaticValueTable newStaticTable(Datasource datasource, String name, int from, int to) {
+    return initStaticTable(new StaticValueTable(datasource, name, identifiers(from, to)), name, from, to);
+  }
+
+  private static StaticValueTable newBarrierTable(Datasource datasource, String name, CyclicBarrier barrier, int from,
+      int to) {
+    return initStaticTable(new StaticValueTable(datasource, name, identifiers(from, to)) {
+      @Override
+      public Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities) {
+        try {
+          barrier.await(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+          throw new MagmaRuntimeException(e);
+        }
+        return super.getValueSets(entities);
+      }
+    }, name, from, to);
+  }
+
+  private static StaticValueTable initStaticTable(StaticValueTable table, String name, int from, int to) {
+    table.addVariables(TextType.get(), name);
+    for (int i = from; i < to; i++) {
+      table.addValues(String.valueOf(i), name, name + "-" + i);
+    }
+    return table;
+  }
+
+  private static List<String> identifiers(int from, int to) {
+    List<String> identifiers = Lists.newArrayList();
+    for (int i = from; i < to; i++) {
+      identifiers.add(String.valueOf(i));
+    }
+    return identifiers;
+  }
+
   private static VariableEntity newEntity(String entityIdentifier) {
     return new VariableEntityBean(PARTICIPANT_ENTITY_TYPE, entityIdentifier);
   }
@@ -349,6 +590,7 @@ public class JoinTableTest extends MagmaTest {
       expect(builder.mock.getEntityType()).andReturn(entityType).anyTimes();
       expect(builder.mock.isForEntityType(entityType)).andReturn(true).anyTimes();
       expect(builder.mock.getVariables()).andReturn(builder.variables).anyTimes();
+      expect(builder.mock.getTimestamps()).andReturn(NullTimestamps.get()).anyTimes();
       if (!Strings.isNullOrEmpty(name)) builder.withName(name);
       return builder;
     }
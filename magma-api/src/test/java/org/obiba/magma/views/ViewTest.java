@@ -19,6 +19,8 @@ import org.obiba.magma.support.NullTimestamps;
 import org.obiba.magma.support.ValueSetBean;
 import org.obiba.magma.support.VariableEntityBean;
 import org.obiba.magma.type.TextType;
+import org.obiba.magma.views.support.VariableCriterion;
+import org.obiba.magma.views.support.VariableCriterionSupport;
 
 import java.util.*;
 
@@ -120,6 +122,25 @@ public class ViewTest extends MagmaTest {
     assertThat(view.getValueSet(variableEntity)).isNotNull();
   }
 
+  @Test
+  public void testGetValueSetsPassesVariablesToWrappedTable() {
+    ValueTable valueTableMock = mock(ValueTable.class);
+    VariableEntity variableEntity = new VariableEntityBean("type", "id1");
+    ValueSet valueSet = new ValueSetBean(valueTableMock, variableEntity);
+    List<VariableEntity> entities = Lists.newArrayList(variableEntity);
+    List<Variable> variables = Lists.newArrayList(Variable.Builder.newVariable("var1", TextType.get(), "type").build());
+
+    when(valueTableMock.getName()).thenReturn("wrappedTable");
+    when(valueTableMock.getValueSets(entities, variables)).thenReturn(Lists.newArrayList(valueSet));
+
+    View view = View.Builder.newView("view", valueTableMock).build();
+    List<ValueSet> valueSets = Lists.newArrayList(view.getValueSets(entities, variables));
+
+    verify(valueTableMock).getValueSets(entities, variables);
+    assertThat(valueSets).hasSize(1);
+    assertThat(valueSets.get(0).getValueTable().getName()).isEqualTo("view");
+  }
+
   @Test(expected = NoSuchValueSetException.class)
   public void testGetValueSetWithExcludingWhereClause() {
     ValueTable valueTableMock = mock(ValueTable.class);
@@ -226,6 +247,50 @@ public class ViewTest extends MagmaTest {
     assertThat(containsValueSet(result, valueSetInclude)).isTrue();
   }
 
+  @Test
+  public void testGetVariableEntitiesSelectedByWrappedTable() {
+    ValueTable valueTableMock = mock(ValueTable.class, withSettings().extraInterfaces(VariableCriterionSupport.class));
+    WhereClause whereClauseMock = mock(WhereClause.class);
+    VariableCriterion criterion = VariableCriterion.in("var1", Lists.newArrayList("a"));
+    VariableEntity variableEntityInclude = new VariableEntityBean("type", "include");
+
+    when(valueTableMock.getTimestamps()).thenReturn(NullTimestamps.get());
+    when(whereClauseMock.getCriterion()).thenReturn(criterion);
+    when(((VariableCriterionSupport) valueTableMock).getVariableEntities(criterion))
+        .thenReturn(Lists.newArrayList(variableEntityInclude));
+
+    View view = View.Builder.newView("view", valueTableMock).where(whereClauseMock).build();
+
+    assertThat(view.getVariableEntities()).containsOnly(variableEntityInclude);
+    verify(whereClauseMock, never()).where(any(ValueSet.class), any(View.class));
+    verify(valueTableMock, never()).getValueSet(any(VariableEntity.class));
+  }
+
+  @Test
+  public void testGetVariableEntitiesNotSelectedByWrappedTable() {
+    ValueTable valueTableMock = mock(ValueTable.class, withSettings().extraInterfaces(VariableCriterionSupport.class));
+    WhereClause whereClauseMock = mock(WhereClause.class);
+    VariableCriterion criterion = VariableCriterion.in("var1", Lists.newArrayList("a"));
+    VariableEntity variableEntityInclude = new VariableEntityBean("type", "include");
+    VariableEntity variableEntityExclude = new VariableEntityBean("type", "exclude");
+    ValueSet valueSetInclude = new ValueSetBean(valueTableMock, variableEntityInclude);
+    ValueSet valueSetExclude = new ValueSetBean(valueTableMock, variableEntityExclude);
+
+    when(valueTableMock.getTimestamps()).thenReturn(NullTimestamps.get());
+    when(valueTableMock.getVariableEntities()).thenReturn(Lists.newArrayList(variableEntityInclude, variableEntityExclude));
+    when(valueTableMock.getValueSet(variableEntityInclude)).thenReturn(valueSetInclude);
+    when(valueTableMock.getValueSet(variableEntityExclude)).thenReturn(valueSetExclude);
+    when(whereClauseMock.getCriterion()).thenReturn(criterion);
+    // the criterion is not supported by the wrapped table
+    when(((VariableCriterionSupport) valueTableMock).getVariableEntities(criterion)).thenReturn(null);
+
+    View view = View.Builder.newView("view", valueTableMock).where(whereClauseMock).build();
+    when(whereClauseMock.where(valueSetInclude, view)).thenReturn(true);
+    when(whereClauseMock.where(valueSetExclude, view)).thenReturn(false);
+
+    assertThat(view.getVariableEntities()).containsOnly(variableEntityInclude);
+  }
+
   @Test
   public void testGetVariableWithDefaultSelectClause() {
     ValueTable valueTableMock = mock(ValueTable.class);
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.benchmarks;
+
+import com.google.common.collect.Lists;
+import org.obiba.magma.Category;
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.datasource.generated.GeneratedValueTable;
+import org.obiba.magma.js.MagmaJsExtension;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
+import org.obiba.magma.type.BinaryType;
+import org.obiba.magma.type.DateTimeType;
+import org.obiba.magma.type.DateType;
+import org.obiba.magma.type.DecimalType;
+import org.obiba.magma.type.IntegerType;
+import org.obiba.magma.type.PointType;
+import org.obiba.magma.type.TextType;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * The synthetic data of the benchmarks: tables generated from a fixed seed, so that the runs of different releases
+ * read the same values.
+ */
+final class BenchmarkData {
+
+  static final String ENTITY_TYPE = "Participant";
+
+  static final String TABLE = "Table";
+
+  private static final long SEED = 20190425L;
+
+  private BenchmarkData() {}
+
+  /**
+   * Start the engine, with the javascript extension that the views and the data generator rely on.
+   */
+  static void startEngine() {
+    new MagmaEngine().extend(new MagmaJsExtension());
+  }
+
+  static void stopEngine() {
+    MagmaEngine.get().shutdown();
+  }
+
+  /**
+   * A dictionary of variables of the value types the data generator supports, in turn.
+   *
+   * @param count the number of variables
+   * @return the variables of the generated tables
+   */
+  static List<Variable> newDictionary(int count) {
+    List<Variable> variables = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      switch (i % 6) {
+        case 0:
+          variables.add(Variable.Builder.newVariable("INT_" + i, IntegerType.get(), ENTITY_TYPE).build());
+          break;
+        case 1:
+          variables.add(Variable.Builder.newVariable("DEC_" + i, DecimalType.get(), ENTITY_TYPE).build());
+          break;
+        case 2:
+          variables.add(Variable.Builder.newVariable("CAT_" + i, TextType.get(), ENTITY_TYPE)
+              .addCategories("A", "B", "C", "D")
+              .addCategory(Category.Builder.newCategory("DNK").missing(true).build()).build());
+          break;
+        case 3:
+          variables.add(Variable.Builder.newVariable("TXT_" + i, TextType.get(), ENTITY_TYPE).build());
+          break;
+        case 4:
+          variables.add(Variable.Builder.newVariable("DATE_" + i, DateType.get(), ENTITY_TYPE).build());
+          break;
+        default:
+          variables.add(Variable.Builder.newVariable("TIME_" + i, DateTimeType.get(), ENTITY_TYPE).build());
+          break;
+      }
+    }
+    return variables;
+  }
+
+  static ValueTable newGeneratedTable(List<Variable> variables, int entities) {
+    return new GeneratedValueTable(null, variables, entities, SEED);
+  }
+
+  /**
+   * Copy the generated values in a table in memory, so that reading them does not include their generation. A point
+   * and a binary variable are added, which values are not generated.
+   *
+   * @param datasource the datasource the table is added to
+   * @param name the name of the table
+   * @param variables the generated variables
+   * @param entities the number of entities
+   * @return the table, with values for all its variables
+   */
+  static StaticValueTable newStaticTable(StaticDatasource datasource, String name, List<Variable> variables,
+      int entities) {
+    ValueTable generated = newGeneratedTable(variables, entities);
+    List<String> identifiers = generated.getVariableEntities().stream().map(VariableEntity::getIdentifier)
+        .collect(Collectors.toList());
+    StaticValueTable table = new StaticValueTable(datasource, name, identifiers, ENTITY_TYPE);
+    Variable point = Variable.Builder.newVariable("POINT", PointType.get(), ENTITY_TYPE).build();
+    Variable binary = Variable.Builder.newVariable("BIN", BinaryType.get(), ENTITY_TYPE).build();
+    Random random = new Random(SEED);
+    for (ValueSet valueSet : generated.getValueSets()) {
+      List<Object> variableAndValues = Lists.newArrayList();
+      for (Variable variable : variables) {
+        variableAndValues.add(variable);
+        variableAndValues.add(generated.getValue(variable, valueSet));
+      }
+      variableAndValues.add(point);
+      String coordinates = String.format(Locale.ROOT, "[%.4f,%.4f]", random.nextDouble() * 360 - 180,
+          random.nextDouble() * 180 - 90);
+      variableAndValues.add(PointType.get().valueOf(coordinates));
+      byte[] bytes = new byte[256];
+      random.nextBytes(bytes);
+      variableAndValues.add(binary);
+      variableAndValues.add(BinaryType.get().valueOf(bytes));
+      table.addValues(valueSet.getVariableEntity().getIdentifier(), variableAndValues.toArray());
+    }
+    datasource.addValueTable(table);
+    return table;
+  }
+
+  /**
+   * Read all the values of the table, value set by value set.
+   *
+   * @param table the table to read
+   * @return the number of non-null values
+   */
+  static int readAll(ValueTable table) {
+    List<Variable> variables = Lists.newArrayList(table.getVariables());
+    int count = 0;
+    for (ValueSet valueSet : table.getValueSets()) {
+      for (Variable variable : variables) {
+        Value value = table.getValue(variable, valueSet);
+        if (!value.isNull()) count++;
+      }
+    }
+    return count;
+  }
+
+}
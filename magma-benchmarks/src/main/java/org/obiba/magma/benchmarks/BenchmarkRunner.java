@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and writes their results as JSON, so that they can be compared from a release to another:
+ * <pre>
+ * mvn -Pbenchmarks package
+ * java -jar magma-benchmarks/target/benchmarks.jar [JMH options] [benchmark regexp]
+ * </pre>
+ * The results are written in <code>magma-benchmarks.json</code> unless the <code>-rf</code>/<code>-rff</code> options
+ * say otherwise.
+ */
+public class BenchmarkRunner {
+
+  private static final String RESULT_FILE = "magma-benchmarks.json";
+
+  private BenchmarkRunner() {}
+
+  public static void main(String... args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+    if (!commandLine.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+    if (!commandLine.getResult().hasValue()) options.result(RESULT_FILE);
+    if (commandLine.getIncludes().isEmpty()) options.include(BenchmarkRunner.class.getPackage().getName() + ".*");
+    new Runner(options.build()).run();
+  }
+
+}
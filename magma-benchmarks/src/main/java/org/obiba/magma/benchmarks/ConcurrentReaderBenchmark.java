@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.benchmarks;
+
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.concurrent.ConcurrentValueTableReader;
+import org.obiba.magma.support.StaticDatasource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reading all the value sets of a table in memory with a {@link ConcurrentValueTableReader}, on platform threads and
+ * on virtual threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentReaderBenchmark {
+
+  @Param({ "100000" })
+  public int entities;
+
+  @Param({ "10" })
+  public int variables;
+
+  // reader threads, or batches read at the same time on virtual threads
+  @Param({ "1", "8" })
+  public int readers;
+
+  private ValueTable table;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    BenchmarkData.startEngine();
+    table = BenchmarkData
+        .newStaticTable(new StaticDatasource("benchmark"), BenchmarkData.TABLE, BenchmarkData.newDictionary(variables),
+            entities);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkData.stopEngine();
+  }
+
+  @Benchmark
+  public int platformThreads() {
+    return read(ConcurrentValueTableReader.Builder.newReader().withReaders(readers));
+  }
+
+  @Benchmark
+  public int virtualThreads() {
+    return read(ConcurrentValueTableReader.Builder.newReader().withVirtualThreads(readers));
+  }
+
+  private int read(ConcurrentValueTableReader.Builder builder) {
+    AtomicInteger count = new AtomicInteger();
+    builder.from(table).to(new ConcurrentValueTableReader.ConcurrentReaderCallback() {
+      @Override
+      public void onBegin(List<VariableEntity> entities, Variable... variables) {
+      }
+
+      @Override
+      public void onValues(VariableEntity entity, Variable[] variables, Value... values) {
+        count.incrementAndGet();
+      }
+
+      @Override
+      public void onComplete() {
+      }
+
+      @Override
+      public boolean isCancelled() {
+        return false;
+      }
+    }).build().read();
+    return count.get();
+  }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.benchmarks;
+
+import org.obiba.magma.type.DateTimeType;
+import org.obiba.magma.type.DateType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Parsing and formatting of the usual shapes of dates and date times, concurrently: by the benchmark threads, and by
+ * short-lived virtual threads that each parse a few strings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DateTimeBenchmark {
+
+  // the last one is only parsed by the legacy formats
+  private static final String[] DATE_TIMES = { "2011-01-25T14:30:47.123+0100", "2011-01-25T14:30:47-05:00",
+      "2011-01-25 14:30:47", "2011/01/25 14:30", "2011-01-25", "2011-01-25T14:30:47.123EST" };
+
+  private static final String[] DATES = { "2011-01-25", "2011/01/25", "25-01-2011", "25.01.2011" };
+
+  private static final Date DATE = new Date(1_500_000_000_000L);
+
+  @Param({ "1000" })
+  public int virtualThreads;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    BenchmarkData.startEngine();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkData.stopEngine();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void parseAndFormat(Blackhole blackhole) {
+    parseAndFormat(blackhole::consume);
+  }
+
+  @Benchmark
+  public int parseAndFormatOnVirtualThreads() {
+    AtomicInteger count = new AtomicInteger();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < virtualThreads; i++) {
+        executor.execute(() -> parseAndFormat(value -> count.incrementAndGet()));
+      }
+    }
+    return count.get();
+  }
+
+  private static void parseAndFormat(Consumer<Object> consumer) {
+    for (String dateTime : DATE_TIMES) {
+      consumer.accept(DateTimeType.get().valueOf(dateTime));
+    }
+    for (String date : DATES) {
+      consumer.accept(DateType.get().valueOf(date));
+    }
+    consumer.accept(DateTimeType.get().valueOf(DATE).toString());
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.benchmarks;
+
+import org.obiba.magma.Datasource;
+import org.obiba.magma.datasource.fs.FsDatasource;
+import org.obiba.magma.support.DatasourceCopier;
+import org.obiba.magma.support.Disposables;
+import org.obiba.magma.support.Initialisables;
+import org.obiba.magma.support.StaticDatasource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading of the values of a table from a zip file of XML documents.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FsBenchmark {
+
+  @Param({ "1000", "10000" })
+  public int entities;
+
+  @Param({ "60" })
+  public int variables;
+
+  private File file;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    BenchmarkData.startEngine();
+    file = Files.createTempFile("magma-fs", ".zip").toFile();
+    Files.delete(file.toPath());
+    StaticDatasource source = new StaticDatasource("benchmark");
+    BenchmarkData.newStaticTable(source, BenchmarkData.TABLE, BenchmarkData.newDictionary(variables), entities);
+    FsDatasource datasource = new FsDatasource("fs", file);
+    Initialisables.initialise(datasource);
+    try {
+      DatasourceCopier.Builder.newCopier().build()
+          .copy(source.getValueTable(BenchmarkData.TABLE), BenchmarkData.TABLE, datasource);
+    } finally {
+      Disposables.dispose(datasource);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    BenchmarkData.stopEngine();
+    Files.deleteIfExists(file.toPath());
+  }
+
+  @Benchmark
+  public int read() {
+    Datasource datasource = new FsDatasource("fs", file);
+    Initialisables.initialise(datasource);
+    try {
+      return BenchmarkData.readAll(datasource.getValueTable(BenchmarkData.TABLE));
+    } finally {
+      Disposables.dispose(datasource);
+    }
+  }
+
+}
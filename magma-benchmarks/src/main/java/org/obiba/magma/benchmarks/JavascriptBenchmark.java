@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.benchmarks;
+
+import com.google.common.collect.Lists;
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.js.JavascriptVariableBuilder;
+import org.obiba.magma.js.JavascriptVariableValueSource;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.type.DecimalType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of a derived variable script, value set by value set (scalar) and for all the entities at once (vector).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JavascriptBenchmark {
+
+  @Param({ "1000", "10000" })
+  public int entities;
+
+  @Param({ "$('INT_0').plus($('DEC_1'))", "$('CAT_2').map({'A': 1, 'B': 2, 'C': 3, 'D': 4}).multiply($('INT_0'))" })
+  public String script;
+
+  private ValueTable table;
+
+  private JavascriptVariableValueSource source;
+
+  private List<VariableEntity> entityList;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    BenchmarkData.startEngine();
+    StaticDatasource datasource = new StaticDatasource("benchmark");
+    table = BenchmarkData.newStaticTable(datasource, BenchmarkData.TABLE, BenchmarkData.newDictionary(6), entities);
+    MagmaEngine.get().addDatasource(datasource);
+    Variable variable = Variable.Builder.newVariable("DERIVED", DecimalType.get(), BenchmarkData.ENTITY_TYPE)
+        .extend(JavascriptVariableBuilder.class).setScript(script).build();
+    source = new JavascriptVariableValueSource(variable, table);
+    source.initialise();
+    entityList = Lists.newArrayList(table.getVariableEntities());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkData.stopEngine();
+  }
+
+  @Benchmark
+  public void scalar(Blackhole blackhole) {
+    for (ValueSet valueSet : table.getValueSets()) {
+      blackhole.consume(source.getValue(valueSet));
+    }
+  }
+
+  @Benchmark
+  public void vector(Blackhole blackhole) {
+    for (Value value : source.asVectorSource().getValues(entityList)) {
+      blackhole.consume(value);
+    }
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.benchmarks;
+
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.datasource.jdbc.JdbcDatasource;
+import org.obiba.magma.datasource.jdbc.JdbcDatasourceSettings;
+import org.obiba.magma.support.DatasourceCopier;
+import org.obiba.magma.support.Disposables;
+import org.obiba.magma.support.Initialisables;
+import org.obiba.magma.support.StaticDatasource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading of the values of a table in an embedded HSQLDB database, see {@link JdbcWriteBenchmark} for the writing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JdbcBenchmark {
+
+  @Param({ "1000", "10000" })
+  public int entities;
+
+  @Param({ "60" })
+  public int variables;
+
+  private JdbcDatasource datasource;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    BenchmarkData.startEngine();
+    StaticDatasource staticDatasource = new StaticDatasource("benchmark");
+    ValueTable source = BenchmarkData
+        .newStaticTable(staticDatasource, BenchmarkData.TABLE, BenchmarkData.newDictionary(variables), entities);
+    DriverManagerDataSource dataSource = new DriverManagerDataSource(
+        "jdbc:hsqldb:mem:benchmark-" + entities + ";shutdown=true", "sa", "");
+    datasource = new JdbcDatasource("jdbc", dataSource,
+        JdbcDatasourceSettings.newSettings(BenchmarkData.ENTITY_TYPE).useMetadataTables().build());
+    Initialisables.initialise(datasource);
+    DatasourceCopier.Builder.newCopier().build().copy(source, BenchmarkData.TABLE, datasource);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Disposables.dispose(datasource);
+    BenchmarkData.stopEngine();
+  }
+
+  @Benchmark
+  public int read() {
+    return BenchmarkData.readAll(datasource.getValueTable(BenchmarkData.TABLE));
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.benchmarks;
+
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableValueSource;
+import org.obiba.magma.math.Distribution;
+import org.obiba.magma.math.summary.BinaryVariableSummaryFactory;
+import org.obiba.magma.math.summary.CategoricalVariableSummaryFactory;
+import org.obiba.magma.math.summary.ContinuousVariableSummaryFactory;
+import org.obiba.magma.math.summary.DefaultVariableSummaryFactory;
+import org.obiba.magma.math.summary.GeoVariableSummaryFactory;
+import org.obiba.magma.math.summary.TextVariableSummaryFactory;
+import org.obiba.magma.math.summary.VariableSummary;
+import org.obiba.magma.support.StaticDatasource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computation of the summaries of the variables, with the factory of each kind of summary.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SummaryBenchmark {
+
+  @Param({ "1000", "10000" })
+  public int entities;
+
+  private ValueTable table;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    BenchmarkData.startEngine();
+    StaticDatasource datasource = new StaticDatasource("benchmark");
+    table = BenchmarkData.newStaticTable(datasource, BenchmarkData.TABLE, BenchmarkData.newDictionary(6), entities);
+    MagmaEngine.get().addDatasource(datasource);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkData.stopEngine();
+  }
+
+  @Benchmark
+  public VariableSummary continuous() {
+    VariableValueSource source = table.getVariableValueSource("INT_0");
+    return new ContinuousVariableSummaryFactory.Builder().variable(source.getVariable()).table(table)
+        .valueSource(source).distribution(Distribution.normal).build().getSummary();
+  }
+
+  @Benchmark
+  public VariableSummary categorical() {
+    VariableValueSource source = table.getVariableValueSource("CAT_2");
+    return new CategoricalVariableSummaryFactory.Builder().variable(source.getVariable()).table(table)
+        .valueSource(source).distinct(false).build().getSummary();
+  }
+
+  @Benchmark
+  public VariableSummary text() {
+    VariableValueSource source = table.getVariableValueSource("TXT_3");
+    return new TextVariableSummaryFactory.Builder().variable(source.getVariable()).table(table).valueSource(source)
+        .build().getSummary();
+  }
+
+  @Benchmark
+  public VariableSummary defaults() {
+    VariableValueSource source = table.getVariableValueSource("DATE_4");
+    return new DefaultVariableSummaryFactory.Builder().variable(source.getVariable()).table(table)
+        .valueSource(source).build().getSummary();
+  }
+
+  @Benchmark
+  public VariableSummary binary() {
+    VariableValueSource source = table.getVariableValueSource("BIN");
+    return new BinaryVariableSummaryFactory.Builder().variable(source.getVariable()).table(table).valueSource(source)
+        .build().getSummary();
+  }
+
+  @Benchmark
+  public VariableSummary geo() {
+    VariableValueSource source = table.getVariableValueSource("POINT");
+    return new GeoVariableSummaryFactory.Builder().variable(source.getVariable()).table(table).valueSource(source)
+        .build().getSummary();
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.Variable;
+import org.obiba.magma.support.Initialisables;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.views.JoinTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iteration over the value sets of a table, of generated values and of values in memory, and of a join of tables.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValueTableBenchmark {
+
+  @Param({ "1000", "10000" })
+  public int entities;
+
+  @Param({ "60" })
+  public int variables;
+
+  private ValueTable generated;
+
+  private ValueTable table;
+
+  private JoinTable join;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    BenchmarkData.startEngine();
+    List<Variable> dictionary = BenchmarkData.newDictionary(variables);
+    StaticDatasource datasource = new StaticDatasource("benchmark");
+    table = BenchmarkData.newStaticTable(datasource, BenchmarkData.TABLE, dictionary, entities);
+    int half = dictionary.size() / 2;
+    ValueTable left = BenchmarkData.newStaticTable(datasource, "Left", dictionary.subList(0, half), entities);
+    ValueTable right = BenchmarkData
+        .newStaticTable(datasource, "Right", dictionary.subList(half, dictionary.size()), entities);
+    MagmaEngine.get().addDatasource(datasource);
+    join = new JoinTable(ImmutableList.of(left, right));
+    Initialisables.initialise(join);
+    generated = BenchmarkData.newGeneratedTable(dictionary, entities);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkData.stopEngine();
+  }
+
+  @Benchmark
+  public int generatedValueSets() {
+    return BenchmarkData.readAll(generated);
+  }
+
+  @Benchmark
+  public int staticValueSets() {
+    return BenchmarkData.readAll(table);
+  }
+
+  @Benchmark
+  public int joinValueSets() {
+    return BenchmarkData.readAll(join);
+  }
+
+}
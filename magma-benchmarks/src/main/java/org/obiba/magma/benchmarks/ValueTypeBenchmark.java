@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.benchmarks;
+
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion from and to strings, equality and hashing of the values of each value type.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValueTypeBenchmark {
+
+  private static final int SIZE = 1000;
+
+  private static final Locale[] LOCALES = { Locale.ENGLISH, Locale.FRENCH, Locale.GERMAN, Locale.CANADA_FRENCH };
+
+  @Param({ "text", "integer", "decimal", "boolean", "date", "datetime", "locale", "binary", "point", "linestring",
+      "polygon" })
+  public String typeName;
+
+  private ValueType type;
+
+  private Value[] values;
+
+  private Value[] copies;
+
+  private String[] strings;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    BenchmarkData.startEngine();
+    type = ValueType.Factory.forName(typeName);
+    Random random = new Random(SIZE);
+    values = new Value[SIZE];
+    copies = new Value[SIZE];
+    strings = new String[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      values[i] = type.valueOf(newObject(random, i));
+      strings[i] = values[i].toString();
+      copies[i] = type.valueOf(strings[i]);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkData.stopEngine();
+  }
+
+  @Benchmark
+  public void valuesOf(Blackhole blackhole) {
+    for (String string : strings) {
+      blackhole.consume(type.valueOf(string));
+    }
+  }
+
+  @Benchmark
+  public void toStrings(Blackhole blackhole) {
+    for (Value value : values) {
+      blackhole.consume(value.toString());
+    }
+  }
+
+  @Benchmark
+  public int equals() {
+    int count = 0;
+    for (int i = 0; i < SIZE; i++) {
+      if (values[i].equals(copies[i])) count++;
+      if (values[i].equals(copies[SIZE - i - 1])) count++;
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int hashCodes() {
+    int hash = 0;
+    for (Value value : values) {
+      hash += value.hashCode();
+    }
+    return hash;
+  }
+
+  private Object newObject(Random random, int i) {
+    double x = random.nextDouble() * 10;
+    double y = random.nextDouble() * 10;
+    switch (typeName) {
+      case "text":
+        return "text value " + random.nextInt();
+      case "integer":
+        return random.nextLong();
+      case "decimal":
+        return random.nextDouble() * 1000;
+      case "boolean":
+        return random.nextBoolean();
+      case "date":
+      case "datetime":
+        return new Date(1_500_000_000_000L + random.nextInt() * 1000L);
+      case "locale":
+        return LOCALES[i % LOCALES.length];
+      case "binary":
+        byte[] bytes = new byte[64];
+        random.nextBytes(bytes);
+        return bytes;
+      case "point":
+        return String.format(Locale.ROOT, "[%.4f,%.4f]", x, y);
+      case "linestring":
+        return String.format(Locale.ROOT, "[[%.4f,%.4f],[%.4f,%.4f],[%.4f,%.4f]]", x, y, x + 1, y, x + 1, y + 1);
+      default:
+        return String.format(Locale.ROOT, "[[[%.4f,%.4f],[%.4f,%.4f],[%.4f,%.4f],[%.4f,%.4f]]]", x, y, x + 1, y,
+            x + 1, y + 1, x, y);
+    }
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.benchmarks;
+
+import org.obiba.magma.MagmaEngine;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.js.views.JavascriptClause;
+import org.obiba.magma.support.Initialisables;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.views.View;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iteration over the value sets of views filtering the entities and selecting the variables of a table.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ViewBenchmark {
+
+  @Param({ "1000", "10000" })
+  public int entities;
+
+  @Param({ "60" })
+  public int variables;
+
+  private View whereView;
+
+  private View selectView;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    BenchmarkData.startEngine();
+    StaticDatasource datasource = new StaticDatasource("benchmark");
+    ValueTable table = BenchmarkData
+        .newStaticTable(datasource, BenchmarkData.TABLE, BenchmarkData.newDictionary(variables), entities);
+    MagmaEngine.get().addDatasource(datasource);
+    // generated integers are in [0,100]
+    whereView = View.Builder.newView("where", table).where(new JavascriptClause("$('INT_0').ge(50)")).build();
+    selectView = View.Builder.newView("select", table).select(new JavascriptClause("name().matches(/^(INT|CAT)_/)"))
+        .build();
+    Initialisables.initialise(whereView, selectView);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkData.stopEngine();
+  }
+
+  @Benchmark
+  public int where() {
+    return BenchmarkData.readAll(whereView);
+  }
+
+  @Benchmark
+  public int select() {
+    return BenchmarkData.readAll(selectView);
+  }
+
+}
@@ -70,6 +70,8 @@ public class CsvDatasource extends AbstractDatasource {
 
   private boolean multilines;
 
+  private int parallelism = 1;
+
   private ValueType defaultValueType = ValueType.Factory.forName(DEFAULT_VALUE_TYPE);
 
   private String entityIdName;
@@ -229,6 +231,15 @@ public class CsvDatasource extends AbstractDatasource {
     return new CSVReader(reader, separator.getCharacter(), quote.getCharacter(), DEL_CHAR, getFirstRow() - 1);
   }
 
+  /**
+   * Get a parser of single records, configured as the readers. Parsers are not thread-safe.
+   *
+   * @return
+   */
+  CSVParser getCsvParser() {
+    return new CSVParser(separator.getCharacter(), quote.getCharacter(), DEL_CHAR);
+  }
+
   Reader getReader(File file) {
     try {
       InputStream in;
@@ -283,6 +294,21 @@ public class CsvDatasource extends AbstractDatasource {
     return multilines;
   }
 
+  /**
+   * Set the number of threads used to index and parse the data files. Large data files are then split in byte ranges
+   * that are parsed concurrently. Default is 1 (sequential reading).
+   *
+   * @param parallelism
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+    this.parallelism = parallelism;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
   public void setDefaultValueType(String defaultValueType) {
     if (Strings.isNullOrEmpty(defaultValueType)) return;
     try {
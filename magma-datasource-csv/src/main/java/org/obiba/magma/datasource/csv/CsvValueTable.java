@@ -10,14 +10,20 @@
 
 package org.obiba.magma.datasource.csv;
 
+import au.com.bytecode.opencsv.CSVParser;
 import au.com.bytecode.opencsv.CSVReader;
 import au.com.bytecode.opencsv.CSVWriter;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.obiba.magma.*;
 import org.obiba.magma.datasource.csv.converter.VariableConverter;
+import org.obiba.magma.datasource.csv.support.CsvRecordScanner;
 import org.obiba.magma.lang.VariableEntityList;
 import org.obiba.magma.support.AbstractValueTable;
 import org.obiba.magma.support.DatasourceParsingException;
@@ -28,9 +34,23 @@ import org.slf4j.LoggerFactory;
 
 import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.NotNull;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings({"OverlyCoupledClass", "OverlyComplexClass"})
@@ -44,6 +64,11 @@ public class CsvValueTable extends AbstractValueTable implements Initialisable,
 
   private static final Logger log = LoggerFactory.getLogger(CsvValueTable.class);
 
+  /**
+   * Minimum size of the byte ranges of a data file that are indexed in parallel.
+   */
+  private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+
   private ValueTable refTable;
 
   @Nullable
@@ -65,6 +90,15 @@ public class CsvValueTable extends AbstractValueTable implements Initialisable,
       .expireAfterWrite(60, TimeUnit.SECONDS)
       .build();
 
+  /**
+   * Byte ranges of the data file lines of each entity, when the data file can be read randomly.
+   */
+  private final Map<String, List<CsvIndexEntry>> entityIndex = new ConcurrentHashMap<>();
+
+  private FileChannel dataChannel;
+
+  private ExecutorService parsingExecutor;
+
   private CSVReader csvDataReader;
 
   private String[] currentLine;
@@ -109,10 +143,18 @@ public class CsvValueTable extends AbstractValueTable implements Initialisable,
   }
 
   @Override
-  public synchronized ValueSet getValueSet(VariableEntity entity) throws NoSuchValueSetException {
+  public ValueSet getValueSet(VariableEntity entity) throws NoSuchValueSetException {
     if (!entities.contains(entity)) {
       throw new NoSuchValueSetException(this, entity);
     }
+    List<CsvIndexEntry> indexEntries = entityIndex.get(entity.getIdentifier());
+    if (indexEntries == null) {
+      return getBufferedValueSet(entity);
+    }
+    return new CsvValueSet(this, entity, dataHeaderMap, readValueSetLines(indexEntries));
+  }
+
+  private synchronized ValueSet getBufferedValueSet(VariableEntity entity) {
     List<String[]> valueSetLines = getValueSetLines(entity.getIdentifier());
     if (valueSetLines == null) {
       // read as much as necessary (and cache what is skipped) from data file
@@ -145,6 +187,9 @@ public class CsvValueTable extends AbstractValueTable implements Initialisable,
   public void dispose() {
     resetCsvDataReader();
     entityLinesBuffer.invalidateAll();
+    entityIndex.clear();
+    closeDataChannel();
+    shutdownParsingExecutor();
   }
 
   @Override
@@ -152,10 +197,163 @@ public class CsvValueTable extends AbstractValueTable implements Initialisable,
     return ValueTable.ENTITY_BATCH_SIZE;
   }
 
+  /**
+   * Parse the indexed lines of the batch entities concurrently when parallelism is enabled, the value sets are returned
+   * in the order of the entities.
+   *
+   * @param entities
+   * @return
+   */
+  @Override
+  protected ValueSetBatch getValueSetsBatch(List<VariableEntity> entities) {
+    int parallelism = getCsvDatasource().getParallelism();
+    if (parallelism == 1 || entities.size() < 2 || entityIndex.isEmpty()) {
+      return super.getValueSetsBatch(entities);
+    }
+    return () -> {
+      List<Callable<List<ValueSet>>> tasks = Lists.newArrayList();
+      for (List<VariableEntity> partition : Lists.partition(entities, (entities.size() + parallelism - 1) / parallelism)) {
+        tasks.add(() -> {
+          List<ValueSet> valueSets = Lists.newArrayListWithCapacity(partition.size());
+          for (VariableEntity entity : partition) {
+            valueSets.add(getValueSet(entity));
+          }
+          return valueSets;
+        });
+      }
+      try {
+        List<ValueSet> valueSets = Lists.newArrayListWithCapacity(entities.size());
+        for (List<ValueSet> partitionValueSets : invokeAll(tasks)) {
+          valueSets.addAll(partitionValueSets);
+        }
+        return valueSets;
+      } catch (IOException e) {
+        throw new MagmaRuntimeException("Failed reading CSV data file", e);
+      }
+    };
+  }
+
+  /**
+   * Forget the position of the entity lines in the data file, for instance because new lines were appended for this
+   * entity. Its value set will then be read sequentially.
+   *
+   * @param entity
+   */
+  void removeIndexEntry(VariableEntity entity) {
+    entityIndex.remove(entity.getIdentifier());
+  }
+
   //
   // Private methods
   //
 
+  /**
+   * Read the lines of an entity at their known positions in the data file.
+   *
+   * @param indexEntries
+   * @return
+   */
+  private List<String[]> readValueSetLines(Iterable<CsvIndexEntry> indexEntries) {
+    CSVParser parser = getCsvDatasource().getCsvParser();
+    Charset charset = getDataCharset();
+    char quote = getCsvDatasource().getQuote().getCharacter();
+    List<String[]> lines = Lists.newArrayListWithExpectedSize(isMultilines() ? 10 : 1);
+    try {
+      for (CsvIndexEntry entry : indexEntries) {
+        CsvRecordScanner scanner = new CsvRecordScanner(readDataBytes(entry), entry.getStart(), quote);
+        while (scanner.nextRecord()) {
+          if (!scanner.isBlank()) lines.add(parseRecord(parser, scanner.getRecord(charset)));
+        }
+      }
+    } catch (IOException e) {
+      throw new MagmaRuntimeException("Failed reading CSV data file", e);
+    }
+    return lines;
+  }
+
+  private byte[] readDataBytes(CsvIndexEntry entry) throws IOException {
+    FileChannel channel = getDataChannel();
+    try {
+      return readDataBytes(channel, entry);
+    } catch (ClosedChannelException e) {
+      // the shared channel is closed when a reading thread is interrupted, reopen it for the others
+      if (Thread.currentThread().isInterrupted()) throw e;
+      resetDataChannel(channel);
+      return readDataBytes(getDataChannel(), entry);
+    }
+  }
+
+  private byte[] readDataBytes(FileChannel channel, CsvIndexEntry entry) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate((int) (entry.getEnd() - entry.getStart()));
+    while (buffer.hasRemaining()) {
+      // positional reads do not move the channel position, concurrent readers do not interfere
+      if (channel.read(buffer, entry.getStart() + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of CSV data file " + dataFile + " at " + entry);
+      }
+    }
+    return buffer.array();
+  }
+
+  private synchronized FileChannel getDataChannel() throws IOException {
+    if (dataChannel == null) {
+      dataChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+    }
+    return dataChannel;
+  }
+
+  private synchronized void resetDataChannel(FileChannel closed) {
+    if (dataChannel == closed) dataChannel = null;
+  }
+
+  private synchronized ExecutorService getParsingExecutor() {
+    if (parsingExecutor == null) {
+      parsingExecutor = Executors.newFixedThreadPool(getCsvDatasource().getParallelism(),
+          new ThreadFactoryBuilder().setNameFormat("csv-" + getName() + "-%d").setDaemon(true).build());
+    }
+    return parsingExecutor;
+  }
+
+  private synchronized void shutdownParsingExecutor() {
+    if (parsingExecutor == null) return;
+    parsingExecutor.shutdownNow();
+    parsingExecutor = null;
+  }
+
+  /**
+   * Run the tasks on the parsing threads and get their results in the order of the tasks.
+   *
+   * @param tasks
+   * @return
+   * @throws IOException
+   */
+  private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+    try {
+      List<T> results = Lists.newArrayListWithCapacity(tasks.size());
+      for (Future<T> future : getParsingExecutor().invokeAll(tasks)) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading CSV data file " + dataFile);
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new MagmaRuntimeException(e.getCause());
+    }
+  }
+
+  private synchronized void closeDataChannel() {
+    if (dataChannel == null) return;
+    try {
+      dataChannel.close();
+    } catch (IOException e) {
+      // ignore
+    } finally {
+      dataChannel = null;
+    }
+  }
+
   /**
    * Read the value set from the data CSV file and buffer any other entities that could have been encountered.
    *
@@ -426,6 +624,21 @@ public class CsvValueTable extends AbstractValueTable implements Initialisable,
     return getCsvDatasource().getCharacterSet();
   }
 
+  private Charset getDataCharset() {
+    return Charset.forName(getCharacterSet());
+  }
+
+  /**
+   * Whether the data file lines can be located by their byte offsets: the file must not be compressed and its
+   * character set must encode the ends of line and quotes as single bytes.
+   *
+   * @return
+   */
+  private boolean isDataFileIndexable() {
+    return dataFile != null && !dataFile.getName().endsWith(".zip") &&
+        CsvRecordScanner.isSupported(getDataCharset(), getCsvDatasource().getQuote().getCharacter());
+  }
+
   /**
    * Read the entity identifiers from the CSV data file.
    *
@@ -437,6 +650,11 @@ public class CsvValueTable extends AbstractValueTable implements Initialisable,
       return;
     }
 
+    if (isDataFileIndexable()) {
+      indexEntities();
+      return;
+    }
+
     try (CSVReader dataHeaderReader = getCsvDataReader()) {
       // skip first line (headers)
       String[] line = dataHeaderReader.readNext();
@@ -461,13 +679,184 @@ public class CsvValueTable extends AbstractValueTable implements Initialisable,
       String identifier = line[0];
       if (Strings.isNullOrEmpty(identifier)) continue;
       isDataFileEmpty = false;
-      VariableEntityBean entity = new VariableEntityBean(entityType, identifier);
-      if (entities.contains(entity)) {
-        multilines = true;
-      } else {
-        entities.add(entity);
+      addEntity(identifier);
+    }
+  }
+
+  /**
+   * Read the entity identifiers from the CSV data file and record the byte range of each data line, so that the value
+   * sets can be read directly from their position in the file.
+   *
+   * @throws IOException
+   */
+  private void indexEntities() throws IOException {
+    CSVParser parser = getCsvDatasource().getCsvParser();
+    Charset charset = getDataCharset();
+    int firstRow = getCsvDatasource().getFirstRow();
+    long dataStart;
+    try (FileInputStream in = new FileInputStream(dataFile);
+         CsvRecordScanner scanner = new CsvRecordScanner(in, 0, getCsvDatasource().getQuote().getCharacter())) {
+      // skip the same rows as the data reader: the lines skipped by the CSV reader, then the rows before the first one
+      for (int i = 1; i < firstRow; i++) scanner.nextLine();
+      for (int i = 1; i < firstRow; i++) scanner.nextRecord();
+      // first line(s) is headers = entity_id + variable names
+      String[] line = scanner.nextRecord() ? parseRecord(parser, scanner.getRecord(charset)) : null;
+      isDataFileEmpty = line == null || line.length == 0;
+      if (line == null) return;
+      dataStart = scanner.getEnd();
+      if (getCsvDatasource().getParallelism() == 1 || dataFile.length() - dataStart < 2 * MIN_CHUNK_SIZE) {
+        while (scanner.nextRecord()) {
+          String identifier = parseIdentifier(parser, scanner, charset);
+          if (identifier != null) indexEntity(identifier, new CsvIndexEntry(scanner.getStart(), scanner.getEnd()));
+        }
+        return;
       }
     }
+    indexEntitiesInParallel(dataStart);
+  }
+
+  /**
+   * Split the data lines in byte ranges that are indexed concurrently. A range is made of the records that start in it,
+   * the quote state at the range start being given by the parity of the quotes that precede it.
+   *
+   * @param dataStart byte offset of the first data line
+   * @throws IOException
+   */
+  private void indexEntitiesInParallel(long dataStart) throws IOException {
+    long length = dataFile.length() - dataStart;
+    int count = (int) Math.min(getCsvDatasource().getParallelism(), length / MIN_CHUNK_SIZE);
+    long[] bounds = new long[count + 1];
+    for (int i = 0; i <= count; i++) {
+      bounds[i] = dataStart + length * i / count;
+    }
+
+    List<Callable<Long>> countTasks = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      long start = bounds[i];
+      long end = bounds[i + 1];
+      countTasks.add(() -> {
+        try (FileInputStream in = new FileInputStream(dataFile)) {
+          in.getChannel().position(start);
+          return CsvRecordScanner.countQuotes(ByteStreams.limit(in, end - start),
+              getCsvDatasource().getQuote().getCharacter());
+        }
+      });
+    }
+    List<Long> quoteCounts = invokeAll(countTasks);
+
+    List<Callable<List<Map.Entry<String, CsvIndexEntry>>>> indexTasks = Lists.newArrayList();
+    long precedingQuotes = 0;
+    for (int i = 0; i < count; i++) {
+      long start = bounds[i];
+      long end = bounds[i + 1];
+      boolean first = i == 0;
+      boolean inQuotes = precedingQuotes % 2 == 1;
+      indexTasks.add(() -> indexRange(start, end, first, inQuotes));
+      precedingQuotes += quoteCounts.get(i);
+    }
+    for (List<Map.Entry<String, CsvIndexEntry>> entries : invokeAll(indexTasks)) {
+      for (Map.Entry<String, CsvIndexEntry> entry : entries) {
+        indexEntity(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Read the identifiers and byte ranges of the records that start in the given byte range. The records that start
+   * before (or exactly at the start of) this byte range belong to the previous one.
+   *
+   * @param start
+   * @param end
+   * @param first whether the range starts with the first data line
+   * @param inQuotes quote state at the range start
+   * @return
+   * @throws IOException
+   */
+  private List<Map.Entry<String, CsvIndexEntry>> indexRange(long start, long end, boolean first, boolean inQuotes)
+      throws IOException {
+    CSVParser parser = getCsvDatasource().getCsvParser();
+    Charset charset = getDataCharset();
+    List<Map.Entry<String, CsvIndexEntry>> entries = Lists.newArrayList();
+    try (FileInputStream in = new FileInputStream(dataFile)) {
+      in.getChannel().position(start);
+      try (CsvRecordScanner scanner = new CsvRecordScanner(in, start, getCsvDatasource().getQuote().getCharacter())) {
+        if (!first) scanner.skipRecord(inQuotes);
+        while (scanner.nextRecord() && scanner.getStart() <= end) {
+          String identifier = parseIdentifier(parser, scanner, charset);
+          if (identifier != null) {
+            entries.add(Maps.immutableEntry(identifier, new CsvIndexEntry(scanner.getStart(), scanner.getEnd())));
+          }
+        }
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Get the entity identifier of the current record (first field), or null if there is none.
+   *
+   * @param parser
+   * @param scanner
+   * @param charset
+   * @return
+   * @throws IOException
+   */
+  @Nullable
+  private static String parseIdentifier(CSVParser parser, CsvRecordScanner scanner, Charset charset)
+      throws IOException {
+    if (scanner.isBlank()) return null;
+    String[] line = parseRecord(parser, scanner.getRecord(charset));
+    return line.length == 0 || Strings.isNullOrEmpty(line[0]) ? null : line[0];
+  }
+
+  /**
+   * Parse the fields of a record. A record that ends in an unterminated quoted field can only be the last one of the
+   * file: its fields are the ones before that quoted field, the way {@link au.com.bytecode.opencsv.CSVReader} reads it.
+   *
+   * @param parser
+   * @param record
+   * @return
+   * @throws IOException
+   */
+  private static String[] parseRecord(CSVParser parser, String record) throws IOException {
+    String[] fields = parser.parseLineMulti(record);
+    // drop the unterminated field, that would otherwise be prepended to the next record
+    if (parser.isPending()) parser.parseLine("");
+    return fields;
+  }
+
+  private void addEntity(String identifier) {
+    VariableEntityBean entity = new VariableEntityBean(entityType, identifier);
+    if (entities.contains(entity)) {
+      multilines = true;
+    } else {
+      entities.add(entity);
+    }
+  }
+
+  /**
+   * Add the entity and the byte range of one of its data lines. Consecutive lines of a same entity are merged in a
+   * single range.
+   *
+   * @param identifier
+   * @param entry
+   */
+  private void indexEntity(String identifier, CsvIndexEntry entry) {
+    isDataFileEmpty = false;
+    addEntity(identifier);
+    List<CsvIndexEntry> entries = entityIndex.get(identifier);
+    if (entries == null) {
+      entityIndex.put(identifier, Collections.singletonList(entry));
+      return;
+    }
+    List<CsvIndexEntry> updated = Lists.newArrayList(entries);
+    CsvIndexEntry last = updated.get(updated.size() - 1);
+    if (last.getEnd() == entry.getStart()) {
+      updated.set(updated.size() - 1, new CsvIndexEntry(last.getStart(), entry.getEnd()));
+    } else {
+      updated.add(entry);
+    }
+    entityIndex.put(identifier, updated);
   }
 
   /**
@@ -44,6 +44,40 @@ public class CsvValueTableWriter implements ValueTableWriter {
     return new CsvValueSetWriter(entity);
   }
 
+  /**
+   * Write the lines of the whole block in one chunk, instead of one value set at a time.
+   *
+   * @param block
+   */
+  @Override
+  public void writeValueSets(@NotNull ValueSetBlock block) {
+    if (csvValueWriter == null) {
+      this.csvValueWriter = valueTable.getValueWriter();
+    }
+    List<CsvValueSetWriter> valueSetWriters = new ArrayList<>(block.size());
+    List<String[]> lines = new ArrayList<>();
+    try {
+      for (int row = 0; row < block.size(); row++) {
+        CsvValueSetWriter valueSetWriter = new CsvValueSetWriter(block.getEntity(row));
+        for (int column = 0; column < block.getVariables().size(); column++) {
+          Value value = block.getValue(row, column);
+          if (value != null) valueSetWriter.writeValue(block.getVariable(column), value);
+        }
+        lines.addAll(valueSetWriter.getLines());
+        valueSetWriters.add(valueSetWriter);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    if (csvValueWriter == null) {
+      throw new DatasourceParsingException(
+          "Cannot create data writer. Table " + valueTable.getName() + " does not have data file.",
+          "CsvCannotCreateWriter", valueTable.getName());
+    }
+    csvValueWriter.writeAll(lines);
+    valueSetWriters.forEach(CsvValueSetWriter::updateIndex);
+  }
+
   @Override
   public VariableWriter writeVariables() {
     this.csvVariableWriter = valueTable.getVariableWriter();
@@ -145,27 +179,39 @@ public class CsvValueTableWriter implements ValueTableWriter {
     public void close() {
 
       try {
-        if (valueTable.isDataFileEmpty()) {
-          writeTableWithoutData();
-        } else {
-          writeTableWithData();
-        }
-
         // Writer Value set. Throw exception if doesn't match header
-        csvLine.getLines().forEach(line -> {
-          try {
-            writeValueToCsv(line);
-          } catch (IOException e) {
-            throw new RuntimeException(e);
-          }
-        });
-        // Update entities index
-        valueTable.getVariableEntityProvider().add(entity);
+        for (String[] line : getLines()) {
+          writeValueToCsv(line);
+        }
+        updateIndex();
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
     }
 
+    /**
+     * Write the header if needed and get the lines of the value set.
+     *
+     * @return
+     * @throws IOException
+     */
+    private List<String[]> getLines() throws IOException {
+      if (valueTable.isDataFileEmpty()) {
+        writeTableWithoutData();
+      } else {
+        writeTableWithData();
+      }
+      return csvLine.getLines();
+    }
+
+    /**
+     * Update entities index, once the value set is written.
+     */
+    private void updateIndex() {
+      valueTable.getVariableEntityProvider().add(entity);
+      valueTable.removeIndexEntry(entity);
+    }
+
     private void writeTableWithoutData() throws IOException {
       // Write Header
       if (valueTable.getDataHeaderMap().isEmpty()) {
@@ -39,6 +39,8 @@ public class CsvDatasourceFactory extends AbstractDatasourceFactory {
 
   private boolean multilines = false;
 
+  private int parallelism = 1;
+
   private String defaultValueType;
 
   private String entityIdName;
@@ -71,6 +73,10 @@ public class CsvDatasourceFactory extends AbstractDatasourceFactory {
     this.multilines = multilines;
   }
 
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
   public void setDefaultValueType(String defaultValueType) {
     this.defaultValueType = defaultValueType;
   }
@@ -138,6 +144,7 @@ public class CsvDatasourceFactory extends AbstractDatasourceFactory {
       datasource.setEntityIdName(entityIdName);
     datasource.setFirstRow(firstRow);
     datasource.setMultilines(multilines);
+    datasource.setParallelism(parallelism);
 
     for(TableBundle tableBundle : getTables()) {
       if(tableBundle.hasRefTable()) {
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.datasource.csv.support;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Splits the raw bytes of a CSV file into records and reports the byte offsets of each of them. A record ends with an
+ * end of line (\n, \r or \r\n) that is not enclosed in quotes, the same way {@link au.com.bytecode.opencsv.CSVReader}
+ * joins the physical lines of a multi-line record. Only suitable for character sets in which the end of line and quote
+ * characters are encoded as single bytes (UTF-8, ISO-8859-x...), see {@link #isSupported(Charset, char)}.
+ */
+public class CsvRecordScanner implements Closeable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream in;
+
+  private final byte quote;
+
+  private final byte[] buffer;
+
+  private int bufferLength = 0;
+
+  private int bufferPosition = 0;
+
+  private long position;
+
+  private byte[] record = new byte[256];
+
+  private int recordLength;
+
+  private long recordStart;
+
+  private long recordEnd;
+
+  /**
+   * @param in stream of bytes, positioned at the start of a record
+   * @param offset byte offset of the stream start in the file
+   * @param quote
+   */
+  public CsvRecordScanner(InputStream in, long offset, char quote) {
+    this.in = in;
+    buffer = new byte[BUFFER_SIZE];
+    position = offset;
+    this.quote = (byte) quote;
+  }
+
+  /**
+   * @param bytes bytes already read from the file, starting at the start of a record
+   * @param offset byte offset of the first byte in the file
+   * @param quote
+   */
+  public CsvRecordScanner(byte[] bytes, long offset, char quote) {
+    in = InputStream.nullInputStream();
+    buffer = bytes;
+    bufferLength = bytes.length;
+    position = offset;
+    this.quote = (byte) quote;
+  }
+
+  /**
+   * Whether the records of a file in the given character set can be delimited by scanning bytes.
+   *
+   * @param charset
+   * @param quote
+   * @return
+   */
+  public static boolean isSupported(Charset charset, char quote) {
+    return Arrays.equals("\n".getBytes(charset), new byte[] { '\n' }) &&
+        Arrays.equals("\r".getBytes(charset), new byte[] { '\r' }) &&
+        Arrays.equals(String.valueOf(quote).getBytes(charset), new byte[] { (byte) quote });
+  }
+
+  /**
+   * Move to the next physical line, regardless of quotes.
+   *
+   * @return false if the end of the stream was reached
+   * @throws IOException
+   */
+  public boolean nextLine() throws IOException {
+    return scan(false, false);
+  }
+
+  /**
+   * Move to the next record, which may span several lines when an end of line is quoted.
+   *
+   * @return false if the end of the stream was reached
+   * @throws IOException
+   */
+  public boolean nextRecord() throws IOException {
+    return scan(true, false);
+  }
+
+  /**
+   * Move past the end of the record the stream is positioned in, typically when the stream starts at an arbitrary
+   * offset of the file. The quote state at that offset is the parity of the number of quotes that precede it, see
+   * {@link #countQuotes(InputStream, char)}.
+   *
+   * @param inQuotes whether the stream starts within quotes
+   * @return false if the end of the stream was reached
+   * @throws IOException
+   */
+  public boolean skipRecord(boolean inQuotes) throws IOException {
+    return scan(true, inQuotes);
+  }
+
+  /**
+   * Count the quote characters of a stream of bytes.
+   *
+   * @param in
+   * @param quote
+   * @return
+   * @throws IOException
+   */
+  public static long countQuotes(InputStream in, char quote) throws IOException {
+    byte[] bytes = new byte[BUFFER_SIZE];
+    byte q = (byte) quote;
+    long count = 0;
+    int read;
+    while((read = in.read(bytes)) >= 0) {
+      for(int i = 0; i < read; i++) {
+        if(bytes[i] == q) count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Byte offset of the first byte of the current record.
+   *
+   * @return
+   */
+  public long getStart() {
+    return recordStart;
+  }
+
+  /**
+   * Byte offset following the end of line of the current record.
+   *
+   * @return
+   */
+  public long getEnd() {
+    return recordEnd;
+  }
+
+  /**
+   * Whether the current record has no content.
+   *
+   * @return
+   */
+  public boolean isBlank() {
+    return recordLength == 0;
+  }
+
+  /**
+   * Decode the current record, without its trailing end of line. Quoted ends of line are normalized to \n, as
+   * {@link au.com.bytecode.opencsv.CSVReader} does.
+   *
+   * @param charset
+   * @return
+   */
+  public String getRecord(Charset charset) {
+    String text = new String(record, 0, recordLength, charset);
+    return text.indexOf('\r') < 0 ? text : text.replace("\r\n", "\n").replace('\r', '\n');
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private boolean scan(boolean quoteAware, boolean startInQuotes) throws IOException {
+    recordLength = 0;
+    recordStart = position;
+    boolean inQuotes = startInQuotes;
+    while(true) {
+      if(bufferPosition == bufferLength && !fill()) {
+        recordEnd = position;
+        return recordEnd > recordStart;
+      }
+      byte b = buffer[bufferPosition++];
+      position++;
+      if(b == quote && quoteAware) {
+        inQuotes = !inQuotes;
+      } else if((b == '\n' || b == '\r') && !inQuotes) {
+        // the end of line is not part of the record
+        if(b == '\r' && (bufferPosition < bufferLength || fill()) && buffer[bufferPosition] == '\n') {
+          bufferPosition++;
+          position++;
+        }
+        recordEnd = position;
+        return true;
+      }
+      append(b);
+    }
+  }
+
+  private boolean fill() throws IOException {
+    if(buffer.length == 0) return false;
+    int read;
+    do {
+      read = in.read(buffer);
+    } while(read == 0);
+    bufferPosition = 0;
+    bufferLength = Math.max(read, 0);
+    return read > 0;
+  }
+
+  private void append(byte b) {
+    if(recordLength == record.length) {
+      record = Arrays.copyOf(record, record.length * 2);
+    }
+    record[recordLength++] = b;
+  }
+
+}
@@ -246,6 +246,25 @@ public class CsvDatasourceTest extends AbstractMagmaTest {
     assertThat(Integer.parseInt(value.toString())).isEqualTo(21);
   }
 
+  @Test
+  public void test_reading_data_with_multilines_in_any_order() throws Exception {
+    CsvDatasource datasource = new CsvDatasource("csv-datasource").addValueTable("Multilines", //
+        null, //
+        getFileFromResource("org/obiba/magma/datasource/csv/multilines/data.csv"));
+    datasource.initialise();
+
+    ValueTable table = datasource.getValueTable("Multilines");
+    Variable var1 = table.getVariable("var1");
+
+    // lines of an entity are not necessarily consecutive
+    ValueSet vs2 = table.getValueSet(new VariableEntityBean("Participant", "2"));
+    assertThat(table.getValue(var1, vs2).toString()).isEqualTo("\"N\",\"Y\"");
+    ValueSet vs4 = table.getValueSet(new VariableEntityBean("Participant", "4"));
+    assertThat(table.getValue(var1, vs4).toString()).isEqualTo("\"DNK\"");
+    ValueSet vs1 = table.getValueSet(new VariableEntityBean("Participant", "1"));
+    assertThat(table.getValue(var1, vs1).toString()).isEqualTo("\"Y\",\"N\"");
+  }
+
 
   @Test
   public void test_reading_data_only_table_is_not_null() throws Exception {
@@ -615,6 +634,40 @@ public class CsvDatasourceTest extends AbstractMagmaTest {
     assertEolValue(table, "5", "Nero", "NERO CLAVDIVS CAESAR AVGVSTVS GERMANICVS");
   }
 
+  @Test
+  public void test_parallel_reading() throws IOException {
+    File dataFile = File.createTempFile("magma", "test-parallel");
+    dataFile.deleteOnExit();
+    StringBuilder data = new StringBuilder("entity_id,Name,\"Complete name\"\n");
+    for(int i = 0; i < 100000; i++) {
+      // quoted ends of line and quotes must not be taken as record boundaries when splitting the file
+      data.append(i).append(",Name ").append(i).append(",\"Complete\r\n\"\"name\"\" ").append(i)
+          .append(i % 3 == 0 ? "\"\r\n" : "\"\n");
+    }
+    FileUtils.writeStringToFile(dataFile, data.toString(), "utf-8");
+
+    CsvDatasource sequential = new CsvDatasource("csv-sequential").addValueTable("Table1", dataFile,
+        DEFAULT_ENTITY_TYPE);
+    sequential.initialise();
+    CsvDatasource parallel = new CsvDatasource("csv-parallel").addValueTable("Table1", dataFile, DEFAULT_ENTITY_TYPE);
+    parallel.setParallelism(4);
+    parallel.initialise();
+
+    ValueTable sequentialTable = sequential.getValueTable("Table1");
+    ValueTable parallelTable = parallel.getValueTable("Table1");
+    assertThat(parallelTable.getVariableEntities()).isEqualTo(sequentialTable.getVariableEntities());
+    assertThat(parallelTable.getVariableEntityCount()).isEqualTo(100000);
+
+    Variable variable = parallelTable.getVariable("Complete name");
+    int i = 0;
+    for(ValueSet valueSet : parallelTable.getValueSets()) {
+      assertThat(valueSet.getVariableEntity().getIdentifier()).isEqualTo(String.valueOf(i));
+      assertThat((String) parallelTable.getValue(variable, valueSet).getValue()).isEqualTo("Complete\n\"name\" " + i);
+      i++;
+    }
+    assertThat(i).isEqualTo(100000);
+  }
+
   @Test
   public void test_compressed_csv() throws IOException {
     CsvDatasource source = new CsvDatasource("csv-datasource").addValueTable("TableDataOnly", //
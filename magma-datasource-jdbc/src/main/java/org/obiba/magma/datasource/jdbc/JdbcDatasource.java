@@ -88,6 +88,10 @@ public class JdbcDatasource extends AbstractDatasource {
 
   private Map<String, String> escapedTableNames = Maps.newConcurrentMap();
 
+  private UpsertDialect upsertDialect;
+
+  private boolean upsertDialectResolved;
+
   private final String ESC_ENTITY_TYPE_COLUMN, ESC_VALUE_TABLES_TABLE, ESC_DATASOURCE_COLUMN, ESC_NAME_COLUMN,
       ESC_VALUE_TABLE_COLUMN, ESC_SQL_NAME_COLUMN;
 
@@ -491,6 +495,20 @@ public class JdbcDatasource extends AbstractDatasource {
     return escapedColumnNames.get(identifier);
   }
 
+  /**
+   * Get the statements that insert or update the rows of a table at once.
+   *
+   * @return null if the database has no such statement
+   */
+  @Nullable
+  synchronized UpsertDialect getUpsertDialect() {
+    if(!upsertDialectResolved) {
+      upsertDialect = doWithDatabase(database -> UpsertDialect.forDatabase(database.getShortName()));
+      upsertDialectResolved = true;
+    }
+    return upsertDialect;
+  }
+
   DatabaseSnapshot getDatabaseSnapshot() {
     if(snapshot == null) {
       snapshot = doWithDatabase(database -> SnapshotGeneratorFactory.getInstance()
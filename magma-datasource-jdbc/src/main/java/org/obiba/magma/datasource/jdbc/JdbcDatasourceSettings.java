@@ -59,6 +59,8 @@ public class JdbcDatasourceSettings {
 
   private int batchSize = 100;
 
+  private int asyncFlushBatches = 0;
+
   private boolean multilines = false;
 
   //
@@ -78,6 +80,18 @@ public class JdbcDatasourceSettings {
     return batchSize;
   }
 
+  /**
+   * The number of batches that can be saved in the background while the next one is filled. A batch saved in the
+   * background is committed in its own transaction: it is not rolled back with the caller's transaction, and the
+   * failure to save it is thrown by a later write or by the closing of the writer. A writer created in a transaction
+   * always saves its batches in this transaction, before writing more.
+   *
+   * @return 0 if each batch is saved before writing more
+   */
+  public int getAsyncFlushBatches() {
+    return asyncFlushBatches;
+  }
+
   public String getDefaultEntityType() {
     return defaultEntityType;
   }
@@ -235,6 +249,19 @@ public class JdbcDatasourceSettings {
       return this;
     }
 
+    /**
+     * Opt in to saving batches in the background, outside of any transaction: see
+     * {@link JdbcDatasourceSettings#getAsyncFlushBatches()}.
+     *
+     * @param asyncFlushBatches
+     * @return
+     */
+    public Builder asyncFlushBatches(int asyncFlushBatches) {
+      if (asyncFlushBatches < 0) throw new IllegalArgumentException("Invalid asyncFlushBatches");
+      settings.asyncFlushBatches = asyncFlushBatches;
+      return this;
+    }
+
     public Builder createdTimestampColumn(String name) {
       settings.defaultCreatedTimestampColumnName = name;
       return this;
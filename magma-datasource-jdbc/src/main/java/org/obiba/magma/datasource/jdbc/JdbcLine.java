@@ -37,10 +37,19 @@ class JdbcLine {
 
   private final JdbcValueTable valueTable;
 
-  JdbcLine(@NotNull VariableEntity entity, JdbcValueTable valueTable) {
+  private final boolean update;
+
+  /**
+   * @param entity
+   * @param valueTable
+   * @param update whether the value set exists and is to be updated, in which case only the update timestamp is set;
+   * otherwise both timestamps are set, an upsert statement not updating the created one
+   */
+  JdbcLine(@NotNull VariableEntity entity, JdbcValueTable valueTable, boolean update) {
     this.entity = entity;
     this.valueTable = valueTable;
     this.multilines = valueTable.isMultilines();
+    this.update = update;
     initialize();
   }
 
@@ -48,6 +57,15 @@ class JdbcLine {
     setValue(getVariableSqlName(variable), value);
   }
 
+  void setValue(String columnName, Value value) {
+    columnNames.add(columnName);
+    values.add(value);
+  }
+
+  boolean isUpdate() {
+    return update;
+  }
+
   List<String> getColumnNames() {
     return columnNames;
   }
@@ -72,7 +90,7 @@ class JdbcLine {
 
   private void initialize() {
     Value timestamp = DateTimeType.get().now();
-    if (valueTable.hasValueSet(entity)) {
+    if (update) {
       if (valueTable.hasUpdatedTimestampColumn()) {
         setValue(valueTable.getUpdatedTimestampColumnName(), timestamp);
       }
@@ -94,11 +112,6 @@ class JdbcLine {
     return values;
   }
 
-  private void setValue(String columnName, Value value) {
-    columnNames.add(columnName);
-    values.add(value);
-  }
-
   private String getVariableSqlName(Variable variable) {
     return valueTable.getVariableSqlName(variable.getName());
   }
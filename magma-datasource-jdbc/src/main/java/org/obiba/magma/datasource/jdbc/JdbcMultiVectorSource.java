@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.datasource.jdbc;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.obiba.magma.*;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the values of one or more variables of a {@link JdbcValueTable} with a single select of all the corresponding
+ * columns.
+ */
+class JdbcMultiVectorSource implements MultiVectorSource {
+
+  /**
+   * Maximum number of entity identifiers bound in a vector query (most databases limit the number of parameters).
+   */
+  private static final int MAX_BIND_PARAMETERS = 1000;
+
+  private final JdbcValueTable valueTable;
+
+  private final List<Variable> variables;
+
+  private final List<String> columnNames;
+
+  JdbcMultiVectorSource(JdbcValueTable valueTable, List<JdbcVariableValueSource> sources) {
+    this.valueTable = valueTable;
+    this.variables = sources.stream().map(JdbcVariableValueSource::getVariable).collect(ImmutableList.toImmutableList());
+    this.columnNames = sources.stream().map(JdbcVariableValueSource::getColumnName)
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  @Override
+  public List<Variable> getVariables() {
+    return variables;
+  }
+
+  @Override
+  public Iterable<Value[]> getValues(Iterable<VariableEntity> entities) {
+    return () -> new ValuesIterator(entities);
+  }
+
+  /**
+   * Iterates over the values of the requested entities, reading them partition by partition with a single prepared
+   * statement (bound identifiers) over a single connection. Only the rows of the current partition are held in memory.
+   */
+  private class ValuesIterator implements Iterator<Value[]>, Disposable {
+
+    private final String query;
+
+    private final int partitionSize;
+
+    private final boolean numericIdentifiers;
+
+    private final boolean multilines;
+
+    private Connection connection;
+
+    private PreparedStatement statement;
+
+    private final Iterator<List<VariableEntity>> partitions;
+
+    private Iterator<VariableEntity> partition = Collections.emptyIterator();
+
+    private final Map<String, Value[]> partitionValues = Maps.newHashMap();
+
+    private ValuesIterator(Iterable<VariableEntity> entities) {
+      JdbcDatasource datasource = valueTable.getDatasource();
+      String escapedIdentifierColumn = valueTable.getEntityIdentifierColumnSql();
+
+      int batchSize = Math.min(valueTable.getVariableEntityBatchSize(), MAX_BIND_PARAMETERS);
+      // do not prepare more parameters than required when reading a few entities
+      partitionSize = Math.max(1, entities instanceof Collection
+          ? Math.min(batchSize, ((Collection<VariableEntity>) entities).size())
+          : batchSize);
+      numericIdentifiers = SqlTypes.valueTypeFor(valueTable.getEntityIdentifierColumnType().getDataTypeId())
+          .isNumeric();
+      multilines = valueTable.isMultilines();
+      this.query = String.format("SELECT %s, %s FROM %s %s ORDER BY %s", escapedIdentifierColumn,
+          Joiner.on(", ").join(columnNames.stream().map(datasource::escapeColumnName).collect(Collectors.toList())),
+          // same lines order as the value sets, so that the sequences have the same elements order
+          datasource.escapeTableName(valueTable.getSqlName()), getWhereClause(), valueTable.getLinesOrderSql());
+      this.partitions = Iterables.partition(entities, partitionSize).iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return partition.hasNext() || partitions.hasNext();
+    }
+
+    @Override
+    public Value[] next() {
+      if (!partition.hasNext()) {
+        List<VariableEntity> entities = partitions.next();
+        try {
+          loadPartition(entities);
+        } catch (SQLException e) {
+          closeQuietly();
+          throw new RuntimeException(e);
+        }
+        partition = entities.iterator();
+      }
+      Value[] values = partitionValues.get(partition.next().getIdentifier());
+      return values == null ? nullValues() : values;
+    }
+
+    /**
+     * Query the values of the partition's entities, the statement is prepared once and the identifiers are bound
+     * (last identifier repeated to fill a smaller partition) so that the statement text never changes.
+     *
+     * @param entities
+     * @throws SQLException
+     */
+    private void loadPartition(List<VariableEntity> entities) throws SQLException {
+      partitionValues.clear();
+      if (statement == null) {
+        connection = DataSourceUtils.getConnection(valueTable.getDatasource().getJdbcTemplate().getDataSource());
+        statement = connection.prepareStatement(query);
+        statement.setFetchSize(partitionSize);
+      }
+      for (int i = 0; i < partitionSize; i++) {
+        statement.setObject(i + 1, asIdentifier(entities.get(Math.min(i, entities.size() - 1))));
+      }
+      Map<String, List<Value[]>> rows = Maps.newHashMap();
+      try (ResultSet cursor = statement.executeQuery()) {
+        while (cursor.next()) {
+          rows.computeIfAbsent(valueTable.extractEntityIdentifier(cursor), id -> Lists.newArrayList())
+              .add(getValuesFromResult(cursor));
+        }
+      }
+      rows.forEach((id, lines) -> partitionValues.put(id, asValues(lines)));
+      if (!partitions.hasNext()) {
+        closeQuietly();
+      }
+    }
+
+    private String getWhereClause() {
+      String whereIds = String.format("%s IN (%s)", valueTable.getEntityIdentifierColumnSql(),
+          Joiner.on(", ").join(Collections.nCopies(partitionSize, "?")));
+      if (!valueTable.getSettings().hasEntityIdentifiersWhere()) return "WHERE " + whereIds;
+      else return String.format("WHERE %s AND %s", valueTable.getSettings().getEntityIdentifiersWhere(), whereIds);
+    }
+
+    private Object asIdentifier(VariableEntity entity) {
+      return numericIdentifiers ? Long.valueOf(entity.getIdentifier()) : entity.getIdentifier();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    private Value[] getValuesFromResult(ResultSet cursor) throws SQLException {
+      Value[] values = new Value[variables.size()];
+      for (int i = 0; i < values.length; i++) {
+        // first column is the entity identifier
+        values[i] = getValueFromResult(variables.get(i), cursor.getObject(i + 2));
+      }
+      return values;
+    }
+
+    private Value getValueFromResult(Variable variable, Object resObj) {
+      ValueType valueType = variable.getValueType();
+      if (resObj == null) {
+        return variable.isRepeatable() && !multilines ? valueType.nullSequence() : valueType.nullValue();
+      }
+      if (variable.isRepeatable() && !multilines) {
+        return valueType.sequenceOf(resObj.toString());
+      }
+      return valueType.valueOf(resObj);
+    }
+
+    /**
+     * Multiple lines for an entity make value sequences.
+     *
+     * @param lines
+     * @return
+     */
+    private Value[] asValues(List<Value[]> lines) {
+      if (lines.size() == 1 && !multilines) return lines.get(0);
+      Value[] values = new Value[variables.size()];
+      for (int i = 0; i < values.length; i++) {
+        Variable variable = variables.get(i);
+        if (lines.size() == 1 && !variable.isRepeatable()) {
+          values[i] = lines.get(0)[i];
+        } else {
+          int column = i;
+          values[i] = variable.getValueType()
+              .sequenceOf(lines.stream().map(line -> line[column]).collect(Collectors.toList()));
+        }
+      }
+      return values;
+    }
+
+    private Value[] nullValues() {
+      Value[] values = new Value[variables.size()];
+      for (int i = 0; i < values.length; i++) {
+        Variable variable = variables.get(i);
+        values[i] = variable.isRepeatable()
+            ? variable.getValueType().nullSequence()
+            : variable.getValueType().nullValue();
+      }
+      return values;
+    }
+
+    private void closeQuietly() {
+      if (statement != null) {
+        try {
+          statement.close();
+        } catch (SQLException e) {
+          // ignored
+        }
+      }
+      if (connection != null) {
+        DataSourceUtils.releaseConnection(connection, valueTable.getDatasource().getJdbcTemplate().getDataSource());
+      }
+      connection = null;
+      statement = null;
+    }
+
+    @Override
+    public void dispose() {
+      closeQuietly();
+    }
+  }
+}
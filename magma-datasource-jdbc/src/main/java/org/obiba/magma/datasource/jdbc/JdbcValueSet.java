@@ -18,6 +18,7 @@ import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 import org.obiba.magma.support.ValueSetBean;
 
+import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.NotNull;
 import java.util.List;
 import java.util.Map;
@@ -27,7 +28,9 @@ import java.util.stream.Collectors;
 
 /**
  * Provide the {@link Value}s for a {@link VariableEntity}. Non binary data are cached, whereas the binary ones are
- * fetched upon request (more database extractions but less memory usage).
+ * fetched upon request (more database extractions but less memory usage). When the cache was populated with the values
+ * of some of the variables only, the values of all the other ones are loaded on the first cache miss, for the whole
+ * batch of value sets at once.
  */
 public class JdbcValueSet extends ValueSetBean {
 
@@ -35,6 +38,12 @@ public class JdbcValueSet extends ValueSetBean {
 
   private final JdbcValueSetFetcher fetcher;
 
+  private boolean loaded = false;
+
+  // the batch that loads the values of the variables that were not selected, null when all of them were loaded
+  @Nullable
+  private JdbcValueSetBatch batch;
+
   public JdbcValueSet(final JdbcValueTable valueTable, VariableEntity variableEntity) {
     super(valueTable, variableEntity);
     this.fetcher = new JdbcValueSetFetcher(valueTable);
@@ -54,7 +63,7 @@ public class JdbcValueSet extends ValueSetBean {
 
   public Value getValue(Variable variable) {
     if (variable.getValueType().isBinary()) return getBinaryValue(variable);
-    loadResultSetCache();
+    loadResultSetCache(variable.getName());
     Value value = convertValue(variable, resultSetCache.get(variable.getName()));
     resultSetCache.put(variable.getName(), value);
     return value;
@@ -125,30 +134,69 @@ public class JdbcValueSet extends ValueSetBean {
   }
 
   private void loadResultSetCache() {
-    if (resultSetCache.isEmpty()) {
-      doPopulateResultSetCache(fetcher.loadNonBinaryVariableValues(getVariableEntity()));
+    loadResultSetCache(null);
+  }
+
+  private void loadResultSetCache(@Nullable String variableName) {
+    JdbcValueSetBatch otherValuesBatch;
+    synchronized (this) {
+      if (!loaded) {
+        doPopulateResultSetCache(fetcher.loadNonBinaryVariableValues(getVariableEntity()));
+        loaded = true;
+      }
+      if (variableName == null || batch == null || batch.isSelected(variableName)) return;
+      otherValuesBatch = batch;
     }
+    // not holding this value set's lock: the batch populates each of its value sets
+    otherValuesBatch.loadOtherValues();
+  }
+
+  /**
+   * Populate the cache with the rows of the entity, as extracted by a batch query.
+   *
+   * @param rows
+   * @param batch the batch that loads the values of the variables which columns were not selected, null when all of
+   * them were
+   */
+  synchronized void populateResultSetCache(List<Map<String, Value>> rows, @Nullable JdbcValueSetBatch batch) {
+    doPopulateResultSetCache(rows);
+    loaded = true;
+    this.batch = batch;
   }
 
-  void populateResultSetCache(List<Map<String, Value>> rows) {
+  /**
+   * Populate the cache with the rows of the entity that have the values of the variables which columns were not
+   * selected by the batch query.
+   *
+   * @param rows
+   */
+  synchronized void populateOtherValues(List<Map<String, Value>> rows) {
     doPopulateResultSetCache(rows);
+    batch = null;
   }
 
   private synchronized void doPopulateResultSetCache(List<Map<String, Value>> rows) {
     if (rows == null) return;
+    // value sequences are immutable: gather the values of the keys found in several rows before making them
+    Map<String, List<Value>> sequences = Maps.newHashMap();
     rows.forEach(row ->
       row.forEach((key, value) -> {
-        if (resultSetCache.containsKey(key)) {
+        List<Value> sequence = sequences.get(key);
+        if (sequence != null) {
+          sequence.add(value);
+        } else if (resultSetCache.containsKey(key)) {
           Value current = resultSetCache.get(key);
-          if (current.isSequence()) {
-            ((List<Value>)resultSetCache.get(key).asSequence().getValue()).add(value);
-          } else {
-            resultSetCache.put(key, current.getValueType().sequenceOf(Lists.newArrayList(current, value)));
-          }
+          sequence = current.isSequence()
+              ? Lists.newArrayList(current.asSequence().getValues())
+              : Lists.newArrayList(current);
+          sequence.add(value);
+          sequences.put(key, sequence);
         } else {
           resultSetCache.put(key, value);
         }
       })
     );
+    sequences.forEach((key, values) ->
+        resultSetCache.put(key, resultSetCache.get(key).getValueType().sequenceOf(values)));
   }
 }
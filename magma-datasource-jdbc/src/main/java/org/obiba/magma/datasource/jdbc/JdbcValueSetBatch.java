@@ -11,19 +11,26 @@
 package org.obiba.magma.datasource.jdbc;
 
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.obiba.magma.Value;
 import org.obiba.magma.ValueSet;
 import org.obiba.magma.ValueSetBatch;
+import org.obiba.magma.Variable;
 import org.obiba.magma.VariableEntity;
 
+import jakarta.annotation.Nullable;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
- * Get the {@link JdbcValueSet}s for a batch of {@link VariableEntity} in one SQL query.
+ * Get the {@link JdbcValueSet}s for a batch of {@link VariableEntity} in one SQL query. When the variables to be read
+ * are known, only their columns are selected: the values of the other variables are loaded for the whole batch, in one
+ * other query, the first time one of them is read.
  */
 public class JdbcValueSetBatch implements ValueSetBatch {
 
@@ -31,20 +38,81 @@ public class JdbcValueSetBatch implements ValueSetBatch {
 
   private final List<VariableEntity> entities;
 
+  @Nullable
+  private final Set<String> variableNames;
+
   private final JdbcValueSetFetcher fetcher;
 
+  // the value sets which values of the other variables are not loaded yet
+  @Nullable
+  private List<JdbcValueSet> valueSets;
+
   public JdbcValueSetBatch(JdbcValueTable table, List<VariableEntity> entities) {
+    this(table, entities, null);
+  }
+
+  /**
+   * @param table
+   * @param entities
+   * @param variables the variables whose values are to be read, null for all of them
+   */
+  public JdbcValueSetBatch(JdbcValueTable table, List<VariableEntity> entities, @Nullable List<Variable> variables) {
     this.table = table;
     this.entities = entities;
     this.fetcher = new JdbcValueSetFetcher(table);
+    variableNames = variables == null
+        ? null
+        : variables.stream().map(Variable::getName).collect(ImmutableSet.toImmutableSet());
   }
 
   @Override
   public List<ValueSet> getValueSets() {
-    // Map rows per entity identifier
+    Map<String, List<Map<String, Value>>> rowsMap = mapRows(variableNames == null
+        ? fetcher.loadNonBinaryVariableValues(entities)
+        : fetcher.loadNonBinaryVariableValues(entities, variableNames));
+
+    List<JdbcValueSet> batchValueSets = entities.stream().map(e -> {
+      JdbcValueSet vs = new JdbcValueSet(table, e);
+      vs.populateResultSetCache(rowsMap.get(e.getIdentifier()), variableNames == null ? null : this);
+      return vs;
+    }).collect(Collectors.toList());
+    if (variableNames != null) valueSets = batchValueSets;
+    return ImmutableList.copyOf(batchValueSets);
+  }
+
+  /**
+   * Whether the values of the variable were loaded with the batch.
+   *
+   * @param variableName
+   * @return
+   */
+  boolean isSelected(String variableName) {
+    return variableNames == null || variableNames.contains(variableName);
+  }
+
+  /**
+   * Load the values of the variables that were not selected, for all the value sets of the batch at once.
+   */
+  synchronized void loadOtherValues() {
+    if (valueSets == null) return;
+    Map<String, List<Map<String, Value>>> rowsMap = mapRows(
+        fetcher.loadOtherNonBinaryVariableValues(entities, variableNames));
+    String idColumn = table.getSettings().getEntityIdentifierColumn();
+    rowsMap.values().forEach(rows -> rows.forEach(row -> row.remove(idColumn)));
+    valueSets.forEach(vs -> vs.populateOtherValues(rowsMap.get(vs.getVariableEntity().getIdentifier())));
+    valueSets = null;
+  }
+
+  /**
+   * Map rows per entity identifier.
+   *
+   * @param rows
+   * @return
+   */
+  private Map<String, List<Map<String, Value>>> mapRows(List<Map<String, Value>> rows) {
     String idColumn = table.getSettings().getEntityIdentifierColumn();
     Map<String, List<Map<String, Value>>> rowsMap = Maps.newHashMap();
-    fetcher.loadNonBinaryVariableValues(entities).stream() //
+    rows.stream() //
         .filter(valuesMap -> valuesMap.containsKey(idColumn)) //
         .forEach(valuesMap -> {
           String id = valuesMap.get(idColumn).toString();
@@ -53,11 +121,6 @@ public class JdbcValueSetBatch implements ValueSetBatch {
           }
           rowsMap.get(id).add(valuesMap);
         });
-
-    return entities.stream().map(e -> {
-      JdbcValueSet vs = new JdbcValueSet(table, e);
-      vs.populateResultSetCache(rowsMap.get(e.getIdentifier()));
-      return vs;
-    }).collect(Collectors.toList());
+    return rowsMap;
   }
 }
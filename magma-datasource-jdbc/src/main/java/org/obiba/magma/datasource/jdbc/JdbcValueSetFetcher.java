@@ -23,6 +23,8 @@ import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -46,11 +48,35 @@ class JdbcValueSetFetcher {
   }
 
   List<Map<String, Value>> loadNonBinaryVariableValues(List<VariableEntity> entities) {
-    return loadValues(getNonBinaryColumns(), entities);
+    return loadValues(getNonBinaryColumns(variable -> true, true), entities);
+  }
+
+  /**
+   * Get the rows of the entities, restricted to the columns of the given variables and the timestamps.
+   *
+   * @param entities
+   * @param variableNames
+   * @return
+   */
+  List<Map<String, Value>> loadNonBinaryVariableValues(List<VariableEntity> entities, Set<String> variableNames) {
+    return loadValues(getNonBinaryColumns(variable -> variableNames.contains(variable.getName()), true), entities);
   }
 
   List<Map<String, Value>> loadNonBinaryVariableValues(VariableEntity entity) {
-    return loadValues(getNonBinaryColumns(), entity);
+    return loadValues(getNonBinaryColumns(variable -> true, true), entity);
+  }
+
+  /**
+   * Get the rows of the entities, restricted to the columns of the variables that are not in the given ones.
+   *
+   * @param entities
+   * @param excludedVariableNames
+   * @return
+   */
+  List<Map<String, Value>> loadOtherNonBinaryVariableValues(List<VariableEntity> entities,
+      Set<String> excludedVariableNames) {
+    List<String> columns = getNonBinaryColumns(variable -> !excludedVariableNames.contains(variable.getName()), false);
+    return columns.isEmpty() ? Lists.newArrayList() : loadValues(columns, entities);
   }
 
   List<Map<String, Value>> loadVariableValues(Variable variable, VariableEntity entity) {
@@ -62,11 +88,12 @@ class JdbcValueSetFetcher {
   // Private methods
   //
 
-  private List<String> getNonBinaryColumns() {
+  private List<String> getNonBinaryColumns(Predicate<Variable> filter, boolean withTimestamps) {
     List<String> columns = valueTable.getVariables().stream()
-        .filter(variable -> !variable.getValueType().isBinary())
+        .filter(variable -> !variable.getValueType().isBinary() && filter.test(variable))
         .map(variable -> valueTable.getVariableSqlName(variable.getName()))
         .collect(Collectors.toList());
+    if (!withTimestamps) return columns;
 
     String created = valueTable.getCreatedTimestampColumnName();
     if (!Strings.isNullOrEmpty(created)) columns.add(created);
@@ -107,7 +134,8 @@ class JdbcValueSetFetcher {
    * @return
    */
   private List<Map<String, Value>> queryValues(String selectClause, String fromClause, String whereClause, VariableEntity entity) {
-    String sql = String.format("SELECT %s FROM %s WHERE %s", selectClause, fromClause, whereClause);
+    String sql = String.format("SELECT %s FROM %s WHERE %s ORDER BY %s", selectClause, fromClause, whereClause,
+        valueTable.getLinesOrderSql());
     return valueTable.getDatasource().getJdbcTemplate()
         .query(sql, new Object[] { asIdentifier(entity) }, mapper);
   }
@@ -130,7 +158,8 @@ class JdbcValueSetFetcher {
   }
 
   private List<Map<String, Value>> queryValues(String selectClause, String fromClause, String whereClause, List<VariableEntity> entities) {
-    String sql = String.format("SELECT %s FROM %s WHERE %s", selectClause, fromClause, whereClause);
+    String sql = String.format("SELECT %s FROM %s WHERE %s ORDER BY %s", selectClause, fromClause, whereClause,
+        valueTable.getLinesOrderSql());
 
     MapSqlParameterSource parameters = new MapSqlParameterSource();
     parameters.addValue("ids", entities.stream().map(this::asIdentifier).collect(Collectors.toList()));
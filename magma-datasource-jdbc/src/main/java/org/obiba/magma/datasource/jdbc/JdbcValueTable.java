@@ -11,8 +11,10 @@
 package org.obiba.magma.datasource.jdbc;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import liquibase.change.Change;
@@ -28,6 +30,9 @@ import org.obiba.magma.support.AbstractValueTable;
 import org.obiba.magma.support.Initialisables;
 import org.obiba.magma.support.VariableEntityProvider;
 import org.obiba.magma.type.DateTimeType;
+import org.obiba.magma.views.support.VariableCriterion;
+import org.obiba.magma.views.support.VariableCriterionSupport;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
@@ -44,7 +49,7 @@ import static org.obiba.magma.datasource.jdbc.JdbcValueTableWriter.*;
 import static org.obiba.magma.datasource.jdbc.support.TableUtils.newTable;
 import static org.obiba.magma.datasource.jdbc.support.TableUtils.newView;
 
-class JdbcValueTable extends AbstractValueTable {
+class JdbcValueTable extends AbstractValueTable implements VariableCriterionSupport {
 
   private final JdbcValueTableSettings settings;
 
@@ -149,6 +154,16 @@ class JdbcValueTable extends AbstractValueTable {
     return getJdbcVariableEntityProvider().hasVariableEntity(entity);
   }
 
+  @Nullable
+  @Override
+  public List<VariableEntity> getVariableEntities(VariableCriterion criterion) {
+    // a value set spans several lines: a condition on a line does not apply to the whole value set
+    if (isMultilines()) return null;
+    JdbcVariableCriterionQuery query = new JdbcVariableCriterionQuery(this, criterion);
+    if (query.getCondition() == null) return null;
+    return getJdbcVariableEntityProvider().getVariableEntities(query.getCondition(), query.getParameters());
+  }
+
   @Override
   public ValueSet getValueSet(VariableEntity entity) throws NoSuchValueSetException {
     return new JdbcValueSet(this, entity);
@@ -159,6 +174,21 @@ class JdbcValueTable extends AbstractValueTable {
     return new JdbcValueSetBatch(this, entities);
   }
 
+  @Override
+  protected ValueSetBatch getValueSetsBatch(List<VariableEntity> entities, List<Variable> variables) {
+    // the lines of a value set read by two queries could not be matched without a defined order
+    return hasOrderedLines()
+        ? new JdbcValueSetBatch(this, entities, variables)
+        : new JdbcValueSetBatch(this, entities);
+  }
+
+  @Override
+  public MultiVectorSource getMultiVectorSource(List<Variable> variables) throws NoSuchVariableException {
+    return new JdbcMultiVectorSource(this, variables.stream()
+        .map(variable -> (JdbcVariableValueSource) getVariableValueSource(variable.getName()))
+        .collect(Collectors.toList()));
+  }
+
   @Override
   public Timestamps getValueSetTimestamps(VariableEntity entity) throws NoSuchValueSetException {
     return new ValueSetTimestamps(entity, getCreatedTimestampColumnName(), getUpdatedTimestampColumnName());
@@ -196,6 +226,52 @@ class JdbcValueTable extends AbstractValueTable {
     return tableOrView instanceof View;
   }
 
+  /**
+   * Whether the value sets can be inserted or updated without knowing if they exist: the database supports it and a
+   * value set is a single line which primary key is the entity identifier.
+   *
+   * @return
+   */
+  boolean canUpsert() {
+    if (!(tableOrView instanceof Table) || isMultilines() || getDatasource().getUpsertDialect() == null) return false;
+    PrimaryKey pk = ((Table) tableOrView).getPrimaryKey();
+    return pk != null && pk.getColumns().size() == 1
+        && pk.getColumns().get(0).getName().equalsIgnoreCase(getEntityIdentifierColumn());
+  }
+
+  /**
+   * The columns that order the lines of the value sets in the same way in every query: the entity identifier, then the
+   * other columns of the primary key, if any.
+   *
+   * @return
+   */
+  String getLinesOrderSql() {
+    List<String> columns = Lists.newArrayList(getEntityIdentifierColumnSql());
+    getPrimaryKeyColumns().stream() //
+        .filter(column -> !column.equalsIgnoreCase(getEntityIdentifierColumn())) //
+        .forEach(column -> columns.add(getDatasource().escapeColumnName(column)));
+    return String.join(", ", columns);
+  }
+
+  /**
+   * Whether the lines of a value set always come in the same order: there is only one, or the primary key tells them
+   * apart.
+   *
+   * @return
+   */
+  boolean hasOrderedLines() {
+    return !isMultilines() || getPrimaryKeyColumns().stream()
+        .anyMatch(column -> !column.equalsIgnoreCase(getEntityIdentifierColumn()));
+  }
+
+  private List<String> getPrimaryKeyColumns() {
+    if (!(tableOrView instanceof Table)) return Collections.emptyList();
+    PrimaryKey pk = ((Table) tableOrView).getPrimaryKey();
+    return pk == null
+        ? Collections.emptyList()
+        : pk.getColumns().stream().map(Column::getName).collect(Collectors.toList());
+  }
+
   public void drop() {
     if (getDatasource().getDatabaseSnapshot().get(newTable(getSqlName())) != null) {
       DropTableChange dtt = new DropTableChange();
@@ -311,6 +387,16 @@ class JdbcValueTable extends AbstractValueTable {
     return tableOrView.getColumn(getEntityIdentifierColumn()).getType();
   }
 
+  /**
+   * @param columnName
+   * @return the SQL type of the column, null if the column is not known
+   */
+  @Nullable
+  String getColumnSqlType(String columnName) {
+    Column column = tableOrView.getColumn(columnName);
+    return column == null || column.getType() == null ? null : SqlTypes.castTypeFor(column.getType());
+  }
+
   private boolean isSettingsMultilines() {
     return getSettings().isMultilines() || getDatasource().getSettings().isMultilines();
   }
@@ -353,7 +439,7 @@ class JdbcValueTable extends AbstractValueTable {
     Object[] params = getDatasource().getSettings().isMultipleDatasources() ? new Object[]{
         getDatasource().getName(), getName()} : new Object[]{getName()};
 
-    List<Variable> results = getDatasource().getJdbcTemplate().query(sql, params, new VariableRowMapper());
+    List<Variable> results = getDatasource().getJdbcTemplate().query(sql, params, new VariableRowMapper(params));
 
     for (Variable variable : results) {
       addVariableValueSource(new JdbcVariableValueSource(this, variable));
@@ -390,8 +476,24 @@ class JdbcValueTable extends AbstractValueTable {
         && !exclusion.matcher(name).find() && inclusion.matcher(name).find();
   }
 
+  /**
+   * Maps the variables rows, with their attributes and categories loaded beforehand with one query per metadata table,
+   * instead of queries per variable and per category.
+   */
   private class VariableRowMapper implements RowMapper<Variable> {
 
+    private final ListMultimap<String, Attribute> variableAttributes;
+
+    private final ListMultimap<String, Category.Builder> variableCategories;
+
+    /**
+     * @param params the datasource and table parameters of the variables query
+     */
+    private VariableRowMapper(Object... params) {
+      variableAttributes = loadVariableAttributes(params);
+      variableCategories = loadVariableCategories(params);
+    }
+
     @Override
     public Variable mapRow(ResultSet rs, int rowNum) throws SQLException {
       return buildVariableFromResultSet(rs);
@@ -414,57 +516,56 @@ class JdbcValueTable extends AbstractValueTable {
         builder.occurrenceGroup(occurrenceGroup);
       }
 
-      addVariableAttributes(variableName, builder);
-      addVariableCategories(variableName, builder);
+      builder.addAttributes(variableAttributes.get(variableName));
+      builder.addCategories(variableCategories.get(variableName).stream() //
+          .map(Category.Builder::build).collect(Collectors.toList()));
 
       return builder.build();
     }
 
-    private void addVariableAttributes(String variableName, Variable.Builder builder) {
+    private ListMultimap<String, Attribute> loadVariableAttributes(Object... params) {
       String sql = getDatasource().getSettings().isMultipleDatasources()
-          ? String
-          .format("SELECT * FROM %s WHERE %s = ? AND %s = ? AND %s = ? ", ESC_VARIABLE_ATTRIBUTES_TABLE, ESC_DATASOURCE_COLUMN,
-              ESC_VALUE_TABLE_COLUMN, ESC_VARIABLE_COLUMN)
-          : String.format("SELECT * FROM %s WHERE %s = ? AND %s = ? ", ESC_VARIABLE_ATTRIBUTES_TABLE, ESC_VALUE_TABLE_COLUMN,
-          ESC_VARIABLE_COLUMN);
-      Object[] params = getDatasource().getSettings().isMultipleDatasources() ? new Object[]{
-          getDatasource().getName(), getName(), variableName} : new Object[]{getName(), variableName};
-      builder.addAttributes(getDatasource().getJdbcTemplate().query(sql, params, new AttributeRowMapper()));
+          ? String.format("SELECT * FROM %s WHERE %s = ? AND %s = ?", ESC_VARIABLE_ATTRIBUTES_TABLE, ESC_DATASOURCE_COLUMN,
+          ESC_VALUE_TABLE_COLUMN)
+          : String.format("SELECT * FROM %s WHERE %s = ?", ESC_VARIABLE_ATTRIBUTES_TABLE, ESC_VALUE_TABLE_COLUMN);
+      ListMultimap<String, Attribute> attributes = ArrayListMultimap.create();
+      AttributeRowMapper attributeRowMapper = new AttributeRowMapper();
+      getDatasource().getJdbcTemplate().query(sql, params, (RowCallbackHandler) rs -> attributes
+          .put(rs.getString(VARIABLE_COLUMN), attributeRowMapper.mapRow(rs, 0)));
+      return attributes;
     }
 
-    private void addVariableCategories(final String variableName, Variable.Builder builder) {
+    private ListMultimap<String, Category.Builder> loadVariableCategories(Object... params) {
       String sql = getDatasource().getSettings().isMultipleDatasources()
-          ? String.format("SELECT %s, %s FROM %s WHERE %s = ? AND %s= ? AND %s = ?", ESC_NAME_COLUMN, ESC_MISSING_COLUMN,
-          ESC_CATEGORIES_TABLE, ESC_DATASOURCE_COLUMN, ESC_VALUE_TABLE_COLUMN, ESC_VARIABLE_COLUMN)
-          : String.format("SELECT %s, %s FROM %s WHERE %s= ? AND %s = ?", ESC_NAME_COLUMN, ESC_MISSING_COLUMN, ESC_CATEGORIES_TABLE,
-          ESC_VALUE_TABLE_COLUMN, ESC_VARIABLE_COLUMN);
-      Object[] params = getDatasource().getSettings().isMultipleDatasources() ? new Object[]{
-          getDatasource().getName(), getName(), variableName} : new Object[]{getName(), variableName};
-
-      builder.addCategories(getDatasource().getJdbcTemplate().query(sql, params, new RowMapper<Category>() {
-
-        @Override
-        public Category mapRow(ResultSet rs, int rowNum) throws SQLException {
-          String categoryName = rs.getString(NAME_COLUMN);
-          Category.Builder catBuilder = Category.Builder.newCategory(categoryName)
-              .missing(rs.getBoolean(MISSING_COLUMN));
-          addVariableCategoryAtributes(variableName, categoryName, catBuilder);
-          return catBuilder.build();
-        }
-      }));
+          ? String.format("SELECT %s, %s, %s FROM %s WHERE %s = ? AND %s= ?", ESC_VARIABLE_COLUMN, ESC_NAME_COLUMN,
+          ESC_MISSING_COLUMN, ESC_CATEGORIES_TABLE, ESC_DATASOURCE_COLUMN, ESC_VALUE_TABLE_COLUMN)
+          : String.format("SELECT %s, %s, %s FROM %s WHERE %s= ?", ESC_VARIABLE_COLUMN, ESC_NAME_COLUMN, ESC_MISSING_COLUMN,
+          ESC_CATEGORIES_TABLE, ESC_VALUE_TABLE_COLUMN);
+      ListMultimap<String, Category.Builder> categories = ArrayListMultimap.create();
+      Map<String, Map<String, Category.Builder>> categoriesByVariable = Maps.newHashMap();
+      getDatasource().getJdbcTemplate().query(sql, params, (RowCallbackHandler) rs -> {
+        String variableName = rs.getString(VARIABLE_COLUMN);
+        String categoryName = rs.getString(NAME_COLUMN);
+        Category.Builder catBuilder = Category.Builder.newCategory(categoryName).missing(rs.getBoolean(MISSING_COLUMN));
+        categories.put(variableName, catBuilder);
+        categoriesByVariable.computeIfAbsent(variableName, name -> Maps.newHashMap()).put(categoryName, catBuilder);
+      });
+      if (!categoriesByVariable.isEmpty()) addCategoryAttributes(categoriesByVariable, params);
+      return categories;
     }
 
-    private void addVariableCategoryAtributes(String variableName, String categoryName, Category.Builder builder) {
+    private void addCategoryAttributes(Map<String, Map<String, Category.Builder>> categoriesByVariable,
+        Object... params) {
       String sql = getDatasource().getSettings().isMultipleDatasources()
-          ? String.format("SELECT * FROM %s WHERE %s = ? AND %s = ? AND %s = ? AND %s = ?", ESC_CATEGORY_ATTRIBUTES_TABLE,
-          ESC_DATASOURCE_COLUMN, ESC_VALUE_TABLE_COLUMN, ESC_VARIABLE_COLUMN, ESC_CATEGORY_COLUMN)
-          : String.format("SELECT * FROM %s WHERE %s = ? AND %s = ? AND %s = ?", ESC_CATEGORY_ATTRIBUTES_TABLE,
-          ESC_VALUE_TABLE_COLUMN, ESC_VARIABLE_COLUMN, ESC_CATEGORY_COLUMN);
-      Object[] params = getDatasource().getSettings().isMultipleDatasources()
-          ? new Object[]{getDatasource().getName(), getName(), variableName, categoryName}
-          : new Object[]{getName(), variableName, categoryName};
-
-      builder.addAttributes(getDatasource().getJdbcTemplate().query(sql, params, new AttributeRowMapper()));
+          ? String.format("SELECT * FROM %s WHERE %s = ? AND %s = ?", ESC_CATEGORY_ATTRIBUTES_TABLE, ESC_DATASOURCE_COLUMN,
+          ESC_VALUE_TABLE_COLUMN)
+          : String.format("SELECT * FROM %s WHERE %s = ?", ESC_CATEGORY_ATTRIBUTES_TABLE, ESC_VALUE_TABLE_COLUMN);
+      AttributeRowMapper attributeRowMapper = new AttributeRowMapper();
+      getDatasource().getJdbcTemplate().query(sql, params, (RowCallbackHandler) rs -> {
+        Map<String, Category.Builder> categories = categoriesByVariable.get(rs.getString(VARIABLE_COLUMN));
+        Category.Builder catBuilder = categories == null ? null : categories.get(rs.getString(CATEGORY_COLUMN));
+        if (catBuilder != null) catBuilder.addAttribute(attributeRowMapper.mapRow(rs, 0));
+      });
     }
   }
 
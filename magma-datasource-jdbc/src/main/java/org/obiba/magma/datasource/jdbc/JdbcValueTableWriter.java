@@ -11,7 +11,10 @@
 package org.obiba.magma.datasource.jdbc;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import liquibase.change.Change;
 import liquibase.change.ColumnConfig;
 import liquibase.change.core.AddColumnChange;
@@ -26,7 +29,10 @@ import org.obiba.magma.datasource.jdbc.JdbcDatasource.ChangeDatabaseCallback;
 import org.obiba.magma.datasource.jdbc.support.AddColumnChangeBuilder;
 import org.obiba.magma.datasource.jdbc.support.InsertDataChangeBuilder;
 import org.obiba.magma.datasource.jdbc.support.UpdateDataChangeBuilder;
+import org.obiba.magma.datasource.jdbc.support.UpsertDialect;
+import org.obiba.magma.support.AsyncBatchFlusher;
 import org.obiba.magma.support.VariableHelper;
+import org.obiba.magma.type.BinaryType;
 import org.obiba.magma.type.DateTimeType;
 import org.obiba.magma.type.DateType;
 import org.obiba.magma.type.LocaleType;
@@ -39,8 +45,10 @@ import org.springframework.jdbc.core.support.AbstractInterruptibleBatchPreparedS
 import org.springframework.jdbc.support.lob.DefaultLobHandler;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.NotNull;
 import java.io.ByteArrayInputStream;
 import java.sql.Date;
@@ -50,14 +58,25 @@ import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 class JdbcValueTableWriter implements ValueTableWriter {
 
   private static final Logger log = LoggerFactory.getLogger(JdbcValueTableWriter.class);
 
+  // a multi-row statement is bounded by the estimated size of its values, by its parameters count (SQL Server
+  // accepts about 2000) and by its rows count
+  private static final int UPSERT_MAX_BYTES = 1024 * 1024;
+
+  private static final int UPSERT_MAX_PARAMETERS = 2000;
+
+  private static final int UPSERT_MAX_ROWS = 1000;
+
   private final SimpleDateFormat timestampDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
   static final String VALUE_TABLES_TABLE = "value_tables";
@@ -102,23 +121,34 @@ class JdbcValueTableWriter implements ValueTableWriter {
 
   private boolean hasValueSets;
 
-  private final Set<String> identifiersAtInit;
+  private Set<String> identifiersAtInit;
+
+  @Nullable
+  private final UpsertDialect upsertDialect;
 
   private final List<JdbcOperation> batch = Lists.newArrayList();
 
+  // the statements by the (unescaped) columns of the lines, value sets are written concurrently
+  private final Map<List<String>, String> insertSqls = new ConcurrentHashMap<>();
+
+  private final Map<List<String>, String> updateSqls = new ConcurrentHashMap<>();
+
+  private final Map<List<String>, UpsertStatement> upsertStatements = new ConcurrentHashMap<>();
+
   private final String ESC_CATEGORY_ATTRIBUTES_TABLE, ESC_DATASOURCE_COLUMN, ESC_VALUE_TABLE_COLUMN, ESC_VARIABLE_COLUMN, ESC_NAME_COLUMN,
       ESC_CATEGORIES_TABLE, ESC_VARIABLES_TABLE, ESC_VARIABLE_ATTRIBUTES_TABLE;
 
   private int batchSize;
 
+  private final AsyncBatchFlusher<JdbcOperation> flusher;
+
   JdbcValueTableWriter(JdbcValueTable valueTable) {
     if (valueTable.isSQLView()) throw new MagmaRuntimeException("A SQL view cannot be written");
 
     this.valueTable = valueTable;
     this.hasValueSets = valueTable.getValueSetCount() > 0;
-    // might be a costly call but (1) most likely this will be empty and (2) will spare hasValueSet() calls
-    this.identifiersAtInit = valueTable.getVariableEntities().stream()
-        .map(VariableEntity::getIdentifier).collect(Collectors.toSet());
+    // without upsert, the existing value sets are to be updated instead of inserted
+    this.upsertDialect = valueTable.canUpsert() ? valueTable.getDatasource().getUpsertDialect() : null;
     ESC_CATEGORY_ATTRIBUTES_TABLE = valueTable.getDatasource().escapeTableName(CATEGORY_ATTRIBUTES_TABLE);
     ESC_CATEGORIES_TABLE = valueTable.getDatasource().escapeTableName(CATEGORIES_TABLE);
     ESC_VARIABLES_TABLE = valueTable.getDatasource().escapeTableName(VARIABLES_TABLE);
@@ -128,6 +158,11 @@ class JdbcValueTableWriter implements ValueTableWriter {
     ESC_VARIABLE_COLUMN = valueTable.getDatasource().escapeColumnName(VARIABLE_COLUMN);
     ESC_NAME_COLUMN = valueTable.getDatasource().escapeColumnName(NAME_COLUMN);
     batchSize = valueTable.getDatasource().getSettings().getBatchSize();
+    // the batches saved in the background would not be part of the caller's transaction
+    int asyncFlushBatches = TransactionSynchronizationManager.isActualTransactionActive()
+        ? 0
+        : valueTable.getDatasource().getSettings().getAsyncFlushBatches();
+    flusher = new AsyncBatchFlusher<>(asyncFlushBatches, this::batchUpdate);
   }
 
   @NotNull
@@ -136,6 +171,32 @@ class JdbcValueTableWriter implements ValueTableWriter {
     return new JdbcValueSetWriter(entity);
   }
 
+  /**
+   * Add the lines of the whole block to the batch at once, instead of one value set at a time. The column of each
+   * variable is resolved once for the block, and the value sets having the same columns share the same statement.
+   *
+   * @param block
+   */
+  @Override
+  public void writeValueSets(@NotNull ValueSetBlock block) {
+    List<String> columnNames = block.getVariables().stream()
+        .map(variable -> getVariableSqlName(variable.getName())).collect(Collectors.toList());
+    List<JdbcOperation> operations = Lists.newArrayList();
+    for (int row = 0; row < block.size(); row++) {
+      VariableEntity entity = block.getEntity(row);
+      JdbcLine line = newJdbcLine(entity);
+      for (int column = 0; column < columnNames.size(); column++) {
+        Value value = block.getValue(row, column);
+        if (value != null) {
+          hasValueSets = true;
+          line.setValue(columnNames.get(column), value);
+        }
+      }
+      operations.addAll(getInsertOrUpdateOperations(entity, line));
+    }
+    addToBatch(operations);
+  }
+
   @Override
   public VariableWriter writeVariables() {
     return valueTable.getDatasource().getSettings().isUseMetadataTables()
@@ -155,12 +216,129 @@ class JdbcValueTableWriter implements ValueTableWriter {
       }
     }
 
-    if (toSave != null) batchUpdate(toSave);
+    try {
+      if (toSave != null) flusher.flush(toSave);
+    } finally {
+      // wait for the batches saved in the background
+      flusher.close();
+    }
 
     getDatasource().databaseChanged();
     valueTable.tableChanged();
   }
 
+  /**
+   * Add the operations to the pending batch, and flush the batch when it is full.
+   *
+   * @param operations
+   */
+  private void addToBatch(List<JdbcOperation> operations) {
+    List<JdbcOperation> toSave = null;
+
+    synchronized (valueTable) {
+      batch.addAll(operations);
+
+      if (batch.size() >= batchSize) {
+        toSave = Lists.newArrayList(batch);
+        batch.clear();
+      }
+    }
+
+    if (toSave != null) {
+      flusher.flush(toSave);
+    }
+  }
+
+  /**
+   * Get the identifiers of the value sets that existed when the writer was created.
+   *
+   * @return
+   */
+  private synchronized Set<String> getIdentifiersAtInit() {
+    if (identifiersAtInit == null) {
+      // might be a costly call but (1) most likely this will be empty and (2) will spare hasValueSet() calls
+      identifiersAtInit = valueTable.getVariableEntities().stream()
+          .map(VariableEntity::getIdentifier).collect(Collectors.toSet());
+    }
+    return identifiersAtInit;
+  }
+
+  /**
+   * A line of the entity, which value set is updated if it existed when the writer was created, and inserted otherwise
+   * (or upserted, whether it exists or not).
+   *
+   * @param entity
+   * @return
+   */
+  private JdbcLine newJdbcLine(VariableEntity entity) {
+    boolean update = upsertDialect == null && getIdentifiersAtInit().contains(entity.getIdentifier());
+    return new JdbcLine(entity, valueTable, update);
+  }
+
+  private List<JdbcOperation> getInsertOrUpdateOperations(VariableEntity entity, JdbcLine line) {
+    List<String> columnNames = ImmutableList.copyOf(line.getColumnNames());
+    List<JdbcOperation> operations = Lists.newArrayList();
+    if (upsertDialect != null) {
+      UpsertStatement upsert = upsertStatements.computeIfAbsent(columnNames, this::newUpsertStatement);
+      line.getLines().forEach(values -> {
+        values.add(TextType.get().valueOf(entity.getIdentifier()));
+        operations.add(new JdbcOperation(entity, upsert, values));
+      });
+      return operations;
+    }
+    String sql = line.isUpdate()
+        ? updateSqls.computeIfAbsent(columnNames, this::newUpdateSql)
+        : insertSqls.computeIfAbsent(columnNames, this::newInsertSql);
+    line.getLines().forEach(values -> {
+      values.add(TextType.get().valueOf(entity.getIdentifier()));
+      operations.add(new JdbcOperation(entity, sql, values));
+    });
+    return operations;
+  }
+
+  private UpsertStatement newUpsertStatement(List<String> columnNames) {
+    List<String> columns = Lists.newArrayList(getEscapedColumnNames(columnNames));
+    // the creation timestamp is only set by the insertion
+    List<String> updateColumns = columns.stream()
+        .filter(column -> !valueTable.hasCreatedTimestampColumn()
+            || !column.equals(getDatasource().escapeColumnName(valueTable.getCreatedTimestampColumnName())))
+        .collect(Collectors.toList());
+    columns.add(getEscapedEntityIdentifierColumnName());
+    List<String> columnTypes = Lists.newArrayList(columnNames);
+    columnTypes.add(valueTable.getSettings().getEntityIdentifierColumn());
+    columnTypes.replaceAll(valueTable::getColumnSqlType);
+    return new UpsertStatement(columns, columnTypes, updateColumns);
+  }
+
+  private String newInsertSql(List<String> columnNames) {
+    List<String> columns = Lists.newArrayList(getEscapedColumnNames(columnNames));
+    columns.add(getEscapedEntityIdentifierColumnName());
+    String values = Joiner.on(", ").join(Collections.nCopies(columns.size(), "?"));
+    return String.format("INSERT INTO %s (%s) VALUES (%s)", getEscapedTableName(), Joiner.on(", ").join(columns), values);
+  }
+
+  private String newUpdateSql(List<String> columnNames) {
+    String colNames = Joiner.on(", ")
+        .join(getEscapedColumnNames(columnNames).stream().map(c -> String.format("%s = ?", c)).collect(Collectors.toList()));
+    return String.format("UPDATE %s SET %s %s", getEscapedTableName(), colNames, getEntityWhereClause());
+  }
+
+  private String getEscapedTableName() {
+    return getDatasource().escapeTableName(valueTable.getSqlName());
+  }
+
+  private List<String> getEscapedColumnNames(List<String> columnNames) {
+    return columnNames.stream().map(getDatasource()::escapeColumnName).collect(Collectors.toList());
+  }
+
+  private String getEscapedEntityIdentifierColumnName() {
+    return getDatasource().escapeColumnName(valueTable.getSettings().getEntityIdentifierColumn());
+  }
+
+  private String getEntityWhereClause() {
+    return String.format("WHERE %s = ?", getEscapedEntityIdentifierColumnName());
+  }
+
   private JdbcTemplate getJdbcTemplate() {
     return this.valueTable.getDatasource().getJdbcTemplate();
   }
@@ -182,76 +360,163 @@ class JdbcValueTableWriter implements ValueTableWriter {
     });
   }
 
-  @SuppressWarnings({"OverlyLongMethod", "PMD.NcssMethodCount"})
   private void batchUpdateInternal(List<JdbcOperation> operations) {
-    final DefaultLobHandler lobHandler = new DefaultLobHandler();
+    DefaultLobHandler lobHandler = new DefaultLobHandler();
 
-    List<VariableEntity> entities = operations.stream()
+    List<VariableEntity> insertedLines = operations.stream()
         .filter(op -> op.getSql().startsWith("INSERT "))
         .map(JdbcOperation::getVariableEntity).collect(Collectors.toList());
-    valueTable.getJdbcVariableEntityProvider().addAll(entities);
 
-    List<String> sqls = operations.stream().map(JdbcOperation::getSql).distinct().collect(Collectors.toList());
+    List<String> sqls = operations.stream().filter(op -> op.getUpsert() == null)
+        .map(JdbcOperation::getSql).distinct().collect(Collectors.toList());
 
     for (String sql : sqls) {
       final List<List<Value>> batchValues = operations.stream()
-          .filter(op -> sql.equals(op.getSql()))
+          .filter(op -> op.getUpsert() == null && sql.equals(op.getSql()))
           .map(JdbcOperation::getParameters).collect(Collectors.toList());
       int[] res = getJdbcTemplate().batchUpdate(sql, new AbstractInterruptibleBatchPreparedStatementSetter() {
         @Override
         protected boolean setValuesIfAvailable(PreparedStatement ps, int i) throws SQLException {
-          int index = 1;
-
           if (batchValues.size() <= i) {
             return false;
           }
-
-          for (Value value : batchValues.get(i)) {
-            Object columnValue = toColumnValue(value);
-            if (columnValue instanceof byte[]) {
-              lobHandler.getLobCreator().setBlobAsBinaryStream(ps, index++, new ByteArrayInputStream((byte[]) columnValue),
-                  ((byte[]) columnValue).length);
-            } else {
-              ps.setObject(index++, columnValue);
-            }
-          }
-
+          setParameters(ps, 1, batchValues.get(i), lobHandler);
           return true;
         }
-
-        private Object toColumnValue(Value value) {
-          Object columnValue = null;
-          if (!value.isNull()) {
-            if (value.isSequence()) {
-              columnValue = value.toString();
-            } else {
-              columnValue = value.getValue();
-
-              // Persist some objects as strings.
-              if (value.getValueType() == LocaleType.get() || value.getValueType().isGeo()) {
-                columnValue = value.toString();
-              } else if (value.getValueType() == DateType.get()) {
-                if (columnValue instanceof java.util.Date) {
-                  columnValue = new Date(((java.util.Date) columnValue).getTime());
-                } else if (columnValue instanceof MagmaDate) {
-                  columnValue = new Date(((MagmaDate) columnValue).asDate().getTime());
-                }
-              } else if (value.getValueType() == DateTimeType.get()) {
-                if (columnValue instanceof java.util.Date) {
-                  columnValue = new Timestamp(((java.util.Date) columnValue).getTime());
-                } else if (columnValue instanceof MagmaDate) {
-                  columnValue = new Timestamp(((MagmaDate) columnValue).asDate().getTime());
-                }
-              }
-            }
-          }
-          return columnValue;
-        }
-
       });
 
       log.debug("batchUpdate modified {} rows", res.length);
     }
+
+    // the counts are maintained instead of being queried again
+    JdbcVariableEntityProvider provider = valueTable.getJdbcVariableEntityProvider();
+    Set<VariableEntity> insertedEntities = new LinkedHashSet<>(insertedLines);
+    provider.addAll(insertedEntities, insertedLines.size());
+
+    Set<VariableEntity> upsertedEntities = operations.stream().filter(op -> op.getUpsert() != null)
+        .map(JdbcOperation::getVariableEntity).collect(Collectors.toCollection(LinkedHashSet::new));
+    if (upsertedEntities.isEmpty()) return;
+    // the upserted entities that are not in the table are the ones which line is inserted (one line per entity)
+    List<VariableEntity> newEntities = provider.getMissingVariableEntities(upsertedEntities);
+    upsertBatchInternal(operations, lobHandler);
+    if (newEntities == null) {
+      provider.resetCounts();
+    } else {
+      provider.addAll(newEntities, newEntities.size());
+    }
+  }
+
+  /**
+   * Insert or update the lines of the upsert operations with multi-row statements, one per group of lines having the
+   * same columns. The lines of an entity are written in the order of the operations: a line which entity is already
+   * pending in a group makes all the pending groups be written first.
+   *
+   * @param operations
+   * @param lobHandler
+   */
+  private void upsertBatchInternal(List<JdbcOperation> operations, DefaultLobHandler lobHandler) {
+    Map<UpsertStatement, UpsertRows> pending = Maps.newLinkedHashMap();
+    Set<String> pendingIdentifiers = Sets.newHashSet();
+    for (JdbcOperation op : operations) {
+      if (op.getUpsert() == null) continue;
+      String identifier = op.getVariableEntity().getIdentifier();
+      if (pendingIdentifiers.contains(identifier)) {
+        pending.forEach((upsert, rows) -> upsertRows(upsert, rows, lobHandler));
+        pending.clear();
+        pendingIdentifiers.clear();
+      }
+      UpsertStatement upsert = op.getUpsert();
+      UpsertRows rows = pending.computeIfAbsent(upsert, key -> new UpsertRows());
+      long rowBytes = op.getParameters().stream().mapToLong(JdbcValueTableWriter::estimateSize).sum();
+      int maxRows = Math.max(1, Math.min(UPSERT_MAX_ROWS, UPSERT_MAX_PARAMETERS / upsert.getColumns().size()));
+      if (rows.size() == maxRows || (rows.size() > 0 && rows.bytes + rowBytes > UPSERT_MAX_BYTES)) {
+        upsertRows(upsert, rows, lobHandler);
+        pendingIdentifiers.removeAll(rows.identifiers);
+        rows.clear();
+      }
+      rows.add(identifier, op.getParameters(), rowBytes);
+      pendingIdentifiers.add(identifier);
+    }
+    pending.forEach((upsert, rows) -> upsertRows(upsert, rows, lobHandler));
+  }
+
+  private void upsertRows(UpsertStatement upsert, UpsertRows rows, DefaultLobHandler lobHandler) {
+    if (rows.size() == 0) return;
+    String sql = upsertDialect.getUpsertSql(getEscapedTableName(), getEscapedEntityIdentifierColumnName(),
+        upsert.getColumns(), upsert.getColumnTypes(), upsert.getUpdateColumns(), rows.size());
+    int res = getJdbcTemplate().update(sql, ps -> {
+      int index = 1;
+      for (List<Value> row : rows.parameters) {
+        index = setParameters(ps, index, row, lobHandler);
+      }
+    });
+    log.debug("upsert of {} lines modified {} rows", rows.size(), res);
+  }
+
+  /**
+   * Set the values as parameters of the statement.
+   *
+   * @param ps
+   * @param index the index of the first parameter
+   * @param values
+   * @param lobHandler
+   * @return the index of the parameter that follows
+   * @throws SQLException
+   */
+  private static int setParameters(PreparedStatement ps, int index, List<Value> values, DefaultLobHandler lobHandler)
+      throws SQLException {
+    for (Value value : values) {
+      Object columnValue = toColumnValue(value);
+      if (columnValue instanceof byte[]) {
+        lobHandler.getLobCreator().setBlobAsBinaryStream(ps, index++, new ByteArrayInputStream((byte[]) columnValue),
+            ((byte[]) columnValue).length);
+      } else {
+        ps.setObject(index++, columnValue);
+      }
+    }
+    return index;
+  }
+
+  private static Object toColumnValue(Value value) {
+    Object columnValue = null;
+    if (!value.isNull()) {
+      if (value.isSequence()) {
+        columnValue = value.toString();
+      } else {
+        columnValue = value.getValue();
+
+        // Persist some objects as strings.
+        if (value.getValueType() == LocaleType.get() || value.getValueType().isGeo()) {
+          columnValue = value.toString();
+        } else if (value.getValueType() == DateType.get()) {
+          if (columnValue instanceof java.util.Date) {
+            columnValue = new Date(((java.util.Date) columnValue).getTime());
+          } else if (columnValue instanceof MagmaDate) {
+            columnValue = new Date(((MagmaDate) columnValue).asDate().getTime());
+          }
+        } else if (value.getValueType() == DateTimeType.get()) {
+          if (columnValue instanceof java.util.Date) {
+            columnValue = new Timestamp(((java.util.Date) columnValue).getTime());
+          } else if (columnValue instanceof MagmaDate) {
+            columnValue = new Timestamp(((MagmaDate) columnValue).asDate().getTime());
+          }
+        }
+      }
+    }
+    return columnValue;
+  }
+
+  /**
+   * Rough estimate of the bytes sent for a value, to bound the size of the multi-row statements.
+   *
+   * @param value
+   * @return
+   */
+  private static long estimateSize(Value value) {
+    if (value.isNull()) return 1;
+    if (value.getValueType() == BinaryType.get() && !value.isSequence()) return ((byte[]) value.getValue()).length;
+    if (value.isSequence() || value.getValueType() == TextType.get()) return value.toString().length();
+    return 8;
   }
 
   private String formattedDate(java.util.Date date) {
@@ -546,17 +811,11 @@ class JdbcValueTableWriter implements ValueTableWriter {
 
     private final JdbcLine jdbcLine;
 
-    private String insertSql;
-
-    private String updateSql;
-
-    private String whereClause;
-
     private boolean remove;
 
     private JdbcValueSetWriter(VariableEntity entity) {
       this.entity = entity;
-      this.jdbcLine = new JdbcLine(entity, valueTable);
+      this.jdbcLine = newJdbcLine(entity);
     }
 
     @Override
@@ -579,112 +838,137 @@ class JdbcValueTableWriter implements ValueTableWriter {
     }
 
     private void doRemove() {
-      getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
-        @Override
-        protected void doInTransactionWithoutResult(TransactionStatus status) {
-          getJdbcTemplate()
-              .execute(getDeleteSql(), (PreparedStatementCallback<Integer>) ps -> {
-                ps.setString(1, entity.getIdentifier());
-                return ps.executeUpdate();
-              });
-        }
-      });
-      valueTable.getJdbcVariableEntityProvider().remove(entity);
+      // the value set may be in a batch being saved
+      flusher.await();
+      Integer removed = getTransactionTemplate().execute(status -> getJdbcTemplate()
+          .execute(getDeleteSql(), (PreparedStatementCallback<Integer>) ps -> {
+            ps.setString(1, entity.getIdentifier());
+            return ps.executeUpdate();
+          }));
+      if (removed != null && removed > 0) valueTable.getJdbcVariableEntityProvider().remove(entity);
     }
 
     private void doInsertOrUpdate() {
-      final String sql = identifiersAtInit.contains(entity.getIdentifier()) ? getUpdateSql() : getInsertSql();
+      addToBatch(getInsertOrUpdateOperations(entity, jdbcLine));
+    }
 
-      List<JdbcOperation> toSave = null;
+    private String getDeleteSql() {
+      return String.format("DELETE FROM %s %s", getEscapedTableName(), getEntityWhereClause());
+    }
+  }
 
-      synchronized (valueTable) {
-        jdbcLine.getLines().forEach(values -> {
-          values.add(TextType.get().valueOf(entity.getIdentifier()));
-          batch.add(new JdbcOperation(entity, sql, values));
-        });
+  private class JdbcOperation {
 
-        if (batch.size() >= batchSize) {
-          toSave = Lists.newArrayList(batch);
-          batch.clear();
-        }
-      }
+    private final VariableEntity entity;
 
-      if (toSave != null) {
-        batchUpdate(toSave);
-      }
+    private final String sql;
+
+    @Nullable
+    private final UpsertStatement upsert;
+
+    private final List<Value> parameters;
+
+    private JdbcOperation(VariableEntity entity, String sql, List<Value> parameters) {
+      this.entity = entity;
+      this.sql = sql;
+      this.upsert = null;
+      this.parameters = parameters;
     }
 
-    private String getInsertSql() {
-      if (insertSql == null) {
-        String colNames = Joiner.on(", ").join(getEscapedColumnNames());
-        colNames = colNames.isEmpty() ? getEscapedEntityIdentifierColumnName()
-            : colNames + ", " + getEscapedEntityIdentifierColumnName();
-        String values = Joiner.on(", ").join(Collections.nCopies(jdbcLine.size() + 1, "?"));
-        insertSql = String.format("INSERT INTO %s (%s) VALUES (%s)", getEscapedTableName(), colNames, values);
-      }
+    private JdbcOperation(VariableEntity entity, UpsertStatement upsert, List<Value> parameters) {
+      this.entity = entity;
+      // the statement depends on the number of rows it is merged with
+      this.sql = "";
+      this.upsert = upsert;
+      this.parameters = parameters;
+    }
 
-      return insertSql;
+    public VariableEntity getVariableEntity() {
+      return entity;
     }
 
-    private String getUpdateSql() {
-      if (updateSql == null) {
-        String colNames = Joiner.on(", ")
-            .join(getEscapedColumnNames().stream().map(c -> String.format("%s = ?", c)).collect(Collectors.toList()));
-        updateSql = String.format("UPDATE %s SET %s %s", getEscapedTableName(), colNames, getWhereClause());
-      }
+    public String getSql() {
+      return sql;
+    }
 
-      return updateSql;
+    public List<Value> getParameters() {
+      return parameters;
     }
 
-    private String getEscapedTableName() {
-      return getDatasource().escapeTableName(valueTable.getSqlName());
+    @Nullable
+    public UpsertStatement getUpsert() {
+      return upsert;
     }
+  }
 
-    private List<String> getEscapedColumnNames() {
-      return jdbcLine.getColumnNames().stream().map(getDatasource()::escapeColumnName).collect(Collectors.toList());
+  /**
+   * The columns of the lines to be inserted or updated, in the order of their parameters.
+   */
+  private static class UpsertStatement {
+
+    private final List<String> columns;
+
+    private final List<String> columnTypes;
+
+    private final List<String> updateColumns;
+
+    private UpsertStatement(List<String> columns, List<String> columnTypes, List<String> updateColumns) {
+      this.columns = columns;
+      this.columnTypes = columnTypes;
+      this.updateColumns = updateColumns;
     }
 
-    private String getEscapedEntityIdentifierColumnName() {
-      return getDatasource().escapeColumnName(valueTable.getSettings().getEntityIdentifierColumn());
+    public List<String> getColumns() {
+      return columns;
     }
 
-    private String getDeleteSql() {
-      return String.format("DELETE FROM %s %s", getDatasource().escapeTableName(valueTable.getSqlName()), getWhereClause());
+    public List<String> getColumnTypes() {
+      return columnTypes;
     }
 
-    private String getWhereClause() {
-      if (whereClause == null) {
-        whereClause = String.format("WHERE %s = ?", getEscapedEntityIdentifierColumnName());
-      }
+    public List<String> getUpdateColumns() {
+      return updateColumns;
+    }
 
-      return whereClause;
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof UpsertStatement)) return false;
+      UpsertStatement that = (UpsertStatement) o;
+      return columns.equals(that.columns) && updateColumns.equals(that.updateColumns);
     }
-  }
 
-  private class JdbcOperation {
+    @Override
+    public int hashCode() {
+      return 31 * columns.hashCode() + updateColumns.hashCode();
+    }
+  }
 
-    private final VariableEntity entity;
+  /**
+   * The lines waiting to be written by the same upsert statement.
+   */
+  private static class UpsertRows {
 
-    private final String sql;
+    private final List<List<Value>> parameters = Lists.newArrayList();
 
-    private final List<Value> parameters;
+    private final Set<String> identifiers = Sets.newHashSet();
 
-    private JdbcOperation(VariableEntity entity, String sql, List<Value> parameters) {
-      this.entity = entity;
-      this.sql = sql;
-      this.parameters = parameters;
-    }
+    private long bytes;
 
-    public VariableEntity getVariableEntity() {
-      return entity;
+    private void add(String identifier, List<Value> row, long rowBytes) {
+      parameters.add(row);
+      identifiers.add(identifier);
+      bytes += rowBytes;
     }
 
-    public String getSql() {
-      return sql;
+    private int size() {
+      return parameters.size();
     }
 
-    public List<Value> getParameters() {
-      return parameters;
+    private void clear() {
+      parameters.clear();
+      identifiers.clear();
+      bytes = 0;
     }
   }
-}
\ No newline at end of file
+}
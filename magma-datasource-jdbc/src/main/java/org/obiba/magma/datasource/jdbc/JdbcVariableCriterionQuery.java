@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.datasource.jdbc;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import org.obiba.magma.Value;
+import org.obiba.magma.Variable;
+import org.obiba.magma.type.IntegerType;
+import org.obiba.magma.views.support.VariableCriterion;
+
+import jakarta.annotation.Nullable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Translates a {@link VariableCriterion} into a SQL condition on the columns of a single line {@link JdbcValueTable}.
+ * <p>
+ * A condition is translated either for being true or for being false, so that a negation does not select the null
+ * values that the ternary javascript methods would not select either.
+ */
+class JdbcVariableCriterionQuery {
+
+  private final JdbcValueTable valueTable;
+
+  private final List<Object> parameters = Lists.newArrayList();
+
+  @Nullable
+  private final String condition;
+
+  JdbcVariableCriterionQuery(JdbcValueTable valueTable, VariableCriterion criterion) {
+    this.valueTable = valueTable;
+    condition = toSql(criterion, true);
+  }
+
+  /**
+   * @return null if the criterion cannot be translated
+   */
+  @Nullable
+  String getCondition() {
+    return condition;
+  }
+
+  Object[] getParameters() {
+    return parameters.toArray();
+  }
+
+  @Nullable
+  private String toSql(VariableCriterion criterion, boolean truth) {
+    switch (criterion.getOperator()) {
+      case AND:
+        return join(criterion.getOperands(), truth ? " AND " : " OR ", truth);
+      case OR:
+        return join(criterion.getOperands(), truth ? " OR " : " AND ", truth);
+      case NOT:
+        return toSql(criterion.getOperands().get(0), !truth);
+      default:
+        return toSqlTest(criterion, truth);
+    }
+  }
+
+  @Nullable
+  private String join(List<VariableCriterion> operands, String operator, boolean truth) {
+    List<String> conditions = Lists.newArrayList();
+    for (VariableCriterion operand : operands) {
+      String operandCondition = toSql(operand, truth);
+      if (operandCondition == null) return null;
+      conditions.add(operandCondition);
+    }
+    return "(" + Joiner.on(operator).join(conditions) + ")";
+  }
+
+  @Nullable
+  private String toSqlTest(VariableCriterion criterion, boolean truth) {
+    String name = criterion.getVariableName();
+    if (!valueTable.hasVariable(name)) return null;
+    Variable variable = valueTable.getVariable(name);
+    if (!VariableCriterion.isSupported(variable)) return null;
+    String column = valueTable.getDatasource().escapeColumnName(valueTable.getVariableSqlName(name));
+
+    switch (criterion.getOperator()) {
+      case IS_NULL:
+        return column + (truth ? " IS NULL" : " IS NOT NULL");
+      case IN:
+        List<Object> values = Lists.newArrayList();
+        for (Object literal : criterion.getLiterals()) {
+          Value value = VariableCriterion.valueOf(variable, literal);
+          if (value == null) return null;
+          values.add(value.getValue());
+        }
+        parameters.addAll(values);
+        String list = "(" + Joiner.on(", ").join(Collections.nCopies(values.size(), "?")) + ")";
+        // a null value is not in any list
+        return truth ? column + " IN " + list : "(" + column + " IS NULL OR " + column + " NOT IN " + list + ")";
+      default:
+        if (!variable.getValueType().isNumeric()) return null;
+        parameters.add(toParameter(variable, criterion.getOperator(), (Number) criterion.getLiteral()));
+        return column + " " + comparator(criterion.getOperator(), truth) + " ?";
+    }
+  }
+
+  /**
+   * The database converts the parameter to the column type: compare an integer column with the integer bound that
+   * gives the same result as the decimal literal (x < 17.5 is x < 18, x <= 17.5 is x <= 17).
+   *
+   * @param variable
+   * @param operator
+   * @param literal
+   * @return
+   */
+  private Object toParameter(Variable variable, VariableCriterion.Operator operator, Number literal) {
+    if (!IntegerType.get().equals(variable.getValueType())) return literal.doubleValue();
+    BigDecimal bound = new BigDecimal(literal.toString());
+    RoundingMode mode = operator == VariableCriterion.Operator.LT || operator == VariableCriterion.Operator.GE
+        ? RoundingMode.CEILING
+        : RoundingMode.FLOOR;
+    return bound.setScale(0, mode).longValue();
+  }
+
+  private String comparator(VariableCriterion.Operator operator, boolean truth) {
+    switch (operator) {
+      case LT:
+        return truth ? "<" : ">=";
+      case LE:
+        return truth ? "<=" : ">";
+      case GT:
+        return truth ? ">" : "<=";
+      default:
+        return truth ? ">=" : "<";
+    }
+  }
+
+}
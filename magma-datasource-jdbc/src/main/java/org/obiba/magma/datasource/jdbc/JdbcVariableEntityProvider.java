@@ -10,7 +10,10 @@
 
 package org.obiba.magma.datasource.jdbc;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.obiba.magma.Initialisable;
 import org.obiba.magma.VariableEntity;
@@ -20,15 +23,30 @@ import org.obiba.magma.support.PagingVariableEntityProvider;
 import org.obiba.magma.support.VariableEntityBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
+import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 class JdbcVariableEntityProvider extends AbstractVariableEntityProvider implements PagingVariableEntityProvider, Initialisable {
 
   private static final Logger log = LoggerFactory.getLogger(JdbcVariableEntityProvider.class);
 
+  private static final int MAX_PAGE_ENDS = 100;
+
   private final JdbcValueTable valueTable;
 
   private final String idColumn;
@@ -37,6 +55,20 @@ class JdbcVariableEntityProvider extends AbstractVariableEntityProvider implemen
 
   private final String tableName;
 
+  // identifiers are streamed by chunks of this size, for the drivers that support it
+  private static final int ENTITIES_FETCH_SIZE = 10000;
+
+  // identifiers looked up per query, some databases limit the size of the IN lists
+  private static final int MAX_IDENTIFIERS_LOOKUP = 1000;
+
+  // the last identifier of the pages that were read, by the offset of the page that follows
+  private final Map<Integer, String> pageEnds = Collections.synchronizedMap(new LinkedHashMap<Integer, String>() {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+      return size() > MAX_PAGE_ENDS;
+    }
+  });
+
   private int entitiesCount = -1;
 
   private boolean multilines = false;
@@ -57,16 +89,15 @@ class JdbcVariableEntityProvider extends AbstractVariableEntityProvider implemen
     if (entitiesCount == -1) {
       try {
         JdbcDatasource datasource = valueTable.getDatasource();
-        int count = datasource.getJdbcTemplate().queryForObject(String.format("SELECT COUNT(*) FROM %s %s",
-            tableName,
-            whereStatement), Integer.class);
-
-        entitiesCount = datasource.getJdbcTemplate().queryForObject(String.format("SELECT COUNT(DISTINCT %s) FROM %s %s",
+        // both counts in a single scan of the table
+        datasource.getJdbcTemplate().query(String.format("SELECT COUNT(*), COUNT(DISTINCT %s) FROM %s %s",
             idColumn,
             tableName,
-            whereStatement), Integer.class);
-
-        multilines = count > entitiesCount;
+            whereStatement), (RowCallbackHandler) rs -> {
+          entitiesCount = rs.getInt(2);
+          multilines = rs.getInt(1) > entitiesCount;
+        });
+        if (entitiesCount == -1) entitiesCount = 0;
       } catch (Exception e) {
         if (log.isDebugEnabled())
           log.warn("Cannot retrieve table's identifiers. Is the SQL table '{}' readable? ", valueTable.getName(), e);
@@ -82,19 +113,74 @@ class JdbcVariableEntityProvider extends AbstractVariableEntityProvider implemen
   @Override
   public List<VariableEntity> getVariableEntities() {
     log.debug("Querying all entities from Tabular SQL table {}!", valueTable.getName());
-    return getVariableEntities(0, -1);
+    initialise();
+    List<VariableEntity> entities = new VariableEntityList();
+    if (entitiesCount == 0) return entities;
+
+    // stream the identifiers instead of having the driver hold all of them
+    String query = String.format("SELECT DISTINCT %s FROM %s %s ORDER BY %s ASC", idColumn, tableName, whereStatement, idColumn);
+    valueTable.getDatasource().getJdbcTemplate().query(con -> {
+      PreparedStatement ps = con.prepareStatement(query);
+      ps.setFetchSize(ENTITIES_FETCH_SIZE);
+      return ps;
+    }, (RowCallbackHandler) rs -> entities.add(newVariableEntity(rs)));
+    return entities;
   }
 
+  /**
+   * Get a page of the entities, in the order of their identifiers. The page that follows a previous one is selected
+   * by seeking the identifiers after the last one of the previous page, so that reading the last pages costs the same
+   * as reading the first ones.
+   *
+   * @param offset
+   * @param limit
+   * @return
+   */
   @Override
   public List<VariableEntity> getVariableEntities(int offset, int limit) {
     initialise();
     int from = Math.max(offset, 0);
     from = Math.min(from, entitiesCount);
-    int pageSize = limit < 0 ? entitiesCount : Math.min(entitiesCount, limit);
+    if (limit < 0 && from == 0) return getVariableEntities();
+    int pageSize = limit < 0 ? entitiesCount - from : Math.min(entitiesCount, limit);
 
     List<VariableEntity> entities = new VariableEntityList();
     if (pageSize == 0) return entities;
 
+    String after = from == 0 ? null : pageEnds.get(from);
+    List<VariableEntity> results = after == null && from > 0
+        ? getVariableEntitiesAtOffset(from, pageSize)
+        : getVariableEntitiesAfter(after, pageSize);
+
+    entities.addAll(results);
+    if (!results.isEmpty()) {
+      pageEnds.put(from + results.size(), results.get(results.size() - 1).getIdentifier());
+    }
+    return entities;
+  }
+
+  /**
+   * Get the entities which identifier follows the given one.
+   *
+   * @param after the last identifier of the previous page, null for the first page
+   * @param limit
+   * @return
+   */
+  List<VariableEntity> getVariableEntitiesAfter(@Nullable String after, int limit) {
+    JdbcDatasource datasource = valueTable.getDatasource();
+    String where = after == null
+        ? whereStatement
+        : (Strings.isNullOrEmpty(whereStatement) ? "WHERE " : whereStatement + " AND ") + idColumn + " > ?";
+    String query = isSQLServer(datasource) ?
+        String.format("SELECT DISTINCT %s FROM %s %s ORDER BY %s ASC OFFSET 0 ROWS FETCH NEXT %s ROWS ONLY",
+            idColumn, tableName, where, idColumn, limit) :
+        String.format("SELECT DISTINCT %s FROM %s %s ORDER BY %s ASC LIMIT %s",
+            idColumn, tableName, where, idColumn, limit);
+    Object[] parameters = after == null ? new Object[0] : new Object[] { asIdentifierValue(after) };
+    return datasource.getJdbcTemplate().query(query, (rs, rowNum) -> newVariableEntity(rs), parameters);
+  }
+
+  private List<VariableEntity> getVariableEntitiesAtOffset(int from, int pageSize) {
     JdbcDatasource datasource = valueTable.getDatasource();
     String query = isSQLServer(datasource) ?
         String
@@ -110,11 +196,34 @@ class JdbcVariableEntityProvider extends AbstractVariableEntityProvider implemen
                 whereStatement,
                 idColumn, pageSize, from);
     // get the distinct list of entity identifiers
-    List<VariableEntity> results = datasource.getJdbcTemplate().query(query,
-        (rs, rowNum) -> new VariableEntityBean(valueTable.getEntityType(), valueTable.extractEntityIdentifier(rs)));
+    return datasource.getJdbcTemplate().query(query, (rs, rowNum) -> newVariableEntity(rs));
+  }
 
-    entities.addAll(results);
-    return entities;
+  private VariableEntity newVariableEntity(ResultSet rs) throws SQLException {
+    return new VariableEntityBean(valueTable.getEntityType(), valueTable.extractEntityIdentifier(rs));
+  }
+
+  /**
+   * Get the entities of the lines matching the condition, in the same order as all the entities.
+   *
+   * @param condition a SQL condition on the columns of the table
+   * @param parameters the parameters of the condition
+   * @return
+   */
+  List<VariableEntity> getVariableEntities(String condition, Object... parameters) {
+    String where = Strings.isNullOrEmpty(whereStatement) ? "WHERE " : "WHERE (" + valueTable.getSettings().getEntityIdentifiersWhere() + ") AND ";
+    String query = String.format("SELECT DISTINCT %s FROM %s %s%s ORDER BY %s ASC", idColumn, tableName, where, condition, idColumn);
+    log.debug("Querying entities from Tabular SQL table {}: {}", valueTable.getName(), query);
+    try {
+      List<VariableEntity> entities = new VariableEntityList();
+      entities.addAll(valueTable.getDatasource().getJdbcTemplate().query(query,
+          (rs, rowNum) -> newVariableEntity(rs), parameters));
+      return entities;
+    } catch (DataAccessException e) {
+      // the condition was translated from the variables' types, this is not expected to fail
+      log.warn("Cannot query entities from Tabular SQL table {}: {}", valueTable.getName(), query, e);
+      throw e;
+    }
   }
 
   @Override
@@ -139,17 +248,62 @@ class JdbcVariableEntityProvider extends AbstractVariableEntityProvider implemen
     return multilines;
   }
 
-  public void addAll(List<VariableEntity> entities) {
+  /**
+   * Update the counts after lines were inserted, instead of counting again.
+   *
+   * @param entities the new entities
+   * @param linesCount the number of lines inserted for them
+   */
+  public synchronized void addAll(Collection<VariableEntity> entities, int linesCount) {
     // no verification made here, make sure it was an INSERT statement
+    if (entitiesCount == -1) return;
     entitiesCount = entitiesCount + entities.size();
+    multilines = multilines || linesCount > entities.size();
+    pageEnds.clear();
+  }
+
+  /**
+   * Get the entities that are not in the table yet, by looking up their identifiers, so that the counts can be updated
+   * with {@link #addAll(Collection, int)} after lines of these entities were upserted, instead of counting again.
+   *
+   * @param entities
+   * @return null if the counts are not known yet, or cannot be updated because the entities are filtered
+   */
+  @Nullable
+  public synchronized List<VariableEntity> getMissingVariableEntities(Collection<VariableEntity> entities) {
+    if (entitiesCount == -1 || !Strings.isNullOrEmpty(whereStatement)) return null;
+    Set<String> found = Sets.newHashSet();
+    for (List<VariableEntity> chunk : Iterables.partition(entities, MAX_IDENTIFIERS_LOOKUP)) {
+      String query = String.format("SELECT %s FROM %s WHERE %s IN (%s)", idColumn, tableName, idColumn,
+          Joiner.on(", ").join(Collections.nCopies(chunk.size(), "?")));
+      Object[] parameters = chunk.stream().map(entity -> asIdentifierValue(entity.getIdentifier())).toArray();
+      valueTable.getDatasource().getJdbcTemplate()
+          .query(query, (RowCallbackHandler) rs -> found.add(valueTable.extractEntityIdentifier(rs)), parameters);
+    }
+    return entities.stream().filter(entity -> !found.contains(entity.getIdentifier())).collect(Collectors.toList());
   }
 
-  public void remove(VariableEntity entity) {
-    entitiesCount = entitiesCount - 1;
+  public synchronized void remove(VariableEntity entity) {
+    if (entitiesCount > 0) entitiesCount = entitiesCount - 1;
+    pageEnds.clear();
   }
 
-  public void removeAll() {
+  public synchronized void removeAll() {
     entitiesCount = 0;
+    pageEnds.clear();
+  }
+
+  /**
+   * Query the counts again when they are next needed, after lines were written without knowing whether they were
+   * inserted or updated.
+   */
+  public synchronized void resetCounts() {
+    entitiesCount = -1;
+    pageEnds.clear();
+  }
+
+  private Object asIdentifierValue(String identifier) {
+    return numericIdentifiers ? new BigDecimal(identifier) : identifier;
   }
 
   private String asIdentifierParameter(VariableEntity entity) {
@@ -14,6 +14,7 @@ import java.sql.Types;
 
 import jakarta.annotation.Nullable;
 
+import liquibase.structure.core.DataType;
 import org.obiba.magma.MagmaRuntimeException;
 import org.obiba.magma.ValueType;
 import org.obiba.magma.type.BinaryType;
@@ -128,4 +129,32 @@ class SqlTypes {
     throw new MagmaRuntimeException("No sql type for " + valueType);
   }
 
+  /**
+   * Get the type of a column as written in a CAST: the size is kept for the character and binary types only, and the
+   * precision and scale for the exact numeric types only.
+   *
+   * @param type
+   * @return
+   */
+  static String castTypeFor(DataType type) {
+    Integer size = type.getColumnSize();
+    if(type.getDataTypeId() == null || size == null || size <= 0) return type.getTypeName();
+    switch(type.getDataTypeId()) {
+      case Types.CHAR: // fall through
+      case Types.VARCHAR: // fall through
+      case Types.NCHAR: // fall through
+      case Types.NVARCHAR: // fall through
+      case Types.BINARY: // fall through
+      case Types.VARBINARY:
+        return String.format("%s(%s)", type.getTypeName(), size);
+      case Types.DECIMAL: // fall through
+      case Types.NUMERIC:
+        return type.getDecimalDigits() == null
+            ? String.format("%s(%s)", type.getTypeName(), size)
+            : String.format("%s(%s, %s)", type.getTypeName(), size, type.getDecimalDigits());
+      default:
+        return type.getTypeName();
+    }
+  }
+
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.datasource.jdbc.support;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Upsert with the standard MERGE statement, for HSQLDB and SQL Server. The parameters of the rows are cast to the types
+ * of the columns, HSQLDB not inferring the types of the parameters of a VALUES table.
+ */
+public class MergeUpsertDialect implements UpsertDialect {
+
+  static final Set<String> UPSERT_DBMS = ImmutableSet.of("hsqldb", "mssql");
+
+  private final boolean terminated;
+
+  /**
+   * @param terminated whether the statement ends with a semicolon, as SQL Server requires for a MERGE
+   */
+  public MergeUpsertDialect(boolean terminated) {
+    this.terminated = terminated;
+  }
+
+  @Override
+  public String getUpsertSql(String table, String keyColumn, List<String> columns, List<String> columnTypes,
+      List<String> updateColumns, int rows) {
+    String columnNames = Joiner.on(", ").join(columns);
+    String row = columnTypes.stream() //
+        .map(type -> type == null ? "?" : String.format("CAST(? AS %s)", type)) //
+        .collect(Collectors.joining(", ", "(", ")"));
+    StringBuilder sql = new StringBuilder(String
+        .format("MERGE INTO %s USING (VALUES %s) AS vals (%s) ON %s.%s = vals.%s", table,
+            Joiner.on(", ").join(Collections.nCopies(rows, row)), columnNames, table, keyColumn, keyColumn));
+    if (!updateColumns.isEmpty()) {
+      sql.append(" WHEN MATCHED THEN UPDATE SET ").append(updateColumns.stream() //
+          .map(column -> String.format("%s = vals.%s", column, column)).collect(Collectors.joining(", ")));
+    }
+    sql.append(String.format(" WHEN NOT MATCHED THEN INSERT (%s) VALUES (%s)", columnNames, columns.stream() //
+        .map(column -> "vals." + column).collect(Collectors.joining(", "))));
+    if (terminated) sql.append(";");
+    return sql.toString();
+  }
+
+}
@@ -12,10 +12,16 @@ package org.obiba.magma.datasource.jdbc.support;
 
 import com.google.common.collect.ImmutableSet;
 
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 import liquibase.database.Database;
 import liquibase.sql.visitor.AbstractSqlVisitor;
 
-public class MySqlEngineVisitor extends AbstractSqlVisitor {
+public class MySqlEngineVisitor extends AbstractSqlVisitor implements UpsertDialect {
+
+  static final Set<String> UPSERT_DBMS = ImmutableSet.of("mysql", "mariadb");
 
   public MySqlEngineVisitor() {
     setApplicableDbms(ImmutableSet.of("mysql"));
@@ -33,6 +39,18 @@ public class MySqlEngineVisitor extends AbstractSqlVisitor {
     return sb.toString();
   }
 
+  @Override
+  public String getUpsertSql(String table, String keyColumn, List<String> columns, List<String> columnTypes,
+      List<String> updateColumns, int rows) {
+    // a key that is set to itself leaves the existing row unchanged
+    String updates = updateColumns.isEmpty()
+        ? String.format("%s = %s", keyColumn, keyColumn)
+        : updateColumns.stream().map(column -> String.format("%s = VALUES(%s)", column, column))
+            .collect(Collectors.joining(", "));
+    return String.format("INSERT INTO %s (%s) VALUES %s ON DUPLICATE KEY UPDATE %s", table, String.join(", ", columns),
+        UpsertDialect.getValuesPlaceholders(rows, columns.size()), updates);
+  }
+
   @Override
   public String getName() {
     return MySqlEngineVisitor.class.getSimpleName();
@@ -14,7 +14,13 @@ import com.google.common.collect.ImmutableSet;
 import liquibase.database.Database;
 import liquibase.sql.visitor.AbstractSqlVisitor;
 
-public class PostgreSqlEngineVisitor extends AbstractSqlVisitor {
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class PostgreSqlEngineVisitor extends AbstractSqlVisitor implements UpsertDialect {
+
+  static final Set<String> UPSERT_DBMS = ImmutableSet.of("postgresql");
 
   public PostgreSqlEngineVisitor() {
     setApplicableDbms(ImmutableSet.of("postgresql"));
@@ -29,6 +35,17 @@ public class PostgreSqlEngineVisitor extends AbstractSqlVisitor {
     return sb.toString();
   }
 
+  @Override
+  public String getUpsertSql(String table, String keyColumn, List<String> columns, List<String> columnTypes,
+      List<String> updateColumns, int rows) {
+    String conflict = updateColumns.isEmpty()
+        ? "DO NOTHING"
+        : "DO UPDATE SET " + updateColumns.stream().map(column -> String.format("%s = EXCLUDED.%s", column, column))
+            .collect(Collectors.joining(", "));
+    return String.format("INSERT INTO %s (%s) VALUES %s ON CONFLICT (%s) %s", table, String.join(", ", columns),
+        UpsertDialect.getValuesPlaceholders(rows, columns.size()), keyColumn, conflict);
+  }
+
   @Override
   public String getName() {
     return PostgreSqlEngineVisitor.class.getSimpleName();
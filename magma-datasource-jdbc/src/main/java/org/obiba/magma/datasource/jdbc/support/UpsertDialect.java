@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.datasource.jdbc.support;
+
+import com.google.common.base.Joiner;
+
+import jakarta.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds the statements that insert several rows at once, updating the rows which key already exists instead of
+ * inserting them, in the SQL dialect of a database.
+ */
+public interface UpsertDialect {
+
+  /**
+   * @param table the escaped table name
+   * @param keyColumn the escaped name of the primary key column
+   * @param columns the escaped names of the inserted columns, key column included, in the order of the parameters of
+   * each row
+   * @param columnTypes the SQL types of the columns, for the dialects that do not infer the types of the parameters,
+   * null when not known
+   * @param updateColumns the escaped names of the columns to be updated when the key exists
+   * @param rows the number of rows
+   * @return the statement with the parameters of the rows one after the other
+   */
+  String getUpsertSql(String table, String keyColumn, List<String> columns, List<String> columnTypes,
+      List<String> updateColumns, int rows);
+
+  /**
+   * @param shortName the Liquibase short name of the database
+   * @return null if the database has no upsert statement
+   */
+  @Nullable
+  static UpsertDialect forDatabase(String shortName) {
+    if (MySqlEngineVisitor.UPSERT_DBMS.contains(shortName)) return new MySqlEngineVisitor();
+    if (PostgreSqlEngineVisitor.UPSERT_DBMS.contains(shortName)) return new PostgreSqlEngineVisitor();
+    if (MergeUpsertDialect.UPSERT_DBMS.contains(shortName)) return new MergeUpsertDialect("mssql".equals(shortName));
+    return null;
+  }
+
+  /**
+   * @param rows
+   * @param columnCount
+   * @return the parameters placeholders of the rows, such as "(?, ?), (?, ?)"
+   */
+  static String getValuesPlaceholders(int rows, int columnCount) {
+    String row = "(" + Joiner.on(", ").join(Collections.nCopies(columnCount, "?")) + ")";
+    return Joiner.on(", ").join(Collections.nCopies(rows, row));
+  }
+
+}
@@ -10,6 +10,8 @@
 
 package org.obiba.magma.datasource.jdbc;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.primitives.Ints;
 import org.junit.Ignore;
@@ -29,17 +31,26 @@ import org.obiba.magma.test.TestSchema;
 import org.obiba.magma.type.DecimalType;
 import org.obiba.magma.type.IntegerType;
 import org.obiba.magma.type.TextType;
+import org.obiba.magma.views.View;
+import org.obiba.magma.views.WhereClause;
+import org.obiba.magma.views.support.VariableCriterion;
+import org.obiba.magma.views.support.VariableCriterion.Operator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestExecutionListeners;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
 import org.springframework.test.context.support.DirtiesContextTestExecutionListener;
 import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.stream.Collectors;
 
 import static org.fest.assertions.api.Assertions.assertThat;
@@ -197,6 +208,179 @@ public class JdbcDatasourceTest extends AbstractMagmaTest {
     jdbcDatasource.dispose();
   }
 
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-nometa.sql",
+      afterSchema = "schema-notables.sql")
+  @Dataset(filenames = "JdbcDatasourceTest-nometa.xml")
+  @Test
+  public void test_vectorSource_disposable() {
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource", dataSource,
+        JdbcDatasourceSettings.newSettings("Participant").mappedTables(Sets.newHashSet("BONE_DENSITY")).build());
+    jdbcDatasource.initialise();
+
+    ValueTable valueTable = jdbcDatasource.getValueTable("BONE_DENSITY");
+    Iterator<Value> values = valueTable.getVariableValueSource("BD").asVectorSource()
+        .getValues(valueTable.getVariableEntities()).iterator();
+
+    // stop reading after the first value
+    assertThat(values.next().isNull()).isFalse();
+    assertThat(values).isInstanceOf(Disposable.class);
+    ((Disposable) values).dispose();
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-nometa.sql",
+      afterSchema = "schema-notables.sql")
+  @Dataset(filenames = "JdbcDatasourceTest-nometa.xml")
+  @Test
+  public void test_multiVectorSource() {
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource", dataSource,
+        JdbcDatasourceSettings.newSettings("Participant").mappedTables(Sets.newHashSet("BONE_DENSITY")).build());
+    jdbcDatasource.initialise();
+
+    ValueTable valueTable = jdbcDatasource.getValueTable("BONE_DENSITY");
+    MultiVectorSource source = valueTable
+        .getMultiVectorSource(ImmutableList.of(valueTable.getVariable("BD_2"), valueTable.getVariable("BD")));
+    List<Value[]> rows = Lists.newArrayList(source.getValues(ImmutableList
+        .of(new VariableEntityBean("Participant", "12343"), new VariableEntityBean("Participant", "12342"),
+            new VariableEntityBean("Participant", "0"))));
+
+    assertThat(rows).hasSize(3);
+    assertThat(rows.get(0)).containsOnly(IntegerType.get().valueOf(65), IntegerType.get().valueOf(65));
+    assertThat(rows.get(1)[0]).isEqualTo(IntegerType.get().valueOf(65));
+    assertThat(rows.get(1)[1]).isEqualTo(IntegerType.get().valueOf(64));
+    assertThat(rows.get(2)[0].isNull()).isTrue();
+    assertThat(rows.get(2)[1].isNull()).isTrue();
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-nometa-repeatables.sql",
+      afterSchema = "schema-notables.sql")
+  @Dataset(filenames = "JdbcDatasourceTest-nometa-repeatables.xml")
+  @Test
+  public void test_multilinesValueSets_withVariables() {
+    JdbcValueTableSettings tableSettings = JdbcValueTableSettings.newSettings("BONE_DENSITY").entityType("Participant")
+        .entityIdentifierColumn("PART_ID").multilines().build();
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource", dataSource,
+        JdbcDatasourceSettings.newSettings("Participant").mappedTables(Sets.newHashSet("BONE_DENSITY"))
+            .tableSettings(Sets.newHashSet(tableSettings)).build());
+    jdbcDatasource.initialise();
+
+    ValueTable valueTable = jdbcDatasource.getValueTable("BONE_DENSITY");
+    Variable bd = valueTable.getVariable("BD");
+    Variable bd2 = valueTable.getVariable("BD_2");
+    // only the BD column is selected, BD_2 is loaded for both value sets on the first read of it
+    List<ValueSet> valueSets = Lists.newArrayList(valueTable.getValueSets(ImmutableList
+        .of(new VariableEntityBean("Participant", "12343"), new VariableEntityBean("Participant", "12342")),
+        ImmutableList.of(bd)));
+
+    assertThat(valueSets).hasSize(2);
+    assertThat(valueTable.getValue(bd, valueSets.get(0)).toString()).isEqualTo("65,66,67");
+    assertThat(valueTable.getValue(bd2, valueSets.get(0)).toString()).isEqualTo("55,56,57");
+    assertThat(valueTable.getValue(bd2, valueSets.get(1)).toString()).isEqualTo("64,65");
+    assertThat(valueTable.getValue(bd, valueSets.get(1)).toString()).isEqualTo("63,64");
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-nometa-repeatables.sql",
+      afterSchema = "schema-notables.sql")
+  @Dataset(filenames = "JdbcDatasourceTest-nometa-repeatables.xml")
+  @Test
+  public void test_multilinesMultiVectorSource() {
+    JdbcValueTableSettings tableSettings = JdbcValueTableSettings.newSettings("BONE_DENSITY").entityType("Participant")
+        .entityIdentifierColumn("PART_ID").multilines().build();
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource", dataSource,
+        JdbcDatasourceSettings.newSettings("Participant").mappedTables(Sets.newHashSet("BONE_DENSITY"))
+            .tableSettings(Sets.newHashSet(tableSettings)).build());
+    jdbcDatasource.initialise();
+
+    ValueTable valueTable = jdbcDatasource.getValueTable("BONE_DENSITY");
+    Variable bd = valueTable.getVariable("BD");
+    Variable bd2 = valueTable.getVariable("BD_2");
+    List<VariableEntity> entities = ImmutableList
+        .of(new VariableEntityBean("Participant", "12343"), new VariableEntityBean("Participant", "12342"));
+    List<Value[]> rows = Lists
+        .newArrayList(valueTable.getMultiVectorSource(ImmutableList.of(bd, bd2)).getValues(entities));
+
+    // sequences have the same elements order as the value sets
+    assertThat(rows).hasSize(2);
+    for (int i = 0; i < entities.size(); i++) {
+      ValueSet valueSet = valueTable.getValueSet(entities.get(i));
+      assertThat(rows.get(i)[0]).isEqualTo(valueTable.getValue(bd, valueSet));
+      assertThat(rows.get(i)[1]).isEqualTo(valueTable.getValue(bd2, valueSet));
+    }
+    assertThat(rows.get(0)[1].toString()).isEqualTo("55,56,57");
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-nometa.sql",
+      afterSchema = "schema-notables.sql")
+  @Dataset(filenames = "JdbcDatasourceTest-nometa.xml")
+  @Test
+  public void test_variableCriterion() {
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource", dataSource,
+        JdbcDatasourceSettings.newSettings("Participant").mappedTables(Sets.newHashSet("BONE_DENSITY")).build());
+    jdbcDatasource.initialise();
+
+    JdbcValueTable valueTable = (JdbcValueTable) jdbcDatasource.getValueTable("BONE_DENSITY");
+    VariableEntity entity1 = new VariableEntityBean("Participant", "12342");
+    VariableEntity entity2 = new VariableEntityBean("Participant", "12343");
+
+    // BD is 64 and 65, BD_2 is 65 for both
+    assertThat(valueTable.getVariableEntities(VariableCriterion.compare(Operator.GE, "BD", 64.5)))
+        .containsExactly(entity2);
+    assertThat(valueTable.getVariableEntities(VariableCriterion.compare(Operator.LT, "BD", 64.5)))
+        .containsExactly(entity1);
+    assertThat(valueTable.getVariableEntities(VariableCriterion.in("BD", Lists.newArrayList(64.0))))
+        .containsExactly(entity1);
+    assertThat(valueTable.getVariableEntities(VariableCriterion.not(VariableCriterion.in("BD", Lists.newArrayList(64.0)))))
+        .containsExactly(entity2);
+    assertThat(valueTable.getVariableEntities(VariableCriterion.and(Lists.newArrayList( //
+        VariableCriterion.compare(Operator.GE, "BD", 64), VariableCriterion.isNull("BD_2"))))).isEmpty();
+    assertThat(valueTable.getVariableEntities(VariableCriterion.not(VariableCriterion.or(Lists.newArrayList( //
+        VariableCriterion.isNull("BD"), VariableCriterion.compare(Operator.LE, "BD_2", 64)))))) //
+        .containsExactly(entity1, entity2);
+    // not translated
+    assertThat(valueTable.getVariableEntities(VariableCriterion.isNull("NONE"))).isNull();
+    assertThat(valueTable.getVariableEntities(VariableCriterion.compare(Operator.GT, "VISIT_ID", 2))).isNull();
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-nometa.sql",
+      afterSchema = "schema-notables.sql")
+  @Dataset(filenames = "JdbcDatasourceTest-nometa.xml")
+  @Test
+  public void test_viewWhereClause_queried() {
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource", dataSource,
+        JdbcDatasourceSettings.newSettings("Participant").mappedTables(Sets.newHashSet("BONE_DENSITY")).build());
+    jdbcDatasource.initialise();
+
+    View view = View.Builder.newView("view", jdbcDatasource.getValueTable("BONE_DENSITY")).where(new WhereClause() {
+      @Override
+      public boolean where(ValueSet valueSet) {
+        throw new AssertionError("the where clause is not evaluated");
+      }
+
+      @Override
+      public boolean where(ValueSet valueSet, View view) {
+        return where(valueSet);
+      }
+
+      @Override
+      public VariableCriterion getCriterion() {
+        return VariableCriterion.compare(Operator.GT, "BD", 64);
+      }
+    }).build();
+
+    assertThat(view.getVariableEntities()).containsExactly(new VariableEntityBean("Participant", "12343"));
+
+    jdbcDatasource.dispose();
+  }
+
   @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-nometa-where.sql",
       afterSchema = "schema-notables.sql")
   @Dataset(filenames = "JdbcDatasourceTest-nometa-where.xml")
@@ -613,6 +797,264 @@ public class JdbcDatasourceTest extends AbstractMagmaTest {
     jdbcDatasource.dispose();
   }
 
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-notables.sql",
+      afterSchema = "schema-notables.sql")
+  @Test
+  public void test_writeValueSets_insertThenUpdate() {
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource-nodb", dataSource, getDataSourceSettings());
+    jdbcDatasource.initialise();
+    writeTestValueSets(jdbcDatasource, 0, 10);
+
+    // update the existing value sets and insert new ones, in the same block
+    try (ValueTableWriter tableWriter = jdbcDatasource.createWriter("MY_TABLE", "Participant")) {
+      ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+      ValueSetBlock block = new ValueSetBlock(ImmutableList.of(vt.getVariable("MY_VAR1")), 10);
+      for (int i = 5; i < 15; i++) {
+        block.add(newEntity(i), IntegerType.get().valueOf(i * 100));
+      }
+      tableWriter.writeValueSets(block);
+    }
+
+    ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+    assertThat(vt.getValueSetCount()).isEqualTo(15);
+    assertThat(vt.getValue(vt.getVariable("MY_VAR1"), vt.getValueSet(newEntity(4))))
+        .isEqualTo(IntegerType.get().valueOf(4));
+    assertThat(vt.getValue(vt.getVariable("MY_VAR1"), vt.getValueSet(newEntity(5))))
+        .isEqualTo(IntegerType.get().valueOf(500));
+    // the values that were not written are kept
+    assertThat(vt.getValue(vt.getVariable("MY_VAR2"), vt.getValueSet(newEntity(5))))
+        .isEqualTo(TextType.get().valueOf("v5"));
+    assertThat(vt.getValue(vt.getVariable("MY_VAR1"), vt.getValueSet(newEntity(14))))
+        .isEqualTo(IntegerType.get().valueOf(1400));
+    assertThat(vt.getValue(vt.getVariable("MY_VAR2"), vt.getValueSet(newEntity(14))).isNull()).isTrue();
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-notables.sql",
+      afterSchema = "schema-notables.sql")
+  @Test
+  public void test_upsert_writesInOrder() {
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource-nodb", dataSource, getDataSourceSettings());
+    jdbcDatasource.initialise();
+
+    try (ValueTableWriter tableWriter = jdbcDatasource.createWriter("MY_TABLE", "Participant")) {
+      try (VariableWriter variableWriter = tableWriter.writeVariables()) {
+        variableWriter.writeVariable(Variable.Builder.newVariable("MY_VAR1", IntegerType.get(), "Participant").build());
+        variableWriter.writeVariable(Variable.Builder.newVariable("MY_VAR2", TextType.get(), "Participant").build());
+      }
+      ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+      List<Variable> variables = ImmutableList.of(vt.getVariable("MY_VAR1"), vt.getVariable("MY_VAR2"));
+
+      // the same entity written by statements of different columns, in the same batch
+      ValueSetBlock block = new ValueSetBlock(variables, 10);
+      for (int i = 0; i < 10; i++) {
+        block.add(newEntity(i), IntegerType.get().valueOf(i), TextType.get().valueOf("v" + i));
+      }
+      tableWriter.writeValueSets(block);
+      try (ValueSetWriter valueSetWriter = tableWriter.writeValueSet(newEntity(3))) {
+        valueSetWriter.writeValue(vt.getVariable("MY_VAR1"), IntegerType.get().valueOf(300));
+      }
+      block = new ValueSetBlock(variables, 1);
+      block.add(newEntity(3), IntegerType.get().valueOf(3000), TextType.get().valueOf("w3"));
+      tableWriter.writeValueSets(block);
+    }
+
+    ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+    assertThat(vt.getVariableEntityCount()).isEqualTo(10);
+    assertThat(vt.getValue(vt.getVariable("MY_VAR1"), vt.getValueSet(newEntity(3))))
+        .isEqualTo(IntegerType.get().valueOf(3000));
+    assertThat(vt.getValue(vt.getVariable("MY_VAR2"), vt.getValueSet(newEntity(3))))
+        .isEqualTo(TextType.get().valueOf("w3"));
+
+    // importing again updates the existing value sets, the counts follow
+    writeTestValueSets(jdbcDatasource, 5, 15);
+    vt = jdbcDatasource.getValueTable("MY_TABLE");
+    assertThat(vt.getVariableEntityCount()).isEqualTo(15);
+    assertThat(vt.getValueSetCount()).isEqualTo(15);
+    assertThat(vt.getValue(vt.getVariable("MY_VAR1"), vt.getValueSet(newEntity(3))))
+        .isEqualTo(IntegerType.get().valueOf(3000));
+    for (int i = 5; i < 15; i++) {
+      assertThat(vt.getValue(vt.getVariable("MY_VAR2"), vt.getValueSet(newEntity(i))))
+          .isEqualTo(TextType.get().valueOf("v" + i));
+    }
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-notables.sql",
+      afterSchema = "schema-notables.sql")
+  @Test
+  public void test_multiVectorSource_entitiesOrder() {
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource-nodb", dataSource, getDataSourceSettings());
+    jdbcDatasource.initialise();
+    writeTestValueSets(jdbcDatasource, 0, 250);
+
+    ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+    // not in the order of the identifiers, with an unknown entity
+    List<VariableEntity> entities = Lists.newArrayList();
+    for (int i = 249; i >= 0; i--) {
+      entities.add(newEntity(i));
+      if (i == 100) entities.add(newEntity(1000));
+    }
+    MultiVectorSource source = vt.getMultiVectorSource(ImmutableList.of(vt.getVariable("MY_VAR2"), vt.getVariable("MY_VAR1")));
+    List<Value[]> rows = Lists.newArrayList(source.getValues(entities));
+
+    assertThat(rows).hasSize(entities.size());
+    for (int row = 0; row < entities.size(); row++) {
+      String identifier = entities.get(row).getIdentifier();
+      if (identifier.equals(newEntity(1000).getIdentifier())) {
+        assertThat(rows.get(row)[0].isNull()).isTrue();
+        assertThat(rows.get(row)[1].isNull()).isTrue();
+      } else {
+        int i = Integer.parseInt(identifier);
+        assertThat(rows.get(row)[0]).isEqualTo(TextType.get().valueOf("v" + i));
+        assertThat(rows.get(row)[1]).isEqualTo(IntegerType.get().valueOf(i));
+      }
+    }
+
+    List<Value> values = Lists.newArrayList(vt.getVariableValueSource("MY_VAR1").asVectorSource().getValues(entities));
+    assertThat(values).hasSize(entities.size());
+    assertThat(values.get(0)).isEqualTo(IntegerType.get().valueOf(249));
+    assertThat(values.get(entities.indexOf(newEntity(1000))).isNull()).isTrue();
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-notables.sql",
+      afterSchema = "schema-notables.sql")
+  @Test
+  public void test_metadataTables_attributesAndCategories() {
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource-nodb", dataSource,
+        getDataSourceSettingsBuilder(false).useMetadataTables().build());
+    jdbcDatasource.initialise();
+    try (ValueTableWriter tableWriter = jdbcDatasource.createWriter("MY_TABLE", "Participant");
+         VariableWriter variableWriter = tableWriter.writeVariables()) {
+      for (int i = 0; i < 20; i++) {
+        variableWriter.writeVariable(Variable.Builder.newVariable("VAR" + i, TextType.get(), "Participant")
+            .addAttribute("label", "Variable " + i, Locale.ENGLISH)
+            .addAttribute("label", "Variable " + i + " fr", Locale.FRENCH)
+            .addCategory(Category.Builder.newCategory("A").addAttribute("label", "A of " + i).build())
+            .addCategory(Category.Builder.newCategory("B").missing(true).build())
+            .build());
+      }
+    }
+    jdbcDatasource.dispose();
+
+    jdbcDatasource = new JdbcDatasource("my-datasource-nodb", dataSource,
+        getDataSourceSettingsBuilder(false).useMetadataTables().build());
+    jdbcDatasource.initialise();
+
+    ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+    assertThat(vt.getVariables()).hasSize(20);
+    for (int i = 0; i < 20; i++) {
+      Variable variable = vt.getVariable("VAR" + i);
+      assertThat(variable.getAttribute("label", Locale.ENGLISH).getValue().toString()).isEqualTo("Variable " + i);
+      assertThat(variable.getAttribute("label", Locale.FRENCH).getValue().toString()).isEqualTo("Variable " + i + " fr");
+      assertThat(variable.getCategories()).hasSize(2);
+      assertThat(variable.getCategory("A").getAttributeStringValue("label")).isEqualTo("A of " + i);
+      assertThat(variable.getCategory("A").isMissing()).isFalse();
+      assertThat(variable.getCategory("B").isMissing()).isTrue();
+      assertThat(variable.getCategory("B").hasAttributes()).isFalse();
+    }
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-notables.sql",
+      afterSchema = "schema-notables.sql")
+  @Test
+  public void test_variableEntities_pages() {
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource-nodb", dataSource, getDataSourceSettings());
+    jdbcDatasource.initialise();
+    writeTestValueSets(jdbcDatasource, 0, 250);
+
+    ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+    List<VariableEntity> all = vt.getVariableEntities();
+    assertThat(all).hasSize(250);
+
+    // a deep page first, then the pages that follow each other
+    assertThat(vt.getVariableEntities(200, 100)).isEqualTo(all.subList(200, 250));
+    List<VariableEntity> paged = Lists.newArrayList();
+    for (int offset = 0; offset < 250; offset += 100) {
+      paged.addAll(vt.getVariableEntities(offset, 100));
+    }
+    assertThat(paged).isEqualTo(all);
+    assertThat(vt.getVariableEntities(250, 100)).isEmpty();
+
+    // the counts and the pages follow the writes
+    writeTestValueSets(jdbcDatasource, 250, 260);
+    vt = jdbcDatasource.getValueTable("MY_TABLE");
+    assertThat(vt.getVariableEntityCount()).isEqualTo(260);
+    assertThat(vt.getVariableEntities(200, 100)).hasSize(60);
+    try (ValueTableWriter writer = jdbcDatasource.createWriter("MY_TABLE", "Participant");
+         ValueSetWriter vsWriter = writer.writeValueSet(newEntity(0))) {
+      vsWriter.remove();
+    }
+    vt = jdbcDatasource.getValueTable("MY_TABLE");
+    assertThat(vt.getVariableEntityCount()).isEqualTo(259);
+    assertThat(vt.getVariableEntities(0, 1)).containsOnly(newEntity(1));
+    assertThat(vt.getVariableEntities(200, 100)).hasSize(59);
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-notables.sql",
+      afterSchema = "schema-notables.sql")
+  @Test
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public void test_asyncFlush() {
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource-nodb", dataSource,
+        getDataSourceSettingsBuilder(false).multipleDatasources().batchSize(10).asyncFlushBatches(2).build());
+    jdbcDatasource.initialise();
+    writeTestValueSets(jdbcDatasource, 0, 250);
+
+    ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+    assertThat(vt.getValueSetCount()).isEqualTo(250);
+    List<Value> values = Lists.newArrayList(vt.getVariableValueSource("MY_VAR1").asVectorSource()
+        .getValues(vt.getVariableEntities()));
+    for (int i = 0; i < 250; i++) {
+      assertThat(values.get(i)).isEqualTo(IntegerType.get().valueOf(i));
+    }
+
+    jdbcDatasource.dispose();
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-notables.sql",
+      afterSchema = "schema-notables.sql")
+  @Test
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public void test_asyncFlush_failure() {
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource-nodb", dataSource,
+        getDataSourceSettingsBuilder(false).multipleDatasources().batchSize(10).asyncFlushBatches(2).build());
+    jdbcDatasource.initialise();
+
+    // the batch of the 6th block fails, the failure is thrown by a later write or by the closing of the writer
+    assertThat(writeTestValueSetsWithFailure(jdbcDatasource)).isGreaterThan(5);
+    jdbcDatasource.dispose();
+
+    // the batches flushed before the failed one are committed, the ones after it are not saved
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM \"mydatasourcenodb_MY_TABLE\"", Integer.class))
+        .isEqualTo(50);
+    assertThat(jdbcTemplate.queryForObject("SELECT MAX(\"id\") FROM \"mydatasourcenodb_MY_TABLE\"", String.class))
+        .isEqualTo(newEntity(49).getIdentifier());
+  }
+
+  @TestSchema(schemaLocation = "org/obiba/magma/datasource/jdbc", beforeSchema = "schema-notables.sql",
+      afterSchema = "schema-notables.sql")
+  @Test
+  public void test_asyncFlush_inTransaction() {
+    JdbcDatasource jdbcDatasource = new JdbcDatasource("my-datasource-nodb", dataSource,
+        getDataSourceSettingsBuilder(false).multipleDatasources().batchSize(10).asyncFlushBatches(2).build());
+    jdbcDatasource.initialise();
+
+    // in the caller's transaction, the batches are saved by the writes, the failure is thrown by the failed one
+    assertThat(writeTestValueSetsWithFailure(jdbcDatasource)).isEqualTo(5);
+
+    jdbcDatasource.dispose();
+  }
+
   //
   // Methods
   //
@@ -652,6 +1094,56 @@ public class JdbcDatasourceTest extends AbstractMagmaTest {
     }
   }
 
+  /**
+   * Write 20 blocks of 10 value sets, the 6th block having a value that cannot be saved.
+   *
+   * @return the index of the block which write failed, 20 if the failure was thrown by the closing of the writer, null
+   * if there was no failure
+   */
+  private Integer writeTestValueSetsWithFailure(JdbcDatasource jdbcDatasource) {
+    int blockIndex = 0;
+    try (ValueTableWriter tableWriter = jdbcDatasource.createWriter("MY_TABLE", "Participant")) {
+      try (VariableWriter variableWriter = tableWriter.writeVariables()) {
+        variableWriter.writeVariable(Variable.Builder.newVariable("MY_VAR1", IntegerType.get(), "Participant").build());
+      }
+      ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+      for (; blockIndex < 20; blockIndex++) {
+        ValueSetBlock block = new ValueSetBlock(ImmutableList.of(vt.getVariable("MY_VAR1")), 10);
+        for (int i = blockIndex * 10; i < blockIndex * 10 + 10; i++) {
+          block.add(newEntity(i), i == 55 ? TextType.get().valueOf("not a number") : IntegerType.get().valueOf(i));
+        }
+        tableWriter.writeValueSets(block);
+      }
+    } catch (DataAccessException e) {
+      return blockIndex;
+    }
+    return null;
+  }
+
+  private void writeTestValueSets(JdbcDatasource jdbcDatasource, int from, int to) {
+    try (ValueTableWriter tableWriter = jdbcDatasource.createWriter("MY_TABLE", "Participant")) {
+      try (VariableWriter variableWriter = tableWriter.writeVariables()) {
+        variableWriter.writeVariable(Variable.Builder.newVariable("MY_VAR1", IntegerType.get(), "Participant").build());
+        variableWriter.writeVariable(Variable.Builder.newVariable("MY_VAR2", TextType.get(), "Participant").build());
+      }
+
+      ValueTable vt = jdbcDatasource.getValueTable("MY_TABLE");
+      ValueSetBlock block = new ValueSetBlock(ImmutableList.of(vt.getVariable("MY_VAR1"), vt.getVariable("MY_VAR2")), 100);
+      for (int i = from; i < to; i++) {
+        block.add(newEntity(i), IntegerType.get().valueOf(i), TextType.get().valueOf("v" + i));
+        if (block.isFull()) {
+          tableWriter.writeValueSets(block);
+          block.clear();
+        }
+      }
+      if (!block.isEmpty()) tableWriter.writeValueSets(block);
+    }
+  }
+
+  private VariableEntity newEntity(int i) {
+    return new VariableEntityBean("Participant", String.format("%04d", i));
+  }
+
   private JdbcDatasourceSettings getDataSourceSettings() {
     return getDataSourceSettingsBuilder(false).multipleDatasources().build();
   }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.datasource.jdbc.support;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class UpsertDialectTest {
+
+  private static final List<String> TYPES = ImmutableList.of("BIGINT", "VARCHAR(255)");
+
+  @Test
+  public void testForDatabase() {
+    assertThat(UpsertDialect.forDatabase("postgresql")).isInstanceOf(PostgreSqlEngineVisitor.class);
+    assertThat(UpsertDialect.forDatabase("mariadb")).isInstanceOf(MySqlEngineVisitor.class);
+    assertThat(UpsertDialect.forDatabase("hsqldb")).isInstanceOf(MergeUpsertDialect.class);
+    assertThat(UpsertDialect.forDatabase("oracle")).isNull();
+  }
+
+  @Test
+  public void testPostgreSqlUpsert() {
+    assertThat(new PostgreSqlEngineVisitor().getUpsertSql("t", "id", ImmutableList.of("a", "id"), TYPES, ImmutableList.of("a"), 2))
+        .isEqualTo("INSERT INTO t (a, id) VALUES (?, ?), (?, ?) ON CONFLICT (id) DO UPDATE SET a = EXCLUDED.a");
+    assertThat(new PostgreSqlEngineVisitor().getUpsertSql("t", "id", ImmutableList.of("id"), ImmutableList.of("VARCHAR(255)"), ImmutableList.<String>of(), 1))
+        .isEqualTo("INSERT INTO t (id) VALUES (?) ON CONFLICT (id) DO NOTHING");
+  }
+
+  @Test
+  public void testMySqlUpsert() {
+    assertThat(new MySqlEngineVisitor().getUpsertSql("t", "id", ImmutableList.of("a", "id"), TYPES, ImmutableList.of("a"), 2))
+        .isEqualTo("INSERT INTO t (a, id) VALUES (?, ?), (?, ?) ON DUPLICATE KEY UPDATE a = VALUES(a)");
+  }
+
+  @Test
+  public void testMergeUpsert() {
+    assertThat(new MergeUpsertDialect(false).getUpsertSql("t", "id", ImmutableList.of("a", "id"), TYPES, ImmutableList.of("a"), 2))
+        .isEqualTo("MERGE INTO t USING (VALUES (CAST(? AS BIGINT), CAST(? AS VARCHAR(255))), " +
+            "(CAST(? AS BIGINT), CAST(? AS VARCHAR(255)))) AS vals (a, id) ON t.id = vals.id " +
+            "WHEN MATCHED THEN UPDATE SET a = vals.a WHEN NOT MATCHED THEN INSERT (a, id) VALUES (vals.a, vals.id)");
+    assertThat(new MergeUpsertDialect(false).getUpsertSql("t", "id", ImmutableList.of("a", "id"), Arrays.asList(null, "VARCHAR(255)"), ImmutableList.<String>of(), 1))
+        .isEqualTo("MERGE INTO t USING (VALUES (?, CAST(? AS VARCHAR(255)))) AS vals (a, id) ON t.id = vals.id " +
+            "WHEN NOT MATCHED THEN INSERT (a, id) VALUES (vals.a, vals.id)");
+  }
+
+  @Test
+  public void testSqlServerMergeUpsert() {
+    assertThat(UpsertDialect.forDatabase("mssql").getUpsertSql("t", "id", ImmutableList.of("a", "id"), TYPES, ImmutableList.of("a"), 1))
+        .endsWith("WHEN NOT MATCHED THEN INSERT (a, id) VALUES (vals.a, vals.id);");
+  }
+}
@@ -51,6 +51,8 @@ public class MongoDBDatasource extends AbstractDatasource {
 
   private int batchSize = 100;
 
+  private int asyncFlushBatches = 0;
+
   /**
    * See <a href="http://docs.mongodb.org/manual/reference/connection-string">MongoDB connection string specifications</a>.
    *
@@ -227,6 +229,23 @@ public class MongoDBDatasource extends AbstractDatasource {
     this.batchSize = batchSize;
   }
 
+  /**
+   * The number of batches that can be saved in the background while the next one is filled. The failure to save a
+   * batch in the background is thrown by a later write or by the closing of the writer, not by the write of the failed
+   * value set, and the batches that were saved before it are kept.
+   *
+   * @return 0 if each batch is saved before writing more (default)
+   */
+  public int getAsyncFlushBatches() {
+    return asyncFlushBatches;
+  }
+
+  public void setAsyncFlushBatches(int asyncFlushBatches) {
+    if (asyncFlushBatches < 0) throw new IllegalArgumentException("asyncFlushBatches should not be negative");
+
+    this.asyncFlushBatches = asyncFlushBatches;
+  }
+
   private class MongoDBDatasourceTimestamped implements Timestamped {
     @NotNull
     @Override
@@ -47,6 +47,8 @@ public class MongoDBDatasourceFactory extends AbstractDatasourceFactory {
 
   private int batchSize = 100;
 
+  private int asyncFlushBatches = 0;
+
   private SocketFactoryProvider socketFactoryProvider;
 
   public MongoDBDatasourceFactory(@NotNull String name, @NotNull String url) {
@@ -72,6 +74,7 @@ public class MongoDBDatasourceFactory extends AbstractDatasourceFactory {
   protected Datasource internalCreate() {
     MongoDBDatasource datasource = new MongoDBDatasource(getName(), getMongoDBFactory());
     datasource.setBatchSize(batchSize);
+    datasource.setAsyncFlushBatches(asyncFlushBatches);
 
     return datasource;
   }
@@ -166,4 +169,14 @@ public class MongoDBDatasourceFactory extends AbstractDatasourceFactory {
 
     this.batchSize = batchSize;
   }
+
+  public int getAsyncFlushBatches() {
+    return asyncFlushBatches;
+  }
+
+  public void setAsyncFlushBatches(int asyncFlushBatches) {
+    if (asyncFlushBatches < 0) throw new IllegalArgumentException("asyncFlushBatches");
+
+    this.asyncFlushBatches = asyncFlushBatches;
+  }
 }
@@ -20,12 +20,15 @@ import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Indexes;
 import com.mongodb.client.model.Projections;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.obiba.magma.*;
 import org.obiba.magma.datasource.mongodb.converter.ValueConverter;
 import org.obiba.magma.support.AbstractValueTable;
 import org.obiba.magma.support.NullTimestamps;
 import org.obiba.magma.type.DateTimeType;
+import org.obiba.magma.views.support.VariableCriterion;
+import org.obiba.magma.views.support.VariableCriterionSupport;
 
 import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.NotNull;
@@ -34,7 +37,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-public class MongoDBValueTable extends AbstractValueTable {
+public class MongoDBValueTable extends AbstractValueTable implements VariableCriterionSupport {
 
   private static final String VARIABLE_SUFFIX = "_variable";
 
@@ -138,6 +141,13 @@ public class MongoDBValueTable extends AbstractValueTable {
     return getMongoDBVariableEntityProvider().hasVariableEntity(entity);
   }
 
+  @Nullable
+  @Override
+  public List<VariableEntity> getVariableEntities(VariableCriterion criterion) {
+    Bson filter = new MongoDBVariableCriterionQuery(this, criterion).getFilter();
+    return filter == null ? null : getMongoDBVariableEntityProvider().getVariableEntities(filter);
+  }
+
   @Override
   public ValueSet getValueSet(VariableEntity entity) throws NoSuchValueSetException {
     if (!hasValueSet(entity)) {
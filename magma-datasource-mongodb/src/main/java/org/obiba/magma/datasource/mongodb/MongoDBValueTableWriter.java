@@ -32,6 +32,7 @@ import org.bson.types.ObjectId;
 import org.obiba.magma.*;
 import org.obiba.magma.datasource.mongodb.converter.ValueConverter;
 import org.obiba.magma.datasource.mongodb.converter.VariableConverter;
+import org.obiba.magma.support.AsyncBatchFlusher;
 import org.obiba.magma.support.VariableHelper;
 import org.obiba.magma.type.BinaryType;
 import org.slf4j.Logger;
@@ -65,12 +66,16 @@ class MongoDBValueTableWriter implements ValueTableWriter {
 
   private final List<WriteModel<Document>> batch = Lists.newArrayList();
 
+  private final AsyncBatchFlusher<WriteModel<Document>> flusher;
+
   MongoDBValueTableWriter(@NotNull MongoDBValueTable table) {
     this.table = table;
     this.hasValueSets = table.getValueSetCount() > 0;
     // might be a costly call but (1) most likely this will be empty and (2) will spare hasValueSet() calls
     this.identifiersAtInit = table.getVariableEntities().stream()
         .map(VariableEntity::getIdentifier).collect(Collectors.toSet());
+    flusher = new AsyncBatchFlusher<>(((MongoDBDatasource) table.getDatasource()).getAsyncFlushBatches(),
+        this::insertOrReplaceBatch);
   }
 
   @Override
@@ -84,6 +89,25 @@ class MongoDBValueTableWriter implements ValueTableWriter {
     return new MongoDBValueSetWriter(entity);
   }
 
+  /**
+   * Add the value set documents of the whole block to the bulk write at once, instead of one value set at a time.
+   *
+   * @param block
+   */
+  @Override
+  public void writeValueSets(@NotNull ValueSetBlock block) {
+    List<WriteModel<Document>> models = Lists.newArrayListWithCapacity(block.size());
+    for (int row = 0; row < block.size(); row++) {
+      MongoDBValueSetWriter valueSetWriter = new MongoDBValueSetWriter(block.getEntity(row));
+      for (int column = 0; column < block.getVariables().size(); column++) {
+        Value value = block.getValue(row, column);
+        if (value != null) valueSetWriter.writeValue(block.getVariable(column), value);
+      }
+      models.add(valueSetWriter.getWriteModel());
+    }
+    addToBatch(models, Math.max(1, ((MongoDBDatasource) table.getDatasource()).getBatchSize()));
+  }
+
   @Override
   public void close() {
     List<WriteModel<Document>> toSave = null;
@@ -95,11 +119,39 @@ class MongoDBValueTableWriter implements ValueTableWriter {
       }
     }
 
-    if (toSave != null) insertOrReplaceBatch(toSave);
+    try {
+      if (toSave != null) flusher.flush(toSave);
+    } finally {
+      // wait for the batches saved in the background
+      flusher.close();
+    }
 
     updateLastUpdate();
   }
 
+  /**
+   * Add the write models to the pending bulk write, and flush it when it is full.
+   *
+   * @param models
+   * @param batchSize
+   */
+  private void addToBatch(List<WriteModel<Document>> models, int batchSize) {
+    List<WriteModel<Document>> toSave = null;
+
+    synchronized (table) {
+      batch.addAll(models);
+
+      if (batch.size() >= batchSize) {
+        toSave = ImmutableList.copyOf(batch);
+        batch.clear();
+      }
+    }
+
+    if (toSave != null) {
+      flusher.flush(toSave);
+    }
+  }
+
   private void updateLastUpdate() {
     table.setLastUpdate(new Date());
   }
@@ -160,6 +212,8 @@ class MongoDBValueTableWriter implements ValueTableWriter {
     @Override
     public void remove() {
       removed = true;
+      // the value set may be in a batch being saved
+      flusher.await();
       // remove files if any
       for (Variable variable : table.getVariables()) {
         if (BinaryType.get().equals(variable.getValueType())) {
@@ -249,24 +303,18 @@ class MongoDBValueTableWriter implements ValueTableWriter {
           else
             table.getValueSetCollection().replaceOne(Filters.eq("_id", valueSet.get("_id")), valueSet);
         } else {
-          List<WriteModel<Document>> toSave = null;
-
-          synchronized (table) {
-            batch.add(newValueSet ? new InsertOneModel<>(valueSet) : new ReplaceOneModel<>(Filters.eq("_id", valueSet.get("_id")), valueSet));
-
-            if (batch.size() >= batchSize) {
-              toSave = ImmutableList.copyOf(batch);
-              batch.clear();
-            }
-          }
-
-          if (toSave != null) {
-            insertOrReplaceBatch(toSave);
-          }
+          addToBatch(ImmutableList.of(getWriteModel()), batchSize);
         }
       }
     }
 
+    private WriteModel<Document> getWriteModel() {
+      Document valueSet = getValueSetObject();
+      return newValueSet
+          ? new InsertOneModel<>(valueSet)
+          : new ReplaceOneModel<>(Filters.eq("_id", valueSet.get("_id")), valueSet);
+    }
+
     private DBObject getBinaryValueMetadata(@Nullable GridFSFile gridFSFile, Integer occurrence) {
       BasicDBObjectBuilder builder = BasicDBObjectBuilder.start();
       if(gridFSFile != null) {
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.datasource.mongodb;
+
+import com.google.common.collect.Lists;
+import com.mongodb.client.model.Filters;
+import org.bson.conversions.Bson;
+import org.obiba.magma.Value;
+import org.obiba.magma.Variable;
+import org.obiba.magma.datasource.mongodb.converter.ValueConverter;
+import org.obiba.magma.views.support.VariableCriterion;
+
+import jakarta.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Translates a {@link VariableCriterion} into a filter on the value set documents of a {@link MongoDBValueTable}.
+ * <p>
+ * A filter is translated either for being true or for being false, so that a negation does not select the null
+ * values that the ternary javascript methods would not select either.
+ */
+class MongoDBVariableCriterionQuery {
+
+  private final MongoDBValueTable table;
+
+  @Nullable
+  private final Bson filter;
+
+  MongoDBVariableCriterionQuery(MongoDBValueTable table, VariableCriterion criterion) {
+    this.table = table;
+    filter = toFilter(criterion, true);
+  }
+
+  /**
+   * @return null if the criterion cannot be translated
+   */
+  @Nullable
+  Bson getFilter() {
+    return filter;
+  }
+
+  @Nullable
+  private Bson toFilter(VariableCriterion criterion, boolean truth) {
+    switch (criterion.getOperator()) {
+      case AND:
+        return join(criterion.getOperands(), truth, truth);
+      case OR:
+        return join(criterion.getOperands(), !truth, truth);
+      case NOT:
+        return toFilter(criterion.getOperands().get(0), !truth);
+      default:
+        return toFilterTest(criterion, truth);
+    }
+  }
+
+  @Nullable
+  private Bson join(List<VariableCriterion> operands, boolean and, boolean truth) {
+    List<Bson> filters = Lists.newArrayList();
+    for (VariableCriterion operand : operands) {
+      Bson operandFilter = toFilter(operand, truth);
+      if (operandFilter == null) return null;
+      filters.add(operandFilter);
+    }
+    return and ? Filters.and(filters) : Filters.or(filters);
+  }
+
+  @Nullable
+  private Bson toFilterTest(VariableCriterion criterion, boolean truth) {
+    String name = criterion.getVariableName();
+    if (!table.hasVariable(name)) return null;
+    Variable variable = table.getVariable(name);
+    if (!VariableCriterion.isSupported(variable)) return null;
+    String field = ((MongoDBVariable) variable).getId();
+
+    switch (criterion.getOperator()) {
+      case IS_NULL:
+        // a missing field is a null value
+        return truth ? Filters.eq(field, null) : Filters.ne(field, null);
+      case IN:
+        List<Object> values = Lists.newArrayList();
+        for (Object literal : criterion.getLiterals()) {
+          Value value = VariableCriterion.valueOf(variable, literal);
+          if (value == null) return null;
+          values.add(ValueConverter.marshall(variable, value));
+        }
+        // a null value is not in any list
+        return truth ? Filters.in(field, values) : Filters.nin(field, values);
+      default:
+        if (!variable.getValueType().isNumeric()) return null;
+        // integer and decimal numbers are compared by value
+        double literal = ((Number) criterion.getLiteral()).doubleValue();
+        return compare(criterion.getOperator(), truth, field, literal);
+    }
+  }
+
+  private Bson compare(VariableCriterion.Operator operator, boolean truth, String field, double literal) {
+    switch (operator) {
+      case LT:
+        return truth ? Filters.lt(field, literal) : Filters.gte(field, literal);
+      case LE:
+        return truth ? Filters.lte(field, literal) : Filters.gt(field, literal);
+      case GT:
+        return truth ? Filters.gt(field, literal) : Filters.lte(field, literal);
+      default:
+        return truth ? Filters.gte(field, literal) : Filters.lt(field, literal);
+    }
+  }
+
+}
@@ -83,6 +83,22 @@ class MongoDBVariableEntityProvider implements PagingVariableEntityProvider {
     return list;
   }
 
+  /**
+   * Get the entities which value set document matches the filter, in the same order as all the entities.
+   *
+   * @param filter
+   * @return
+   */
+  List<VariableEntity> getVariableEntities(Bson filter) {
+    List<VariableEntity> list = new VariableEntityList();
+    try (MongoCursor<Document> cursor = table.getValueSetCollection().find(filter).projection(idProjection).cursor()) {
+      while (cursor.hasNext()) {
+        list.add(new VariableEntityBean(getEntityType(), cursor.next().get("_id").toString()));
+      }
+    }
+    return list;
+  }
+
   @Override
   public boolean hasVariableEntity(VariableEntity entity) {
     Document doc = table.getValueSetCollection()
@@ -30,10 +30,10 @@ import jakarta.annotation.Nullable;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @SuppressWarnings({"UnusedParameters", "UnusedDeclaration"})
 public class NumericMethods {
@@ -724,13 +724,11 @@ public class NumericMethods {
   static Double min(ValueSequence valueSequence) {
     if (valueSequence.isNull()) return null;
 
-    Double min = null;
-    for (Value v : valueSequence.getValue()) {
-      if (!v.isNull()) {
-        double doubleValue = ((Number) v.getValue()).doubleValue();
-        if (min == null) min = doubleValue;
-        else min = Math.min(doubleValue, min);
-      }
+    double[] values = valueSequence.toDoubleArray();
+    if (values.length == 0) return null;
+    double min = values[0];
+    for (int i = 1; i < values.length; i++) {
+      min = Math.min(values[i], min);
     }
     return min;
   }
@@ -738,13 +736,11 @@ public class NumericMethods {
   static Double max(ValueSequence valueSequence) {
     if (valueSequence.isNull()) return null;
 
-    Double max = null;
-    for (Value v : valueSequence.getValue()) {
-      if (!v.isNull()) {
-        double doubleValue = ((Number) v.getValue()).doubleValue();
-        if (max == null) max = doubleValue;
-        else max = Math.max(doubleValue, max);
-      }
+    double[] values = valueSequence.toDoubleArray();
+    if (values.length == 0) return null;
+    double max = values[0];
+    for (int i = 1; i < values.length; i++) {
+      max = Math.max(values[i], max);
     }
     return max;
   }
@@ -752,13 +748,7 @@ public class NumericMethods {
   static Double sum(ValueSequence valueSequence) {
     if (valueSequence.isNull()) return null;
 
-    double sum = 0;
-    for (Value v : valueSequence.getValue()) {
-      if (!v.isNull()) {
-        sum += ((Number) v.getValue()).doubleValue();
-      }
-    }
-    return sum;
+    return sum(valueSequence.toDoubleArray());
   }
 
   static Double average(ValueSequence valueSequence) {
@@ -772,42 +762,43 @@ public class NumericMethods {
   }
 
   static Double median(ValueSequence valueSequence) {
-    ValueSequence valueSequenceNoNull = valueSequence.getValueType().sequenceOf(valueSequence.getValues().stream()
-        .filter(v -> !v.isNull()).collect(Collectors.toList()));
-    int size = valueSequenceNoNull.getSize();
+    double[] values = valueSequence.toDoubleArray();
+    int size = values.length;
     if (size == 0) return null;
     int middle = size / 2;
-    ValueSequence sorted = valueSequenceNoNull.sort();
+    Arrays.sort(values);
     if (size % 2 == 0) {
       // even
-      Value lower = sorted.get(middle - 1);
-      Value upper = sorted.get(middle);
-      BigDecimal avg = asBigDecimal(lower).add(asBigDecimal(upper)).divide(new BigDecimal(2));
+      BigDecimal avg = new BigDecimal(values[middle - 1]).add(new BigDecimal(values[middle])).divide(new BigDecimal(2));
       return avg.doubleValue();
     } else {
       // odd
-      return ((Number) sorted.get(middle).getValue()).doubleValue();
+      return values[middle];
     }
   }
 
   static Double stddev(ValueSequence valueSequence) {
     if (valueSequence.isNull()) return null;
 
-    Double avg = average(valueSequence);
-    if (avg == null) return null;
-
     int size = valueSequence.getSize();
     if (size == 0) return null;
 
+    double[] values = valueSequence.toDoubleArray();
+    double avg = sum(values) / size;
     double sumDev = 0;
-    for (Value v : valueSequence.getValue()) {
-      if (!v.isNull()) {
-        double d = ((Number) v.getValue()).doubleValue();
-        sumDev += (d - avg) * (d - avg);
-      }
+    for (double d : values) {
+      sumDev += (d - avg) * (d - avg);
     }
 
     return Math.sqrt(sumDev / size);
   }
 
+  private static double sum(double[] values) {
+    double sum = 0;
+    for (double d : values) {
+      sum += d;
+    }
+    return sum;
+  }
+
 }
@@ -398,9 +398,12 @@ public class ValueSequenceMethods {
     final ScriptableValue sv = (ScriptableValue) thisObj;
     if (sv.getValue().isNull() || args == null || args.length == 0)
       return new ScriptableValue(thisObj, sv.getValue());
-    final int from = asInteger(args[0]);
-    final int to = args.length > 1 ? asInteger(args[1]) : Integer.MAX_VALUE;
-    return filter(thisObj, (value, index) -> index >= from && index < to);
+    ValueSequence valueSequence = asSequence(sv.getValue());
+    int size = valueSequence.getSize();
+    int from = Math.max(0, Math.min(asInteger(args[0]), size));
+    int to = args.length > 1 ? Math.max(from, Math.min(asInteger(args[1]), size)) : size;
+    return new ScriptableValue(thisObj,
+        from == to ? sv.getValueType().nullSequence() : valueSequence.subset(from, to));
   }
 
   private static int asInteger(Object arg) {
@@ -410,31 +413,20 @@ public class ValueSequenceMethods {
     return ((Number) arg).intValue();
   }
 
-  private static ScriptableValue filter(Scriptable thisObj, ValueSequencePredicate predicate) throws MagmaJsEvaluationRuntimeException {
+  private static ScriptableValue filter(Scriptable thisObj, ValueSequence.ElementPredicate predicate) throws MagmaJsEvaluationRuntimeException {
     final ScriptableValue sv = (ScriptableValue) thisObj;
     if (sv.getValue().isNull() || predicate == null)
       return new ScriptableValue(thisObj, sv.getValue());
-    List<Value> originalValues;
-    if (sv.getValue().isSequence()) {
-      ValueSequence valueSequence = sv.getValue().asSequence();
-      originalValues = valueSequence.isNull() ? Lists.newArrayList() : valueSequence.getValues();
-    } else {
-      Value value = sv.getValue();
-      originalValues = value.isNull() ? Lists.newArrayList() : Lists.newArrayList(value);
-    }
-
-    List<Value> filteredValues = Lists.newArrayList();
-    for (int i = 0; i < originalValues.size(); i++) {
-      Value value = originalValues.get(i);
-      if (predicate.test(value, i)) filteredValues.add(value);
-    }
-    ValueSequence filteredValueSequence = filteredValues.isEmpty() ?
-        sv.getValueType().nullSequence() : sv.getValueType().sequenceOf(filteredValues);
-    return new ScriptableValue(thisObj, filteredValueSequence);
+    ValueSequence filteredValueSequence = asSequence(sv.getValue()).filter(predicate);
+    return new ScriptableValue(thisObj, filteredValueSequence.getSize() == 0 ?
+        sv.getValueType().nullSequence() : filteredValueSequence);
   }
 
-  private interface ValueSequencePredicate {
-    boolean test(Value value, int index);
+  /**
+   * The sequence of a non-null value, a sequence of one element if it is not a sequence.
+   */
+  private static ValueSequence asSequence(Value value) {
+    return value.isSequence() ? value.asSequence() : value.getValueType().sequenceOf(ImmutableList.of(value));
   }
 
   /**
@@ -11,6 +11,9 @@
 package org.obiba.magma.js.views;
 
 import java.io.Serializable;
+import java.util.Optional;
+
+import jakarta.annotation.Nullable;
 
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextAction;
@@ -32,8 +35,14 @@ import org.obiba.magma.type.BooleanType;
 import org.obiba.magma.views.SelectClause;
 import org.obiba.magma.views.View;
 import org.obiba.magma.views.WhereClause;
+import org.obiba.magma.views.support.VariableCriterion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class JavascriptClause implements Initialisable, SelectClause, WhereClause {
+
+  private static final Logger log = LoggerFactory.getLogger(JavascriptClause.class);
+
   //
   // Instance Variables
   //
@@ -46,6 +55,9 @@ public class JavascriptClause implements Initialisable, SelectClause, WhereClaus
   @SuppressWarnings("TransientFieldInNonSerializableClass")
   private transient Script compiledScript;
 
+  @SuppressWarnings("TransientFieldInNonSerializableClass")
+  private transient Optional<VariableCriterion> criterion;
+
   //
   // Constructors
   //
@@ -132,6 +144,22 @@ public class JavascriptClause implements Initialisable, SelectClause, WhereClaus
     return (Boolean) ContextFactory.getGlobal().call(new WhereContextAction(valueSet, view));
   }
 
+  @Nullable
+  @Override
+  public VariableCriterion getCriterion() {
+    if(script == null) return null;
+    if(criterion == null) {
+      try {
+        criterion = Optional.ofNullable(JavascriptCriterionParser.parse(getScript(), getScriptName()));
+      } catch(EvaluatorException e) {
+        // will fail at evaluation
+        criterion = Optional.empty();
+      }
+      log.debug("Where script '{}' criterion: {}", getScript(), criterion.orElse(null));
+    }
+    return criterion.orElse(null);
+  }
+
   //
   // Query Methods
   //
@@ -184,6 +212,7 @@ public class JavascriptClause implements Initialisable, SelectClause, WhereClaus
 
   public void setScript(String script) {
     this.script = script;
+    criterion = null;
   }
 
   /**
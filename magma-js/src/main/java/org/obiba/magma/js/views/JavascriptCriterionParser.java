@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.js.views;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Node;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.Token;
+import org.mozilla.javascript.ast.AstNode;
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.ExpressionStatement;
+import org.mozilla.javascript.ast.FunctionCall;
+import org.mozilla.javascript.ast.KeywordLiteral;
+import org.mozilla.javascript.ast.Name;
+import org.mozilla.javascript.ast.NumberLiteral;
+import org.mozilla.javascript.ast.ParenthesizedExpression;
+import org.mozilla.javascript.ast.PropertyGet;
+import org.mozilla.javascript.ast.StringLiteral;
+import org.mozilla.javascript.ast.UnaryExpression;
+import org.obiba.magma.views.support.VariableCriterion;
+import org.obiba.magma.views.support.VariableCriterion.Operator;
+
+import jakarta.annotation.Nullable;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Recognizes the where scripts that are a combination of simple tests on the values of the table's variables, such as:
+ * <pre>
+ *   $('AGE').ge(18).and($('SEX').any('F'))
+ * </pre>
+ * Any other script (several statements, other methods, variables of other tables, values computed by the script...)
+ * is not recognized and has to be evaluated on each value set.
+ */
+final class JavascriptCriterionParser {
+
+  private static final Set<String> VALUE_FUNCTIONS = ImmutableSet.of("$", "$val", "$value");
+
+  // not a value
+  private static final Object NOT_A_LITERAL = new Object();
+
+  private JavascriptCriterionParser() {}
+
+  /**
+   * @param script
+   * @param scriptName
+   * @return null if the script is not a combination of simple tests
+   */
+  @Nullable
+  static VariableCriterion parse(String script, String scriptName) {
+    AstRoot root = new Parser(new CompilerEnvirons()).parse(script, scriptName, 1);
+    AstNode statement = null;
+    for (Node node : root) {
+      if (statement != null || !(node instanceof ExpressionStatement)) return null;
+      statement = ((ExpressionStatement) node).getExpression();
+    }
+    return statement == null ? null : parseCriterion(statement);
+  }
+
+  @Nullable
+  private static VariableCriterion parseCriterion(AstNode node) {
+    AstNode expression = unwrap(node);
+    if (!(expression instanceof FunctionCall)) return null;
+    FunctionCall call = (FunctionCall) expression;
+    if (!(call.getTarget() instanceof PropertyGet)) return null;
+    PropertyGet method = (PropertyGet) call.getTarget();
+    List<AstNode> args = call.getArguments();
+    String methodName = method.getProperty().getIdentifier();
+
+    if ("and".equals(methodName) || "or".equals(methodName)) {
+      List<VariableCriterion> operands = Lists.newArrayList();
+      for (AstNode operandNode : Lists.asList(method.getTarget(), args.toArray(new AstNode[0]))) {
+        VariableCriterion operand = parseCriterion(operandNode);
+        if (operand == null) return null;
+        operands.add(operand);
+      }
+      return "and".equals(methodName) ? VariableCriterion.and(operands) : VariableCriterion.or(operands);
+    }
+    if ("not".equals(methodName) && args.isEmpty()) {
+      VariableCriterion operand = parseCriterion(method.getTarget());
+      return operand == null ? null : VariableCriterion.not(operand);
+    }
+
+    String variableName = parseVariableName(method.getTarget());
+    if (variableName == null) return null;
+    List<Object> literals = Lists.newArrayList();
+    for (AstNode arg : args) {
+      Object literal = parseLiteral(arg);
+      if (literal == NOT_A_LITERAL) return null;
+      literals.add(literal);
+    }
+    return parseTest(methodName, variableName, literals);
+  }
+
+  @Nullable
+  private static VariableCriterion parseTest(String methodName, String variableName, List<Object> literals) {
+    switch (methodName) {
+      case "isNull":
+        return literals.isEmpty() ? VariableCriterion.isNull(variableName) : null;
+      case "isNotNull":
+        return literals.isEmpty() ? VariableCriterion.not(VariableCriterion.isNull(variableName)) : null;
+      case "eq":
+        // equality with a value does not have the same semantic for all the value types
+        return literals.size() == 1 && literals.get(0) == null ? VariableCriterion.isNull(variableName) : null;
+      case "any":
+        return literals.isEmpty() || literals.contains(null) ? null : VariableCriterion.in(variableName, literals);
+      case "not":
+        return literals.contains(null) ? null : VariableCriterion.not(VariableCriterion.in(variableName, literals));
+      case "lt":
+        return compare(Operator.LT, variableName, literals);
+      case "le":
+        return compare(Operator.LE, variableName, literals);
+      case "gt":
+        return compare(Operator.GT, variableName, literals);
+      case "ge":
+        return compare(Operator.GE, variableName, literals);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * A comparison with several numbers is true when it is true with each of them.
+   */
+  @Nullable
+  private static VariableCriterion compare(Operator operator, String variableName, List<Object> literals) {
+    if (literals.isEmpty()) return null;
+    List<VariableCriterion> comparisons = Lists.newArrayList();
+    for (Object literal : literals) {
+      if (!(literal instanceof Number)) return null;
+      comparisons.add(VariableCriterion.compare(operator, variableName, (Number) literal));
+    }
+    return VariableCriterion.and(comparisons);
+  }
+
+  /**
+   * @param node
+   * @return the name of the variable of a $('NAME') call, null if not such a call or if it refers to another table
+   */
+  @Nullable
+  private static String parseVariableName(AstNode node) {
+    AstNode expression = unwrap(node);
+    if (!(expression instanceof FunctionCall)) return null;
+    FunctionCall call = (FunctionCall) expression;
+    if (!(call.getTarget() instanceof Name) || !VALUE_FUNCTIONS.contains(((Name) call.getTarget()).getIdentifier()) ||
+        call.getArguments().size() != 1 || !(call.getArguments().get(0) instanceof StringLiteral)) return null;
+    String name = ((StringLiteral) call.getArguments().get(0)).getValue();
+    return name.contains(":") ? null : name;
+  }
+
+  private static Object parseLiteral(AstNode node) {
+    AstNode expression = unwrap(node);
+    if (expression instanceof StringLiteral) return ((StringLiteral) expression).getValue();
+    if (expression instanceof NumberLiteral) return ((NumberLiteral) expression).getNumber();
+    if (expression instanceof UnaryExpression && expression.getType() == Token.NEG &&
+        unwrap(((UnaryExpression) expression).getOperand()) instanceof NumberLiteral) {
+      return -((NumberLiteral) unwrap(((UnaryExpression) expression).getOperand())).getNumber();
+    }
+    if (expression instanceof KeywordLiteral) {
+      switch (expression.getType()) {
+        case Token.TRUE:
+          return Boolean.TRUE;
+        case Token.FALSE:
+          return Boolean.FALSE;
+        case Token.NULL:
+          return null;
+        default:
+          return NOT_A_LITERAL;
+      }
+    }
+    return NOT_A_LITERAL;
+  }
+
+  private static AstNode unwrap(AstNode node) {
+    AstNode expression = node;
+    while (expression instanceof ParenthesizedExpression) {
+      expression = ((ParenthesizedExpression) expression).getExpression();
+    }
+    return expression;
+  }
+
+}
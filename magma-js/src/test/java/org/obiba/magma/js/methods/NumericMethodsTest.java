@@ -13,15 +13,20 @@ package org.obiba.magma.js.methods;
 import org.junit.Test;
 import org.mozilla.javascript.Context;
 import org.obiba.magma.Value;
+import org.obiba.magma.ValueSequence;
 import org.obiba.magma.ValueType;
 import org.obiba.magma.js.AbstractJsTest;
 import org.obiba.magma.js.ScriptableValue;
+import org.obiba.magma.support.Values;
 import org.obiba.magma.type.BooleanType;
 import org.obiba.magma.type.DecimalType;
 import org.obiba.magma.type.IntegerType;
 import org.obiba.magma.type.TextType;
 
+import com.google.common.collect.ImmutableList;
+
 import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.data.Offset.offset;
 
 @SuppressWarnings("ReuseOfLocalVariable")
 public class NumericMethodsTest extends AbstractJsTest {
@@ -747,4 +752,56 @@ public class NumericMethodsTest extends AbstractJsTest {
     assertThat(value).isNotNull();
     assertThat(value.getValue()).isEqualTo(TextType.get().valueOf(numberType.valueOf("11")));
   }
+
+  // sequence statistics
+
+  @Test
+  public void test_sequenceStatistics_withNulls() {
+    ValueSequence sequence = Values.asSequence(DecimalType.get(), 4, null, 1, 3, null).asSequence();
+    assertThat(NumericMethods.sum(sequence)).isEqualTo(8.0);
+    // nulls count in the size of the average and of the standard deviation
+    assertThat(NumericMethods.average(sequence)).isEqualTo(1.6);
+    assertThat(NumericMethods.stddev(sequence)).isEqualTo(Math.sqrt(8.08 / 5), offset(1e-9));
+    assertThat(NumericMethods.min(sequence)).isEqualTo(1.0);
+    assertThat(NumericMethods.max(sequence)).isEqualTo(4.0);
+    assertThat(NumericMethods.median(sequence)).isEqualTo(3.0);
+  }
+
+  @Test
+  public void test_sequenceStatistics_allNulls() {
+    ValueSequence sequence = Values.asSequence(IntegerType.get(), null, null).asSequence();
+    assertThat(NumericMethods.sum(sequence)).isEqualTo(0.0);
+    assertThat(NumericMethods.average(sequence)).isEqualTo(0.0);
+    assertThat(NumericMethods.stddev(sequence)).isEqualTo(0.0);
+    assertThat(NumericMethods.min(sequence)).isNull();
+    assertThat(NumericMethods.max(sequence)).isNull();
+    assertThat(NumericMethods.median(sequence)).isNull();
+  }
+
+  @Test
+  public void test_sequenceStatistics_empty() {
+    for(ValueSequence sequence : ImmutableList.of(IntegerType.get().sequenceOf(ImmutableList.<Value>of()),
+        IntegerType.get().nullSequence())) {
+      assertThat(NumericMethods.average(sequence)).isNull();
+      assertThat(NumericMethods.stddev(sequence)).isNull();
+      assertThat(NumericMethods.min(sequence)).isNull();
+      assertThat(NumericMethods.max(sequence)).isNull();
+      assertThat(NumericMethods.median(sequence)).isNull();
+    }
+    assertThat(NumericMethods.sum(IntegerType.get().sequenceOf(ImmutableList.<Value>of()))).isEqualTo(0.0);
+    assertThat(NumericMethods.sum(IntegerType.get().nullSequence())).isNull();
+  }
+
+  @Test
+  public void test_sequenceStatistics_ofSubset() {
+    ValueSequence sequence = Values.asSequence(IntegerType.get(), 9, 2, null, 6, 1, 9).asSequence();
+    ValueSequence subset = sequence.subset(1, 5);
+    assertThat(NumericMethods.sum(subset)).isEqualTo(9.0);
+    assertThat(NumericMethods.average(subset)).isEqualTo(2.25);
+    assertThat(NumericMethods.min(subset)).isEqualTo(1.0);
+    assertThat(NumericMethods.max(subset)).isEqualTo(6.0);
+    assertThat(NumericMethods.median(subset)).isEqualTo(2.0);
+    assertThat(NumericMethods.median(sequence.subset(2, 3))).isNull();
+    assertThat(NumericMethods.max(sequence.subset(3, 3))).isNull();
+  }
 }
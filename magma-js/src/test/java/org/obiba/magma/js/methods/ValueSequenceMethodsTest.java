@@ -516,6 +516,51 @@ public class ValueSequenceMethodsTest extends AbstractJsTest {
         Values.asSequence(IntegerType.get(), 2, 3));
   }
 
+  @Test
+  public void test_filter_subsetOutOfRange() {
+    Value sequence = Values.asSequence(IntegerType.get(), 1, 2, 3, 4);
+    assertSubsetIs(sequence, "-2", sequence);
+    assertSubsetIs(sequence, "-2,2", Values.asSequence(IntegerType.get(), 1, 2));
+    assertSubsetIs(sequence, "2,10", Values.asSequence(IntegerType.get(), 3, 4));
+    assertSubsetIsNullSequence(sequence, "4");
+    assertSubsetIsNullSequence(sequence, "2,2");
+    assertSubsetIsNullSequence(sequence, "3,1");
+  }
+
+  @Test
+  public void test_filter_subsetWithNulls() {
+    assertSubsetIs(Values.asSequence(IntegerType.get(), 1, null, 3, null), "1,3",
+        Values.asSequence(IntegerType.get(), null, 3));
+  }
+
+  @Test
+  public void test_filter_subsetOfNone() {
+    assertSubsetIsNullSequence(Values.asSequence(IntegerType.get()), "0");
+    assertSubsetIsNullSequence(IntegerType.get().nullSequence(), "0,2");
+    ScriptableValue result = evaluate("subset(0)", IntegerType.get().nullValue());
+    assertThat(result.getValue().isNull()).isTrue();
+    assertThat(result.getValue().isSequence()).isFalse();
+  }
+
+  @Test
+  public void test_filter_subsetSingleValue() {
+    assertSubsetIs(IntegerType.get().valueOf(2), "0", Values.asSequence(IntegerType.get(), 2));
+    assertSubsetIsNullSequence(IntegerType.get().valueOf(2), "1");
+  }
+
+  @Test
+  public void test_filter_subsetThenAggregate() {
+    Value sequence = Values.asSequence(IntegerType.get(), 9, 1, null, 3, 4, 9);
+    assertThat(evaluate("subset(1,5).sum()", sequence).getValue()).isEqualTo(IntegerType.get().valueOf(8));
+    assertThat(evaluate("subset(1,5).avg()", sequence).getValue()).isEqualTo(DecimalType.get().valueOf(2.0));
+    assertThat(evaluate("subset(1,5).median()", sequence).getValue()).isEqualTo(DecimalType.get().valueOf(3));
+    assertThat(evaluate("subset(1,5).min()", sequence).getValue()).isEqualTo(IntegerType.get().valueOf(1));
+    assertThat(evaluate("subset(1,5).max()", sequence).getValue()).isEqualTo(IntegerType.get().valueOf(4));
+    assertThat(evaluate("subset(2,3).sum()", sequence).getValue()).isEqualTo(IntegerType.get().valueOf(0));
+    assertThat(evaluate("subset(2,3).median()", sequence).getValue().isNull()).isTrue();
+    assertThat(evaluate("subset(2,3).max()", sequence).getValue().isNull()).isTrue();
+  }
+
   // reduce
 
   @Test
@@ -646,6 +691,32 @@ public class ValueSequenceMethodsTest extends AbstractJsTest {
     assertMethod("median()", IntegerType.get().sequenceOf("1,2,,3,,,4,,5,6,,"), DecimalType.get().valueOf("3.5"));
   }
 
+  @Test
+  public void test_median_noneNotNull() {
+    assertMethod("median()", IntegerType.get().nullSequence(), DecimalType.get().nullValue());
+    assertMethod("median()", IntegerType.get().sequenceOf(Collections.<Value>emptyList()), DecimalType.get().nullValue());
+    assertMethod("median()", IntegerType.get().sequenceOf(",,"), DecimalType.get().nullValue());
+  }
+
+  // min, max
+
+  @Test
+  public void test_min_max_integerValuesWithNull() {
+    assertMethod("min()", IntegerType.get().sequenceOf(",3,,1,2"), IntegerType.get().valueOf(1));
+    assertMethod("max()", IntegerType.get().sequenceOf(",3,,1,2"), IntegerType.get().valueOf(3));
+    assertMethod("min()", DecimalType.get().sequenceOf("2.5,,-1.5"), DecimalType.get().valueOf(-1.5));
+    assertMethod("max()", DecimalType.get().sequenceOf("2.5,,-1.5"), DecimalType.get().valueOf(2.5));
+  }
+
+  @Test
+  public void test_min_max_noneNotNull() {
+    for(String method : new String[] { "min()", "max()" }) {
+      assertMethod(method, IntegerType.get().nullSequence(), IntegerType.get().nullValue());
+      assertMethod(method, IntegerType.get().sequenceOf(Collections.<Value>emptyList()), IntegerType.get().nullValue());
+      assertMethod(method, IntegerType.get().sequenceOf(",,"), IntegerType.get().nullValue());
+    }
+  }
+
   // stddev
 
   @Test
@@ -1025,6 +1096,12 @@ public class ValueSequenceMethodsTest extends AbstractJsTest {
     assertResultIs(result, expected);
   }
 
+  private void assertSubsetIsNullSequence(Value valueToFilter, String args) {
+    ScriptableValue result = evaluate("subset(" + args + ")", valueToFilter);
+    assertThat(result.getValue().isSequence()).isTrue();
+    assertThat(result.getValue().isNull()).isTrue();
+  }
+
   private void assertReduceIs(Value valueToReduce, String args, Value expected) {
     ScriptableValue result = evaluate("reduce(" + args + ")", valueToReduce);
     assertResultIs(result, expected);
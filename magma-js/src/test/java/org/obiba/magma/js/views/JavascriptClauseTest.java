@@ -10,6 +10,7 @@
 
 package org.obiba.magma.js.views;
 
+import com.google.common.collect.Lists;
 import org.junit.Test;
 import org.obiba.magma.Initialisable;
 import org.obiba.magma.ValueSet;
@@ -19,6 +20,8 @@ import org.obiba.magma.VariableEntity;
 import org.obiba.magma.js.AbstractJsTest;
 import org.obiba.magma.views.SelectClause;
 import org.obiba.magma.views.WhereClause;
+import org.obiba.magma.views.support.VariableCriterion;
+import org.obiba.magma.views.support.VariableCriterion.Operator;
 
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
@@ -130,6 +133,71 @@ public class JavascriptClauseTest extends AbstractJsTest {
     assertWhere("now()", false);
   }
 
+  @Test
+  public void test_getCriterion_combinationOfTests() {
+    JavascriptClause clause = new JavascriptClause("$('AGE').ge(18).and($('SEX').any('F', 'M'))");
+    assertThat(clause.getCriterion()).isEqualTo(VariableCriterion.and(Lists.newArrayList( //
+        VariableCriterion.compare(Operator.GE, "AGE", 18.0), //
+        VariableCriterion.in("SEX", Lists.newArrayList("F", "M")))));
+  }
+
+  @Test
+  public void test_getCriterion_negations() {
+    assertThat(new JavascriptClause("$('SEX').not('F')").getCriterion())
+        .isEqualTo(VariableCriterion.not(VariableCriterion.in("SEX", Lists.newArrayList("F"))));
+    assertThat(new JavascriptClause("($('AGE').lt(-1.5)).not()").getCriterion())
+        .isEqualTo(VariableCriterion.not(VariableCriterion.compare(Operator.LT, "AGE", -1.5)));
+    assertThat(new JavascriptClause("$val('SEX').isNotNull().or($('AGE').eq(null))").getCriterion())
+        .isEqualTo(VariableCriterion.or(Lists.newArrayList( //
+            VariableCriterion.not(VariableCriterion.isNull("SEX")), VariableCriterion.isNull("AGE"))));
+  }
+
+  @Test
+  public void test_getCriterion_literals() {
+    assertThat(new JavascriptClause("$('SMOKER').any(true, false)").getCriterion())
+        .isEqualTo(VariableCriterion.in("SMOKER", Lists.newArrayList(true, false)));
+    assertThat(new JavascriptClause("$value('AGE').any(18, -2)").getCriterion())
+        .isEqualTo(VariableCriterion.in("AGE", Lists.newArrayList(18.0, -2.0)));
+    // a comparison with several numbers is true when it is true with each of them
+    assertThat(new JavascriptClause("$('AGE').gt(10, 20)").getCriterion())
+        .isEqualTo(VariableCriterion.and(Lists.newArrayList( //
+            VariableCriterion.compare(Operator.GT, "AGE", 10.0), VariableCriterion.compare(Operator.GT, "AGE", 20.0))));
+  }
+
+  @Test
+  public void test_getCriterion_nested() {
+    assertThat(new JavascriptClause("($('AGE').le(65).or($('SEX').isNull())).and(($('SMOKER').any(true)).not())")
+        .getCriterion()).isEqualTo(VariableCriterion.and(Lists.newArrayList( //
+        VariableCriterion.or(Lists.newArrayList( //
+            VariableCriterion.compare(Operator.LE, "AGE", 65.0), VariableCriterion.isNull("SEX"))), //
+        VariableCriterion.not(VariableCriterion.in("SMOKER", Lists.newArrayList(true))))));
+    assertThat(new JavascriptClause("$('AGE').ge(18).and($('SEX').any('F'), $('SMOKER').isNotNull())").getCriterion())
+        .isEqualTo(VariableCriterion.and(Lists.newArrayList( //
+            VariableCriterion.compare(Operator.GE, "AGE", 18.0), //
+            VariableCriterion.in("SEX", Lists.newArrayList("F")), //
+            VariableCriterion.not(VariableCriterion.isNull("SMOKER")))));
+  }
+
+  @Test
+  public void test_getCriterion_notSimpleLiterals() {
+    assertThat(new JavascriptClause("$('SEX').any('F', null)").getCriterion()).isNull();
+    assertThat(new JavascriptClause("$('AGE').ge('18')").getCriterion()).isNull();
+    assertThat(new JavascriptClause("$('AGE').ge()").getCriterion()).isNull();
+    assertThat(new JavascriptClause("$('SEX').any()").getCriterion()).isNull();
+    assertThat(new JavascriptClause("$('AGE').ge(18).and($('SEX').whenNull('F').any('F'))").getCriterion()).isNull();
+  }
+
+  @Test
+  public void test_getCriterion_notSimpleTests() {
+    assertThat(new JavascriptClause("true").getCriterion()).isNull();
+    assertThat(new JavascriptClause("$('AGE').plus(1).ge(18)").getCriterion()).isNull();
+    assertThat(new JavascriptClause("$('AGE').ge($('MIN_AGE'))").getCriterion()).isNull();
+    assertThat(new JavascriptClause("$('other.table:SEX').any('F')").getCriterion()).isNull();
+    assertThat(new JavascriptClause("$('SEX').eq('F')").getCriterion()).isNull();
+    assertThat(new JavascriptClause("var age = 18; $('AGE').ge(age)").getCriterion()).isNull();
+    assertThat(new JavascriptClause("$('AGE').ge(").getCriterion()).isNull();
+  }
+
   private void assertSelect(String script, boolean expected) {
     JavascriptClause clause = new JavascriptClause(script);
     clause.initialise();
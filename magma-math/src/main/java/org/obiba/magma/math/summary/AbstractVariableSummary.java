@@ -83,6 +83,26 @@ public abstract class AbstractVariableSummary implements VariableSummary {
     TVariableSummaryBuilder addTable(@NotNull ValueTable table, @NotNull ValueSource variableValueSource);
 
     TVariableSummaryBuilder addValue(@NotNull Value value);
+
+    /**
+     * Whether {@link #merge(VariableSummaryBuilder)} is supported, otherwise the values are to be added to a single
+     * builder.
+     *
+     * @return
+     */
+    default boolean isMergeable() {
+      return false;
+    }
+
+    /**
+     * Add the values of a builder of the same variable that was fed with another partition of the entities.
+     *
+     * @param partial
+     * @return
+     */
+    default TVariableSummaryBuilder merge(@NotNull TVariableSummaryBuilder partial) {
+      throw new UnsupportedOperationException("Cannot merge summaries of variable " + getVariable().getName());
+    }
   }
 
 }
@@ -38,10 +38,14 @@ public class BinaryVariableSummaryFactory extends AbstractVariableSummaryFactory
   @NotNull
   @Override
   public BinaryVariableSummary getSummary() {
+    return newBuilder().addTable(getTable(), getValueSource()).build();
+  }
+
+  @NotNull
+  @Override
+  public BinaryVariableSummary.Builder newBuilder() {
     return new BinaryVariableSummary.Builder(getVariable()) //
-        .filter(offset, limit) //
-        .addTable(getTable(), getValueSource()) //
-        .build();
+        .filter(offset, limit);
   }
 
   public Integer getOffset() {
@@ -255,6 +255,21 @@ public class CategoricalVariableSummary extends AbstractVariableSummary implemen
       return this;
     }
 
+    @Override
+    public boolean isMergeable() {
+      return true;
+    }
+
+    @Override
+    public Builder merge(@NotNull Builder partial) {
+      if (summary.categoricalSummary != null || partial.summary.categoricalSummary != null) {
+        throw new IllegalStateException("Cannot merge summaries of variable " + summary.variable.getName() +
+            " that are already computed.");
+      }
+      summary.frequencyDist.merge(partial.summary.frequencyDist);
+      return this;
+    }
+
     public Builder filter(Integer offset, Integer limit) {
       summary.setOffset(offset);
       summary.setLimit(limit);
@@ -40,11 +40,15 @@ public class CategoricalVariableSummaryFactory extends AbstractVariableSummaryFa
   @NotNull
   @Override
   public CategoricalVariableSummary getSummary() {
+    return newBuilder().addTable(getTable(), getValueSource()).build();
+  }
+
+  @NotNull
+  @Override
+  public CategoricalVariableSummary.Builder newBuilder() {
     return new CategoricalVariableSummary.Builder(getVariable()) //
         .distinct(distinct) //
-        .filter(offset, limit) //
-        .addTable(getTable(), getValueSource()) //
-        .build();
+        .filter(offset, limit);
   }
 
   public boolean isDistinct() {
@@ -18,6 +18,7 @@ import org.obiba.magma.*;
 import org.obiba.magma.math.*;
 import org.obiba.magma.math.summary.support.DescriptiveContinuousSummary;
 import org.obiba.magma.math.summary.support.DefaultFrequency;
+import org.obiba.magma.math.summary.support.StreamingContinuousStatistics;
 import org.obiba.magma.type.IntegerType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,10 +60,19 @@ public class ContinuousVariableSummary extends AbstractVariableSummary implement
   @NotNull
   private final DescriptiveStatistics descriptiveStats = new DescriptiveStatistics();
 
+  // when not null, values are not kept and percentiles are estimated
+  @Nullable
+  private StreamingContinuousStatistics streamingStats;
+
+  private int sketchSize;
+
+  private int maxFrequencies;
+
   @Override
   public String getCacheKey(ValueTable table) {
     return ContinuousVariableSummaryFactory
-        .getCacheKey(variable, table, distribution, defaultPercentiles, intervals, getOffset(), getLimit());
+        .getCacheKey(variable, table, distribution, defaultPercentiles, intervals, getOffset(), getLimit(),
+            streamingStats == null ? null : sketchSize, streamingStats == null ? null : maxFrequencies);
   }
 
   private ContinuousVariableSummary(@NotNull Variable variable, @NotNull Distribution distribution) {
@@ -207,6 +217,59 @@ public class ContinuousVariableSummary extends AbstractVariableSummary implement
       return this;
     }
 
+    /**
+     * Compute the summary in bounded memory: values are not kept, percentiles and interval frequencies are estimated
+     * and the number of frequencies is capped. The error bounds are reported by the resulting
+     * {@link org.obiba.magma.math.summary.support.DefaultContinuousSummary}.
+     *
+     * @param sketchSize size of the percentiles sketch, the larger the more accurate
+     * @param maxFrequencies maximum number of frequencies to count
+     * @return
+     */
+    public Builder streaming(int sketchSize, int maxFrequencies) {
+      if (addedTable || addedValue) {
+        throw new IllegalStateException("Cannot switch to streaming for variable " + summary.getVariable().getName() +
+            " because values where previously added.");
+      }
+      summary.streamingStats = new StreamingContinuousStatistics(sketchSize, maxFrequencies);
+      summary.sketchSize = sketchSize;
+      summary.maxFrequencies = maxFrequencies;
+      return this;
+    }
+
+    /**
+     * Add the values of a builder that summarized another partition of the entities. Both builders must be in the same
+     * mode, with the same settings.
+     *
+     * @param partial
+     * @return
+     */
+    @Override
+    public boolean isMergeable() {
+      return true;
+    }
+
+    @Override
+    public Builder merge(@NotNull Builder partial) {
+      if ((summary.streamingStats == null) != (partial.summary.streamingStats == null)) {
+        throw new IllegalStateException("Cannot merge summaries of variable " + summary.getVariable().getName() +
+            " that are not computed in the same mode.");
+      }
+      if (summary.continuousSummary != null || partial.summary.continuousSummary != null) {
+        throw new IllegalStateException("Cannot merge summaries of variable " + summary.getVariable().getName() +
+            " that are already computed.");
+      }
+      if (summary.streamingStats != null) {
+        summary.streamingStats.merge(partial.summary.streamingStats);
+      } else {
+        for (double value : partial.summary.descriptiveStats.getValues()) {
+          summary.descriptiveStats.addValue(value);
+        }
+        summary.frequencyDist.merge(partial.summary.frequencyDist);
+      }
+      return this;
+    }
+
     @Override
     public Builder addValue(@NotNull Value value) {
       if (addedTable) {
@@ -254,7 +317,9 @@ public class ContinuousVariableSummary extends AbstractVariableSummary implement
     private void add(@NotNull Value value) {
       //noinspection ConstantConditions
       Preconditions.checkArgument(value != null, "value cannot be null");
-      if (value.isNull()) {
+      if (summary.streamingStats != null) {
+        addStreaming(summary.streamingStats, value);
+      } else if (value.isNull()) {
         summary.frequencyDist.addValue(NULL_NAME);
       } else {
         if (value.isSequence()) {
@@ -278,6 +343,21 @@ public class ContinuousVariableSummary extends AbstractVariableSummary implement
       }
     }
 
+    private void addStreaming(StreamingContinuousStatistics stats, Value value) {
+      if (value.isNull()) {
+        stats.addFrequency(NULL_NAME);
+      } else if (value.isSequence()) {
+        for (Value v : value.asSequence().getValue()) {
+          addStreaming(stats, v);
+        }
+      } else if (summary.missing.contains(value)) {
+        stats.addFrequency(value.toString());
+      } else {
+        stats.addValue(((Number) value.getValue()).doubleValue());
+        stats.addFrequency(NOT_NULL_NAME);
+      }
+    }
+
     /**
      * Returns an iterator of frequencyDist names
      */
@@ -294,7 +374,10 @@ public class ContinuousVariableSummary extends AbstractVariableSummary implement
     @SuppressWarnings("MagicNumber")
     private void compute() {
       log.trace("Start compute continuous {}", summary.variable.getName());
-      if (summary.continuousSummary == null) {
+      if (summary.continuousSummary == null && summary.streamingStats != null) {
+        summary.continuousSummary = summary.streamingStats.toSummary(summary.distribution, summary.defaultPercentiles,
+            summary.intervals, summary.getVariable().getValueType() == IntegerType.get());
+      } else if (summary.continuousSummary == null) {
         DescriptiveContinuousSummary continuousSummary = new DescriptiveContinuousSummary(summary.descriptiveStats);
         // frequencies
         Iterator<String> concat = freqNames(summary.frequencyDist);
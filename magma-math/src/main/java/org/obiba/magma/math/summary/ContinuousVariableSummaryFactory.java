@@ -20,6 +20,8 @@ import org.obiba.magma.Variable;
 
 import com.google.common.base.Joiner;
 import org.obiba.magma.math.Distribution;
+import org.obiba.magma.math.summary.support.QuantileSketch;
+import org.obiba.magma.math.summary.support.TopFrequencies;
 
 public class ContinuousVariableSummaryFactory extends AbstractVariableSummaryFactory<ContinuousVariableSummary> {
 
@@ -33,31 +35,63 @@ public class ContinuousVariableSummaryFactory extends AbstractVariableSummaryFac
 
   private Integer limit;
 
+  private Integer sketchSize;
+
+  private Integer maxFrequencies;
+
   @NotNull
   @Override
   public String getCacheKey() {
-    return getCacheKey(getVariable(), getTable(), distribution, percentiles, intervals, offset, limit);
+    return getCacheKey(getVariable(), getTable(), distribution, percentiles, intervals, offset, limit, sketchSize,
+        maxFrequencies);
   }
 
   @SuppressWarnings("PMD.ExcessiveParameterList")
   public static String getCacheKey(Variable variable, ValueTable table, Distribution distribution,
       Collection<Double> percentiles, int intervals, Integer offset, Integer limit) {
+    return getCacheKey(variable, table, distribution, percentiles, intervals, offset, limit, null, null);
+  }
+
+  @SuppressWarnings("PMD.ExcessiveParameterList")
+  public static String getCacheKey(Variable variable, ValueTable table, Distribution distribution,
+      Collection<Double> percentiles, int intervals, Integer offset, Integer limit, Integer sketchSize,
+      Integer maxFrequencies) {
     String key = variable.getVariableReference(table) + ";d=" + distribution + ";i=" + intervals;
     if(percentiles != null && percentiles.size() > 0) key += ";p=" + Joiner.on(",").skipNulls().join(percentiles);
     if(offset != null) key += ";o=" + offset;
     if(limit != null) key += ";l=" + limit;
+    if(sketchSize != null) key += ";s=" + sketchSize;
+    if(maxFrequencies != null) key += ";f=" + maxFrequencies;
     return key;
   }
 
   @NotNull
   @Override
   public ContinuousVariableSummary getSummary() {
-    return new ContinuousVariableSummary.Builder(getVariable(), distribution) //
+    return newBuilder().addTable(getTable(), getValueSource()).build();
+  }
+
+  @NotNull
+  @Override
+  public ContinuousVariableSummary.Builder newBuilder() {
+    ContinuousVariableSummary.Builder builder = new ContinuousVariableSummary.Builder(getVariable(), distribution) //
         .defaultPercentiles(percentiles) //
         .intervals(intervals) //
-        .filter(offset, limit) //
-        .addTable(getTable(), getValueSource()) //
-        .build();
+        .filter(offset, limit);
+    if(isStreaming()) {
+      builder.streaming(sketchSize == null ? QuantileSketch.DEFAULT_SIZE : sketchSize,
+          maxFrequencies == null ? TopFrequencies.DEFAULT_CAPACITY : maxFrequencies);
+    }
+    return builder;
+  }
+
+  /**
+   * Whether the summary is computed in bounded memory, see {@link ContinuousVariableSummary.Builder#streaming(int, int)}.
+   *
+   * @return
+   */
+  public boolean isStreaming() {
+    return sketchSize != null || maxFrequencies != null;
   }
 
   public Distribution getDistribution() {
@@ -100,6 +134,22 @@ public class ContinuousVariableSummaryFactory extends AbstractVariableSummaryFac
     this.limit = limit;
   }
 
+  public Integer getSketchSize() {
+    return sketchSize;
+  }
+
+  public void setSketchSize(Integer sketchSize) {
+    this.sketchSize = sketchSize;
+  }
+
+  public Integer getMaxFrequencies() {
+    return maxFrequencies;
+  }
+
+  public void setMaxFrequencies(Integer maxFrequencies) {
+    this.maxFrequencies = maxFrequencies;
+  }
+
   @SuppressWarnings("ParameterHidesMemberVariable")
   public static class Builder {
 
@@ -147,6 +197,16 @@ public class ContinuousVariableSummaryFactory extends AbstractVariableSummaryFac
       return this;
     }
 
+    public Builder sketchSize(Integer sketchSize) {
+      factory.sketchSize = sketchSize;
+      return this;
+    }
+
+    public Builder maxFrequencies(Integer maxFrequencies) {
+      factory.maxFrequencies = maxFrequencies;
+      return this;
+    }
+
     public ContinuousVariableSummaryFactory build() {
       return factory;
     }
@@ -205,6 +205,21 @@ public class DefaultVariableSummary extends AbstractVariableSummary implements F
       }
     }
 
+    @Override
+    public boolean isMergeable() {
+      return true;
+    }
+
+    @Override
+    public Builder merge(@NotNull Builder partial) {
+      if (summary.frequenciesSummary != null || partial.summary.frequenciesSummary != null) {
+        throw new IllegalStateException("Cannot merge summaries of variable " + summary.variable.getName() +
+            " that are already computed.");
+      }
+      summary.frequencyDist.merge(partial.summary.frequencyDist);
+      return this;
+    }
+
     public Builder filter(Integer offset, Integer limit) {
       summary.setOffset(offset);
       summary.setLimit(limit);
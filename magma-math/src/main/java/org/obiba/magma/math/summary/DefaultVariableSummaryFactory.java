@@ -38,10 +38,14 @@ public class DefaultVariableSummaryFactory extends AbstractVariableSummaryFactor
   @NotNull
   @Override
   public DefaultVariableSummary getSummary() {
+    return newBuilder().addTable(getTable(), getValueSource()).build();
+  }
+
+  @NotNull
+  @Override
+  public DefaultVariableSummary.Builder newBuilder() {
     return new DefaultVariableSummary.Builder(getVariable()) //
-        .filter(offset, limit) //
-        .addTable(getTable(), getValueSource()) //
-        .build();
+        .filter(offset, limit);
   }
 
   public Integer getOffset() {
@@ -226,6 +226,22 @@ public class GeoVariableSummary extends AbstractVariableSummary implements GeoSu
       }
     }
 
+    @Override
+    public boolean isMergeable() {
+      return true;
+    }
+
+    @Override
+    public Builder merge(@NotNull Builder partial) {
+      if (summary.geoSummary != null || partial.summary.geoSummary != null) {
+        throw new IllegalStateException("Cannot merge summaries of variable " + summary.variable.getName() +
+            " that are already computed.");
+      }
+      summary.frequencyDist.merge(partial.summary.frequencyDist);
+      coords.addAll(partial.coords);
+      return this;
+    }
+
     public Builder filter(Integer offset, Integer limit) {
       summary.setOffset(offset);
       summary.setLimit(limit);
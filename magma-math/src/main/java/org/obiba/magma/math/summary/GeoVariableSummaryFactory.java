@@ -38,10 +38,14 @@ public class GeoVariableSummaryFactory extends AbstractVariableSummaryFactory<Ge
   @NotNull
   @Override
   public GeoVariableSummary getSummary() {
+    return newBuilder().addTable(getTable(), getValueSource()).build();
+  }
+
+  @NotNull
+  @Override
+  public GeoVariableSummary.Builder newBuilder() {
     return new GeoVariableSummary.Builder(getVariable()) //
-        .filter(offset, limit) //
-        .addTable(getTable(), getValueSource()) //
-        .build();
+        .filter(offset, limit);
   }
 
   public Integer getOffset() {
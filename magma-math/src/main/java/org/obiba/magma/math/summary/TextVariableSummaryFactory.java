@@ -38,10 +38,14 @@ public class TextVariableSummaryFactory extends AbstractVariableSummaryFactory<T
   @NotNull
   @Override
   public TextVariableSummary getSummary() {
+    return newBuilder().addTable(getTable(), getValueSource()).build();
+  }
+
+  @NotNull
+  @Override
+  public TextVariableSummary.Builder newBuilder() {
     return new TextVariableSummary.Builder(getVariable()) //
-        .filter(offset, limit) //
-        .addTable(getTable(), getValueSource()) //
-        .build();
+        .filter(offset, limit);
   }
 
   public Integer getOffset() {
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.obiba.magma.math.summary;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.collect.Maps;
+import org.obiba.magma.MagmaRuntimeException;
+import org.obiba.magma.MultiVectorSource;
+import org.obiba.magma.Value;
+import org.obiba.magma.ValueSet;
+import org.obiba.magma.ValueSource;
+import org.obiba.magma.ValueTable;
+import org.obiba.magma.Variable;
+import org.obiba.magma.VariableEntity;
+import org.obiba.magma.math.summary.AbstractVariableSummary.VariableSummaryBuilder;
+import org.obiba.magma.support.Disposables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.Nullable;
+import jakarta.validation.constraints.NotNull;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the summaries of several variables of a table in a single pass over its value sets, instead of reading a
+ * vector per variable. The entities are split into contiguous partitions that are read in parallel, by batches of
+ * value sets: each partition feeds its own summary builders, that are merged at the end. When all the summaries are
+ * about variables of the table read from their own value source, the values are read in rows from the
+ * {@link MultiVectorSource} of the table instead, which reads the values of all the variables in a single request.
+ * When some of the summary builders cannot be merged, the entities are read in a single partition.
+ * <p>
+ * The summaries that do not require to read the values (pre-computed by the vector source, or no vector source), or
+ * that have no builder, are delegated to their factory.
+ */
+public class ValueTableSummarizer {
+
+  private static final Logger log = LoggerFactory.getLogger(ValueTableSummarizer.class);
+
+  public static final int DEFAULT_BATCH_SIZE = 100;
+
+  @NotNull
+  private final ValueTable table;
+
+  private final List<VariableSummaryFactory<?>> factories = Lists.newArrayList();
+
+  private int partitions = 1;
+
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  private ValueTableSummarizer(@NotNull ValueTable table) {
+    this.table = table;
+  }
+
+  /**
+   * Compute the summaries.
+   *
+   * @return the summaries, in the order of their factories
+   */
+  @NotNull
+  public List<VariableSummary> summarize() {
+    VariableSummary[] summaries = new VariableSummary[factories.size()];
+    List<Integer> scanned = Lists.newArrayList();
+    for (int i = 0; i < factories.size(); i++) {
+      if (isReadByFactory(factories.get(i))) {
+        summaries[i] = factories.get(i).getSummary();
+      } else {
+        scanned.add(i);
+      }
+    }
+    if (!scanned.isEmpty()) {
+      List<VariableSummaryFactory<?>> scannedFactories = Lists.newArrayList();
+      for (int i : scanned) {
+        scannedFactories.add(factories.get(i));
+      }
+      List<VariableSummary> scannedSummaries = new Scan(scannedFactories).summarize();
+      for (int i = 0; i < scanned.size(); i++) {
+        summaries[scanned.get(i)] = scannedSummaries.get(i);
+      }
+    }
+    return Arrays.asList(summaries);
+  }
+
+  /**
+   * Whether the factory can compute the summary without reading the values, or is the only one able to compute it.
+   *
+   * @param factory
+   * @return
+   */
+  private boolean isReadByFactory(VariableSummaryFactory<?> factory) {
+    ValueSource source = factory.getValueSource();
+    return !source.supportVectorSource() || source.asVectorSource().supportVectorSummary() ||
+        factory.newBuilder() == null;
+  }
+
+  /**
+   * A single pass over the entities of the table, that feeds the builders of several summaries.
+   */
+  private class Scan {
+
+    private final List<VariableSummaryFactory<?>> factories;
+
+    private final ValueSource[] sources;
+
+    private final List<VariableEntity> entities;
+
+    // window of entities of each summary, as defined by its offset and limit
+    private final int[] from;
+
+    private final int[] to;
+
+    // rows of the values of the variables of the summaries, null when they are read from the value sets
+    @Nullable
+    private final MultiVectorSource rows;
+
+    // position of the values of each summary in the rows
+    private final int[] columns;
+
+    // whether the builders of partitions read in parallel can be merged
+    private final boolean mergeable;
+
+    private Scan(List<VariableSummaryFactory<?>> factories) {
+      this.factories = factories;
+      entities = table.getVariableEntities();
+      sources = new ValueSource[factories.size()];
+      from = new int[factories.size()];
+      to = new int[factories.size()];
+      for (int i = 0; i < factories.size(); i++) {
+        VariableSummaryFactory<?> factory = factories.get(i);
+        sources[i] = factory.getValueSource();
+        Integer offset = factory.getOffset();
+        Integer limit = factory.getLimit();
+        from[i] = Math.min(offset == null ? 0 : Math.max(offset, 0), entities.size());
+        to[i] = limit == null || limit < 0 ? entities.size() : Math.min(from[i] + limit, entities.size());
+      }
+      columns = new int[factories.size()];
+      rows = newMultiVectorSource();
+      mergeable = factories.stream().allMatch(factory -> factory.newBuilder().isMergeable());
+    }
+
+    /**
+     * The multi-vector source of the variables of the summaries, if their values are the ones of the table's
+     * variables.
+     *
+     * @return null if some values are not read from the value source of a variable of the table
+     */
+    @Nullable
+    private MultiVectorSource newMultiVectorSource() {
+      Map<String, Integer> positions = Maps.newLinkedHashMap();
+      List<Variable> variables = Lists.newArrayList();
+      for (int i = 0; i < sources.length; i++) {
+        Variable variable = factories.get(i).getVariable();
+        if (variable == null || !table.hasVariable(variable.getName()) ||
+            sources[i] != table.getVariableValueSource(variable.getName())) return null;
+        Integer position = positions.get(variable.getName());
+        if (position == null) {
+          position = variables.size();
+          positions.put(variable.getName(), position);
+          variables.add(table.getVariable(variable.getName()));
+        }
+        columns[i] = position;
+      }
+      return table.getMultiVectorSource(variables);
+    }
+
+    private List<VariableSummary> summarize() {
+      int start = Arrays.stream(from).min().getAsInt();
+      int end = Arrays.stream(to).max().getAsInt();
+      int count = mergeable ? Math.max(1, Math.min(partitions, (end - start + batchSize - 1) / batchSize)) : 1;
+      log.debug("Summarizing {} variables of table {} in {} partitions", factories.size(), table.getName(), count);
+
+      List<VariableSummaryBuilder<?, ?>[]> partials;
+      if (count == 1) {
+        partials = Lists.<VariableSummaryBuilder<?, ?>[]>newArrayList(read(start, end));
+      } else {
+        List<Callable<VariableSummaryBuilder<?, ?>[]>> tasks = Lists.newArrayList();
+        int size = (end - start + count - 1) / count;
+        for (int partitionStart = start; partitionStart < end; partitionStart += size) {
+          int partitionEnd = Math.min(partitionStart + size, end);
+          int first = partitionStart;
+          tasks.add(() -> read(first, partitionEnd));
+        }
+        partials = invokeAll(tasks);
+      }
+
+      VariableSummaryBuilder<?, ?>[] builders = partials.get(0);
+      for (VariableSummaryBuilder<?, ?>[] partial : partials.subList(1, partials.size())) {
+        for (int i = 0; i < builders.length; i++) {
+          merge(builders[i], partial[i]);
+        }
+      }
+      List<VariableSummary> summaries = Lists.newArrayListWithCapacity(builders.length);
+      for (VariableSummaryBuilder<?, ?> builder : builders) {
+        summaries.add(builder.build());
+      }
+      return summaries;
+    }
+
+    /**
+     * Read the value sets of the entities in [partitionStart, partitionEnd[ by batches.
+     *
+     * @param partitionStart
+     * @param partitionEnd
+     * @return the builders fed with the values of the partition
+     */
+    private VariableSummaryBuilder<?, ?>[] read(int partitionStart, int partitionEnd) {
+      VariableSummaryBuilder<?, ?>[] builders = new VariableSummaryBuilder<?, ?>[factories.size()];
+      for (int i = 0; i < builders.length; i++) {
+        builders[i] = factories.get(i).newBuilder();
+      }
+      if (rows != null) {
+        readRows(partitionStart, partitionEnd, builders);
+        return builders;
+      }
+      for (int batchStart = partitionStart; batchStart < partitionEnd; batchStart += batchSize) {
+        int position = batchStart;
+        int batchEnd = Math.min(batchStart + batchSize, partitionEnd);
+        for (ValueSet valueSet : table.getValueSets(entities.subList(batchStart, batchEnd))) {
+          for (int i = 0; i < builders.length; i++) {
+            if (position >= from[i] && position < to[i]) {
+              builders[i].addValue(sources[i].getValue(valueSet));
+            }
+          }
+          position++;
+        }
+      }
+      return builders;
+    }
+
+    /**
+     * Read the rows of values of the entities in [partitionStart, partitionEnd[, the multi-vector source reads them by
+     * batches.
+     *
+     * @param partitionStart
+     * @param partitionEnd
+     * @param builders
+     */
+    private void readRows(int partitionStart, int partitionEnd, VariableSummaryBuilder<?, ?>[] builders) {
+      Iterator<Value[]> values = rows.getValues(entities.subList(partitionStart, partitionEnd)).iterator();
+      try {
+        for (int position = partitionStart; position < partitionEnd; position++) {
+          Value[] row = values.next();
+          for (int i = 0; i < builders.length; i++) {
+            if (position >= from[i] && position < to[i]) {
+              builders[i].addValue(row[columns[i]]);
+            }
+          }
+        }
+      } finally {
+        Disposables.silentlyDispose(values);
+      }
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+      ExecutorService executor = Executors.newFixedThreadPool(tasks.size(),
+          new ThreadFactoryBuilder().setNameFormat("summary-" + table.getName() + "-%d").setDaemon(true).build());
+      try {
+        List<T> results = Lists.newArrayListWithCapacity(tasks.size());
+        for (Future<T> future : executor.invokeAll(tasks)) {
+          results.add(future.get());
+        }
+        return results;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MagmaRuntimeException("Interrupted while summarizing table " + table.getName());
+      } catch (ExecutionException e) {
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new MagmaRuntimeException(e.getCause());
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void merge(VariableSummaryBuilder builder, VariableSummaryBuilder partial) {
+      builder.merge(partial);
+    }
+  }
+
+  @SuppressWarnings("ParameterHidesMemberVariable")
+  public static class Builder {
+
+    private final ValueTableSummarizer summarizer;
+
+    private Builder(@NotNull ValueTable table) {
+      summarizer = new ValueTableSummarizer(table);
+    }
+
+    public static Builder newSummarizer(@NotNull ValueTable table) {
+      //noinspection ConstantConditions
+      Preconditions.checkArgument(table != null, "table cannot be null");
+      return new Builder(table);
+    }
+
+    /**
+     * Add a summary to compute, the factory being set up with a variable of the table and its value source.
+     *
+     * @param factory
+     * @return
+     */
+    public Builder add(@NotNull VariableSummaryFactory<?> factory) {
+      //noinspection ConstantConditions
+      Preconditions.checkArgument(factory != null, "factory cannot be null");
+      summarizer.factories.add(factory);
+      return this;
+    }
+
+    /**
+     * Number of partitions of the entities that are read in parallel.
+     *
+     * @param partitions
+     * @return
+     */
+    public Builder partitions(int partitions) {
+      Preconditions.checkArgument(partitions > 0, "partitions must be positive");
+      summarizer.partitions = partitions;
+      return this;
+    }
+
+    /**
+     * Number of value sets that are read at once.
+     *
+     * @param batchSize
+     * @return
+     */
+    public Builder batchSize(int batchSize) {
+      Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+      summarizer.batchSize = batchSize;
+      return this;
+    }
+
+    public ValueTableSummarizer build() {
+      return summarizer;
+    }
+  }
+
+}
@@ -10,6 +10,7 @@
 
 package org.obiba.magma.math.summary;
 
+import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.NotNull;
 
 import org.obiba.magma.ValueSource;
@@ -21,6 +22,16 @@ public interface VariableSummaryFactory<TVariableSummary extends VariableSummary
   @NotNull
   TVariableSummary getSummary();
 
+  /**
+   * A builder configured like the summary, to which values are to be added.
+   *
+   * @return null if the summary can only be computed by {@link #getSummary()}
+   */
+  @Nullable
+  default AbstractVariableSummary.VariableSummaryBuilder<TVariableSummary, ?> newBuilder() {
+    return null;
+  }
+
   @NotNull
   String getCacheKey();
 
@@ -38,4 +49,14 @@ public interface VariableSummaryFactory<TVariableSummary extends VariableSummary
   void setTable(ValueTable table);
 
   void setVariable(Variable variable);
+
+  @Nullable
+  default Integer getOffset() {
+    return null;
+  }
+
+  @Nullable
+  default Integer getLimit() {
+    return null;
+  }
 }
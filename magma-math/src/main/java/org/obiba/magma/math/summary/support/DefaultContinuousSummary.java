@@ -33,6 +33,8 @@ public class DefaultContinuousSummary extends DefaultFrequenciesSummary implemen
   private double stddev = 0;
   private double skewness = 0;
   private double kurtosis = 0;
+  private double percentileRankError = 0;
+  private long frequencyError = 0;
 
   @Override
   public double getMin() {
@@ -133,6 +135,33 @@ public class DefaultContinuousSummary extends DefaultFrequenciesSummary implemen
     this.kurtosis = kurtosis;
   }
 
+  /**
+   * Error of the percentiles (and median) when they are estimated, as a fraction of the number of values: the actual
+   * rank of an estimated percentile is within this error of its requested rank.
+   *
+   * @return 0 if the percentiles are exact
+   */
+  public double getPercentileRankError() {
+    return percentileRankError;
+  }
+
+  public void setPercentileRankError(double percentileRankError) {
+    this.percentileRankError = percentileRankError;
+  }
+
+  /**
+   * Maximum number of observations that may be missing in the counts of the frequencies, when their number is capped.
+   *
+   * @return 0 if the frequencies are exact
+   */
+  public long getFrequencyError() {
+    return frequencyError;
+  }
+
+  public void setFrequencyError(long frequencyError) {
+    this.frequencyError = frequencyError;
+  }
+
   @Override
   public Iterable<Double> getPercentiles() {
     return percentiles;
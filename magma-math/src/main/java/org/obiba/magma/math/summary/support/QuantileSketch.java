@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2022 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.math.summary.support;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mergeable quantile sketch of a stream of doubles (KLL sketch, Karnin, Lang and Liberty 2016). The values are kept in
+ * a hierarchy of compactors: when a compactor is full, its sorted values are halved and every other value is promoted
+ * to the next level, where it weighs twice as much. The memory is bounded by about three times the sketch size,
+ * whatever the number of values.
+ * <p>
+ * As long as no compaction happened, all the values are retained and the percentiles are exact.
+ */
+public class QuantileSketch implements Serializable {
+
+  private static final long serialVersionUID = -3458706233620867367L;
+
+  public static final int DEFAULT_SIZE = 200;
+
+  private static final double CAPACITY_DECAY = 2d / 3d;
+
+  private static final int MIN_CAPACITY = 8;
+
+  private final int size;
+
+  private final List<Compactor> compactors = Lists.newArrayList();
+
+  private final Random random = new Random();
+
+  private long n = 0;
+
+  private double min = Double.NaN;
+
+  private double max = Double.NaN;
+
+  /**
+   * @param size the number of values of the top level compactor, the larger the more accurate
+   */
+  public QuantileSketch(int size) {
+    Preconditions.checkArgument(size >= MIN_CAPACITY, "sketch size must be at least " + MIN_CAPACITY);
+    this.size = size;
+    compactors.add(new Compactor());
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public long getN() {
+    return n;
+  }
+
+  public double getMin() {
+    return min;
+  }
+
+  public double getMax() {
+    return max;
+  }
+
+  public void add(double value) {
+    if (n == 0 || value < min) min = value;
+    if (n == 0 || value > max) max = value;
+    n++;
+    compactors.get(0).add(value);
+    compress();
+  }
+
+  /**
+   * Add the values of another sketch of the same size, typically computed on another partition of the entities.
+   *
+   * @param other
+   */
+  public void merge(QuantileSketch other) {
+    Preconditions.checkArgument(other.size == size, "cannot merge sketches of different sizes");
+    if (other.n == 0) return;
+    for (int level = 0; level < other.compactors.size(); level++) {
+      if (level == compactors.size()) compactors.add(new Compactor());
+      Compactor compactor = other.compactors.get(level);
+      compactors.get(level).addAll(compactor.values, compactor.length);
+    }
+    min = n == 0 ? other.min : Math.min(min, other.min);
+    max = n == 0 ? other.max : Math.max(max, other.max);
+    n += other.n;
+    compress();
+  }
+
+  /**
+   * Whether all the values are retained, in which case percentiles and ranks are exact.
+   *
+   * @return
+   */
+  public boolean isExact() {
+    return compactors.get(0).length == n;
+  }
+
+  /**
+   * Approximate rank error of the percentiles, as a fraction of the number of values, with a 99% confidence (from the
+   * empirical measures of the Apache DataSketches KLL implementation).
+   *
+   * @return 0 if the percentiles are exact
+   */
+  public double getNormalizedRankError() {
+    return isExact() ? 0 : 2.296 / Math.pow(size, 0.9723);
+  }
+
+  /**
+   * Estimate the value below which the given percentage of values fall.
+   *
+   * @param p percentage, in ]0,100]
+   * @return NaN if there are no values
+   */
+  public double getPercentile(double p) {
+    Preconditions.checkArgument(p > 0 && p <= 100, "percentile must be in ]0,100]");
+    if (n == 0) return Double.NaN;
+    if (isExact()) {
+      // same estimation as DescriptiveStatistics
+      return new Percentile().evaluate(compactors.get(0).values, 0, (int) n, p);
+    }
+    double[][] weighted = weightedValues();
+    double target = p / 100 * n;
+    long cumulative = 0;
+    for (double[] value : weighted) {
+      cumulative += (long) value[1];
+      if (cumulative >= target) return value[0];
+    }
+    return max;
+  }
+
+  /**
+   * Estimate the fraction of values that are strictly lower than the given one.
+   *
+   * @param value
+   * @return
+   */
+  public double getRank(double value) {
+    if (n == 0) return Double.NaN;
+    if (value <= min) return 0;
+    if (value > max) return 1;
+    long weight = 0;
+    for (int level = 0; level < compactors.size(); level++) {
+      Compactor compactor = compactors.get(level);
+      for (int i = 0; i < compactor.length; i++) {
+        if (compactor.values[i] < value) weight += 1L << level;
+      }
+    }
+    return (double) weight / n;
+  }
+
+  /**
+   * Retained values and their weights, sorted by value.
+   *
+   * @return
+   */
+  private double[][] weightedValues() {
+    int count = 0;
+    for (Compactor compactor : compactors) {
+      count += compactor.length;
+    }
+    double[][] weighted = new double[count][];
+    int i = 0;
+    for (int level = 0; level < compactors.size(); level++) {
+      Compactor compactor = compactors.get(level);
+      for (int j = 0; j < compactor.length; j++) {
+        weighted[i++] = new double[] { compactor.values[j], 1L << level };
+      }
+    }
+    Arrays.sort(weighted, (a, b) -> Double.compare(a[0], b[0]));
+    return weighted;
+  }
+
+  private int capacity(int level) {
+    int depth = compactors.size() - level - 1;
+    return Math.max(MIN_CAPACITY, (int) Math.ceil(size * Math.pow(CAPACITY_DECAY, depth)));
+  }
+
+  private void compress() {
+    while (true) {
+      int retained = 0;
+      int capacity = 0;
+      for (int level = 0; level < compactors.size(); level++) {
+        retained += compactors.get(level).length;
+        capacity += capacity(level);
+      }
+      if (retained < capacity) return;
+      for (int level = 0; level < compactors.size(); level++) {
+        if (compactors.get(level).length >= capacity(level)) {
+          if (level + 1 == compactors.size()) compactors.add(new Compactor());
+          compactors.get(level).compact(compactors.get(level + 1), random.nextBoolean() ? 1 : 0);
+          break;
+        }
+      }
+    }
+  }
+
+  private static class Compactor implements Serializable {
+
+    private static final long serialVersionUID = 5206924400519001462L;
+
+    private double[] values = new double[MIN_CAPACITY];
+
+    private int length = 0;
+
+    private void add(double value) {
+      if (length == values.length) values = Arrays.copyOf(values, length * 2);
+      values[length++] = value;
+    }
+
+    private void addAll(double[] other, int otherLength) {
+      if (length + otherLength > values.length) {
+        values = Arrays.copyOf(values, Math.max(length + otherLength, length * 2));
+      }
+      System.arraycopy(other, 0, values, length, otherLength);
+      length += otherLength;
+    }
+
+    /**
+     * Promote every other sorted value to the next level. With an odd number of values, the largest one stays.
+     *
+     * @param next
+     * @param offset 0 or 1, picked at random so that the promoted values are not biased
+     */
+    private void compact(Compactor next, int offset) {
+      Arrays.sort(values, 0, length);
+      int pairs = length / 2 * 2;
+      for (int i = offset; i < pairs; i += 2) {
+        next.add(values[i]);
+      }
+      if (pairs < length) values[0] = values[length - 1];
+      length -= pairs;
+    }
+  }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2022 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.math.summary.support;
+
+import com.google.common.collect.Ordering;
+import org.apache.commons.math3.distribution.ExponentialDistribution;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.distribution.RealDistribution;
+import org.obiba.magma.math.Distribution;
+import org.obiba.magma.math.FrequenciesSummary;
+import org.obiba.magma.math.summary.IntervalFrequency;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Bounded memory statistics of a continuous variable: moments, percentiles sketch and frequencies of the non-numeric
+ * observations (null values, missing categories). Statistics computed on partitions of the entities can be merged.
+ */
+public class StreamingContinuousStatistics implements Serializable {
+
+  private static final long serialVersionUID = 6227440069429102815L;
+
+  private final StreamingMoments moments = new StreamingMoments();
+
+  private final QuantileSketch sketch;
+
+  private final TopFrequencies frequencies;
+
+  /**
+   * @param sketchSize size of the percentiles sketch, see {@link QuantileSketch}
+   * @param maxFrequencies maximum number of frequencies to count, see {@link TopFrequencies}
+   */
+  public StreamingContinuousStatistics(int sketchSize, int maxFrequencies) {
+    sketch = new QuantileSketch(sketchSize);
+    frequencies = new TopFrequencies(maxFrequencies);
+  }
+
+  public StreamingContinuousStatistics() {
+    this(QuantileSketch.DEFAULT_SIZE, TopFrequencies.DEFAULT_CAPACITY);
+  }
+
+  public void addValue(double value) {
+    moments.add(value);
+    sketch.add(value);
+  }
+
+  public void addFrequency(String name) {
+    frequencies.add(name);
+  }
+
+  public void merge(StreamingContinuousStatistics other) {
+    moments.merge(other.moments);
+    sketch.merge(other.sketch);
+    frequencies.merge(other.frequencies);
+  }
+
+  public long getN() {
+    return moments.getN();
+  }
+
+  /**
+   * Compute the summary, the way {@link DescriptiveContinuousSummary} does from all the values.
+   *
+   * @param distribution
+   * @param defaultPercentiles
+   * @param intervals
+   * @param roundToIntegers
+   * @return
+   */
+  public DefaultContinuousSummary toSummary(Distribution distribution, List<Double> defaultPercentiles, int intervals,
+      boolean roundToIntegers) {
+    DefaultContinuousSummary summary = new DefaultContinuousSummary();
+    summary.setN(moments.getN());
+    summary.setMin(moments.getMin());
+    summary.setMax(moments.getMax());
+    summary.setSum(moments.getSum());
+    summary.setSumsq(moments.getSumsq());
+    summary.setMean(moments.getMean());
+    summary.setMedian(moments.getN() == 0 ? Double.NaN : sketch.getPercentile(50));
+    summary.setGeometricMean(moments.getGeometricMean());
+    summary.setVariance(moments.getVariance());
+    summary.setStandardDeviation(moments.getStandardDeviation());
+    summary.setSkewness(moments.getSkewness());
+    summary.setKurtosis(moments.getKurtosis());
+    summary.setPercentileRankError(sketch.getNormalizedRankError());
+    summary.setFrequencyError(frequencies.getMaxError());
+
+    for (String name : Ordering.natural().sortedCopy(frequencies.getNames())) {
+      long count = frequencies.getCount(name);
+      summary.addFrequency(new DefaultFrequency(name, count, (double) count / frequencies.getN(),
+          !FrequenciesSummary.NOT_NULL_NAME.equals(name)));
+    }
+
+    double variance = moments.getVariance();
+    if (!(Double.isNaN(variance) || Double.isInfinite(variance) || variance <= 0)) {
+      addIntervalFrequencies(summary, intervals, roundToIntegers);
+      RealDistribution realDistribution = getDistribution(distribution);
+      for (Double p : defaultPercentiles) {
+        summary.addPercentile(sketch.getPercentile(p));
+        if (realDistribution != null) {
+          summary.addDistributionPercentile(realDistribution.inverseCumulativeProbability(p / 100d));
+        }
+      }
+    }
+    return summary;
+  }
+
+  /**
+   * Frequencies of the intervals, derived from the ranks of their bounds.
+   */
+  private void addIntervalFrequencies(DefaultContinuousSummary summary, int intervals, boolean roundToIntegers) {
+    long n = sketch.getN();
+    IntervalFrequency intervalFrequency = new IntervalFrequency(moments.getMin(), moments.getMax(), intervals,
+        roundToIntegers);
+    for (IntervalFrequency.Interval interval : intervalFrequency.intervals()) {
+      long freq = Math.round(n * sketch.getRank(interval.getUpper())) - Math.round(n * sketch.getRank(interval.getLower()));
+      DefaultInterval defaultInterval = new DefaultInterval();
+      defaultInterval.setLower(interval.getLower());
+      defaultInterval.setUpper(interval.getUpper());
+      defaultInterval.setFreq(freq);
+      defaultInterval.setDensity(freq / (interval.getUpper() - interval.getLower()) / n);
+      summary.addIntervalFrequency(defaultInterval);
+    }
+  }
+
+  private RealDistribution getDistribution(Distribution distribution) {
+    if (distribution.equals(Distribution.normal)) {
+      double stddev = moments.getStandardDeviation();
+      return stddev > 0 ? new NormalDistribution(moments.getMean(), stddev) : null;
+    } else {
+      return new ExponentialDistribution(moments.getMean());
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2022 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.math.summary.support;
+
+import java.io.Serializable;
+
+/**
+ * Online and mergeable accumulator of the central moments of a stream of doubles (Pébay 2008), from which the mean,
+ * variance, skewness and kurtosis are derived the same way as {@link
+ * org.apache.commons.math3.stat.descriptive.DescriptiveStatistics} does, without keeping the values.
+ */
+public class StreamingMoments implements Serializable {
+
+  private static final long serialVersionUID = 4373367000580463262L;
+
+  // below, DescriptiveStatistics considers the values as constant
+  private static final double MIN_VARIANCE = 10E-20;
+
+  private long n = 0;
+
+  private double min = Double.NaN;
+
+  private double max = Double.NaN;
+
+  private double sum = 0;
+
+  private double sumsq = 0;
+
+  private double sumOfLogs = 0;
+
+  private double mean = 0;
+
+  // sums of the powers of the differences to the mean
+  private double m2 = 0;
+
+  private double m3 = 0;
+
+  private double m4 = 0;
+
+  public void add(double value) {
+    if (n == 0 || value < min) min = value;
+    if (n == 0 || value > max) max = value;
+    sum += value;
+    sumsq += value * value;
+    sumOfLogs += Math.log(value);
+
+    long n1 = n;
+    n++;
+    double delta = value - mean;
+    double deltaN = delta / n;
+    double deltaN2 = deltaN * deltaN;
+    double term1 = delta * deltaN * n1;
+    mean += deltaN;
+    m4 += term1 * deltaN2 * (n * n - 3 * n + 3) + 6 * deltaN2 * m2 - 4 * deltaN * m3;
+    m3 += term1 * deltaN * (n - 2) - 3 * deltaN * m2;
+    m2 += term1;
+  }
+
+  /**
+   * Add the moments of another stream, typically computed on another partition of the entities.
+   *
+   * @param other
+   */
+  public void merge(StreamingMoments other) {
+    if (other.n == 0) return;
+    if (n == 0) {
+      copy(other);
+      return;
+    }
+    double na = n;
+    double nb = other.n;
+    double total = na + nb;
+    double delta = other.mean - mean;
+    double delta2 = delta * delta;
+
+    double mergedM2 = m2 + other.m2 + delta2 * na * nb / total;
+    double mergedM3 = m3 + other.m3 + delta2 * delta * na * nb * (na - nb) / (total * total) +
+        3 * delta * (na * other.m2 - nb * m2) / total;
+    m4 = m4 + other.m4 + delta2 * delta2 * na * nb * (na * na - na * nb + nb * nb) / (total * total * total) +
+        6 * delta2 * (na * na * other.m2 + nb * nb * m2) / (total * total) + 4 * delta * (na * other.m3 - nb * m3) / total;
+    m3 = mergedM3;
+    m2 = mergedM2;
+    mean += delta * nb / total;
+
+    n += other.n;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+    sum += other.sum;
+    sumsq += other.sumsq;
+    sumOfLogs += other.sumOfLogs;
+  }
+
+  public long getN() {
+    return n;
+  }
+
+  public double getMin() {
+    return min;
+  }
+
+  public double getMax() {
+    return max;
+  }
+
+  public double getSum() {
+    return n == 0 ? Double.NaN : sum;
+  }
+
+  public double getSumsq() {
+    return n == 0 ? Double.NaN : sumsq;
+  }
+
+  public double getMean() {
+    return n == 0 ? Double.NaN : mean;
+  }
+
+  public double getGeometricMean() {
+    return n == 0 ? Double.NaN : Math.exp(sumOfLogs / n);
+  }
+
+  /**
+   * Bias-corrected sample variance.
+   *
+   * @return
+   */
+  public double getVariance() {
+    if (n == 0) return Double.NaN;
+    return n == 1 ? 0 : m2 / (n - 1);
+  }
+
+  public double getStandardDeviation() {
+    return Math.sqrt(getVariance());
+  }
+
+  public double getSkewness() {
+    if (n < 3) return Double.NaN;
+    double variance = getVariance();
+    if (variance < MIN_VARIANCE) return 0;
+    return n * m3 / ((n - 1) * (n - 2) * variance * Math.sqrt(variance));
+  }
+
+  public double getKurtosis() {
+    if (n < 4) return Double.NaN;
+    double variance = getVariance();
+    if (variance < MIN_VARIANCE) return 0;
+    double n1 = n - 1;
+    double n2 = n - 2;
+    double n3 = n - 3;
+    return n * (n + 1) / (n1 * n2 * n3) * m4 / (variance * variance) - 3 * n1 * n1 / (n2 * n3);
+  }
+
+  private void copy(StreamingMoments other) {
+    n = other.n;
+    min = other.min;
+    max = other.max;
+    sum = other.sum;
+    sumsq = other.sumsq;
+    sumOfLogs = other.sumOfLogs;
+    mean = other.mean;
+    m2 = other.m2;
+    m3 = other.m3;
+    m4 = other.m4;
+  }
+
+}
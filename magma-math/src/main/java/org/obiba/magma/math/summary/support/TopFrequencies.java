@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2022 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.math.summary.support;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mergeable frequency table of a stream of names that keeps the counts of at most a given number of names (Misra-Gries
+ * summary). When a new name does not fit, all the counts are decremented and the names with no count left are dropped:
+ * any name that occurs more than n / (capacity + 1) times is kept, and each count is under-estimated by at most
+ * {@link #getMaxError()}.
+ */
+public class TopFrequencies implements Serializable {
+
+  private static final long serialVersionUID = -2480474451017567005L;
+
+  public static final int DEFAULT_CAPACITY = 100;
+
+  private final int capacity;
+
+  private final Map<String, Long> counts = Maps.newLinkedHashMap();
+
+  private long n = 0;
+
+  private long maxError = 0;
+
+  /**
+   * @param capacity the maximum number of names to count
+   */
+  public TopFrequencies(int capacity) {
+    Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+    this.capacity = capacity;
+  }
+
+  public void add(String name) {
+    n++;
+    Long count = counts.get(name);
+    if (count != null) {
+      counts.put(name, count + 1);
+    } else if (counts.size() < capacity) {
+      counts.put(name, 1L);
+    } else {
+      decrement(1);
+    }
+  }
+
+  /**
+   * Add the counts of another table, typically computed on another partition of the entities.
+   *
+   * @param other
+   */
+  public void merge(TopFrequencies other) {
+    n += other.n;
+    maxError += other.maxError;
+    for (Map.Entry<String, Long> entry : other.counts.entrySet()) {
+      counts.merge(entry.getKey(), entry.getValue(), Long::sum);
+    }
+    if (counts.size() > capacity) {
+      // keep the names that have more than the (capacity + 1)th largest count
+      List<Long> largest = Ordering.natural().greatestOf(counts.values(), capacity + 1);
+      decrement(largest.get(capacity));
+    }
+  }
+
+  /**
+   * Total number of names that were added, counted or not.
+   *
+   * @return
+   */
+  public long getN() {
+    return n;
+  }
+
+  /**
+   * The counted names, in the order of their first occurrence.
+   *
+   * @return
+   */
+  public Iterable<String> getNames() {
+    return Collections.unmodifiableSet(counts.keySet());
+  }
+
+  /**
+   * @param name
+   * @return the lower bound of the number of occurrences of the name
+   */
+  public long getCount(String name) {
+    Long count = counts.get(name);
+    return count == null ? 0 : count;
+  }
+
+  /**
+   * Maximum difference between the count of a name and its actual number of occurrences.
+   *
+   * @return 0 if the counts are exact
+   */
+  public long getMaxError() {
+    return maxError;
+  }
+
+  private void decrement(long amount) {
+    maxError += amount;
+    for (Iterator<Map.Entry<String, Long>> it = counts.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<String, Long> entry = it.next();
+      if (entry.getValue() <= amount) {
+        it.remove();
+      } else {
+        entry.setValue(entry.getValue() - amount);
+      }
+    }
+  }
+
+}
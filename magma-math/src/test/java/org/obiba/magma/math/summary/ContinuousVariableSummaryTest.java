@@ -13,6 +13,8 @@ import org.junit.Test;
 import org.mockito.Mockito;
 import org.obiba.magma.*;
 import org.obiba.magma.math.Distribution;
+import org.obiba.magma.math.summary.support.QuantileSketch;
+import org.obiba.magma.math.summary.support.TopFrequencies;
 import org.obiba.magma.support.Values;
 import org.obiba.magma.test.AbstractMagmaTest;
 import org.obiba.magma.type.IntegerType;
@@ -20,6 +22,7 @@ import org.obiba.magma.type.IntegerType;
 import java.util.ArrayList;
 
 import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.offset;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -61,6 +64,48 @@ public class ContinuousVariableSummaryTest extends AbstractMagmaTest {
     assertThat(summary.getN()).isEqualTo(3l);
   }
 
+  @Test
+  public void test_compute_streaming() {
+    Variable mockVariable = Variable.Builder.newVariable("mock", IntegerType.get(), "mock").addCategory("888", "", true)
+        .build();
+    ContinuousVariableSummary summary = new ContinuousVariableSummary.Builder(mockVariable, Distribution.normal)
+        .streaming(QuantileSketch.DEFAULT_SIZE, TopFrequencies.DEFAULT_CAPACITY)
+        .addValue(IntegerType.get().valueOf(1)) //
+        .addValue(IntegerType.get().valueOf(2)) //
+        .addValue(IntegerType.get().valueOf(3)) //
+        .addValue(IntegerType.get().valueOf(888)) //
+        .addValue(IntegerType.get().nullValue()) //
+        .build();
+    assertThat(summary.getMin()).isEqualTo(1.0);
+    assertThat(summary.getMax()).isEqualTo(3.0);
+    assertThat(summary.getMean()).isEqualTo(2.0);
+    assertThat(summary.getMedian()).isEqualTo(2.0);
+    assertThat(summary.getN()).isEqualTo(3l);
+    assertThat(summary.getFrequencies()).hasSize(3);
+    assertThat(summary.getIntervalFrequencies()).isNotEmpty();
+  }
+
+  @Test
+  public void test_compute_streamingMerge() {
+    Variable mockVariable = Variable.Builder.newVariable("mock", IntegerType.get(), "mock").build();
+    ContinuousVariableSummary.Builder builder = new ContinuousVariableSummary.Builder(mockVariable,
+        Distribution.normal).streaming(QuantileSketch.DEFAULT_SIZE, TopFrequencies.DEFAULT_CAPACITY);
+    for(int partition = 0; partition < 4; partition++) {
+      ContinuousVariableSummary.Builder partial = new ContinuousVariableSummary.Builder(mockVariable,
+          Distribution.normal).streaming(QuantileSketch.DEFAULT_SIZE, TopFrequencies.DEFAULT_CAPACITY);
+      for(int i = partition; i < 1000; i += 4) {
+        partial.addValue(IntegerType.get().valueOf(i));
+      }
+      builder.merge(partial);
+    }
+    ContinuousVariableSummary summary = builder.build();
+    assertThat(summary.getN()).isEqualTo(1000l);
+    assertThat(summary.getMin()).isEqualTo(0.0);
+    assertThat(summary.getMax()).isEqualTo(999.0);
+    assertThat(summary.getMean()).isEqualTo(499.5);
+    assertThat(summary.getMedian()).isEqualTo(500.0, offset(1000 * 0.02));
+  }
+
   /*
     @Test
     public void test_compute_withNullValue() {
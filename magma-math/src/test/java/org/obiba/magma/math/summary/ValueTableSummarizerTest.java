@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2019 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.obiba.magma.math.summary;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Test;
+import org.obiba.magma.*;
+import org.obiba.magma.math.Distribution;
+import org.obiba.magma.math.Frequency;
+import org.obiba.magma.support.AbstractVariableValueSourceWrapper;
+import org.obiba.magma.support.StaticDatasource;
+import org.obiba.magma.support.StaticValueTable;
+import org.obiba.magma.test.AbstractMagmaTest;
+import org.obiba.magma.type.IntegerType;
+import org.obiba.magma.type.TextType;
+
+import jakarta.validation.constraints.NotNull;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ValueTableSummarizerTest extends AbstractMagmaTest {
+
+  @Test
+  public void test_summarize_sameAsFactories() {
+    CountingValueTable table = createTable(1000);
+    List<VariableSummaryFactory<?>> factories = createFactories(table);
+
+    ValueTableSummarizer.Builder builder = ValueTableSummarizer.Builder.newSummarizer(table).partitions(4)
+        .batchSize(37);
+    for (VariableSummaryFactory<?> factory : factories) {
+      builder.add(factory);
+    }
+    List<VariableSummary> summaries = builder.build().summarize();
+
+    // each value set is read once for all the variables
+    assertThat(table.valueSetCount.get()).isEqualTo(1000);
+    assertContinuous((ContinuousVariableSummary) summaries.get(0),
+        (ContinuousVariableSummary) factories.get(0).getSummary());
+    assertFrequencies((TextVariableSummary) summaries.get(1), (TextVariableSummary) factories.get(1).getSummary());
+    assertContinuous((ContinuousVariableSummary) summaries.get(2),
+        (ContinuousVariableSummary) factories.get(2).getSummary());
+    assertThat(summaries.get(2).getVariableName()).isEqualTo("INT");
+    assertThat(((ContinuousVariableSummary) summaries.get(2)).getN()).isEqualTo(90);
+  }
+
+  @Test
+  public void test_summarize_readsMultiVectorSource() {
+    CountingValueTable table = createTable(1000);
+    table.vectorSources = true;
+    ContinuousVariableSummaryFactory continuous = new ContinuousVariableSummaryFactory.Builder() //
+        .variable(table.getVariable("INT")).table(table).valueSource(table.getVariableValueSource("INT")) //
+        .distribution(Distribution.normal).percentiles(null).intervals(10).build();
+    TextVariableSummaryFactory text = new TextVariableSummaryFactory.Builder() //
+        .variable(table.getVariable("TXT")).table(table).valueSource(table.getVariableValueSource("TXT")).build();
+    List<VariableSummaryFactory<?>> factories = createFactories(table);
+
+    List<VariableSummary> summaries = ValueTableSummarizer.Builder.newSummarizer(table).partitions(3).add(continuous)
+        .add(text).build().summarize();
+
+    // one multi-vector source of both variables, read by each partition
+    assertThat(table.multiVectorVariables).hasSize(1);
+    assertThat(table.multiVectorVariables.get(0)).containsExactly(table.getVariable("INT"), table.getVariable("TXT"));
+    assertThat(table.valueSetCount.get()).isEqualTo(1000);
+    assertContinuous((ContinuousVariableSummary) summaries.get(0),
+        (ContinuousVariableSummary) factories.get(0).getSummary());
+    assertFrequencies((TextVariableSummary) summaries.get(1), (TextVariableSummary) factories.get(1).getSummary());
+  }
+
+  @Test
+  public void test_summarize_emptyTable() {
+    CountingValueTable table = createTable(0);
+    List<VariableSummaryFactory<?>> factories = createFactories(table);
+
+    List<VariableSummary> summaries = ValueTableSummarizer.Builder.newSummarizer(table).partitions(4)
+        .add(factories.get(0)).add(factories.get(1)).build().summarize();
+
+    assertThat(summaries).hasSize(2);
+    assertThat(((ContinuousVariableSummary) summaries.get(0)).getN()).isEqualTo(0);
+    assertThat(((TextVariableSummary) summaries.get(1)).getN()).isEqualTo(0);
+  }
+
+  @Test
+  public void test_summarize_notMergeableBuilder() {
+    CountingValueTable table = createTable(1000);
+    TextVariableSummaryFactory text = new TextVariableSummaryFactory.Builder() //
+        .variable(table.getVariable("TXT")).table(table).valueSource(withVectorSource(table, "TXT")).build();
+
+    List<VariableSummary> summaries = ValueTableSummarizer.Builder.newSummarizer(table).partitions(4).batchSize(37)
+        .add(new NotMergeableSummaryFactory(text)).build().summarize();
+
+    // read in a single partition
+    assertThat(table.valueSetCount.get()).isEqualTo(1000);
+    assertFrequencies(summaries.get(0), text.getSummary());
+  }
+
+  private List<VariableSummaryFactory<?>> createFactories(ValueTable table) {
+    ContinuousVariableSummaryFactory continuous = new ContinuousVariableSummaryFactory.Builder() //
+        .variable(table.getVariable("INT")).table(table).valueSource(withVectorSource(table, "INT")) //
+        .distribution(Distribution.normal).percentiles(null).intervals(10).build();
+    TextVariableSummaryFactory text = new TextVariableSummaryFactory.Builder() //
+        .variable(table.getVariable("TXT")).table(table).valueSource(withVectorSource(table, "TXT")).build();
+    ContinuousVariableSummaryFactory filtered = new ContinuousVariableSummaryFactory.Builder() //
+        .variable(table.getVariable("INT")).table(table).valueSource(withVectorSource(table, "INT")) //
+        .distribution(Distribution.normal).percentiles(null).intervals(10).offset(450).limit(100).build();
+    return Lists.newArrayList(continuous, text, filtered);
+  }
+
+  private void assertContinuous(ContinuousVariableSummary actual, ContinuousVariableSummary expected) {
+    assertThat(actual.getN()).isEqualTo(expected.getN());
+    assertThat(actual.getMin()).isEqualTo(expected.getMin());
+    assertThat(actual.getMax()).isEqualTo(expected.getMax());
+    assertThat(actual.getMean()).isEqualTo(expected.getMean());
+    assertThat(actual.getMedian()).isEqualTo(expected.getMedian());
+    assertThat(actual.getPercentiles()).isEqualTo(expected.getPercentiles());
+    assertFrequencies(actual, expected);
+  }
+
+  private void assertFrequencies(VariableSummary actual, VariableSummary expected) {
+    List<Frequency> actualFrequencies = Lists.newArrayList(frequencies(actual));
+    List<Frequency> expectedFrequencies = Lists.newArrayList(frequencies(expected));
+    assertThat(actualFrequencies).hasSize(expectedFrequencies.size());
+    for (int i = 0; i < actualFrequencies.size(); i++) {
+      assertThat(actualFrequencies.get(i).getValue()).isEqualTo(expectedFrequencies.get(i).getValue());
+      assertThat(actualFrequencies.get(i).getFreq()).isEqualTo(expectedFrequencies.get(i).getFreq());
+    }
+  }
+
+  private Iterable<Frequency> frequencies(VariableSummary summary) {
+    return summary instanceof TextVariableSummary
+        ? ((TextVariableSummary) summary).getFrequencies()
+        : ((ContinuousVariableSummary) summary).getFrequencies();
+  }
+
+  private CountingValueTable createTable(int entityCount) {
+    List<String> identifiers = Lists.newArrayList();
+    for (int i = 0; i < entityCount; i++) {
+      identifiers.add(String.valueOf(i));
+    }
+    StaticDatasource datasource = new StaticDatasource("ds");
+    CountingValueTable table = new CountingValueTable(datasource, identifiers);
+    table.addVariables(IntegerType.get(), "INT");
+    table.addVariables(TextType.get(), "TXT");
+    for (String identifier : identifiers) {
+      int i = Integer.parseInt(identifier);
+      table.addValues(identifier, "INT", i % 10 == 0 ? null : i, "TXT", "T" + i % 7);
+    }
+    datasource.addValueTable(table);
+    return table;
+  }
+
+  private ValueSource withVectorSource(ValueTable table, String name) {
+    return withVectorSource(table, table.getVariableValueSource(name));
+  }
+
+  private static VariableValueSource withVectorSource(ValueTable table, VariableValueSource source) {
+    return new AbstractVariableValueSourceWrapper(source) {
+      @Override
+      public boolean supportVectorSource() {
+        return true;
+      }
+
+      @NotNull
+      @Override
+      public VectorSource asVectorSource() {
+        return new VectorSource() {
+          @Override
+          public ValueType getValueType() {
+            return getWrapped().getValueType();
+          }
+
+          @Override
+          public Iterable<Value> getValues(Iterable<VariableEntity> entities) {
+            return Iterables.transform(entities, entity -> getWrapped().getValue(table.getValueSet(entity)));
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * A factory that only implements the required methods, with a builder that cannot be merged.
+   */
+  private static class NotMergeableSummaryFactory implements VariableSummaryFactory<TextVariableSummary> {
+
+    private final TextVariableSummaryFactory factory;
+
+    private NotMergeableSummaryFactory(TextVariableSummaryFactory factory) {
+      this.factory = factory;
+    }
+
+    @NotNull
+    @Override
+    public TextVariableSummary getSummary() {
+      return factory.getSummary();
+    }
+
+    @Override
+    public NotMergeableBuilder newBuilder() {
+      return new NotMergeableBuilder(factory.newBuilder());
+    }
+
+    @NotNull
+    @Override
+    public String getCacheKey() {
+      return factory.getCacheKey();
+    }
+
+    @NotNull
+    @Override
+    public Variable getVariable() {
+      return factory.getVariable();
+    }
+
+    @NotNull
+    @Override
+    public ValueTable getTable() {
+      return factory.getTable();
+    }
+
+    @Override
+    public void setValueSource(ValueSource valueSource) {
+      factory.setValueSource(valueSource);
+    }
+
+    @NotNull
+    @Override
+    public ValueSource getValueSource() {
+      return factory.getValueSource();
+    }
+
+    @Override
+    public void setTable(ValueTable table) {
+      factory.setTable(table);
+    }
+
+    @Override
+    public void setVariable(Variable variable) {
+      factory.setVariable(variable);
+    }
+  }
+
+  private static class NotMergeableBuilder
+      implements AbstractVariableSummary.VariableSummaryBuilder<TextVariableSummary, NotMergeableBuilder> {
+
+    private final TextVariableSummary.Builder builder;
+
+    private NotMergeableBuilder(TextVariableSummary.Builder builder) {
+      this.builder = builder;
+    }
+
+    @Override
+    public TextVariableSummary build() {
+      return builder.build();
+    }
+
+    @NotNull
+    @Override
+    public Variable getVariable() {
+      return builder.getVariable();
+    }
+
+    @Override
+    public NotMergeableBuilder addTable(@NotNull ValueTable table, @NotNull ValueSource variableValueSource) {
+      builder.addTable(table, variableValueSource);
+      return this;
+    }
+
+    @Override
+    public NotMergeableBuilder addValue(@NotNull Value value) {
+      builder.addValue(value);
+      return this;
+    }
+  }
+
+  private static class CountingValueTable extends StaticValueTable {
+
+    private final AtomicInteger valueSetCount = new AtomicInteger();
+
+    private final List<List<Variable>> multiVectorVariables = Lists.newArrayList();
+
+    private final Map<String, VariableValueSource> sources = Maps.newHashMap();
+
+    // whether the value sources of the variables support vector sources
+    private boolean vectorSources = false;
+
+    private CountingValueTable(Datasource datasource, Iterable<String> entities) {
+      super(datasource, "table", entities);
+    }
+
+    @Override
+    public Iterable<ValueSet> getValueSets(Iterable<VariableEntity> entities) {
+      valueSetCount.addAndGet(Iterables.size(entities));
+      return super.getValueSets(entities);
+    }
+
+    @Override
+    public synchronized VariableValueSource getVariableValueSource(String name) {
+      if (!vectorSources) return super.getVariableValueSource(name);
+      return sources.computeIfAbsent(name, n -> withVectorSource(this, super.getVariableValueSource(n)));
+    }
+
+    @Override
+    public MultiVectorSource getMultiVectorSource(List<Variable> variables) {
+      multiVectorVariables.add(variables);
+      return super.getMultiVectorSource(variables);
+    }
+  }
+
+}
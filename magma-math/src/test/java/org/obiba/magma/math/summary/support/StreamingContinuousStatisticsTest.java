@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2022 OBiBa. All rights reserved.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the GNU Public License v3.0.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.obiba.magma.math.summary.support;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.offset;
+
+public class StreamingContinuousStatisticsTest {
+
+  @Test
+  public void test_moments_sameAsDescriptiveStatistics() {
+    Random random = new Random(1);
+    DescriptiveStatistics expected = new DescriptiveStatistics();
+    StreamingMoments moments = new StreamingMoments();
+    for(int i = 0; i < 10000; i++) {
+      double value = Math.exp(random.nextGaussian()) * 10;
+      expected.addValue(value);
+      moments.add(value);
+    }
+    assertMoments(moments, expected);
+  }
+
+  @Test
+  public void test_moments_merge() {
+    Random random = new Random(1);
+    DescriptiveStatistics expected = new DescriptiveStatistics();
+    StreamingMoments merged = new StreamingMoments();
+    for(int partition = 0; partition < 5; partition++) {
+      StreamingMoments moments = new StreamingMoments();
+      for(int i = 0; i < 1000 * partition; i++) {
+        double value = random.nextGaussian() * partition + partition;
+        expected.addValue(value);
+        moments.add(value);
+      }
+      merged.merge(moments);
+    }
+    assertMoments(merged, expected);
+  }
+
+  @Test
+  public void test_sketch_exactPercentiles() {
+    DescriptiveStatistics expected = new DescriptiveStatistics();
+    QuantileSketch sketch = new QuantileSketch(QuantileSketch.DEFAULT_SIZE);
+    for(int i = 0; i < 100; i++) {
+      expected.addValue(i * 7 % 100);
+      sketch.add(i * 7 % 100);
+    }
+    assertThat(sketch.isExact()).isTrue();
+    assertThat(sketch.getNormalizedRankError()).isEqualTo(0);
+    for(double p : new double[] { 0.05, 5, 50, 99.5 }) {
+      assertThat(sketch.getPercentile(p)).isEqualTo(expected.getPercentile(p));
+    }
+  }
+
+  @Test
+  public void test_sketch_estimatedPercentilesWithinErrorBound() {
+    Random random = new Random(1);
+    QuantileSketch merged = new QuantileSketch(QuantileSketch.DEFAULT_SIZE);
+    double[] values = new double[200000];
+    for(int partition = 0; partition < 4; partition++) {
+      QuantileSketch sketch = new QuantileSketch(QuantileSketch.DEFAULT_SIZE);
+      for(int i = partition; i < values.length; i += 4) {
+        values[i] = random.nextGaussian();
+        sketch.add(values[i]);
+      }
+      merged.merge(sketch);
+    }
+    Arrays.sort(values);
+
+    assertThat(merged.getN()).isEqualTo(values.length);
+    assertThat(merged.isExact()).isFalse();
+    double error = merged.getNormalizedRankError();
+    assertThat(error).isGreaterThan(0).isLessThan(0.02);
+    for(double p : new double[] { 1, 5, 25, 50, 75, 95, 99 }) {
+      int rank = Arrays.binarySearch(values, merged.getPercentile(p));
+      assertThat((double) rank / values.length).isEqualTo(p / 100, offset(error));
+      assertThat(merged.getRank(values[rank])).isEqualTo((double) rank / values.length, offset(error));
+    }
+    assertThat(merged.getMin()).isEqualTo(values[0]);
+    assertThat(merged.getMax()).isEqualTo(values[values.length - 1]);
+  }
+
+  @Test
+  public void test_frequencies_capped() {
+    TopFrequencies frequencies = new TopFrequencies(3);
+    for(int i = 0; i < 1000; i++) {
+      frequencies.add(i % 2 == 0 ? "A" : "x" + i);
+    }
+    TopFrequencies other = new TopFrequencies(3);
+    for(int i = 0; i < 1000; i++) {
+      other.add(i % 3 == 0 ? "B" : "A");
+    }
+    frequencies.merge(other);
+
+    assertThat(frequencies.getN()).isEqualTo(2000);
+    assertThat(frequencies.getNames()).containsOnly("A", "B");
+    assertThat(frequencies.getCount("A")).isLessThanOrEqualTo(1166)
+        .isGreaterThanOrEqualTo(1166 - frequencies.getMaxError());
+    assertThat(frequencies.getCount("B")).isLessThanOrEqualTo(334)
+        .isGreaterThanOrEqualTo(334 - frequencies.getMaxError());
+  }
+
+  @Test
+  public void test_frequencies_exactBelowCapacity() {
+    TopFrequencies frequencies = new TopFrequencies(3);
+    for(int i = 0; i < 100; i++) {
+      frequencies.add(i % 2 == 0 ? "A" : "B");
+    }
+    assertThat(frequencies.getMaxError()).isEqualTo(0);
+    assertThat(frequencies.getCount("A")).isEqualTo(50);
+    assertThat(frequencies.getCount("B")).isEqualTo(50);
+  }
+
+  private void assertMoments(StreamingMoments moments, DescriptiveStatistics expected) {
+    assertThat(moments.getN()).isEqualTo(expected.getN());
+    assertThat(moments.getMin()).isEqualTo(expected.getMin());
+    assertThat(moments.getMax()).isEqualTo(expected.getMax());
+    assertThat(moments.getSum()).isEqualTo(expected.getSum(), offset(1e-9 * Math.abs(expected.getSum())));
+    assertThat(moments.getMean()).isEqualTo(expected.getMean(), offset(1e-9));
+    assertThat(moments.getVariance()).isEqualTo(expected.getVariance(), offset(1e-9));
+    assertThat(moments.getGeometricMean()).isEqualTo(expected.getGeometricMean(), offset(1e-9));
+    assertThat(moments.getSkewness()).isEqualTo(expected.getSkewness(), offset(1e-9));
+    assertThat(moments.getKurtosis()).isEqualTo(expected.getKurtosis(), offset(1e-9));
+  }
+
+}